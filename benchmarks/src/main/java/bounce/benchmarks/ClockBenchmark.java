@@ -0,0 +1,58 @@
+package bounce.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bounce.ShapeModel;
+import bounce.bounceApp.HeadlessBounce;
+import bounce.bounceApp.SceneGenerator;
+
+/**
+ * Measures ShapeModel.clock() across scene layouts, sizes and simulation
+ * engines.
+ *
+ * @author Will Molloy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBenchmark {
+
+	@Param({"FLAT", "WIDE", "DEEP"})
+	public SceneGenerator.Layout layout;
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int shapes;
+
+	@Param({"sequential", "packed", "forkjoin"})
+	public String engine;
+
+	private ShapeModel _model;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_model = SceneGenerator.generate(layout, shapes, 1);
+		_model.setSimulationEngine(HeadlessBounce.engineNamed(engine));
+	}
+
+	@Benchmark
+	public void clock() {
+		_model.clock();
+	}
+}
@@ -0,0 +1,59 @@
+package bounce.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bounce.NestingShape;
+import bounce.ShapeModel;
+import bounce.bounceApp.SceneGenerator;
+
+/**
+ * Measures ShapeModel.add() and remove() churn: each operation removes a
+ * randomly chosen child of the root and adds a new one, keeping the size of
+ * the model constant.
+ *
+ * @author Will Molloy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelChurnBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int shapes;
+
+	private ShapeModel _model;
+	private SceneGenerator _generator;
+	private Random _random;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_model = SceneGenerator.generate(SceneGenerator.Layout.FLAT, shapes, 1);
+		_generator = new SceneGenerator(2);
+		_random = new Random(3);
+	}
+
+	@Benchmark
+	public boolean removeAndAdd() {
+		NestingShape root = _model.root();
+		_model.remove(root.shapeAt(_random.nextInt(root.shapeCount())));
+		return _model.add(_generator.leaf(root), root);
+	}
+}
@@ -0,0 +1,81 @@
+package bounce.benchmarks;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Rectangle;
+
+import bounce.Painter;
+
+/**
+ * Implementation of the Painter interface that discards every request, so
+ * that benchmarks measure the cost of the paint traversal alone.
+ *
+ * @author Will Molloy
+ *
+ */
+public class NullPainter implements Painter {
+	private Color _colour = Color.BLACK;
+
+	@Override
+	public void drawRect(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public Color getColour() {
+		return _colour;
+	}
+
+	@Override
+	public void setColour(Color c) {
+		_colour = c;
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void translate(int x, int y) {
+	}
+
+	@Override
+	public void drawCenteredText(String text, int x, int y) {
+	}
+
+	@Override
+	public void drawImage(Image img, int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void drawHexagon(int w, int h, int x, int y) {
+	}
+
+	@Override
+	public void drawDiamond(int w, int h, int x, int y) {
+	}
+
+	@Override
+	public void drawPolygon(int[] xs, int[] ys, int n) {
+	}
+
+	@Override
+	public void fillPolygon(int[] xs, int[] ys, int n) {
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		return null;
+	}
+}
@@ -0,0 +1,88 @@
+package bounce.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bounce.BatchingPainter;
+import bounce.GraphicsPainter;
+import bounce.Painter;
+import bounce.ShapeModel;
+import bounce.bounceApp.SceneGenerator;
+
+/**
+ * Measures painting a whole scene with Shape.paint(), against a Painter that
+ * discards every request, against a GraphicsPainter drawing into a 
+ * BufferedImage and against a BatchingPainter drawing into one.
+ *
+ * @author Will Molloy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+	@Param({"FLAT", "WIDE", "DEEP"})
+	public SceneGenerator.Layout layout;
+
+	@Param({"1000", "10000", "100000"})
+	public int shapes;
+
+	@Param({"null", "image", "batched"})
+	public String painter;
+
+	private ShapeModel _model;
+	private Painter _painter;
+	private Graphics2D _graphics;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_model = SceneGenerator.generate(layout, shapes, 1);
+		if (!painter.equals("null")) {
+			BufferedImage image = new BufferedImage(SceneGenerator.BOUNDS.width, 
+					SceneGenerator.BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+			_graphics = image.createGraphics();
+			if (painter.equals("image")) {
+				_painter = new GraphicsPainter(_graphics);
+			}
+		} else {
+			_painter = new NullPainter();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (_graphics != null) {
+			_graphics.dispose();
+		}
+	}
+
+	@Benchmark
+	public void paint() {
+		if (_painter == null) {
+			BatchingPainter batched = new BatchingPainter(_graphics, SceneGenerator.BOUNDS.width, SceneGenerator.BOUNDS.height);
+			_model.root().paint(batched);
+			batched.flush();
+		} else {
+			_model.root().paint(_painter);
+		}
+	}
+}
@@ -20,7 +20,9 @@ import javax.swing.Timer;
  * AnimationViewer object comprises a list of Shapes and a Timer object. An
  * AnimationViewer instance subscribes to events that are published by a Timer.
  * In response to receiving an event from the Timer, the AnimationViewer iterates 
- * through a list of Shapes requesting that each Shape paints and moves itself.
+ * through a list of Shapes requesting that each Shape moves itself, and then
+ * repaints them. (The Bounce application instead clocks its ShapeModel with a
+ * SimulationScheduler.)
  * 
  * @author Ian Warren
  * 
@@ -59,18 +61,14 @@ public class AnimationViewer extends JPanel implements ActionListener {
 		// Call inherited implementation to handle background painting.
 		super.paintComponent(g);
 		
-		// Calculate bounds of animation screen area.
-		int width = getSize().width;
-		int height = getSize().height;
-		
 		// Create a GraphicsPainter that Shape objects will use for drawing.
 		// The GraphicsPainter delegates painting to a basic Graphics object.
 		Painter painter = new GraphicsPainter(g);
 		
-		// Progress the animation.
+		// Paint the current state; painting does not progress the animation,
+		// so its speed does not depend on how often the viewer is repainted.
 		for(Shape s : _shapes) {
 			s.paint(painter);
-			s.move(width, height);
 		}
 	}
 
@@ -79,6 +77,15 @@ public class AnimationViewer extends JPanel implements ActionListener {
 	 * received by the Timer.
 	 */
 	public void actionPerformed(ActionEvent e) {
+		// Calculate bounds of animation screen area.
+		int width = getSize().width;
+		int height = getSize().height;
+		
+		// Progress the animation by one step per Timer event.
+		for(Shape s : _shapes) {
+			s.move(width, height);
+		}
+		
 		// Request that the AnimationViewer repaints itself. The call to 
 		// repaint() will cause the AnimationViewer's paintComponent() method 
 		// to be called.
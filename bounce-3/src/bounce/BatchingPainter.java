@@ -0,0 +1,494 @@
+package bounce;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the Painter interface that records a frame's drawing
+ * requests into buckets, one per colour, and paints each bucket with a
+ * single colour change.
+ *
+ * Shape.paint() sets the colour before every Shape, so painting straight to
+ * a Graphics changes its colour about twice per Shape. A BatchingPainter
+ * only changes it once per bucket. Requests may be reordered only where
+ * this cannot change the result: each request's bounds are marked in a grid
+ * of CELL_SIZE pixel cells, and a request that touches a cell already used
+ * in another colour closes the current batch of buckets, which is painted
+ * before the request is recorded. The output is therefore the same, pixel
+ * for pixel, as painting through a GraphicsPainter.
+ *
+ * Requests are painted through a GraphicsPainter in the coordinates of the
+ * Graphics the BatchingPainter was created with; translations are applied
+ * as requests are recorded. flush() must be called at the end of the frame.
+ *
+ * @author Will Molloy
+ *
+ */
+public class BatchingPainter implements Painter {
+
+	public static final int CELL_SIZE = 8;
+
+	private static final int CELL_SHIFT = 3;
+
+	// === Opcodes.
+	private static final int RECT = 0;
+	private static final int OVAL = 1;
+	private static final int LINE = 2;
+	private static final int FILLED_RECT = 3;
+	private static final int FILLED_OVAL = 4;
+	private static final int TEXT = 5;
+	private static final int HEXAGON = 6;
+	private static final int DIAMOND = 7;
+	private static final int POLYGON = 8;
+	private static final int FILLED_POLYGON = 9;
+	// ===
+
+	/*
+	 * Requests of one colour within the current batch, as an opcode and four
+	 * ints each. Text is referenced from a side table, and the points of
+	 * polygons are kept in _points, xs then ys.
+	 */
+	private static final class Bucket {
+		private Color _colour;
+		private int _id;
+		private int[] _commands = new int[64];
+		private int _length;
+		private List<String> _texts = new ArrayList<String>();
+		private int[] _points = new int[64];
+		private int _pointCount;
+
+		// Adds n points, translated, and returns the index of the first.
+		private int addPoints(int[] xs, int[] ys, int n, int translateX, int translateY) {
+			if (_pointCount + 2 * n > _points.length) {
+				_points = Arrays.copyOf(_points, Math.max(_points.length * 2, _pointCount + 2 * n));
+			}
+			int start = _pointCount;
+			for (int i = 0; i < n; i++) {
+				_points[start + i] = xs[i] + translateX;
+				_points[start + n + i] = ys[i] + translateY;
+			}
+			_pointCount += 2 * n;
+			return start;
+		}
+
+		private void add(int opcode, int a, int b, int c, int d) {
+			if (_length + 5 > _commands.length) {
+				_commands = Arrays.copyOf(_commands, _commands.length * 2);
+			}
+			int[] commands = _commands;
+			int i = _length;
+			commands[i] = opcode;
+			commands[i + 1] = a;
+			commands[i + 2] = b;
+			commands[i + 3] = c;
+			commands[i + 4] = d;
+			_length = i + 5;
+		}
+	}
+
+	private final GraphicsPainter _delegate;
+	private final TextLayoutCache.FontLayout _textLayout;
+
+	/*
+	 * Grid of cells covering the area painted. A cell belongs to the current
+	 * batch if its _cellBatch is _batch, in which case _cellBucket is the id
+	 * of the only bucket that has drawn in it. Requests outside the area are
+	 * clamped to the cells at its edges.
+	 */
+	private final int _columns;
+	private final int _rows;
+	private final int[] _cellBatch;
+	private final int[] _cellBucket;
+	private int _batch = 1;
+
+	// Buckets of the current batch, in the order they are painted.
+	private final List<Bucket> _buckets = new ArrayList<Bucket>();
+	private final Map<Color, Bucket> _bucketsByColour = new HashMap<Color, Bucket>();
+	private final List<Bucket> _spareBuckets = new ArrayList<Bucket>();
+	private Bucket _lastBucket;
+
+	// Bounds of the parts of the request being recorded, as x0, y0, x1, y1.
+	private final int[] _bounds = new int[6 * 4];
+
+	// Points of the polygon being painted.
+	private int[] _xs = new int[8];
+	private int[] _ys = new int[8];
+
+	private Color _colour = Color.BLACK;
+	private Color _issuedColour;
+	private int _translateX;
+	private int _translateY;
+
+	private int _colourChangesRequested;
+	private int _colourChangesIssued;
+	private int _batches;
+
+	/**
+	 * Creates a BatchingPainter that paints to g, optimised for requests
+	 * within width by height pixels of g's origin.
+	 */
+	public BatchingPainter(Graphics g, int width, int height) {
+		_delegate = new GraphicsPainter(g);
+		_textLayout = TextLayoutCache.shared().layout(g);
+		_columns = Math.max(1, (width + CELL_SIZE - 1) >> CELL_SHIFT);
+		_rows = Math.max(1, (height + CELL_SIZE - 1) >> CELL_SHIFT);
+		_cellBatch = new int[_columns * _rows];
+		_cellBucket = new int[_columns * _rows];
+	}
+
+	/**
+	 * Paints everything recorded so far. Must be called at the end of each
+	 * frame.
+	 */
+	public void flush() {
+		paintBatch();
+	}
+
+	/**
+	 * Returns the number of setColour() calls made on this BatchingPainter.
+	 */
+	public int colourChangesRequested() {
+		return _colourChangesRequested;
+	}
+
+	/**
+	 * Returns the number of times the colour was changed on the Graphics.
+	 */
+	public int colourChangesIssued() {
+		return _colourChangesIssued;
+	}
+
+	/**
+	 * Returns the number of batches painted, each closed by a request that
+	 * overlapped another colour, an image or flush().
+	 */
+	public int batchCount() {
+		return _batches;
+	}
+
+	@Override
+	public void drawRect(int x, int y, int width, int height) {
+		x += _translateX;
+		y += _translateY;
+		// Only the edges are drawn, so only they can overlap other requests.
+		int parts = line(0, x, y, x + width, y);
+		parts = line(parts, x + width, y, x + width, y + height);
+		parts = line(parts, x, y + height, x + width, y + height);
+		parts = line(parts, x, y, x, y + height);
+		record(_colour, parts, RECT, x, y, width, height, null);
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		x += _translateX;
+		y += _translateY;
+		record(_colour, box(0, x, y, x + width, y + height), OVAL, x, y, width, height, null);
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		x1 += _translateX;
+		y1 += _translateY;
+		x2 += _translateX;
+		y2 += _translateY;
+		record(_colour, line(0, x1, y1, x2, y2), LINE, x1, y1, x2, y2, null);
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		x += _translateX;
+		y += _translateY;
+		record(_colour, box(0, x, y, x + width, y + height), FILLED_RECT, x, y, width, height, null);
+	}
+
+	@Override
+	public Color getColour() {
+		return _colour;
+	}
+
+	@Override
+	public void setColour(Color c) {
+		_colour = c;
+		_colourChangesRequested++;
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		x += _translateX;
+		y += _translateY;
+		record(_colour, box(0, x, y, x + width, y + height), FILLED_OVAL, x, y, width, height, null);
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		_translateX += x;
+		_translateY += y;
+	}
+
+	/**
+	 * Text is always drawn in black, as by GraphicsPainter.
+	 */
+	@Override
+	public void drawCenteredText(String text, int x, int y) {
+		x += _translateX;
+		y += _translateY;
+		// Generous bounds for where GraphicsPainter places the text.
+		TextLayoutCache.FontLayout layout = _textLayout;
+		int halfWidth = layout.width(text) / 2 + 2;
+		int baseline = y + layout.baselineOffset();
+		int parts = box(0, x - halfWidth, baseline - layout.maxAscent() - 1, x + halfWidth, baseline + layout.maxDescent() + 1);
+		_colour = Color.BLACK;
+		record(Color.BLACK, parts, TEXT, x, y, 0, 0, text);
+	}
+
+	/**
+	 * Images are not batched: everything recorded before is painted, then the
+	 * image.
+	 */
+	@Override
+	public void drawImage(Image img, int x, int y, int width, int height) {
+		paintBatch();
+		_delegate.drawImage(img, x + _translateX, y + _translateY, width, height);
+	}
+
+	@Override
+	public void drawHexagon(int w, int h, int x, int y) {
+		x += _translateX;
+		y += _translateY;
+		int parts = line(0, x, y + h/2, x + 20, y);
+		parts = line(parts, x + 20, y, x + w - 20, y);
+		parts = line(parts, x + w - 20, y, x + w, y + h/2);
+		parts = line(parts, x + w, y + h/2, x + w - 20, y + h);
+		parts = line(parts, x + w - 20, y + h, x + 20, y + h);
+		parts = line(parts, x + 20, y + h, x, y + h/2);
+		record(_colour, parts, HEXAGON, w, h, x, y, null);
+	}
+
+	@Override
+	public void drawDiamond(int w, int h, int x, int y) {
+		x += _translateX;
+		y += _translateY;
+		int parts = line(0, x, y + h/2, x + w/2, y);
+		parts = line(parts, x + w/2, y, x + w, y + h/2);
+		parts = line(parts, x + w, y + h/2, x + w/2, y + h);
+		parts = line(parts, x + w/2, y + h, x, y + h/2);
+		record(_colour, parts, DIAMOND, w, h, x, y, null);
+	}
+
+	@Override
+	public void drawPolygon(int[] xs, int[] ys, int n) {
+		recordPolygon(POLYGON, xs, ys, n);
+	}
+
+	@Override
+	public void fillPolygon(int[] xs, int[] ys, int n) {
+		recordPolygon(FILLED_POLYGON, xs, ys, n);
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		Rectangle clip = _delegate.getClipBounds();
+		if (clip != null) {
+			clip.translate(-_translateX, -_translateY);
+		}
+		return clip;
+	}
+
+	private void recordPolygon(int opcode, int[] xs, int[] ys, int n) {
+		if (n <= 0) {
+			return;
+		}
+		int x0 = xs[0], y0 = ys[0], x1 = x0, y1 = y0;
+		for (int i = 1; i < n; i++) {
+			x0 = Math.min(x0, xs[i]);
+			y0 = Math.min(y0, ys[i]);
+			x1 = Math.max(x1, xs[i]);
+			y1 = Math.max(y1, ys[i]);
+		}
+		int parts = box(0, x0 + _translateX, y0 + _translateY, x1 + _translateX, y1 + _translateY);
+		Bucket bucket = claim(_colour, parts);
+		bucket.add(opcode, n, bucket.addPoints(xs, ys, n, _translateX, _translateY), 0, 0);
+	}
+
+	// Adds the bounds of a line, one pixel wider all round, as part parts.
+	private int line(int parts, int x1, int y1, int x2, int y2) {
+		return box(parts, Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+	}
+
+	// Adds the bounds x0, y0 to x1, y1, one pixel wider all round, as part
+	// parts and returns the new number of parts.
+	private int box(int parts, int x0, int y0, int x1, int y1) {
+		int i = parts * 4;
+		_bounds[i] = x0 - 1;
+		_bounds[i + 1] = y0 - 1;
+		_bounds[i + 2] = x1 + 1;
+		_bounds[i + 3] = y1 + 1;
+		return parts + 1;
+	}
+
+	/*
+	 * Adds a request to the bucket for colour.
+	 */
+	private void record(Color colour, int parts, int opcode, int a, int b, int c, int d, String text) {
+		Bucket bucket = claim(colour, parts);
+		if (text != null) {
+			c = bucket._texts.size();
+			bucket._texts.add(text);
+		}
+		bucket.add(opcode, a, b, c, d);
+	}
+
+	/*
+	 * Returns the bucket for colour, with the cells of the parts of a request
+	 * marked as its own, first painting the current batch if any part
+	 * overlaps a cell of another colour.
+	 */
+	private Bucket claim(Color colour, int parts) {
+		Bucket bucket = bucketFor(colour);
+		if (overlapsOtherBucket(parts, bucket._id)) {
+			paintBatch();
+			bucket = bucketFor(colour);
+		}
+		for (int part = 0; part < parts; part++) {
+			int i = part * 4;
+			int column0 = column(_bounds[i]), row0 = row(_bounds[i + 1]);
+			int column1 = column(_bounds[i + 2]), row1 = row(_bounds[i + 3]);
+			for (int row = row0; row <= row1; row++) {
+				for (int cell = row * _columns + column0, last = row * _columns + column1; cell <= last; cell++) {
+					_cellBatch[cell] = _batch;
+					_cellBucket[cell] = bucket._id;
+				}
+			}
+		}
+		return bucket;
+	}
+
+	private boolean overlapsOtherBucket(int parts, int id) {
+		for (int part = 0; part < parts; part++) {
+			int i = part * 4;
+			int column0 = column(_bounds[i]), row0 = row(_bounds[i + 1]);
+			int column1 = column(_bounds[i + 2]), row1 = row(_bounds[i + 3]);
+			for (int row = row0; row <= row1; row++) {
+				for (int cell = row * _columns + column0, last = row * _columns + column1; cell <= last; cell++) {
+					if (_cellBatch[cell] == _batch && _cellBucket[cell] != id) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private int column(int x) {
+		return Math.max(0, Math.min(_columns - 1, x >> CELL_SHIFT));
+	}
+
+	private int row(int y) {
+		return Math.max(0, Math.min(_rows - 1, y >> CELL_SHIFT));
+	}
+
+	private Bucket bucketFor(Color colour) {
+		Bucket bucket = _lastBucket;
+		if (bucket != null && bucket._colour.equals(colour)) {
+			return bucket;
+		}
+		bucket = _bucketsByColour.get(colour);
+		if (bucket == null) {
+			bucket = _spareBuckets.isEmpty() ? new Bucket() : _spareBuckets.remove(_spareBuckets.size() - 1);
+			bucket._colour = colour;
+			bucket._id = _buckets.size();
+			_buckets.add(bucket);
+			_bucketsByColour.put(colour, bucket);
+		}
+		_lastBucket = bucket;
+		return bucket;
+	}
+
+	/*
+	 * Paints the buckets of the current batch in order and starts a new
+	 * batch.
+	 */
+	private void paintBatch() {
+		if (_buckets.isEmpty()) {
+			return;
+		}
+		for (Bucket bucket : _buckets) {
+			// A bucket is left empty when its first request closed the batch.
+			if (bucket._length > 0) {
+				if (!bucket._colour.equals(_issuedColour)) {
+					_delegate.setColour(bucket._colour);
+					_issuedColour = bucket._colour;
+					_colourChangesIssued++;
+				}
+				paintBucket(bucket);
+			}
+			bucket._length = 0;
+			bucket._texts.clear();
+			bucket._pointCount = 0;
+			_spareBuckets.add(bucket);
+		}
+		_buckets.clear();
+		_bucketsByColour.clear();
+		_lastBucket = null;
+		_batches++;
+		if (++_batch == 0) {
+			Arrays.fill(_cellBatch, 0);
+			_batch = 1;
+		}
+	}
+
+	private void paintBucket(Bucket bucket) {
+		int[] c = bucket._commands;
+		GraphicsPainter painter = _delegate;
+		for (int p = 0; p < bucket._length; p += 5) {
+			switch (c[p]) {
+			case RECT:
+				painter.drawRect(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case OVAL:
+				painter.drawOval(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case LINE:
+				painter.drawLine(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case FILLED_RECT:
+				painter.fillRect(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case FILLED_OVAL:
+				painter.fillOval(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case TEXT:
+				painter.drawCenteredText(bucket._texts.get(c[p+3]), c[p+1], c[p+2]);
+				break;
+			case HEXAGON:
+				painter.drawHexagon(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case DIAMOND:
+				painter.drawDiamond(c[p+1], c[p+2], c[p+3], c[p+4]);
+				break;
+			case POLYGON:
+			case FILLED_POLYGON:
+				int n = c[p+1];
+				if (_xs.length < n) {
+					_xs = new int[n];
+					_ys = new int[n];
+				}
+				System.arraycopy(bucket._points, c[p+2], _xs, 0, n);
+				System.arraycopy(bucket._points, c[p+2] + n, _ys, 0, n);
+				if (c[p] == POLYGON) {
+					painter.drawPolygon(_xs, _ys, n);
+				} else {
+					painter.fillPolygon(_xs, _ys, n);
+				}
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package bounce;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ShapeModelListener decorator that delivers ShapeModelEvents to another
+ * listener through an Executor, coalescing ShapeMoved events. All other
+ * events (ShapeAdded, ShapeRemoved, ShapesAdded, ShapesRemoved and 
+ * ShapesCollided) are delivered in the order they were fired. Of the
+ * ShapeMoved events fired while a delivery is outstanding, only the latest is
+ * delivered, and no more than the requested number per second; a listener
+ * that falls behind therefore sees the current state rather than a backlog.
+ *
+ * A ShapeMoved event that arrives too soon after the previous delivery is
+ * held back until the end of the interval. It is then delivered through the
+ * Executor even if the model has stopped firing events, so that the target
+ * always receives the final state.
+ *
+ * @author Will Molloy
+ *
+ */
+public class CoalescingShapeModelListener implements ShapeModelListener {
+
+	// Daemon thread that hands held back ShapeMoved events to the executor.
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "CoalescingShapeModelListener timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final ShapeModelListener _target;
+	private final Executor _executor;
+	private final long _intervalNanos;
+
+	// Events other than ShapeMoved awaiting delivery, in order.
+	private final Queue<ShapeModelEvent> _structuralEvents = new ConcurrentLinkedQueue<ShapeModelEvent>();
+
+	// Latest ShapeMoved event awaiting delivery.
+	private final AtomicReference<ShapeModelEvent> _latestMoved = new AtomicReference<ShapeModelEvent>();
+
+	// Whether a call to deliver() has been handed to the executor.
+	private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+	// Whether a held back ShapeMoved event is waiting on the TIMER.
+	private final AtomicBoolean _timerSet = new AtomicBoolean();
+
+	private long _lastMovedDelivery;
+	private boolean _delivered;
+
+	/**
+	 * Creates a CoalescingShapeModelListener.
+	 * @param target the listener that events are delivered to.
+	 * @param maxUpdatesPerSecond the most ShapeMoved events target should
+	 *        receive per second.
+	 * @param executor the Executor that runs deliveries one at a time, e.g. 
+	 *        one that posts to the Swing event dispatch thread.
+	 * @throws IllegalArgumentException if maxUpdatesPerSecond is not positive.
+	 */
+	public CoalescingShapeModelListener(ShapeModelListener target, int maxUpdatesPerSecond, Executor executor) throws IllegalArgumentException {
+		if (maxUpdatesPerSecond <= 0) {
+			throw new IllegalArgumentException("Update rate must be positive: " + maxUpdatesPerSecond);
+		}
+		_target = target;
+		_executor = executor;
+		_intervalNanos = TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond;
+	}
+
+	/**
+	 * Returns the listener that events are delivered to.
+	 */
+	public ShapeModelListener target() {
+		return _target;
+	}
+
+	/**
+	 * Queues the event for delivery and schedules a delivery if none is
+	 * outstanding.
+	 */
+	@Override
+	public void update(ShapeModelEvent event) {
+		if (event.eventType() == ShapeModelEvent.EventType.ShapeMoved) {
+			_latestMoved.set(event);
+		} else {
+			_structuralEvents.add(event);
+		}
+		schedule();
+	}
+
+	/*
+	 * Hands a call to deliver() to the executor if none is outstanding.
+	 */
+	private void schedule() {
+		if (_scheduled.compareAndSet(false, true)) {
+			_executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					deliver();
+				}
+			});
+		}
+	}
+
+	/*
+	 * Delivers queued structural events, then the latest ShapeMoved event if
+	 * the rate allows. Runs on the executor.
+	 */
+	private void deliver() {
+		// Clear first so that events arriving from now on schedule again.
+		_scheduled.set(false);
+
+		ShapeModelEvent event;
+		while ((event = _structuralEvents.poll()) != null) {
+			_target.update(event);
+		}
+
+		ShapeModelEvent moved = _latestMoved.getAndSet(null);
+		if (moved != null) {
+			long now = System.nanoTime();
+			if (!_delivered || now - _lastMovedDelivery >= _intervalNanos) {
+				_delivered = true;
+				_lastMovedDelivery = now;
+				_target.update(moved);
+			} else {
+				// Too soon; keep it unless a newer one has arrived meanwhile,
+				// and deliver it at the end of the interval.
+				_latestMoved.compareAndSet(null, moved);
+				if (_timerSet.compareAndSet(false, true)) {
+					TIMER.schedule(new Runnable() {
+						@Override
+						public void run() {
+							_timerSet.set(false);
+							schedule();
+						}
+					}, _intervalNanos - (now - _lastMovedDelivery), TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package bounce;
+
+import java.util.Arrays;
+
+/**
+ * Optional collision phase that makes sibling Shapes bounce off each other.
+ * Shape.move() only bounces a Shape off the boundary of its parent; after
+ * every Shape has moved, a CollisionDetector looks for overlapping children
+ * within each NestingShape and bounces them apart.
+ *
+ * The broad phase is a uniform grid built for each NestingShape on every
+ * tick with a counting sort. The cell size is chosen so that nearly all of
+ * the children fit in a cell, and each child is filed under the cell of its
+ * top left corner; a child can then only overlap children filed in the 3x3
+ * block of cells around its own. The few children bigger than a cell,
+ * typically NestingShapes, are tested against every sibling. For scenes of
+ * small Shapes the cost is linear in the number of siblings plus the number
+ * of overlapping pairs, rather than O(n^2).
+ *
+ * Two overlapping Shapes collide along the axis on which they overlap
+ * least. If they are moving towards each other along that axis, their
+ * velocities along it are exchanged, which is an elastic bounce between
+ * Shapes of equal mass. Positions are left alone, so Shapes never leave
+ * their parent; overlapping Shapes that are already separating do not
+ * bounce again. Each bounce is a contact. Shapes that took part in a contact
+ * have their collision queries set to describe it, and shapeHasMoved() is
+ * called on them again (except on NestingShapes, whose hook moves their
+ * children).
+ *
+ * @author Will Molloy
+ *
+ */
+class CollisionDetector {
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int MIN_CELL_SHIFT = 2;	// 4 pixels.
+	private static final double FIT_FRACTION = 0.95;
+	private static final int MIN_CELLS = 64;
+	private static final int CELLS_PER_CHILD = 4;
+
+	// Children of the NestingShape being processed, and the COLLIDED_* bits
+	// of their contacts.
+	private Shape[] _children = new Shape[INITIAL_CAPACITY];
+	private int[] _contactSides = new int[INITIAL_CAPACITY];
+
+	// Grid over the children: the cell of each child (-1 if it is bigger
+	// than a cell), the children sorted by cell, and where each cell's run
+	// of children starts. _big lists the children bigger than a cell, and
+	// _left to _bottom hold the bounds of the others in sorted order.
+	private int[] _cell = new int[INITIAL_CAPACITY];
+	private int[] _sorted = new int[INITIAL_CAPACITY];
+	private int[] _cellStart = new int[INITIAL_CAPACITY];
+	private int[] _big = new int[INITIAL_CAPACITY];
+	private int[] _left = new int[INITIAL_CAPACITY];
+	private int[] _top = new int[INITIAL_CAPACITY];
+	private int[] _right = new int[INITIAL_CAPACITY];
+	private int[] _bottom = new int[INITIAL_CAPACITY];
+	private final int[] _histogram = new int[32];
+
+	// Pairs of Shapes that bounced during the last detect() call.
+	private Shape[] _contacts = new Shape[INITIAL_CAPACITY];
+	private int _contactCount;
+
+	private NestingShape[] _stack = new NestingShape[INITIAL_CAPACITY];
+
+	/**
+	 * Bounces overlapping siblings within every NestingShape of the
+	 * composition rooted at root.
+	 * @return the number of contacts, i.e. pairs of Shapes that bounced.
+	 */
+	int detect(NestingShape root) {
+		_contactCount = 0;
+		int top = 0;
+		_stack[top++] = root;
+		while (top > 0) {
+			NestingShape nest = _stack[--top];
+			_stack[top] = null;
+			int count = nest.shapeCount();
+			if (count > _children.length) {
+				int capacity = Math.max(_children.length * 2, count);
+				_children = new Shape[capacity];
+				_contactSides = new int[capacity];
+				_cell = new int[capacity];
+				_sorted = new int[capacity];
+				_big = new int[capacity];
+				_left = new int[capacity];
+				_top = new int[capacity];
+				_right = new int[capacity];
+				_bottom = new int[capacity];
+			}
+			for (int i = 0; i < count; i++) {
+				Shape child = nest.shapeAt(i);
+				_children[i] = child;
+				if (child instanceof NestingShape) {
+					if (top == _stack.length) {
+						_stack = Arrays.copyOf(_stack, top * 2);
+					}
+					_stack[top++] = (NestingShape) child;
+				}
+			}
+			if (count > 1) {
+				collide(nest, count);
+			}
+			Arrays.fill(_children, 0, count, null);
+		}
+		return _contactCount;
+	}
+
+	/**
+	 * Returns the contacts found by the last call to detect(), as pairs: the
+	 * Shapes at 2i and 2i+1 bounced off each other.
+	 */
+	Shape[] contacts() {
+		return Arrays.copyOf(_contacts, _contactCount * 2);
+	}
+
+	/*
+	 * Finds the overlapping pairs among the first count elements of
+	 * _children, the children of nest, and bounces them.
+	 */
+	private void collide(NestingShape nest, int count) {
+		Shape[] children = _children;
+		int shift = cellShift(count) - 1;
+		int columns, rows;
+		do {
+			// Keep the number of cells in proportion to the children.
+			shift++;
+			columns = (Math.max(0, nest._width - 1) >> shift) + 1;
+			rows = (Math.max(0, nest._height - 1) >> shift) + 1;
+		} while ((long) columns * rows > Math.max(MIN_CELLS, CELLS_PER_CHILD * count));
+		int cellSize = 1 << shift;
+		int cells = columns * rows;
+		if (cells + 1 > _cellStart.length) {
+			_cellStart = new int[Math.max(_cellStart.length * 2, cells + 1)];
+		}
+
+		// Counting sort of the children by cell.
+		int[] cell = _cell, start = _cellStart, sorted = _sorted;
+		Arrays.fill(start, 0, cells + 1, 0);
+		int bigCount = 0;
+		for (int i = 0; i < count; i++) {
+			Shape child = children[i];
+			if (child._width > cellSize || child._height > cellSize) {
+				cell[i] = -1;
+				_big[bigCount++] = i;
+			} else {
+				cell[i] = clamp(child._y >> shift, rows) * columns + clamp(child._x >> shift, columns);
+				start[cell[i] + 1]++;
+			}
+		}
+		for (int c = 0; c < cells; c++) {
+			start[c + 1] += start[c];
+		}
+		for (int i = 0; i < count; i++) {
+			if (cell[i] >= 0) {
+				sorted[start[cell[i]]++] = i;
+			}
+		}
+		// Filling moved each start along to the next cell's; shift back.
+		for (int c = cells; c > 0; c--) {
+			start[c] = start[c - 1];
+		}
+		start[0] = 0;
+
+		// Copy the bounds of the small children, in cell order, so that the
+		// pair tests below read contiguous memory.
+		int small = count - bigCount;
+		int[] left = _left, top = _top, right = _right, bottom = _bottom;
+		for (int k = 0; k < small; k++) {
+			Shape child = children[sorted[k]];
+			left[k] = child._x;
+			top[k] = child._y;
+			right[k] = child._x + child._width;
+			bottom[k] = child._y + child._height;
+		}
+
+		// Each small child against the small children after it in the cells
+		// around its own, so that each pair is tested once.
+		for (int k = 0; k < small; k++) {
+			int c = cell[sorted[k]];
+			int row = c / columns, column = c % columns;
+			int firstColumn = Math.max(0, column - 1), lastColumn = Math.min(columns - 1, column + 1);
+			for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+				int from = Math.max(k + 1, start[r * columns + firstColumn]);
+				int to = start[r * columns + lastColumn + 1];
+				for (int q = from; q < to; q++) {
+					if (left[q] < right[k] && left[k] < right[q] && top[q] < bottom[k] && top[k] < bottom[q]) {
+						bounce(children[sorted[k]], sorted[k], children[sorted[q]], sorted[q]);
+					}
+				}
+			}
+		}
+
+		// Each big child against every small child and the later big ones.
+		for (int b = 0; b < bigCount; b++) {
+			int i = _big[b];
+			Shape shape = children[i];
+			for (int j = 0; j < count; j++) {
+				if ((cell[j] >= 0 || j > i) && overlap(shape, children[j])) {
+					bounce(shape, i, children[j], j);
+				}
+			}
+		}
+
+		// Let the Shapes that were hit react to their contacts.
+		int[] sides = _contactSides;
+		for (int i = 0; i < count; i++) {
+			if (sides[i] != 0) {
+				Shape shape = children[i];
+				shape.contacted(sides[i]);
+				if (!(shape instanceof NestingShape)) {
+					shape.shapeHasMoved();
+				}
+				sides[i] = 0;
+			}
+		}
+	}
+
+	/*
+	 * Picks the smallest power of two cell size that at least FIT_FRACTION
+	 * of the first count children fit into.
+	 */
+	private int cellShift(int count) {
+		int[] histogram = _histogram;
+		Arrays.fill(histogram, 0);
+		for (int i = 0; i < count; i++) {
+			int size = Math.max(_children[i]._width, _children[i]._height);
+			histogram[size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1)]++;
+		}
+		int shift = 0;
+		int fitting = histogram[0];
+		while (shift < 30 && fitting < FIT_FRACTION * count) {
+			fitting += histogram[++shift];
+		}
+		return Math.max(shift, MIN_CELL_SHIFT);
+	}
+
+	private static int clamp(int value, int limit) {
+		return Math.min(limit - 1, Math.max(0, value));
+	}
+
+	private static boolean overlap(Shape a, Shape b) {
+		return a._x < b._x + b._width && b._x < a._x + a._width
+				&& a._y < b._y + b._height && b._y < a._y + a._height;
+	}
+
+	private void bounce(Shape a, int i, Shape b, int j) {
+		int overlapX = Math.min(a._x + a._width, b._x + b._width) - Math.max(a._x, b._x);
+		int overlapY = Math.min(a._y + a._height, b._y + b._height) - Math.max(a._y, b._y);
+
+		if (overlapX <= overlapY) {
+			// Collision along the x axis; find which Shape is to the west.
+			boolean aIsWest = 2 * a._x + a._width <= 2 * b._x + b._width;
+			Shape west = aIsWest ? a : b, east = aIsWest ? b : a;
+			if (west._deltaX <= east._deltaX) {
+				return;		// Not approaching.
+			}
+			int deltaX = west._deltaX;
+			west._deltaX = east._deltaX;
+			east._deltaX = deltaX;
+			_contactSides[aIsWest ? i : j] |= Shape.COLLIDED_EAST;
+			_contactSides[aIsWest ? j : i] |= Shape.COLLIDED_WEST;
+		} else {
+			boolean aIsNorth = 2 * a._y + a._height <= 2 * b._y + b._height;
+			Shape north = aIsNorth ? a : b, south = aIsNorth ? b : a;
+			if (north._deltaY <= south._deltaY) {
+				return;
+			}
+			int deltaY = north._deltaY;
+			north._deltaY = south._deltaY;
+			south._deltaY = deltaY;
+			_contactSides[aIsNorth ? i : j] |= Shape.COLLIDED_SOUTH;
+			_contactSides[aIsNorth ? j : i] |= Shape.COLLIDED_NORTH;
+		}
+
+		if (_contactCount * 2 == _contacts.length) {
+			_contacts = Arrays.copyOf(_contacts, _contacts.length * 2);
+		}
+		_contacts[_contactCount * 2] = a;
+		_contacts[_contactCount * 2 + 1] = b;
+		_contactCount++;
+	}
+}
@@ -0,0 +1,143 @@
+package bounce;
+
+/**
+ * Decides how much detail to paint each Shape of a FrameSnapshot with, from
+ * its size on screen, so that Shapes covering only a few pixels are not
+ * painted with geometry or text that cannot be seen.
+ *
+ * A Shape is painted in full unless its larger dimension is less than the
+ * simplified size, in which case its bounds are filled instead. Below the
+ * point size it is painted as a single pixel, and below the hidden size not
+ * at all. Its text is painted only if it is at least the text size high.
+ * The children of a NestingShape painted in less than full detail are not
+ * painted, as they would fall within the filled bounds or pixel.
+ *
+ * A DetailPolicy counts the Shapes it has painted at each Level. The counts
+ * are not synchronized, so a DetailPolicy should be used by one painting
+ * thread at a time.
+ *
+ * @author Will Molloy
+ *
+ */
+public class DetailPolicy {
+
+	/**
+	 * How much detail a Shape is painted with.
+	 */
+	public enum Level {
+		/** As Shape.paint() would. */
+		FULL,
+		/** As a filled rectangle covering its bounds. */
+		SIMPLIFIED,
+		/** As the pixel at its top left corner. */
+		POINT,
+		/** Not at all. */
+		HIDDEN
+	}
+
+	public static final int DEFAULT_HIDDEN_SIZE = 0;
+	public static final int DEFAULT_POINT_SIZE = 2;
+	public static final int DEFAULT_SIMPLIFIED_SIZE = 8;
+	public static final int DEFAULT_TEXT_SIZE = 10;
+
+	private static final Level[] LEVELS = Level.values();
+
+	private final int _hiddenSize;
+	private final int _pointSize;
+	private final int _simplifiedSize;
+	private final int _textSize;
+
+	private final long[] _counts = new long[LEVELS.length];
+	private long _textsSkipped;
+
+	/**
+	 * Creates a DetailPolicy with the default sizes.
+	 */
+	public DetailPolicy() {
+		this(DEFAULT_HIDDEN_SIZE, DEFAULT_POINT_SIZE, DEFAULT_SIMPLIFIED_SIZE, DEFAULT_TEXT_SIZE);
+	}
+
+	/**
+	 * Creates a DetailPolicy with the specified sizes, in pixels. A size of 0
+	 * turns the corresponding Level off.
+	 * @throws IllegalArgumentException if the sizes are negative or
+	 *         hiddenSize, pointSize and simplifiedSize are not in order.
+	 */
+	public DetailPolicy(int hiddenSize, int pointSize, int simplifiedSize, int textSize) throws IllegalArgumentException {
+		if (hiddenSize < 0 || textSize < 0 || pointSize < hiddenSize || simplifiedSize < pointSize) {
+			throw new IllegalArgumentException("Sizes hidden " + hiddenSize + ", point " + pointSize
+					+ ", simplified " + simplifiedSize + ", text " + textSize);
+		}
+		_hiddenSize = hiddenSize;
+		_pointSize = pointSize;
+		_simplifiedSize = simplifiedSize;
+		_textSize = textSize;
+	}
+
+	/**
+	 * Returns the Level a Shape of the specified size is painted at, and
+	 * counts it.
+	 */
+	public Level levelOf(int width, int height) {
+		int size = Math.max(width, height);
+		Level level;
+		if (size < _hiddenSize) {
+			level = Level.HIDDEN;
+		} else if (size < _pointSize) {
+			level = Level.POINT;
+		} else if (size < _simplifiedSize) {
+			level = Level.SIMPLIFIED;
+		} else {
+			level = Level.FULL;
+		}
+		_counts[level.ordinal()]++;
+		return level;
+	}
+
+	/**
+	 * Returns true if the text of a Shape of the specified height is painted,
+	 * otherwise counts it as skipped.
+	 */
+	public boolean showsText(int height) {
+		if (height >= _textSize) {
+			return true;
+		}
+		_textsSkipped++;
+		return false;
+	}
+
+	/**
+	 * Returns the number of Shapes painted at level since this DetailPolicy
+	 * was created or last reset.
+	 */
+	public long count(Level level) {
+		return _counts[level.ordinal()];
+	}
+
+	/**
+	 * Returns the number of texts not painted since this DetailPolicy was
+	 * created or last reset.
+	 */
+	public long textsSkipped() {
+		return _textsSkipped;
+	}
+
+	/**
+	 * Sets the counts back to 0.
+	 */
+	public void reset() {
+		for (int i = 0; i < _counts.length; i++) {
+			_counts[i] = 0;
+		}
+		_textsSkipped = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (Level level : LEVELS) {
+			result.append(level.name().toLowerCase()).append(' ').append(_counts[level.ordinal()]).append(", ");
+		}
+		return result.append("texts skipped ").append(_textsSkipped).toString();
+	}
+}
@@ -89,4 +89,29 @@ public class DynamicRectangleShape extends Shape {
 			painter.drawRect(_x, _y, _width, _height);
 		}
 	}
-}
\ No newline at end of file
+
+	@Override
+	protected int appearance() {
+		return FrameSnapshot.RECTANGLE;
+	}
+
+	@Override
+	protected boolean isFilled() {
+		return _fill;
+	}
+
+	@Override
+	protected Color colour() {
+		return _color;
+	}
+
+	@Override
+	int savedState() {
+		return _fill ? 1 : 0;
+	}
+
+	@Override
+	void restoreState(int state) {
+		_fill = (state & 1) != 0;
+	}
+}
@@ -0,0 +1,172 @@
+package bounce;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * SimulationEngine that moves independent parts of a ShapeModel in parallel
+ * using a ForkJoinPool. A Shape's movement depends only on its own state and
+ * the width and height of its parent, so sibling subtrees never interact and
+ * can be moved by different threads with the same result as Shape.move().
+ *
+ * The children of a NestingShape are split into ranges of roughly equal
+ * weight (number of Shapes in their subtrees) until a range weighs less than
+ * the threshold, at which point it is moved sequentially on one thread.
+ *
+ * @author Will Molloy
+ *
+ */
+public class ForkJoinSimulationEngine implements SimulationEngine {
+
+	/**
+	 * Default number of Shapes below which a range of siblings is moved
+	 * sequentially.
+	 */
+	public static final int DEFAULT_THRESHOLD = 2048;
+
+	private final ForkJoinPool _pool;
+
+	private final int _threshold;
+
+	/*
+	 * For each NestingShape, the running total of its children's subtree
+	 * sizes: element i is the number of Shapes in the subtrees of children
+	 * 0 .. i-1. Null when it must be rebuilt.
+	 */
+	private Map<NestingShape, int[]> _weights;
+
+	/**
+	 * Creates a ForkJoinSimulationEngine that uses the common ForkJoinPool and
+	 * the default threshold.
+	 */
+	public ForkJoinSimulationEngine() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Creates a ForkJoinSimulationEngine that uses the common ForkJoinPool.
+	 * @param threshold number of Shapes below which work is not split.
+	 */
+	public ForkJoinSimulationEngine(int threshold) {
+		this(ForkJoinPool.commonPool(), threshold);
+	}
+
+	/**
+	 * Creates a ForkJoinSimulationEngine.
+	 * @param pool the ForkJoinPool to run tasks in.
+	 * @param threshold number of Shapes below which work is not split.
+	 * @throws IllegalArgumentException if threshold is less than 1.
+	 */
+	public ForkJoinSimulationEngine(ForkJoinPool pool, int threshold) throws IllegalArgumentException {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be at least 1: " + threshold);
+		}
+		_pool = pool;
+		_threshold = threshold;
+	}
+
+	/**
+	 * Returns the number of Shapes below which work is not split.
+	 */
+	public int threshold() {
+		return _threshold;
+	}
+
+	@Override
+	public void structureChanged() {
+		_weights = null;
+	}
+
+	@Override
+	public void stateChanged() {
+		// Shape state is read from the Shapes on every tick.
+	}
+
+	@Override
+	public void tick(NestingShape root, int width, int height) {
+		if (_weights == null) {
+			_weights = new IdentityHashMap<NestingShape, int[]>();
+			weigh(root);
+		}
+
+		root.step(width, height);
+		_pool.invoke(new MoveChildren(root, 0, root.shapeCount()));
+	}
+
+	/*
+	 * Records the running totals for nest and returns the size of its subtree.
+	 */
+	private int weigh(NestingShape nest) {
+		int count = nest.shapeCount();
+		int[] totals = new int[count + 1];
+
+		for (int i = 0; i < count; i++) {
+			Shape child = nest.shapeAt(i);
+			int weight = 1;
+			if (child instanceof NestingShape) {
+				weight = weigh((NestingShape) child);
+			}
+			totals[i + 1] = totals[i] + weight;
+		}
+		_weights.put(nest, totals);
+		return totals[count] + 1;
+	}
+
+	/*
+	 * Task that moves the children of a NestingShape in the range
+	 * [from, to), including their descendants.
+	 */
+	@SuppressWarnings("serial")
+	private class MoveChildren extends RecursiveAction {
+		private final NestingShape _parent;
+		private final int _from;
+		private final int _to;
+
+		MoveChildren(NestingShape parent, int from, int to) {
+			_parent = parent;
+			_from = from;
+			_to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int[] totals = _weights.get(_parent);
+			int weight = totals[_to] - totals[_from];
+
+			if (weight < _threshold || (_to - _from == 1 && !(_parent.shapeAt(_from) instanceof NestingShape))) {
+				for (int i = _from; i < _to; i++) {
+					_parent.shapeAt(i).move(_parent._width, _parent._height);
+				}
+			} else if (_to - _from == 1) {
+				// A single large NestingShape: move it, then split its children.
+				NestingShape child = (NestingShape) _parent.shapeAt(_from);
+				child.step(_parent._width, _parent._height);
+				new MoveChildren(child, 0, child.shapeCount()).compute();
+			} else {
+				int middle = split(totals, (totals[_from] + totals[_to]) / 2);
+				invokeAll(new MoveChildren(_parent, _from, middle),
+						new MoveChildren(_parent, middle, _to));
+			}
+		}
+
+		/*
+		 * Returns the index in (from, to) whose running total is closest to
+		 * (but not below) the target weight.
+		 */
+		private int split(int[] totals, int target) {
+			int low = _from + 1;
+			int high = _to - 1;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (totals[middle] < target) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,500 @@
+package bounce;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Immutable copy of the state of every Shape in a ShapeModel, taken between
+ * two clock() calls. Views can paint or display a FrameSnapshot on one thread
+ * while the model moves on to the next frame on another, without ever seeing
+ * a half-moved Shape.
+ *
+ * Shapes are held in pre-order (a parent before its children) in parallel
+ * arrays. Element 0 is the root NestingShape. Positions are relative to the
+ * parent, as in the Shapes themselves.
+ *
+ * A Shape's outline is recorded through its appearance methods, provided its
+ * class overrides appearance() no higher up than doPaint(). Any other Shape
+ * is recorded as CUSTOM and painted through its own doPaint().
+ *
+ * When painting, Shapes that lie outside the Painter's clip are skipped, as
+ * are whole subtrees outside it that hold no text.
+ *
+ * @author Will Molloy
+ *
+ */
+public final class FrameSnapshot {
+
+	// === Kinds of outline a Shape can be painted with.
+	public static final int RECTANGLE = 0;
+
+	public static final int OVAL = 1;
+
+	public static final int DIAMOND = 2;
+
+	public static final int HEXAGON = 3;
+
+	public static final int IMAGE = 4;
+
+	public static final int NESTING = 5;
+
+	/** Painted by the Shape's own doPaint(), from its live state. */
+	public static final int CUSTOM = 6;
+	// ===
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Offsets of the properties of each element in _geometry.
+	private static final int X = 0;
+	private static final int Y = 1;
+	private static final int DELTA_X = 2;
+	private static final int DELTA_Y = 3;
+	private static final int WIDTH = 4;
+	private static final int HEIGHT = 5;
+	private static final int STRIDE = 6;
+
+	// Bit set in _kind when the outline is filled, and the bits of the kind.
+	private static final int FILLED = 0x80;
+	private static final int KIND = 0x7f;
+
+	private final long _tick;
+	private final int _count;
+	private final Structure _structure;
+
+	// The state of each element that may change from one tick to the next.
+	private final int[] _geometry;
+	private final byte[] _kind;
+	private final Color[] _colour;	// null when painted in the default colour.
+	private final Image[] _image;
+
+	/*
+	 * The Shapes of a FrameSnapshot and how they are nested. It is shared by
+	 * consecutive FrameSnapshots of a composition that has not changed.
+	 */
+	private static final class Structure {
+		final int _count;
+		final Shape[] _shapes;
+		final int[] _parent;	// -1 for the root.
+		final int[] _size;		// Number of Shapes in each subtree.
+		final boolean[] _textWithin;	// Whether each subtree has text.
+		final boolean[] _described;	// Whether appearance() describes doPaint().
+		final String[] _text;
+
+		Structure(Shape[] shapes, int[] parents, int count) {
+			_count = count;
+			_shapes = shapes;
+			_parent = Arrays.copyOf(parents, count);
+			_size = new int[count];
+			_textWithin = new boolean[count];
+			_described = new boolean[count];
+			_text = new String[count];
+
+			for (int i = 0; i < count; i++) {
+				_size[i] = 1;
+				_text[i] = shapes[i]._text;
+				_textWithin[i] = _text[i] != null;
+				_described[i] = shapes[i].hasAppearance();
+			}
+			// Children follow their parents, so sizes can be summed backwards.
+			for (int i = count - 1; i > 0; i--) {
+				_size[_parent[i]] += _size[i];
+				_textWithin[_parent[i]] |= _textWithin[i];
+			}
+		}
+	}
+
+	/**
+	 * Takes a FrameSnapshot of the composition rooted at root.
+	 * @param root the root NestingShape of a ShapeModel.
+	 * @param tick the number of clock() calls made on the ShapeModel.
+	 */
+	public static FrameSnapshot of(NestingShape root, long tick) {
+		Shape[] shapes = new Shape[INITIAL_CAPACITY];
+		int[] parents = new int[INITIAL_CAPACITY];
+		int count = 0;
+
+		Shape[] stack = new Shape[INITIAL_CAPACITY];
+		int[] parentStack = new int[INITIAL_CAPACITY];
+		int top = 0;
+		stack[top] = root;
+		parentStack[top++] = -1;
+
+		while (top > 0) {
+			Shape shape = stack[--top];
+			if (count == shapes.length) {
+				shapes = Arrays.copyOf(shapes, count * 2);
+				parents = Arrays.copyOf(parents, count * 2);
+			}
+			shapes[count] = shape;
+			parents[count] = parentStack[top];
+			int index = count++;
+
+			if (shape instanceof NestingShape) {
+				NestingShape nest = (NestingShape) shape;
+				int children = nest.shapeCount();
+				if (top + children > stack.length) {
+					int capacity = Math.max(stack.length * 2, top + children);
+					stack = Arrays.copyOf(stack, capacity);
+					parentStack = Arrays.copyOf(parentStack, capacity);
+				}
+				// Push in reverse so that children are visited in order.
+				for (int i = children - 1; i >= 0; i--) {
+					stack[top] = nest.shapeAt(i);
+					parentStack[top++] = index;
+				}
+			}
+		}
+		return new FrameSnapshot(new Structure(Arrays.copyOf(shapes, count), parents, count), tick);
+	}
+
+	/**
+	 * Takes a FrameSnapshot of the same Shapes as this one, sharing the
+	 * record of how they are nested rather than walking the composition
+	 * again. Only valid if no Shape has been added or removed since this
+	 * FrameSnapshot was taken.
+	 */
+	FrameSnapshot next(long tick) {
+		return new FrameSnapshot(_structure, tick);
+	}
+
+	/*
+	 * Hidden constructor used by of() and next().
+	 */
+	private FrameSnapshot(Structure structure, long tick) {
+		int count = structure._count;
+		_tick = tick;
+		_count = count;
+		_structure = structure;
+		_geometry = new int[count * STRIDE];
+		_kind = new byte[count];
+		_colour = new Color[count];
+		_image = new Image[count];
+
+		Shape[] shapes = structure._shapes;
+		boolean[] described = structure._described;
+		for (int i = 0, offset = 0; i < count; i++, offset += STRIDE) {
+			Shape shape = shapes[i];
+			_geometry[offset + X] = shape._x;
+			_geometry[offset + Y] = shape._y;
+			_geometry[offset + DELTA_X] = shape._deltaX;
+			_geometry[offset + DELTA_Y] = shape._deltaY;
+			_geometry[offset + WIDTH] = shape._width;
+			_geometry[offset + HEIGHT] = shape._height;
+			if (described[i]) {
+				_kind[i] = (byte) (shape.appearance() | (shape.isFilled() ? FILLED : 0));
+				_colour[i] = shape.colour();
+				_image[i] = shape.image();
+			} else {
+				_kind[i] = CUSTOM;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of clock() calls that had been made on the model
+	 * when this FrameSnapshot was taken.
+	 */
+	public long tick() {
+		return _tick;
+	}
+
+	/**
+	 * Returns the number of Shapes in this FrameSnapshot, including the root.
+	 */
+	public int shapeCount() {
+		return _count;
+	}
+
+	/**
+	 * Returns the Shape that element index describes.
+	 */
+	public Shape shape(int index) {
+		return _structure._shapes[index];
+	}
+
+	/**
+	 * Returns the element index of the specified Shape, or -1 if it is not
+	 * part of this FrameSnapshot.
+	 */
+	public int indexOf(Shape shape) {
+		Shape[] shapes = _structure._shapes;
+		for (int i = 0; i < _count; i++) {
+			if (shapes[i] == shape) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the element index of the parent of element index, -1 for the
+	 * root.
+	 */
+	public int parent(int index) {
+		return _structure._parent[index];
+	}
+
+	/**
+	 * Returns the element index of the first child of element index, or -1
+	 * if it has no children.
+	 */
+	public int firstChild(int index) {
+		return _structure._size[index] > 1 ? index + 1 : -1;
+	}
+
+	/**
+	 * Returns the element index of the next sibling of element index, or -1
+	 * if it is the last child of its parent.
+	 */
+	public int nextSibling(int index) {
+		int[] size = _structure._size;
+		int parent = _structure._parent[index];
+		int next = index + size[index];
+		return parent >= 0 && next < parent + size[parent] ? next : -1;
+	}
+
+	public int x(int index) {
+		return _geometry[index * STRIDE + X];
+	}
+
+	public int y(int index) {
+		return _geometry[index * STRIDE + Y];
+	}
+
+	public int deltaX(int index) {
+		return _geometry[index * STRIDE + DELTA_X];
+	}
+
+	public int deltaY(int index) {
+		return _geometry[index * STRIDE + DELTA_Y];
+	}
+
+	public int width(int index) {
+		return _geometry[index * STRIDE + WIDTH];
+	}
+
+	public int height(int index) {
+		return _geometry[index * STRIDE + HEIGHT];
+	}
+
+	public String text(int index) {
+		return _structure._text[index];
+	}
+
+	/**
+	 * Returns the kind of outline element index is painted with, one of
+	 * RECTANGLE, OVAL, DIAMOND, HEXAGON, IMAGE or NESTING, or CUSTOM if its
+	 * Shape's appearance methods do not describe what it paints.
+	 */
+	public int kind(int index) {
+		return _kind[index] & KIND;
+	}
+
+	public boolean isFilled(int index) {
+		return (_kind[index] & FILLED) != 0;
+	}
+
+	/**
+	 * Returns the colour element index is painted in, null for the default.
+	 */
+	public Color colour(int index) {
+		return _colour[index];
+	}
+
+	/**
+	 * Paints this FrameSnapshot using the supplied Painter object. The calls
+	 * made on the Painter are the same as those made by Shape.paint() when
+	 * called on the root NestingShape at the time the snapshot was taken.
+	 *
+	 * Elements of kind CUSTOM are painted by their Shape's paint() method,
+	 * translated to the position held in this FrameSnapshot. They, and the
+	 * children of a CUSTOM NestingShape, are therefore painted from the state
+	 * of the Shapes at the time they are painted.
+	 */
+	public void paint(Painter painter) {
+		paint(painter, null, 1, null);
+	}
+
+	/**
+	 * Paints the state between previous and this FrameSnapshot that is a
+	 * fraction alpha of the way from previous to this one, for smooth motion
+	 * between ticks. Positions are interpolated linearly and rounded; all
+	 * other properties are those of this FrameSnapshot. If previous is null
+	 * or holds different Shapes, this FrameSnapshot is painted as it is.
+	 * @param alpha the fraction, from 0 (previous) to 1 (this snapshot).
+	 */
+	public void paint(Painter painter, FrameSnapshot previous, double alpha) {
+		paint(painter, previous, alpha, null);
+	}
+
+	/**
+	 * Paints as paint(painter, previous, alpha) does, with each Shape painted
+	 * at the Level of detail policy chooses for it. A null policy paints
+	 * every Shape in full.
+	 */
+	public void paint(Painter painter, FrameSnapshot previous, double alpha, DetailPolicy policy) {
+		if (previous == this || (previous != null && !sameShapesAs(previous))) {
+			previous = null;
+		}
+		alpha = Math.max(0, Math.min(1, alpha));
+
+		Shape[] shapes = _structure._shapes;
+		int[] parents = _structure._parent;
+		int[] size = _structure._size;
+		boolean[] textWithin = _structure._textWithin;
+
+		// Open NestingShapes whose coordinate system the painter is in, their
+		// positions, and the origin of that system in the one the clip was
+		// taken in.
+		int[] open = new int[INITIAL_CAPACITY];
+		int[] openX = new int[INITIAL_CAPACITY];
+		int[] openY = new int[INITIAL_CAPACITY];
+		int depth = 0;
+		int originX = 0, originY = 0;
+		Rectangle clip = painter.getClipBounds();
+
+		for (int i = 0; i < _count; i++) {
+			while (depth > 0 && open[depth - 1] != parents[i]) {
+				depth--;
+				originX -= openX[depth];
+				originY -= openY[depth];
+				close(painter, open[depth], openX[depth], openY[depth], policy);
+			}
+
+			int offset = i * STRIDE;
+			int x = position(offset + X, previous, alpha);
+			int y = position(offset + Y, previous, alpha);
+			int width = _geometry[offset + WIDTH];
+			int height = _geometry[offset + HEIGHT];
+			if (clip != null && !textWithin[i]
+					&& Shape.isOutside(clip, originX + x, originY + y, width, height)) {
+				// Skip the Shape and, as its children lie within it, its subtree.
+				i += size[i] - 1;
+				continue;
+			}
+
+			DetailPolicy.Level level = policy == null ? DetailPolicy.Level.FULL : policy.levelOf(width, height);
+			int kind = kind(i);
+			if (kind == CUSTOM && level == DetailPolicy.Level.FULL) {
+				// paint() paints the Shape's text and any children too.
+				shapes[i].paintAt(painter, x, y);
+				i += size[i] - 1;
+				continue;
+			}
+
+			painter.setColour(Color.BLACK);
+			if (_colour[i] != null) {
+				painter.setColour(_colour[i]);
+			}
+			switch (level) {
+			case FULL:
+				paintOutline(painter, i, kind, x, y, width, height);
+				break;
+			case SIMPLIFIED:
+				painter.fillRect(x, y, width, height);
+				break;
+			case POINT:
+				painter.fillRect(x, y, 1, 1);
+				break;
+			default:
+				break;
+			}
+
+			if (kind == NESTING && level == DetailPolicy.Level.FULL) {
+				painter.translate(x, y);
+				originX += x;
+				originY += y;
+				if (depth == open.length) {
+					open = Arrays.copyOf(open, depth * 2);
+					openX = Arrays.copyOf(openX, depth * 2);
+					openY = Arrays.copyOf(openY, depth * 2);
+				}
+				open[depth] = i;
+				openX[depth] = x;
+				openY[depth++] = y;
+			} else {
+				paintText(painter, i, x, y, policy);
+				// Skips the children of a NestingShape that is painted in
+				// less than full detail, or that paints them itself.
+				i += size[i] - 1;
+			}
+		}
+		while (depth > 0) {
+			depth--;
+			close(painter, open[depth], openX[depth], openY[depth], policy);
+		}
+	}
+
+	// Returns true if other holds the same Shapes in the same structure.
+	private boolean sameShapesAs(FrameSnapshot other) {
+		if (other._structure == _structure) {
+			return true;
+		}
+		if (other._count != _count) {
+			return false;
+		}
+		for (int i = 0; i < _count; i++) {
+			if (other.shape(i) != shape(i) || other.parent(i) != parent(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the value at offset in _geometry, interpolated a fraction alpha
+	 * of the way from that in previous if it is not null.
+	 */
+	private int position(int offset, FrameSnapshot previous, double alpha) {
+		int to = _geometry[offset];
+		if (previous == null) {
+			return to;
+		}
+		int from = previous._geometry[offset];
+		return from + (int) Math.round((to - from) * alpha);
+	}
+
+	private void paintOutline(Painter painter, int i, int kind, int x, int y, int width, int height) {
+		switch (kind) {
+		case OVAL:
+			if (isFilled(i)) {
+				painter.fillOval(x, y, width, height);
+			} else {
+				painter.drawOval(x, y, width, height);
+			}
+			break;
+		case DIAMOND:
+			painter.drawDiamond(width, height, x, y);
+			break;
+		case HEXAGON:
+			painter.drawHexagon(width, height, x, y);
+			break;
+		case IMAGE:
+			painter.drawImage(_image[i], x, y, width, height);
+			break;
+		default:
+			if (isFilled(i)) {
+				painter.fillRect(x, y, width, height);
+			} else {
+				painter.drawRect(x, y, width, height);
+			}
+			break;
+		}
+	}
+
+	// Reverts the translation made for a NestingShape and paints its text.
+	private void close(Painter painter, int nest, int x, int y, DetailPolicy policy) {
+		painter.translate(-x, -y);
+		paintText(painter, nest, x, y, policy);
+	}
+
+	private void paintText(Painter painter, int i, int x, int y, DetailPolicy policy) {
+		String text = _structure._text[i];
+		int width = width(i), height = height(i);
+		if (text != null && (policy == null || policy.showsText(height))) {
+			painter.drawCenteredText(text, width/2 + x, height/2 + y);
+		}
+	}
+}
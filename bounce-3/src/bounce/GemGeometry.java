@@ -0,0 +1,87 @@
+package bounce;
+
+/**
+ * Vertices of the hexagons and diamonds that GemShapes are drawn as,
+ * relative to the top left corner of the gem. Geometry is worked out once
+ * per size and kept in a small cache indexed by size, so painting a gem only
+ * offsets its vertices.
+ *
+ * GemGeometry objects are immutable, so the cache is shared between threads
+ * without locking: a thread that misses an entry another thread has just
+ * stored simply builds the geometry again.
+ *
+ * @author Will Molloy
+ *
+ */
+final class GemGeometry {
+
+	private static final int CACHE_SIZE = 256;
+
+	private static final GemGeometry[] HEXAGONS = new GemGeometry[CACHE_SIZE];
+	private static final GemGeometry[] DIAMONDS = new GemGeometry[CACHE_SIZE];
+
+	private final int _width;
+	private final int _height;
+	private final int[] _xs;
+	private final int[] _ys;
+
+	private GemGeometry(int width, int height, int[] xs, int[] ys) {
+		_width = width;
+		_height = height;
+		_xs = xs;
+		_ys = ys;
+	}
+
+	/**
+	 * Returns the hexagon drawn for a gem of width w and height h, with its
+	 * corners 20 pixels in from the left and right.
+	 */
+	static GemGeometry hexagon(int w, int h) {
+		int slot = slot(w, h);
+		GemGeometry geometry = HEXAGONS[slot];
+		if (geometry == null || geometry._width != w || geometry._height != h) {
+			geometry = new GemGeometry(w, h,
+					new int[] {0, 20, w-20, w, w-20, 20},
+					new int[] {h/2, 0, 0, h/2, h, h});
+			HEXAGONS[slot] = geometry;
+		}
+		return geometry;
+	}
+
+	/**
+	 * Returns the diamond drawn for a gem of width w and height h.
+	 */
+	static GemGeometry diamond(int w, int h) {
+		int slot = slot(w, h);
+		GemGeometry geometry = DIAMONDS[slot];
+		if (geometry == null || geometry._width != w || geometry._height != h) {
+			geometry = new GemGeometry(w, h,
+					new int[] {0, w/2, w, w/2},
+					new int[] {h/2, 0, h/2, h});
+			DIAMONDS[slot] = geometry;
+		}
+		return geometry;
+	}
+
+	private static int slot(int w, int h) {
+		return (w * 31 + h) & (CACHE_SIZE - 1);
+	}
+
+	/**
+	 * Returns the number of vertices.
+	 */
+	int points() {
+		return _xs.length;
+	}
+
+	/**
+	 * Copies the vertices, offset to a gem with its top left corner at x, y,
+	 * into xs and ys, which must hold at least points() elements.
+	 */
+	void place(int x, int y, int[] xs, int[] ys) {
+		for (int i = 0; i < _xs.length; i++) {
+			xs[i] = x + _xs[i];
+			ys[i] = y + _ys[i];
+		}
+	}
+}
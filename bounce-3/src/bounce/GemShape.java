@@ -54,10 +54,19 @@ public class GemShape extends Shape {
 	 */
 	@Override
 	protected void doPaint(Painter painter) {
-		if (_width > 40) {
+		if (isHexagon()) {
 			painter.drawHexagon(_width, _height, _x, _y);
 		} else {
 			painter.drawDiamond(_width, _height, _x, _y);
 		}
 	}
-}
\ No newline at end of file
+
+	@Override
+	protected int appearance() {
+		return isHexagon() ? FrameSnapshot.HEXAGON : FrameSnapshot.DIAMOND;
+	}
+
+	private boolean isHexagon() {
+		return _width > 40;
+	}
+}
\ No newline at end of file
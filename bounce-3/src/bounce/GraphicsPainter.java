@@ -1,9 +1,9 @@
 package bounce;
 
 import java.awt.Color;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.Rectangle;
 
 /**
  * Implementation of the Painter interface that delegates drawing to a
@@ -16,6 +16,10 @@ public class GraphicsPainter implements Painter {
 	// Delegate object.
 	private Graphics _g;
 
+	// Vertices of the gem being drawn.
+	private final int[] _xs = new int[6];
+	private final int[] _ys = new int[6];
+
 	/**
 	 * Creates a GraphicsPainter object and sets its Graphics delegate.
 	 */
@@ -84,12 +88,13 @@ public class GraphicsPainter implements Painter {
 	 */
 	public void drawCenteredText(String text, int x, int y) {
 		this.setColour(Color.black);
-		FontMetrics font = _g.getFontMetrics();
-		int textWidth = (int) font.getStringBounds(text, _g).getWidth();
+		// Text is measured once per font, not on every paint.
+		TextLayoutCache.FontLayout layout = TextLayoutCache.shared().layout(_g);
+		int textWidth = layout.width(text);
 
 		// Calculate position (xPos, yPos) where text should be drawn 
 		int xPos = x - textWidth/2;
-		int yPos = y + Math.abs(font.getAscent() - font.getDescent())/2;
+		int yPos = y + layout.baselineOffset();
 
 		_g.drawString(text, xPos, yPos);
 	}
@@ -107,12 +112,9 @@ public class GraphicsPainter implements Painter {
 	 */
 	@Override
 	public void drawHexagon(int w, int h, int x, int y) {
-		drawLine(x, y+h/2, 	x+20, y);
-		drawLine(x+20, y, 	x+w-20, y);			
-		drawLine(x+w-20, y, x+w, y+h/2);			
-		drawLine(x+w, y+h/2, x+w-20, y+h);
-		drawLine(x+w-20, y+h, x+20, y+h);
-		drawLine(x+20, y+h, x, y+h/2);
+		GemGeometry hexagon = GemGeometry.hexagon(w, h);
+		hexagon.place(x, y, _xs, _ys);
+		_g.drawPolygon(_xs, _ys, hexagon.points());
 	}
 
 	/**
@@ -120,11 +122,33 @@ public class GraphicsPainter implements Painter {
 	 */
 	@Override
 	public void drawDiamond(int w, int h, int x, int y) {
-		drawLine(x, y+h/2, 	x+w/2, y);
-		drawLine(x+w/2, y, 	x+w, y+h/2);
-		drawLine(x+w, y+h/2, x+w/2, y+h);
-		drawLine(x+w/2, y+h, x, y+h/2);
+		GemGeometry diamond = GemGeometry.diamond(w, h);
+		diamond.place(x, y, _xs, _ys);
+		_g.drawPolygon(_xs, _ys, diamond.points());
+	}
+
+	/**
+	 * @see bounce.Painter.drawPolygon
+	 */
+	@Override
+	public void drawPolygon(int[] xs, int[] ys, int n) {
+		_g.drawPolygon(xs, ys, n);
 	}
 
+	/**
+	 * @see bounce.Painter.getClipBounds
+	 */
+	@Override
+	public Rectangle getClipBounds() {
+		return _g.getClipBounds();
+	}
+
+	/**
+	 * @see bounce.Painter.fillPolygon
+	 */
+	@Override
+	public void fillPolygon(int[] xs, int[] ys, int n) {
+		_g.fillPolygon(xs, ys, n);
+	}
 
 }
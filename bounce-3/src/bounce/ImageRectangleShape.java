@@ -12,16 +12,47 @@ public class ImageRectangleShape extends RectangleShape {
 
 	private Image _picture;
 	
+	// Where the image came from, e.g. a file path, or null if unknown.
+	private String _source;
+	
 	public ImageRectangleShape(int deltaX, int deltaY, Image image) {
+		this(deltaX, deltaY, image, null);
+	}
+	
+	/**
+	 * Creates an ImageRectangleShape that remembers where its image came
+	 * from, so that a saved scene can refer to the image rather than hold it.
+	 * @param source the path of the image file, or null if unknown.
+	 */
+	public ImageRectangleShape(int deltaX, int deltaY, Image image, String source) {
 		// Derive the shape's width and height from the image.
 		super(0, 0, deltaX, deltaY, image.getWidth(null), image.getHeight(null));
 		
 		_picture = image;
+		_source = source;
+	}
+	
+	/**
+	 * Returns where this ImageRectangleShape's image came from, null if
+	 * unknown.
+	 */
+	public String source() {
+		return _source;
 	}
 	
 	@Override
 	protected void doPaint(Painter painter) {
 		painter.drawImage(_picture,_x,_y,_width,_height);
 	}
+
+	@Override
+	protected int appearance() {
+		return FrameSnapshot.IMAGE;
+	}
+
+	@Override
+	protected Image image() {
+		return _picture;
+	}
 }
 
@@ -2,6 +2,7 @@ package bounce;
 
 import java.awt.Color;
 import java.awt.Image;
+import java.awt.Rectangle;
 
 /**
  * Implementation of the Painter interface that does not actually do any
@@ -9,12 +10,19 @@ import java.awt.Image;
  * logging simply logging them. The contents of a MockPainter object's
  * log can be retrieved by a call to toString() on the MockPainter.
  * 
+ * A MockPainter is not clipped unless given a clip with setClip().
+ * 
  * @author Ian Warren -- updated by Will Molloy
  * 
  */
 public class MockPainter implements Painter {
 	// Internal log.
 	private StringBuffer _log = new StringBuffer();
+	
+	// Clip in the original coordinate system, and the current translation.
+	private Rectangle _clip;
+	private int _translateX;
+	private int _translateY;
 
 	/**
 	 * Returns the contents of this MockPainter's log.
@@ -22,6 +30,14 @@ public class MockPainter implements Painter {
 	public String toString() {
 		return _log.toString();
 	}
+	
+	/**
+	 * Sets the clip returned by getClipBounds(), in the coordinate system 
+	 * before any translate() calls, or null for no clip.
+	 */
+	public void setClip(Rectangle clip) {
+		_clip = clip == null ? null : new Rectangle(clip);
+	}
 
 	/**
 	 * Logs the drawRect call.
@@ -81,6 +97,8 @@ public class MockPainter implements Painter {
 	 */
 	@Override
 	public void translate(int x, int y) {
+		_translateX += x;
+		_translateY += y;
 	}
 
 	/**
@@ -113,4 +131,39 @@ public class MockPainter implements Painter {
 	public void drawDiamond(int w, int h, int x, int y) {
 		_log.append("(diamond " + w + ","+ h + ","+ x + ","+ y +")");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Logs the drawPolygon call
+	 */
+	@Override
+	public void drawPolygon(int[] xs, int[] ys, int n) {
+		logPolygon("(polygon", xs, ys, n);
+	}
+
+	/**
+	 * Logs the fillPolygon call
+	 */
+	@Override
+	public void fillPolygon(int[] xs, int[] ys, int n) {
+		logPolygon("(filledPolygon", xs, ys, n);
+	}
+
+	/**
+	 * getClipBounds() - not being logged
+	 */
+	@Override
+	public Rectangle getClipBounds() {
+		if (_clip == null) {
+			return null;
+		}
+		return new Rectangle(_clip.x - _translateX, _clip.y - _translateY, _clip.width, _clip.height);
+	}
+
+	private void logPolygon(String name, int[] xs, int[] ys, int n) {
+		_log.append(name);
+		for (int i = 0; i < n; i++) {
+			_log.append(i == 0 ? " " : ",").append(xs[i]).append(",").append(ys[i]);
+		}
+		_log.append(")");
+	}
+}
\ No newline at end of file
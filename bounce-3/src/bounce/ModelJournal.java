@@ -0,0 +1,525 @@
+package bounce;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only journal of the changes made to a ShapeModel and of its ticks,
+ * from which the model can be rebuilt as it was at any tick. Attach a
+ * ModelJournal with ShapeModel.setJournal() and replay it with replay().
+ *
+ * The journal is a binary file of records:
+ *   CHECKPOINT  long tick, byte shape collisions enabled, a whole scene as
+ *               written by SceneWriter
+ *   ADD         the path of the parent, then the added Shape and the Shapes
+ *               within it as written by SceneWriter.writeShapes()
+ *   REMOVE      the path of the parent, int index of the removed child
+ *   CLOCK       int number of consecutive ticks
+ *   COLLISIONS  byte shape collisions enabled
+ * where a path is an int depth followed by the index of each NestingShape
+ * on the way down from the root. Only changes to Shapes within the model are
+ * recorded; Shapes added to a NestingShape that is not yet in the model are
+ * recorded when that NestingShape is added.
+ *
+ * A checkpoint is written when the journal is attached and then every
+ * checkpoint interval ticks, but never sooner after the last one than 50
+ * times the time that one took, so that checkpoints of large models cost
+ * about 2% of the time spent clocking them. Each checkpoint's tick and
+ * position are appended to an index file beside the journal, named after it
+ * with ".index" added, so that replay() can seek to the nearest one rather
+ * than read the journal from the start.
+ *
+ * Ticks cost no I/O of their own: runs of ticks are counted and recorded as
+ * one CLOCK record when anything else is. Records are buffered and written
+ * to a FileChannel when the buffer fills, on flush() and on close().
+ *
+ * A ModelJournal is guarded by the lock of the ShapeModel it is attached to.
+ * If writing fails, the journal stops recording and error() returns the
+ * failure; the model is unaffected.
+ *
+ * @author Will Molloy
+ *
+ */
+public class ModelJournal implements Closeable {
+
+	/**
+	 * Default number of ticks between checkpoints.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+	static final int MAGIC = 0x424E434A;		// "BNCJ"
+
+	static final short VERSION = 1;
+
+	// === Kinds of record.
+	static final byte CHECKPOINT = 1;
+
+	static final byte ADD = 2;
+
+	static final byte REMOVE = 3;
+
+	static final byte CLOCK = 4;
+
+	static final byte COLLISIONS = 5;
+	// ===
+
+	private static final int HEADER_BYTES = 6;
+
+	private static final int INDEX_ENTRY_BYTES = 16;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Least multiple of a checkpoint's duration before the next one.
+	private static final int CHECKPOINT_SPACING = 50;
+
+	private final FileChannel _channel;
+	private final FileChannel _indexChannel;
+	private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final DataOutputStream _out = new DataOutputStream(new ChannelOutput());
+	private final int _checkpointInterval;
+
+	private volatile ShapeModel _model;
+	private long _position;				// Bytes recorded, buffered or not.
+	private int _pendingTicks;
+	private long _nextCheckpointTick;
+	private long _nextCheckpointNanos;
+	private IOException _error;
+
+	/**
+	 * Creates a ModelJournal that writes to file, and to its index file,
+	 * replacing them if they exist, with DEFAULT_CHECKPOINT_INTERVAL.
+	 */
+	public ModelJournal(File file) throws IOException {
+		this(file, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Creates a ModelJournal that writes to file, and to its index file,
+	 * replacing them if they exist.
+	 * @param checkpointInterval the number of ticks between checkpoints.
+	 * @throws IllegalArgumentException if checkpointInterval is not positive.
+	 */
+	public ModelJournal(File file, int checkpointInterval) throws IOException, IllegalArgumentException {
+		if (checkpointInterval <= 0) {
+			throw new IllegalArgumentException("Checkpoint interval must be positive: " + checkpointInterval);
+		}
+		_checkpointInterval = checkpointInterval;
+		_channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			_indexChannel = FileChannel.open(indexFile(file).toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			_channel.close();
+			throw e;
+		}
+		_out.writeInt(MAGIC);
+		_out.writeShort(VERSION);
+	}
+
+	/**
+	 * Returns the failure that stopped this ModelJournal recording, null if
+	 * there has been none.
+	 */
+	public IOException error() {
+		return _error;
+	}
+
+	/**
+	 * Writes the records buffered so far to the journal file.
+	 */
+	public void flush() throws IOException {
+		ShapeModel model = _model;
+		if (model == null) {
+			drain();
+			return;
+		}
+		synchronized (model) {
+			if (_error == null) {
+				flushTicks();
+			}
+			drain();
+		}
+	}
+
+	/**
+	 * Detaches this ModelJournal from its model, if any, writes the records
+	 * buffered so far and closes the journal and index files.
+	 */
+	@Override
+	public void close() throws IOException {
+		ShapeModel model = _model;
+		if (model != null) {
+			model.setJournal(null);
+		}
+		try {
+			drain();
+		} finally {
+			_channel.close();
+			_indexChannel.close();
+		}
+	}
+
+	/**
+	 * Starts recording model, with a checkpoint of its current state. Called
+	 * by ShapeModel.setJournal() with the model's lock held.
+	 * @throws IllegalStateException if this ModelJournal is recording
+	 *         another model.
+	 */
+	void attach(ShapeModel model) throws IllegalStateException {
+		if (_model != null && _model != model) {
+			throw new IllegalStateException("Journal is already attached to a ShapeModel");
+		}
+		_model = model;
+		if (_error == null) {
+			try {
+				checkpoint(model.ticks());
+			} catch (IOException | RuntimeException e) {
+				failed(e);
+			}
+		}
+	}
+
+	/**
+	 * Stops recording. Called by ShapeModel.setJournal() with the model's
+	 * lock held.
+	 */
+	void detach() {
+		if (_error == null) {
+			try {
+				flushTicks();
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+		_model = null;
+	}
+
+	/**
+	 * Records that shape has been added to the model.
+	 */
+	void added(Shape shape) {
+		int[] path = path(shape.parent());
+		if (path == null || _error != null) {
+			return;
+		}
+		try {
+			flushTicks();
+			_out.writeByte(ADD);
+			writePath(path);
+			SceneWriter.of(shape).writeShapes(_out);
+		} catch (IOException | RuntimeException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * Records that the child at index of parent is about to be removed from
+	 * the model.
+	 */
+	void removing(NestingShape parent, int index) {
+		int[] path = path(parent);
+		if (path == null || _error != null) {
+			return;
+		}
+		try {
+			flushTicks();
+			_out.writeByte(REMOVE);
+			writePath(path);
+			_out.writeInt(index);
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * Records that shape collisions have been enabled or disabled.
+	 */
+	void collisionsChanged(boolean enabled) {
+		if (_error != null) {
+			return;
+		}
+		try {
+			flushTicks();
+			_out.writeByte(COLLISIONS);
+			_out.writeBoolean(enabled);
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * Records a tick of the model, which has now been clocked ticks times.
+	 */
+	void clocked(long ticks) {
+		if (_error != null) {
+			return;
+		}
+		_pendingTicks++;
+		if (ticks >= _nextCheckpointTick && System.nanoTime() >= _nextCheckpointNanos) {
+			try {
+				checkpoint(ticks);
+			} catch (IOException | RuntimeException e) {
+				failed(e);
+			}
+		}
+	}
+
+	private void checkpoint(long ticks) throws IOException {
+		long startTime = System.nanoTime();
+		flushTicks();
+		long position = _position;
+		_out.writeByte(CHECKPOINT);
+		_out.writeLong(ticks);
+		_out.writeBoolean(_model.shapeCollisionsEnabled());
+		SceneWriter.snapshot(_model).writeTo(_out);
+
+		// The checkpoint must be in the journal before the index refers to it.
+		drain();
+		ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+		entry.putLong(ticks).putLong(position).flip();
+		while (entry.hasRemaining()) {
+			_indexChannel.write(entry);
+		}
+
+		long endTime = System.nanoTime();
+		_nextCheckpointTick = ticks + _checkpointInterval;
+		_nextCheckpointNanos = endTime + (endTime - startTime) * CHECKPOINT_SPACING;
+	}
+
+	private void flushTicks() throws IOException {
+		if (_pendingTicks > 0) {
+			_out.writeByte(CLOCK);
+			_out.writeInt(_pendingTicks);
+			_pendingTicks = 0;
+		}
+	}
+
+	// Writes the buffered records to the journal file.
+	private void drain() throws IOException {
+		_buffer.flip();
+		while (_buffer.hasRemaining()) {
+			_channel.write(_buffer);
+		}
+		_buffer.clear();
+	}
+
+	private void failed(Exception e) {
+		_error = e instanceof IOException ? (IOException) e : new IOException(e);
+		System.out.println("Error writing journal: " + e.getMessage());
+	}
+
+	// Returns the indices leading from the root of the model to nest, or null
+	// if nest is not in the model.
+	private int[] path(NestingShape nest) {
+		int depth = 0;
+		Shape shape = nest;
+		for (; shape != null && shape.parent() != null; shape = shape.parent()) {
+			depth++;
+		}
+		if (shape != _model.root()) {
+			return null;
+		}
+		int[] path = new int[depth];
+		for (shape = nest; depth > 0; shape = shape.parent()) {
+			path[--depth] = shape.parent().indexOf(shape);
+		}
+		return path;
+	}
+
+	private void writePath(int[] path) throws IOException {
+		_out.writeInt(path.length);
+		for (int index : path) {
+			_out.writeInt(index);
+		}
+	}
+
+	/*
+	 * Stream that records bytes in the buffer, writing it to the journal
+	 * file whenever it fills.
+	 */
+	private class ChannelOutput extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			if (!_buffer.hasRemaining()) {
+				drain();
+			}
+			_buffer.put((byte) b);
+			_position++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (!_buffer.hasRemaining()) {
+					drain();
+				}
+				int count = Math.min(length, _buffer.remaining());
+				_buffer.put(bytes, offset, count);
+				offset += count;
+				length -= count;
+				_position += count;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the ShapeModel recorded in journal as it was at tick, i.e.
+	 * after tick clock() calls and the changes made before the next one. If
+	 * the journal ends before tick, the model is rebuilt as it was at the
+	 * end. Images are resolved with SceneLoader.FILE_RESOLVER.
+	 * @throws IOException if journal cannot be read, or has no checkpoint at
+	 *         or before tick.
+	 */
+	public static ShapeModel replay(File journal, long tick) throws IOException {
+		return replay(journal, tick, SceneLoader.FILE_RESOLVER);
+	}
+
+	/**
+	 * Rebuilds the ShapeModel recorded in journal as it was at tick,
+	 * resolving images with resolver.
+	 * @see #replay(File, long)
+	 */
+	public static ShapeModel replay(File journal, long tick, SceneLoader.ImageResolver resolver) throws IOException {
+		long position = checkpointBefore(journal, tick);
+		ByteBuffer buffer;
+		FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+				throw new IOException("Not a journal file: " + journal);
+			}
+			short version = header.getShort();
+			if (version != VERSION) {
+				throw new IOException("Unsupported journal file version: " + version);
+			}
+			if (channel.size() - position > Integer.MAX_VALUE) {
+				throw new IOException("Journal too large to replay from tick " + tick + ": " + journal);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, channel.size() - position);
+		} finally {
+			channel.close();		// The mapping stays valid.
+		}
+
+		SceneLoader loader = new SceneLoader(resolver);
+		try {
+			if (buffer.get() != CHECKPOINT) {
+				throw new IOException("Corrupt journal index: no checkpoint at " + position);
+			}
+			ShapeModel model = readCheckpoint(buffer, loader);
+			while (buffer.hasRemaining()) {
+				int start = buffer.position();
+				try {
+					byte kind = buffer.get();
+					if (kind == CLOCK) {
+						int count = buffer.getInt();
+						long due = Math.min(count, tick - model.ticks());
+						for (long i = 0; i < due; i++) {
+							model.clock();
+						}
+						if (due < count) {
+							break;
+						}
+					} else if (kind == ADD) {
+						NestingShape parent = follow(model, readPath(buffer));
+						model.add(loader.readShapes(buffer), parent);
+					} else if (kind == REMOVE) {
+						NestingShape parent = follow(model, readPath(buffer));
+						model.remove(parent.shapeAt(buffer.getInt()));
+					} else if (kind == COLLISIONS) {
+						model.setShapeCollisionsEnabled(buffer.get() != 0);
+					} else if (kind == CHECKPOINT) {
+						// Missing from the index, e.g. after a crash.
+						model = readCheckpoint(buffer, loader);
+					} else {
+						throw new IOException("Corrupt journal: unknown record " + kind + " at " + (position + start));
+					}
+				} catch (BufferUnderflowException e) {
+					// The last record was cut short, e.g. by a crash.
+					break;
+				}
+			}
+			return model;
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ClassCastException e) {
+			throw new IOException("Corrupt journal: " + journal, e);
+		}
+	}
+
+	/**
+	 * Returns the index file of journal.
+	 */
+	static File indexFile(File journal) {
+		return new File(journal.getPath() + ".index");
+	}
+
+	// Finds the position of the last checkpoint at or before tick.
+	private static long checkpointBefore(File journal, long tick) throws IOException {
+		ByteBuffer index;
+		FileChannel channel = FileChannel.open(indexFile(journal).toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size() - channel.size() % INDEX_ENTRY_BYTES;
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Journal index too large: " + indexFile(journal));
+			}
+			index = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			channel.close();
+		}
+
+		// Checkpoints are in tick order; search for the last one not after tick.
+		int low = 0, high = index.capacity() / INDEX_ENTRY_BYTES - 1;
+		long position = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (index.getLong(middle * INDEX_ENTRY_BYTES) <= tick) {
+				position = index.getLong(middle * INDEX_ENTRY_BYTES + 8);
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		if (position < 0) {
+			throw new IOException("No checkpoint at or before tick " + tick + " in " + journal);
+		}
+		return position;
+	}
+
+	private static ShapeModel readCheckpoint(ByteBuffer buffer, SceneLoader loader) throws IOException {
+		long ticks = buffer.getLong();
+		boolean collisions = buffer.get() != 0;
+		ShapeModel model = loader.readScene(buffer);
+		model.setTicks(ticks);
+		model.setShapeCollisionsEnabled(collisions);
+		return model;
+	}
+
+	private static int[] readPath(ByteBuffer buffer) throws IOException {
+		int depth = buffer.getInt();
+		if (depth < 0 || depth > buffer.remaining() / 4) {
+			throw new IOException("Corrupt journal: path of depth " + depth);
+		}
+		int[] path = new int[depth];
+		for (int i = 0; i < depth; i++) {
+			path[i] = buffer.getInt();
+		}
+		return path;
+	}
+
+	// Returns the NestingShape reached by following path down from the root.
+	private static NestingShape follow(ShapeModel model, int[] path) {
+		NestingShape nest = model.root();
+		for (int index : path) {
+			nest = (NestingShape) nest.shapeAt(index);
+		}
+		return nest;
+	}
+}
@@ -1,15 +1,39 @@
 package bounce;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Class to represent a NestingShape: A shape which can contain other shapes.
+ * 
+ * Children are identified by reference rather than scanned for with equals().
+ * Each child records the slot it was given when added; slots follow the 
+ * order of the children but, unlike indices, do not shift when a child is
+ * removed. contains() is a constant time check of the child's parent, and
+ * indexOf() converts a slot to an index in constant time if no child has 
+ * been removed since the slots were last renumbered, otherwise in O(log n)
+ * time by counting the remaining children in earlier slots with a Fenwick
+ * tree. Slots are renumbered once removed children outnumber the others.
+ * 
+ * Children are kept within a NestingShape's bounds, so when painting, a 
+ * child, or a whole subtree, that lies outside the Painter's clip is skipped.
+ * Text can extend beyond a Shape's bounds, so a NestingShape counts the
+ * Shapes with text below it, and a subtree with any is not skipped.
  * @author Will Molloy
  */
 public class NestingShape extends Shape {
 
 	private List<Shape> _childShapes = new ArrayList<Shape>();	
+	
+	// Number of slots handed out, and a Fenwick tree (1-based) counting the
+	// slots that still hold a child.
+	private int _slotCount;
+	private int[] _occupiedSlots = new int[8];
+	
+	// Number of Shapes with text below this NestingShape.
+	private int _textsWithin;
 
 	/**
 	 * NestingShape with default values.
@@ -66,6 +90,11 @@ public class NestingShape extends Shape {
 		translateCoordinatesAndPaintChildren(painter);	
 	}
 
+	@Override
+	protected int appearance() {
+		return FrameSnapshot.NESTING;
+	}
+
 	private void paintOuterBoundary(Painter painter){
 		painter.drawRect(_x, _y, _width, _height);
 	}
@@ -74,8 +103,11 @@ public class NestingShape extends Shape {
 		
 		painter.translate(_x, _y);		// translate coordinates to this NestingShape instances
 		
+		Rectangle clip = painter.getClipBounds();
 		for (Shape s : _childShapes){	
-			s.paint(painter);			
+			if (clip == null || !s.isOutside(clip)){
+				s.paint(painter);
+			}
 		}
 		painter.translate(-_x, -_y);	// Revert translation
 	}
@@ -100,6 +132,11 @@ public class NestingShape extends Shape {
 		}
 	}
 
+	@Override
+	boolean isOutside(Rectangle clip) {
+		return _textsWithin == 0 && super.isOutside(clip);
+	}
+
 	private boolean shapeIsContainedWithinANestingShape(Shape shape){
 		if (shape.parent() != null || this.contains(shape)){	
 			return true;
@@ -118,14 +155,85 @@ public class NestingShape extends Shape {
 
 	// Establish two-way link between a Shape and a NestingShape
 	private void linkShapeWithThisNestingShape(Shape shape){
+		occupyNextSlot(shape);
 		_childShapes.add(shape);		// NestingShape -> shape 
 		shape._parent = this;			// shape -> NestingShape 
+		countTexts(textsIn(shape));
+	}
+
+	// Returns the number of Shapes with text in the subtree rooted at shape.
+	private static int textsIn(Shape shape){
+		int texts = shape._text != null ? 1 : 0;
+		if (shape instanceof NestingShape){
+			texts += ((NestingShape) shape)._textsWithin;
+		}
+		return texts;
+	}
+
+	// Adds change to the texts counted by this NestingShape and its ancestors.
+	private void countTexts(int change){
+		if (change != 0){
+			for (NestingShape nest = this; nest != null; nest = nest._parent){
+				nest._textsWithin += change;
+			}
+		}
 	}
 
 	// Remove the two-way link between a NestingShape and the specified child Shape
 	void remove(Shape shape){
 		_childShapes.remove(indexOf(shape));	
-		shape._parent = null;					
+		shape._parent = null;
+		countTexts(-textsIn(shape));
+		for (int k = shape._slotInParent + 1; k <= _slotCount; k += k & -k){
+			_occupiedSlots[k]--;		// Free the slot
+		}
+		if (_slotCount > 2 * _childShapes.size() + 8){
+			renumberSlots();
+		}
+	}
+
+	// Remove the children at the first count of indices, which are in ascending
+	// order, in one pass over the list of children.
+	void removeAt(int[] indices, int count){
+		List<Shape> remaining = new ArrayList<Shape>(Math.max(8, _childShapes.size() - count));
+		int next = 0;
+		int texts = 0;
+		for (int i = 0; i < _childShapes.size(); i++){
+			Shape child = _childShapes.get(i);
+			if (next < count && indices[next] == i){
+				child._parent = null;
+				texts += textsIn(child);
+				next++;
+			} else {
+				remaining.add(child);
+			}
+		}
+		_childShapes = remaining;
+		countTexts(-texts);
+		renumberSlots();
+	}
+
+	private void occupyNextSlot(Shape shape){
+		if (_slotCount + 1 == _occupiedSlots.length){
+			_occupiedSlots = Arrays.copyOf(_occupiedSlots, _occupiedSlots.length * 2);
+		}
+		shape._slotInParent = _slotCount++;
+		
+		// Node k of the tree counts the slots (k - lowbit(k), k]. 
+		int k = _slotCount;
+		int count = 1;
+		for (int j = k - 1; j > k - (k & -k); j -= j & -j){
+			count += _occupiedSlots[j];
+		}
+		_occupiedSlots[k] = count;
+	}
+
+	// Give the children consecutive slots again, i.e. make slots equal indices.
+	private void renumberSlots(){
+		_slotCount = 0;
+		for (Shape s : _childShapes){
+			occupyNextSlot(s);
+		}
 	}
 
 	/**
@@ -146,7 +254,18 @@ public class NestingShape extends Shape {
 	 * Returns the index of the specified shape within its NestingShape parent instance.
 	 */
 	public int indexOf(Shape shape){
-		return _childShapes.indexOf(shape);
+		if (!contains(shape)){
+			return -1;
+		} else if (_slotCount == _childShapes.size()){
+			return shape._slotInParent;		// No free slots, so slots are indices
+		}
+		
+		// Count the children in slots up to and including shape's.
+		int index = -1;
+		for (int k = shape._slotInParent + 1; k > 0; k -= k & -k){
+			index += _occupiedSlots[k];
+		}
+		return index;
 	}
 
 	/**
@@ -154,6 +273,6 @@ public class NestingShape extends Shape {
 	 * object on which this method is called, false otherwise.
 	 */
 	public boolean contains(Shape shape){
-		return _childShapes.contains(shape);
+		return shape != null && shape._parent == this;
 	}
 }
@@ -59,8 +59,35 @@ public class OvalAndRectangleShape extends Shape {
 		}
 	}
 
+	@Override
+	protected int appearance() {
+		return _shapeIsRectangle ? FrameSnapshot.RECTANGLE : FrameSnapshot.OVAL;
+	}
+
+	@Override
+	protected boolean isFilled() {
+		return true;
+	}
+
+	@Override
+	protected Color colour() {
+		return _colors[_colorValue];
+	}
+
 	private void changeShape() {
 		_colorValue = (_colorValue+1) % (_colors.length);	// Change to the next colour value
 		_shapeIsRectangle = !_shapeIsRectangle;
 	}
+
+	// Packs the colour value above a bit for the outline.
+	@Override
+	int savedState() {
+		return _colorValue << 1 | (_shapeIsRectangle ? 1 : 0);
+	}
+
+	@Override
+	void restoreState(int state) {
+		_colorValue = (state >>> 1) % _colors.length;
+		_shapeIsRectangle = (state & 1) != 0;
+	}
 }
@@ -58,4 +58,9 @@ public class OvalShape extends Shape {
 	protected void doPaint(Painter painter) {
 		painter.drawOval(_x, _y, _width, _height);
 	}
+
+	@Override
+	protected int appearance() {
+		return FrameSnapshot.OVAL;
+	}
 }
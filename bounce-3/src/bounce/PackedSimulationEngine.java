@@ -0,0 +1,217 @@
+package bounce;
+
+import java.util.Arrays;
+
+/**
+ * SimulationEngine that stores the moving state of every Shape in a ShapeModel
+ * in parallel primitive arrays (structure of arrays) and advances the whole
+ * composition in one loop, rather than walking the NestingShape tree with a
+ * move() call per Shape.
+ *
+ * Shapes are held in pre-order (a parent before its children) together with
+ * the index of their parent, so that each Shape can look up the width and
+ * height it bounces within. The bounce rules are those of Shape.move(). After
+ * the loop the new state is written back to each Shape so that its getters,
+ * painting and its shapeHasMoved() hook behave exactly as with move().
+ * NestingShape's hook is not called, as its children are already part of the
+ * loop.
+ *
+ * @author Will Molloy
+ *
+ */
+public class PackedSimulationEngine implements SimulationEngine {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Shape state, one element per Shape in pre-order.
+	private Shape[] _shapes = new Shape[INITIAL_CAPACITY];
+	private int[] _x = new int[INITIAL_CAPACITY];
+	private int[] _y = new int[INITIAL_CAPACITY];
+	private int[] _deltaX = new int[INITIAL_CAPACITY];
+	private int[] _deltaY = new int[INITIAL_CAPACITY];
+	private int[] _width = new int[INITIAL_CAPACITY];
+	private int[] _height = new int[INITIAL_CAPACITY];
+	private int[] _parent = new int[INITIAL_CAPACITY];	// -1 for the root.
+	private byte[] _collisions = new byte[INITIAL_CAPACITY];
+	private boolean[] _hasHook = new boolean[INITIAL_CAPACITY];
+
+	private int _count;
+
+	// Root the arrays were built from, null when they must be rebuilt.
+	private NestingShape _root;
+
+	// Whether positions and velocities must be reread from the Shapes.
+	private boolean _stateChanged;
+
+	@Override
+	public void structureChanged() {
+		_root = null;
+	}
+
+	@Override
+	public void stateChanged() {
+		_stateChanged = true;
+	}
+
+	/**
+	 * Returns the number of Shapes (including the root) this engine moves.
+	 */
+	public int shapeCount() {
+		return _count;
+	}
+
+	@Override
+	public void tick(NestingShape root, int width, int height) {
+		if (_root != root) {
+			load(root);
+		} else if (_stateChanged) {
+			reread();
+		}
+
+		advance(width, height);
+		store();
+	}
+
+	/*
+	 * Moves every Shape using the same rules as Shape.move().
+	 */
+	private void advance(int worldWidth, int worldHeight) {
+		int[] x = _x, y = _y, deltaX = _deltaX, deltaY = _deltaY;
+		int[] width = _width, height = _height, parent = _parent;
+		byte[] collisions = _collisions;
+
+		for (int i = 0; i < _count; i++) {
+			int p = parent[i];
+			int boundWidth = p < 0 ? worldWidth : width[p];
+			int boundHeight = p < 0 ? worldHeight : height[p];
+
+			int nextX = x[i] + deltaX[i];
+			int nextY = y[i] + deltaY[i];
+			int collided = 0;
+
+			if (nextY <= 0) {
+				nextY = 0;
+				deltaY[i] = -deltaY[i];
+				collided |= Shape.COLLIDED_NORTH;
+			} else if (nextY + height[i] >= boundHeight) {
+				nextY = boundHeight - height[i];
+				deltaY[i] = -deltaY[i];
+				collided |= Shape.COLLIDED_SOUTH;
+			}
+
+			if (nextX <= 0) {
+				nextX = 0;
+				deltaX[i] = -deltaX[i];
+				collided |= Shape.COLLIDED_WEST;
+			} else if (nextX + width[i] >= boundWidth) {
+				nextX = boundWidth - width[i];
+				deltaX[i] = -deltaX[i];
+				collided |= Shape.COLLIDED_EAST;
+			}
+
+			x[i] = nextX;
+			y[i] = nextY;
+			collisions[i] = (byte) collided;
+		}
+	}
+
+	/*
+	 * Copies positions and velocities changed outside tick() back in.
+	 */
+	private void reread() {
+		for (int i = 0; i < _count; i++) {
+			Shape shape = _shapes[i];
+			_x[i] = shape._x;
+			_y[i] = shape._y;
+			_deltaX[i] = shape._deltaX;
+			_deltaY[i] = shape._deltaY;
+		}
+		_stateChanged = false;
+	}
+
+	/*
+	 * Writes the new state back to the Shapes and runs their hooks.
+	 */
+	private void store() {
+		for (int i = 0; i < _count; i++) {
+			Shape shape = _shapes[i];
+			shape.moved(_x[i], _y[i], _deltaX[i], _deltaY[i], _collisions[i]);
+			if (_hasHook[i]) {
+				shape.shapeHasMoved();
+			}
+		}
+	}
+
+	/*
+	 * Flattens the composition rooted at root into the arrays in pre-order.
+	 * An explicit stack is used so that deep compositions cannot overflow the
+	 * call stack.
+	 */
+	private void load(NestingShape root) {
+		_count = 0;
+
+		Shape[] stack = new Shape[INITIAL_CAPACITY];
+		int[] parentStack = new int[INITIAL_CAPACITY];
+		int top = 0;
+		stack[top] = root;
+		parentStack[top++] = -1;
+
+		while (top > 0) {
+			Shape shape = stack[--top];
+			int parent = parentStack[top];
+			stack[top] = null;
+			int index = append(shape, parent);
+
+			if (shape instanceof NestingShape) {
+				NestingShape nest = (NestingShape) shape;
+				int children = nest.shapeCount();
+				if (top + children > stack.length) {
+					int capacity = Math.max(stack.length * 2, top + children);
+					stack = Arrays.copyOf(stack, capacity);
+					parentStack = Arrays.copyOf(parentStack, capacity);
+				}
+				// Push in reverse so that children are visited in order.
+				for (int i = children - 1; i >= 0; i--) {
+					stack[top] = nest.shapeAt(i);
+					parentStack[top++] = index;
+				}
+			}
+		}
+
+		// Drop references to Shapes from a previous, larger composition.
+		Arrays.fill(_shapes, _count, _shapes.length, null);
+		_root = root;
+		_stateChanged = false;
+	}
+
+	private int append(Shape shape, int parent) {
+		if (_count == _shapes.length) {
+			grow();
+		}
+		int i = _count++;
+		_shapes[i] = shape;
+		_x[i] = shape._x;
+		_y[i] = shape._y;
+		_deltaX[i] = shape._deltaX;
+		_deltaY[i] = shape._deltaY;
+		_width[i] = shape._width;
+		_height[i] = shape._height;
+		_parent[i] = parent;
+		_hasHook[i] = !(shape instanceof NestingShape);
+		return i;
+	}
+
+	private void grow() {
+		int capacity = _shapes.length * 2;
+		_shapes = Arrays.copyOf(_shapes, capacity);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_deltaX = Arrays.copyOf(_deltaX, capacity);
+		_deltaY = Arrays.copyOf(_deltaY, capacity);
+		_width = Arrays.copyOf(_width, capacity);
+		_height = Arrays.copyOf(_height, capacity);
+		_parent = Arrays.copyOf(_parent, capacity);
+		_collisions = Arrays.copyOf(_collisions, capacity);
+		_hasHook = Arrays.copyOf(_hasHook, capacity);
+	}
+}
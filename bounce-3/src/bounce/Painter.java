@@ -2,6 +2,7 @@ package bounce;
 
 import java.awt.Color;
 import java.awt.Image;
+import java.awt.Rectangle;
 
 /** 
  * Interface to represent a type that offers primitive drawing methods.
@@ -83,4 +84,23 @@ public interface Painter {
 	 * @param x,y the co-ordinates of the top left corner 
 	 */
 	public void drawDiamond(int _width, int _height, int _x, int _y);
+
+	/**
+	 * Draws the outline of the closed polygon through the first n points of
+	 * xs and ys. The arrays may be reused by the caller once this returns.
+	 */
+	public void drawPolygon(int[] xs, int[] ys, int n);
+
+	/**
+	 * Fills the polygon through the first n points of xs and ys with a solid
+	 * colour. The arrays may be reused by the caller once this returns.
+	 */
+	public void fillPolygon(int[] xs, int[] ys, int n);
+
+	/**
+	 * Returns the bounds of the area that drawing can currently change, in
+	 * the current coordinate system, or null if drawing is not clipped.
+	 * Shapes use it to skip painting what cannot be seen.
+	 */
+	public Rectangle getClipBounds();
 }	
@@ -0,0 +1,365 @@
+package bounce;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Implementation of the Painter interface that records drawing requests
+ * without painting anything. Unlike MockPainter, a RecordingPainter stores
+ * each request as an opcode followed by its int arguments in a growable int
+ * array, so recording does not allocate once the buffer has grown to size.
+ * Text and images are referenced from a side table.
+ *
+ * Two RecordingPainters are equal when they recorded the same requests, and
+ * diff() describes the first difference. toString() renders the recording in
+ * the same textual form as a MockPainter's log; as with MockPainter,
+ * translate() and drawImage() calls are recorded but not rendered.
+ *
+ * @author Will Molloy
+ *
+ */
+public class RecordingPainter implements Painter {
+
+	// === Opcodes.
+	private static final int RECT = 0;
+	private static final int OVAL = 1;
+	private static final int LINE = 2;
+	private static final int FILLED_RECT = 3;
+	private static final int COLOUR = 4;
+	private static final int FILLED_OVAL = 5;
+	private static final int TRANSLATE = 6;
+	private static final int TEXT = 7;
+	private static final int IMAGE = 8;
+	private static final int HEXAGON = 9;
+	private static final int DIAMOND = 10;
+	private static final int POLYGON = 11;
+	private static final int FILLED_POLYGON = 12;
+
+	// Number of int arguments following each opcode.
+	private static final int[] ARGUMENTS = {4, 4, 4, 4, 1, 4, 2, 3, 5, 4, 4, 2, 2};
+
+	// Argument holding an index into the object table, -1 if none. Polygons
+	// refer to a copy of their xs followed by their ys.
+	private static final int[] OBJECT_ARGUMENT = {-1, -1, -1, -1, -1, -1, -1, 2, 4, -1, -1, 1, 1};
+	// ===
+
+	private int[] _commands = new int[256];
+	private int _length;
+	private int _count;
+
+	private Object[] _objects = new Object[16];
+	private int _objectCount;
+
+	private Color _colour = Color.BLACK;
+
+	/**
+	 * Discards everything recorded so far, keeping the buffers for reuse.
+	 */
+	public void reset() {
+		_length = 0;
+		_count = 0;
+		Arrays.fill(_objects, 0, _objectCount, null);
+		_objectCount = 0;
+		_colour = Color.BLACK;
+	}
+
+	/**
+	 * Returns the number of drawing requests recorded.
+	 */
+	public int commandCount() {
+		return _count;
+	}
+
+	@Override
+	public void drawRect(int x, int y, int width, int height) {
+		record(RECT, x, y, width, height);
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		record(OVAL, x, y, width, height);
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		record(LINE, x1, y1, x2, y2);
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		record(FILLED_RECT, x, y, width, height);
+	}
+
+	@Override
+	public Color getColour() {
+		return _colour;
+	}
+
+	@Override
+	public void setColour(Color c) {
+		_colour = c;
+		ensureCapacity(2);
+		_commands[_length++] = COLOUR;
+		_commands[_length++] = c.getRGB();
+		_count++;
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		record(FILLED_OVAL, x, y, width, height);
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		ensureCapacity(3);
+		_commands[_length++] = TRANSLATE;
+		_commands[_length++] = x;
+		_commands[_length++] = y;
+		_count++;
+	}
+
+	@Override
+	public void drawCenteredText(String text, int x, int y) {
+		ensureCapacity(4);
+		_commands[_length++] = TEXT;
+		_commands[_length++] = x;
+		_commands[_length++] = y;
+		_commands[_length++] = addObject(text);
+		_count++;
+	}
+
+	@Override
+	public void drawImage(Image img, int x, int y, int width, int height) {
+		record(IMAGE, x, y, width, height);
+		ensureCapacity(1);
+		_commands[_length++] = addObject(img);
+	}
+
+	@Override
+	public void drawHexagon(int w, int h, int x, int y) {
+		record(HEXAGON, w, h, x, y);
+	}
+
+	@Override
+	public void drawDiamond(int w, int h, int x, int y) {
+		record(DIAMOND, w, h, x, y);
+	}
+
+	@Override
+	public void drawPolygon(int[] xs, int[] ys, int n) {
+		recordPolygon(POLYGON, xs, ys, n);
+	}
+
+	@Override
+	public void fillPolygon(int[] xs, int[] ys, int n) {
+		recordPolygon(FILLED_POLYGON, xs, ys, n);
+	}
+
+	/**
+	 * Returns null: recordings may be rendered anywhere, so nothing is left
+	 * out of them.
+	 */
+	@Override
+	public Rectangle getClipBounds() {
+		return null;
+	}
+
+	/**
+	 * Returns true if the specified object is a RecordingPainter that has
+	 * recorded the same requests as this one.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof RecordingPainter)) {
+			return false;
+		}
+		RecordingPainter painter = (RecordingPainter) other;
+		return painter._count == _count && firstDifference(painter) < 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = _count;
+		for (int i = 0; i < _length; i++) {
+			hash = 31 * hash + _commands[i];
+		}
+		return hash;
+	}
+
+	/**
+	 * Compares this RecordingPainter, holding the requests actually made,
+	 * with one holding the expected requests. Returns null if they are
+	 * equal, otherwise a description of the first request that differs.
+	 */
+	public String diff(RecordingPainter expected) {
+		int command = firstDifference(expected);
+		if (command < 0 && expected._count == _count) {
+			return null;
+		}
+		if (command < 0) {
+			command = Math.min(_count, expected._count);
+		}
+		return "Command " + command + ": expected " + expected.describe(command) + " but was " + describe(command);
+	}
+
+	/**
+	 * Returns the recorded requests in the textual form used by MockPainter.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder log = new StringBuilder();
+		for (int position = 0; position < _length; position += 1 + ARGUMENTS[_commands[position]]) {
+			render(position, log);
+		}
+		return log.toString();
+	}
+
+	private void record(int opcode, int a, int b, int c, int d) {
+		ensureCapacity(5);
+		int[] commands = _commands;
+		int i = _length;
+		commands[i] = opcode;
+		commands[i + 1] = a;
+		commands[i + 2] = b;
+		commands[i + 3] = c;
+		commands[i + 4] = d;
+		_length = i + 5;
+		_count++;
+	}
+
+	private void recordPolygon(int opcode, int[] xs, int[] ys, int n) {
+		int[] points = new int[2 * n];
+		System.arraycopy(xs, 0, points, 0, n);
+		System.arraycopy(ys, 0, points, n, n);
+		ensureCapacity(3);
+		_commands[_length++] = opcode;
+		_commands[_length++] = n;
+		_commands[_length++] = addObject(points);
+		_count++;
+	}
+
+	private void ensureCapacity(int ints) {
+		if (_length + ints > _commands.length) {
+			_commands = Arrays.copyOf(_commands, Math.max(_commands.length * 2, _length + ints));
+		}
+	}
+
+	private int addObject(Object object) {
+		if (_objectCount == _objects.length) {
+			_objects = Arrays.copyOf(_objects, _objects.length * 2);
+		}
+		_objects[_objectCount] = object;
+		return _objectCount++;
+	}
+
+	/*
+	 * Returns the index of the first command that differs from the other
+	 * painter's, or -1 if one recording is a prefix of the other.
+	 */
+	private int firstDifference(RecordingPainter other) {
+		int position = 0;
+		int command = 0;
+		while (position < _length && position < other._length) {
+			int opcode = _commands[position];
+			int arguments = ARGUMENTS[opcode];
+			if (other._commands[position] != opcode) {
+				return command;
+			}
+			for (int i = 1; i <= arguments; i++) {
+				int mine = _commands[position + i];
+				int theirs = other._commands[position + i];
+				if (i - 1 == OBJECT_ARGUMENT[opcode]) {
+					if (!sameObject(_objects[mine], other._objects[theirs], opcode)) {
+						return command;
+					}
+				} else if (mine != theirs) {
+					return command;
+				}
+			}
+			position += 1 + arguments;
+			command++;
+		}
+		return -1;
+	}
+
+	private static boolean sameObject(Object mine, Object theirs, int opcode) {
+		if (opcode == TEXT) {
+			return mine == null ? theirs == null : mine.equals(theirs);
+		} else if (opcode == POLYGON || opcode == FILLED_POLYGON) {
+			return Arrays.equals((int[]) mine, (int[]) theirs);
+		}
+		return mine == theirs;
+	}
+
+	// Returns the textual form of the specified command, "(none)" if absent.
+	private String describe(int command) {
+		int position = 0;
+		for (int i = 0; i < command && position < _length; i++) {
+			position += 1 + ARGUMENTS[_commands[position]];
+		}
+		if (position >= _length) {
+			return "(none)";
+		}
+		StringBuilder text = new StringBuilder();
+		render(position, text);
+		if (text.length() == 0) {
+			// Commands that MockPainter does not log.
+			int opcode = _commands[position];
+			text.append(opcode == TRANSLATE ? "(translate " : "(image ");
+			for (int i = 1; i <= ARGUMENTS[opcode]; i++) {
+				text.append(i > 1 ? "," : "").append(_commands[position + i]);
+			}
+			text.append(')');
+		}
+		return text.toString();
+	}
+
+	private void render(int position, StringBuilder log) {
+		int[] c = _commands;
+		int p = position;
+		switch (c[p]) {
+		case RECT:
+			log.append("(rectangle ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case OVAL:
+			log.append("(oval ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case LINE:
+			log.append("(line ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case FILLED_RECT:
+			log.append("(filledRect ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case COLOUR:
+			log.append("(colour ").append(new Color(c[p+1], true)).append(')');
+			break;
+		case FILLED_OVAL:
+			log.append("(filledOval ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case TEXT:
+			log.append("(text ").append(_objects[c[p+3]]).append(')');
+			break;
+		case HEXAGON:
+			log.append("(hexagon ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case DIAMOND:
+			log.append("(diamond ").append(c[p+1]).append(',').append(c[p+2]).append(',').append(c[p+3]).append(',').append(c[p+4]).append(')');
+			break;
+		case POLYGON:
+		case FILLED_POLYGON:
+			int[] points = (int[]) _objects[c[p+2]];
+			int n = c[p+1];
+			log.append(c[p] == POLYGON ? "(polygon" : "(filledPolygon");
+			for (int i = 0; i < n; i++) {
+				log.append(i == 0 ? ' ' : ',').append(points[i]).append(',').append(points[n + i]);
+			}
+			log.append(')');
+			break;
+		default:
+			// translate() and drawImage() are not part of the textual form.
+			break;
+		}
+	}
+}
@@ -55,4 +55,9 @@ public class RectangleShape extends Shape {
 	protected void doPaint(Painter painter) {
 		painter.drawRect(_x,_y,_width,_height);
 	}
+
+	@Override
+	protected int appearance() {
+		return FrameSnapshot.RECTANGLE;
+	}
 }
@@ -0,0 +1,88 @@
+package bounce;
+
+/**
+ * Layout of the binary scene files written by SceneWriter and read by
+ * SceneLoader. All numbers are big-endian.
+ *
+ * A file starts with a header:
+ *   int    MAGIC
+ *   short  VERSION
+ *   short  reserved, 0
+ *   int    width and int height of the model's bounds
+ *   int    number of Shapes, including the root
+ *
+ * followed by a record per Shape in pre-order (a parent before its
+ * children), starting with the root NestingShape:
+ *   byte   kind, one of the constants below
+ *   int    number of children, 0 unless a NestingShape
+ *   int    x, y, deltaX, deltaY, width, height
+ *   int    state of the subclass, see Shape.savedState()
+ *   int    colour, as ARGB, of a DynamicRectangleShape
+ *   int    text, an index into the string table, -1 for none
+ *   int    image source, likewise
+ *
+ * The string table is not stored separately: the first use of a string
+ * refers to the next unused index, and that index is followed by the
+ * string, as an int length and that many bytes of UTF-8. Later uses refer to
+ * the string by index alone. A file can therefore be written and read in one
+ * pass.
+ *
+ * @author Will Molloy
+ *
+ */
+final class SceneFormat {
+
+	static final int MAGIC = 0x424E4345;		// "BNCE"
+
+	static final short VERSION = 1;
+
+	static final int HEADER_BYTES = 20;
+
+	static final int RECORD_BYTES = 45;
+
+	static final int NO_STRING = -1;
+
+	// === Kinds of Shape.
+	static final byte RECTANGLE = 0;
+
+	static final byte OVAL = 1;
+
+	static final byte GEM = 2;
+
+	static final byte DYNAMIC_RECTANGLE = 3;
+
+	static final byte OVAL_AND_RECTANGLE = 4;
+
+	static final byte IMAGE_RECTANGLE = 5;
+
+	static final byte NESTING = 6;
+	// ===
+
+	private SceneFormat() {
+	}
+
+	/**
+	 * Returns the kind of shape, or -1 if its class cannot be saved. Only the
+	 * classes themselves are matched, not subclasses, since a subclass may
+	 * have state that the format does not hold.
+	 */
+	static byte kindOf(Shape shape) {
+		Class<?> type = shape.getClass();
+		if (type == RectangleShape.class) {
+			return RECTANGLE;
+		} else if (type == OvalShape.class) {
+			return OVAL;
+		} else if (type == GemShape.class) {
+			return GEM;
+		} else if (type == DynamicRectangleShape.class) {
+			return DYNAMIC_RECTANGLE;
+		} else if (type == OvalAndRectangleShape.class) {
+			return OVAL_AND_RECTANGLE;
+		} else if (type == ImageRectangleShape.class) {
+			return IMAGE_RECTANGLE;
+		} else if (type == NestingShape.class) {
+			return NESTING;
+		}
+		return -1;
+	}
+}
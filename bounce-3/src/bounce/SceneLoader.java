@@ -0,0 +1,314 @@
+package bounce;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Loads a ShapeModel from a scene file written by a SceneWriter.
+ *
+ * The file is memory-mapped and read in a single pass, building the tree of
+ * Shapes as it goes: each record names its kind, which selects a constructor
+ * directly, and the number of its children, so no lookups or reflection are
+ * needed per Shape. The Shapes are linked into the new model before it has
+ * any listeners, so no events are fired.
+ *
+ * Images are resolved from their sources by an ImageResolver, once for
+ * each source and size however many Shapes share them. Images that cannot
+ * be resolved are replaced by transparent images of the same size, so the
+ * rest of the scene still loads.
+ *
+ * @author Will Molloy
+ *
+ */
+public final class SceneLoader {
+
+	/**
+	 * Interface to be implemented by classes that turn the source of an
+	 * ImageRectangleShape's image back into the image.
+	 */
+	public interface ImageResolver {
+		/**
+		 * Returns the image from source, width by height pixels.
+		 * @throws IOException if the image cannot be loaded.
+		 */
+		Image resolve(String source, int width, int height) throws IOException;
+	}
+
+	/**
+	 * ImageResolver that reads sources as image files, scaling them to the
+	 * size required.
+	 */
+	public static final ImageResolver FILE_RESOLVER = new ImageResolver() {
+		@Override
+		public Image resolve(String source, int width, int height) throws IOException {
+			BufferedImage image = ImageIO.read(new File(source));
+			if (image == null) {
+				throw new IOException("Unsupported image format: " + source);
+			}
+			if (image.getWidth() == width && image.getHeight() == height) {
+				return image;
+			}
+			BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = scaled.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+			g.dispose();
+			return scaled;
+		}
+	};
+
+	private final ImageResolver _resolver;
+	private final Map<String, Image> _images = new HashMap<String, Image>();
+	private final List<String> _strings = new ArrayList<String>();
+
+	// Number of children of the NestingShape last read by readShape().
+	private int _children;
+
+	/**
+	 * Loads the scene in file, resolving images with FILE_RESOLVER.
+	 * @throws IOException if file cannot be read or is not a scene file.
+	 */
+	public static ShapeModel load(File file) throws IOException {
+		return load(file, FILE_RESOLVER);
+	}
+
+	/**
+	 * Loads the scene in file.
+	 * @throws IOException if file cannot be read or is not a scene file.
+	 */
+	public static ShapeModel load(File file, ImageResolver resolver) throws IOException {
+		MappedByteBuffer buffer;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Scene file too large: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			channel.close();		// The mapping stays valid.
+		}
+		try {
+			return new SceneLoader(resolver).readScene(buffer);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Corrupt scene file: " + file, e);
+		}
+	}
+
+	/*
+	 * Creates a SceneLoader that can read several scenes or trees of Shapes,
+	 * resolving each image only once.
+	 */
+	SceneLoader(ImageResolver resolver) {
+		_resolver = resolver;
+	}
+
+	/**
+	 * Reads a whole scene, header included, from buffer.
+	 * @throws IOException if buffer does not hold a scene.
+	 */
+	ShapeModel readScene(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < SceneFormat.HEADER_BYTES || buffer.getInt() != SceneFormat.MAGIC) {
+			throw new IOException("Not a scene file");
+		}
+		short version = buffer.getShort();
+		if (version != SceneFormat.VERSION) {
+			throw new IOException("Unsupported scene file version: " + version);
+		}
+		buffer.getShort();
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		ShapeModel model = new ShapeModel(new Dimension(width, height));
+		readTree(buffer, model.root());
+		return model;
+	}
+
+	/**
+	 * Reads a tree of Shapes written by SceneWriter.writeShapes() from
+	 * buffer, returning its root.
+	 * @throws IOException if buffer does not hold a tree of Shapes.
+	 */
+	Shape readShapes(ByteBuffer buffer) throws IOException {
+		return readTree(buffer, null);
+	}
+
+	// Reads a tree of Shapes in pre-order. The root's state is read into
+	// root if one is given, and its children are added to it.
+	private Shape readTree(ByteBuffer buffer, NestingShape root) throws IOException {
+		_strings.clear();
+		int count = buffer.getInt();
+		if (count < 1 || (long) count * SceneFormat.RECORD_BYTES > buffer.remaining()) {
+			throw new IOException("Corrupt scene file: " + count + " Shapes");
+		}
+		Shape first = readShape(buffer);
+		if (root != null) {
+			if (!(first instanceof NestingShape)) {
+				throw new IOException("Corrupt scene file: root is not a NestingShape");
+			}
+			root._x = first._x;
+			root._y = first._y;
+			root._deltaX = first._deltaX;
+			root._deltaY = first._deltaY;
+			root._width = first._width;
+			root._height = first._height;
+			root._text = first._text;
+		} else if (first instanceof NestingShape) {
+			root = (NestingShape) first;
+		}
+
+		// Parents whose children are still to be read, and how many remain.
+		NestingShape[] parents = new NestingShape[16];
+		int[] remaining = new int[16];
+		int top = 0;
+		if (root != null) {
+			parents[top] = root;
+			remaining[top++] = _children;
+		}
+
+		for (int i = 1; i < count; i++) {
+			while (top > 0 && remaining[top - 1] == 0) {
+				top--;
+			}
+			if (top == 0) {
+				throw new IOException("Corrupt scene file: Shape " + i + " has no parent");
+			}
+			Shape shape = readShape(buffer);
+			parents[top - 1].add(shape);
+			remaining[top - 1]--;
+
+			if (shape instanceof NestingShape) {
+				if (top == parents.length) {
+					parents = Arrays.copyOf(parents, top * 2);
+					remaining = Arrays.copyOf(remaining, top * 2);
+				}
+				parents[top] = (NestingShape) shape;
+				remaining[top++] = _children;
+			}
+		}
+		for (int i = 0; i < top; i++) {
+			if (remaining[i] != 0) {
+				throw new IOException("Corrupt scene file: missing Shapes");
+			}
+		}
+		return root != null ? root : first;
+	}
+
+	private Shape readShape(ByteBuffer buffer) throws IOException {
+		byte kind = buffer.get();
+		int children = buffer.getInt();
+		int x = buffer.getInt();
+		int y = buffer.getInt();
+		int deltaX = buffer.getInt();
+		int deltaY = buffer.getInt();
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int state = buffer.getInt();
+		int colour = buffer.getInt();
+		String text = readString(buffer);
+		String source = readString(buffer);
+
+		if (children != 0 && kind != SceneFormat.NESTING) {
+			throw new IOException("Corrupt scene file: Shape of kind " + kind + " has children");
+		}
+		Shape shape;
+		switch (kind) {
+		case SceneFormat.RECTANGLE:
+			shape = new RectangleShape(x, y, deltaX, deltaY, width, height, text);
+			break;
+		case SceneFormat.OVAL:
+			shape = new OvalShape(x, y, deltaX, deltaY, width, height, text);
+			break;
+		case SceneFormat.GEM:
+			shape = new GemShape(x, y, deltaX, deltaY, width, height, text);
+			break;
+		case SceneFormat.DYNAMIC_RECTANGLE:
+			shape = new DynamicRectangleShape(x, y, deltaX, deltaY, width, height, text, new Color(colour, true));
+			break;
+		case SceneFormat.OVAL_AND_RECTANGLE:
+			shape = new OvalAndRectangleShape(x, y, deltaX, deltaY, width, height, text);
+			break;
+		case SceneFormat.IMAGE_RECTANGLE:
+			shape = new ImageRectangleShape(deltaX, deltaY, image(source, width, height), source);
+			shape._x = x;
+			shape._y = y;
+			shape._text = text;
+			break;
+		case SceneFormat.NESTING:
+			if (children < 0) {
+				throw new IOException("Corrupt scene file: " + children + " children");
+			}
+			shape = new NestingShape(x, y, deltaX, deltaY, width, height, text);
+			_children = children;
+			break;
+		default:
+			throw new IOException("Corrupt scene file: unknown kind of Shape " + kind);
+		}
+		shape.restoreState(state);
+		return shape;
+	}
+
+	// Reads a string index, and the string itself on its first use.
+	private String readString(ByteBuffer buffer) throws IOException {
+		int index = buffer.getInt();
+		if (index == SceneFormat.NO_STRING) {
+			return null;
+		} else if (index == _strings.size()) {
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				throw new IOException("Corrupt scene file: string of " + length + " bytes");
+			}
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			String string = new String(bytes, StandardCharsets.UTF_8);
+			_strings.add(string);
+			return string;
+		} else if (index >= 0 && index < _strings.size()) {
+			return _strings.get(index);
+		}
+		throw new IOException("Corrupt scene file: string " + index);
+	}
+
+	// Resolves an image once per source and size.
+	private Image image(String source, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image size: " + width + "x" + height);
+		}
+		String key = width + "x" + height + ":" + (source == null ? "" : source);
+		Image image = _images.get(key);
+		if (image == null) {
+			if (source != null) {
+				try {
+					image = _resolver.resolve(source, width, height);
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Error loading image " + source + ": " + e.getMessage());
+				}
+			}
+			if (image == null || image.getWidth(null) != width || image.getHeight(null) != height) {
+				image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			}
+			_images.put(key, image);
+		}
+		return image;
+	}
+}
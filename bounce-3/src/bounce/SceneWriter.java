@@ -0,0 +1,213 @@
+package bounce;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saves the Shapes of a ShapeModel to a scene file, in the format described
+ * by SceneFormat, that a SceneLoader can load.
+ *
+ * Saving happens in two steps. snapshot() copies the state of every Shape
+ * into compact arrays while holding the model's lock, so the copy is taken
+ * between two ticks of a SimulationScheduler and delays the next tick only
+ * for as long as the copy takes. writeTo() then streams the copy out through
+ * a buffer, without holding the lock, while the simulation carries on.
+ *
+ * Image shapes are saved by reference: the source() of each
+ * ImageRectangleShape is written rather than its pixels.
+ *
+ * @author Will Molloy
+ *
+ */
+public final class SceneWriter {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Ints saved per Shape: children, x, y, deltaX, deltaY, width, height,
+	// state and colour.
+	private static final int VALUES = 9;
+
+	private final int _width;
+	private final int _height;
+	private final int _count;
+	private final byte[] _kinds;
+	private final int[] _values;
+	private final String[] _texts;
+	private final String[] _sources;
+
+	/**
+	 * Copies the state of model's Shapes, between ticks.
+	 * @throws IllegalArgumentException if the model holds a Shape of a class
+	 *         that cannot be saved, i.e. one not defined in this package.
+	 */
+	public static SceneWriter snapshot(ShapeModel model) throws IllegalArgumentException {
+		synchronized (model) {
+			Dimension bounds = model.bounds();
+			return new SceneWriter(model.root(), bounds.width, bounds.height);
+		}
+	}
+
+	/**
+	 * Copies the state of shape and, if it is a NestingShape, the Shapes
+	 * within it, for writeShapes(). Used by ModelJournal.
+	 * @throws IllegalArgumentException as snapshot() does.
+	 */
+	static SceneWriter of(Shape shape) throws IllegalArgumentException {
+		return new SceneWriter(shape, 0, 0);
+	}
+
+	/**
+	 * Saves model to file, overwriting it.
+	 * @throws IllegalArgumentException as snapshot() does.
+	 */
+	public static void save(ShapeModel model, File file) throws IOException, IllegalArgumentException {
+		snapshot(model).writeTo(file);
+	}
+
+	/*
+	 * Hidden constructor, called with the model's lock held.
+	 */
+	private SceneWriter(Shape root, int width, int height) {
+		_width = width;
+		_height = height;
+
+		byte[] kinds = new byte[INITIAL_CAPACITY];
+		int[] values = new int[INITIAL_CAPACITY * VALUES];
+		String[] texts = new String[INITIAL_CAPACITY];
+		String[] sources = new String[INITIAL_CAPACITY];
+		int count = 0;
+
+		Shape[] stack = new Shape[INITIAL_CAPACITY];
+		int top = 0;
+		stack[top++] = root;
+
+		while (top > 0) {
+			Shape shape = stack[--top];
+			byte kind = SceneFormat.kindOf(shape);
+			if (kind < 0) {
+				throw new IllegalArgumentException("Cannot save Shape: " + shape.getClass());
+			}
+			if (count == kinds.length) {
+				kinds = Arrays.copyOf(kinds, count * 2);
+				values = Arrays.copyOf(values, count * 2 * VALUES);
+				texts = Arrays.copyOf(texts, count * 2);
+				sources = Arrays.copyOf(sources, count * 2);
+			}
+			kinds[count] = kind;
+			texts[count] = shape._text;
+			int base = count * VALUES;
+			values[base + 1] = shape._x;
+			values[base + 2] = shape._y;
+			values[base + 3] = shape._deltaX;
+			values[base + 4] = shape._deltaY;
+			values[base + 5] = shape._width;
+			values[base + 6] = shape._height;
+			values[base + 7] = shape.savedState();
+			if (kind == SceneFormat.DYNAMIC_RECTANGLE) {
+				Color colour = shape.colour();
+				values[base + 8] = colour == null ? Color.BLACK.getRGB() : colour.getRGB();
+			} else if (kind == SceneFormat.IMAGE_RECTANGLE) {
+				sources[count] = ((ImageRectangleShape) shape).source();
+			} else if (kind == SceneFormat.NESTING) {
+				NestingShape nest = (NestingShape) shape;
+				int children = nest.shapeCount();
+				values[base] = children;
+				if (top + children > stack.length) {
+					stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + children));
+				}
+				// Push in reverse so that children are visited in order.
+				for (int i = children - 1; i >= 0; i--) {
+					stack[top++] = nest.shapeAt(i);
+				}
+			}
+			count++;
+		}
+
+		_count = count;
+		_kinds = kinds;
+		_values = values;
+		_texts = texts;
+		_sources = sources;
+	}
+
+	/**
+	 * Returns the number of Shapes copied, including the root.
+	 */
+	public int shapeCount() {
+		return _count;
+	}
+
+	/**
+	 * Writes the copied Shapes to file, overwriting it.
+	 */
+	public void writeTo(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the copied Shapes to out. out is flushed but not closed.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		data.writeInt(SceneFormat.MAGIC);
+		data.writeShort(SceneFormat.VERSION);
+		data.writeShort(0);
+		data.writeInt(_width);
+		data.writeInt(_height);
+		writeShapes(data);
+		data.flush();
+	}
+
+	/**
+	 * Writes the number of Shapes copied and their records, with a string
+	 * table of their own.
+	 */
+	void writeShapes(DataOutputStream data) throws IOException {
+		data.writeInt(_count);
+		Map<String, Integer> strings = new HashMap<String, Integer>();
+		for (int i = 0; i < _count; i++) {
+			data.writeByte(_kinds[i]);
+			int base = i * VALUES;
+			for (int j = 0; j < VALUES; j++) {
+				data.writeInt(_values[base + j]);
+			}
+			writeString(data, _texts[i], strings);
+			writeString(data, _sources[i], strings);
+		}
+	}
+
+	// Writes the index of string, followed by the string on its first use.
+	private static void writeString(DataOutputStream data, String string, Map<String, Integer> strings) throws IOException {
+		if (string == null) {
+			data.writeInt(SceneFormat.NO_STRING);
+			return;
+		}
+		Integer index = strings.get(string);
+		if (index != null) {
+			data.writeInt(index);
+			return;
+		}
+		data.writeInt(strings.size());
+		strings.put(string, strings.size());
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+}
@@ -1,6 +1,8 @@
 package bounce;
 
 import java.awt.Color;
+import java.awt.Image;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -48,6 +50,14 @@ public abstract class Shape {
 
 	// === Booleans for if a collision has occured 
 
+	static final int COLLIDED_NORTH = 1;
+
+	static final int COLLIDED_SOUTH = 2;
+
+	static final int COLLIDED_EAST = 4;
+
+	static final int COLLIDED_WEST = 8;
+
 	private boolean _shapeCollidedNorth;
 
 	private boolean _shapeCollidedSouth;
@@ -56,9 +66,14 @@ public abstract class Shape {
 
 	private boolean _shapeCollidedWest;
 
+	private boolean _shapeCollidedWithShape;
+
 	// === NestingShape and text support
 	protected NestingShape _parent = null;		
 
+	// Slot within _parent's children; maintained by NestingShape.
+	int _slotInParent;
+
 	protected String _text;
 
 	/**
@@ -119,6 +134,18 @@ public abstract class Shape {
 	 */
 	public final void move(int animationWidth, int animationHeight) {
 		
+		step(animationWidth, animationHeight);
+		
+		shapeHasMoved();
+	}
+
+	/**
+	 * Moves this Shape object within the specified bounds as move() does, 
+	 * but without calling the shapeHasMoved() hook. This allows a 
+	 * SimulationEngine to move a NestingShape's children itself.
+	 */
+	final void step(int animationWidth, int animationHeight) {
+		
 		getNextXAndYPositions();
 		setCollisionsToFalse();
 
@@ -135,8 +162,6 @@ public abstract class Shape {
 		}
 
 		updateXAndYPositions();
-		
-		shapeHasMoved();
 	}
 
 	private void getNextXAndYPositions() {
@@ -149,6 +174,7 @@ public abstract class Shape {
 		_shapeCollidedSouth = false;
 		_shapeCollidedEast = false;
 		_shapeCollidedWest = false;
+		_shapeCollidedWithShape = false;
 	}
 
 	private void updateXAndYPositions() {
@@ -196,12 +222,59 @@ public abstract class Shape {
 		_deltaX = -_deltaX;
 	}
 
+	/**
+	 * Sets this Shape's state to the result of a move computed elsewhere, e.g.
+	 * by a PackedSimulationEngine, so that the getters and the collision
+	 * queries answer as if move() had been called. The shapeHasMoved() hook
+	 * is not called; that is left to the caller.
+	 * @param collisions a combination of the COLLIDED_* bits.
+	 */
+	final void moved(int x, int y, int deltaX, int deltaY, int collisions) {
+		_x = _nextX = x;
+		_y = _nextY = y;
+		_deltaX = deltaX;
+		_deltaY = deltaY;
+		_shapeCollidedNorth = (collisions & COLLIDED_NORTH) != 0;
+		_shapeCollidedSouth = (collisions & COLLIDED_SOUTH) != 0;
+		_shapeCollidedEast = (collisions & COLLIDED_EAST) != 0;
+		_shapeCollidedWest = (collisions & COLLIDED_WEST) != 0;
+		_shapeCollidedWithShape = false;
+	}
+
+	/**
+	 * Records that this Shape has bounced off one or more sibling Shapes, so
+	 * that the collision queries describe those contacts rather than the
+	 * boundary collisions of the last move. A side collides when another
+	 * Shape was hit on that side, e.g. COLLIDED_EAST for a Shape to the
+	 * east. Used by CollisionDetector before it calls shapeHasMoved() again.
+	 * @param collisions a combination of the COLLIDED_* bits.
+	 */
+	final void contacted(int collisions) {
+		_shapeCollidedNorth = (collisions & COLLIDED_NORTH) != 0;
+		_shapeCollidedSouth = (collisions & COLLIDED_SOUTH) != 0;
+		_shapeCollidedEast = (collisions & COLLIDED_EAST) != 0;
+		_shapeCollidedWest = (collisions & COLLIDED_WEST) != 0;
+		_shapeCollidedWithShape = true;
+	}
+
 	/**
 	 *  Optional hook method for additional behaviour within bounce.Shape.move()
 	 */
 	protected void shapeHasMoved(){
 	}
 	
+	/**
+	 * Method to be called by subclasses for additional behaviour on a bounce
+	 * off another Shape rather than a boundary. When shape collisions are 
+	 * enabled on a ShapeModel, shapeHasMoved() is called a second time in a
+	 * tick on each Shape that bounced off a sibling; during that call this 
+	 * method returns true and the vertical/horizontal queries describe the
+	 * sides on which other Shapes were hit.
+	 */
+	protected boolean shapeCollidedWithAShape(){
+		return _shapeCollidedWithShape;
+	}
+
 	/**
 	 * Method to be called by subclasses for additional behaviour on a vertical bounce
 	 */
@@ -230,6 +303,25 @@ public abstract class Shape {
 		}
 	}
 
+	/**
+	 * Returns true if nothing this Shape paints can fall within clip, given
+	 * in its parent's coordinate system. Text may extend beyond a Shape's
+	 * bounds by an amount that depends on the font, so a Shape with text is
+	 * never outside.
+	 */
+	boolean isOutside(Rectangle clip) {
+		return _text == null && isOutside(clip, _x, _y, _width, _height);
+	}
+
+	/**
+	 * Returns true if an outline drawn at x, y with the specified width and
+	 * height, which covers pixels up to x + width and y + height inclusive,
+	 * misses clip.
+	 */
+	static boolean isOutside(Rectangle clip, int x, int y, int width, int height) {
+		return x + width < clip.x || y + height < clip.y || x >= clip.x + clip.width || y >= clip.y + clip.height;
+	}
+
 	/**
 	 * Method to be implemented by concrete subclasses to handle subclass
 	 * specific painting.
@@ -245,6 +337,103 @@ public abstract class Shape {
 		int shapeCentreY = _height/2 + _y;
 		painter.drawCenteredText(_text, shapeCentreX, shapeCentreY);
 	}
+	/**
+	 * Returns the kind of outline doPaint() draws, one of the FrameSnapshot
+	 * constants. Used to paint a FrameSnapshot in place of this Shape.
+	 * Subclasses that override doPaint() may override this and the other
+	 * appearance methods below to match; until they do, a FrameSnapshot 
+	 * paints them through doPaint().
+	 */
+	protected int appearance() {
+		return FrameSnapshot.CUSTOM;
+	}
+
+	/**
+	 * Returns true if the appearance methods describe what doPaint() paints,
+	 * that is if this Shape's class overrides appearance() in the class that
+	 * overrides doPaint() or in a subclass of it.
+	 */
+	final boolean hasAppearance() {
+		return HAS_APPEARANCE.get(getClass());
+	}
+
+	// Caches hasAppearance() for each Shape class.
+	private static final ClassValue<Boolean> HAS_APPEARANCE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			Class<?> painter = declarer(type, "doPaint", Painter.class);
+			Class<?> describer = declarer(type, "appearance");
+			return painter.isAssignableFrom(describer);
+		}
+	};
+
+	// Returns the class in which type's method name is declared.
+	private static Class<?> declarer(Class<?> type, String name, Class<?>... parameterTypes) {
+		for (Class<?> cls = type; cls != Shape.class; cls = cls.getSuperclass()) {
+			try {
+				cls.getDeclaredMethod(name, parameterTypes);
+				return cls;
+			} catch (NoSuchMethodException e) {
+				// Inherited.
+			}
+		}
+		return Shape.class;
+	}
+
+	/**
+	 * Paints this Shape as paint() does, but translated so that it appears
+	 * at x, y rather than at its own position. Used by FrameSnapshot to paint
+	 * Shapes whose appearance it does not record.
+	 */
+	final void paintAt(Painter painter, int x, int y) {
+		int dx = x - _x;
+		int dy = y - _y;
+		if (dx == 0 && dy == 0) {
+			paint(painter);
+			return;
+		}
+		painter.translate(dx, dy);
+		paint(painter);
+		painter.translate(-dx, -dy);
+	}
+
+	/**
+	 * Returns whether doPaint() currently fills this Shape's outline.
+	 */
+	protected boolean isFilled() {
+		return false;
+	}
+
+	/**
+	 * Returns the colour doPaint() currently sets before drawing, null if it
+	 * paints in the default colour.
+	 */
+	protected Color colour() {
+		return null;
+	}
+
+	/**
+	 * Returns the image doPaint() draws, null if it does not draw one.
+	 */
+	protected Image image() {
+		return null;
+	}
+
+	/**
+	 * Returns the state of a subclass that is not held in the fields of
+	 * Shape, packed into an int, so that a SceneWriter can save it. Shapes
+	 * with such state override this and restoreState() to match.
+	 */
+	int savedState() {
+		return 0;
+	}
+
+	/**
+	 * Restores state returned by savedState(). Used by SceneLoader.
+	 */
+	void restoreState(int state) {
+	}
+
 	/**
 	 * Returns whether this Shape object contains text or not
 	 */
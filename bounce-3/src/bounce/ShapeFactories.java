@@ -0,0 +1,114 @@
+package bounce;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Registry of the ShapeFactories of Shape subclasses, built once per class.
+ *
+ * A class's factory calls its public (int, int, int, int, int, int, String)
+ * constructor. The constructor is looked up once, and a factory that calls
+ * it directly is spun with LambdaMetafactory, so making a Shape costs no
+ * more than a constructor call. Classes that cannot be linked that way, e.g.
+ * ones loaded by a class loader that this package cannot see, get a factory
+ * that invokes the constructor's MethodHandle instead.
+ *
+ * Classes without a suitable constructor are reported by forClass() with an
+ * IllegalArgumentException, so that they can be rejected when they are
+ * configured rather than when a Shape is first made.
+ *
+ * @author Will Molloy
+ *
+ */
+public final class ShapeFactories {
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class,
+			int.class, int.class, int.class, int.class, int.class, int.class, String.class);
+
+	private static final MethodType CREATE_TYPE = CONSTRUCTOR_TYPE.changeReturnType(Shape.class);
+
+	// Factory of each class, or the reason there is none.
+	private static final ClassValue<Object> FACTORIES = new ClassValue<Object>() {
+		@Override
+		protected Object computeValue(Class<?> type) {
+			try {
+				return build(type.asSubclass(Shape.class));
+			} catch (ClassCastException e) {
+				return new IllegalArgumentException(type.getName() + " is not a Shape subclass");
+			} catch (IllegalArgumentException e) {
+				return e;
+			}
+		}
+	};
+
+	private ShapeFactories() {
+	}
+
+	/**
+	 * Returns the ShapeFactory of shapeClass.
+	 * @throws IllegalArgumentException if shapeClass is abstract or does not
+	 *         have a public (int, int, int, int, int, int, String) 
+	 *         constructor.
+	 */
+	public static ShapeFactory forClass(Class<? extends Shape> shapeClass) throws IllegalArgumentException {
+		Object factory = FACTORIES.get(shapeClass);
+		if (factory instanceof IllegalArgumentException) {
+			// A new exception, so that the stack trace is the caller's.
+			IllegalArgumentException e = (IllegalArgumentException) factory;
+			throw new IllegalArgumentException(e.getMessage(), e.getCause());
+		}
+		return (ShapeFactory) factory;
+	}
+
+	private static ShapeFactory build(Class<? extends Shape> shapeClass) throws IllegalArgumentException {
+		if (Modifier.isAbstract(shapeClass.getModifiers())) {
+			throw new IllegalArgumentException(shapeClass.getName() + " is abstract");
+		}
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle constructor;
+		try {
+			constructor = lookup.findConstructor(shapeClass, CONSTRUCTOR_TYPE);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalArgumentException(shapeClass.getName()
+					+ " has no public (int, int, int, int, int, int, String) constructor", e);
+		}
+
+		if (visibleFromHere(shapeClass)) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(lookup, "create",
+						MethodType.methodType(ShapeFactory.class), CREATE_TYPE,
+						constructor, constructor.type());
+				return (ShapeFactory) site.getTarget().invoke();
+			} catch (Throwable e) {
+				// Fall back on invoking the MethodHandle.
+			}
+		}
+		final MethodHandle handle = constructor.asType(CREATE_TYPE);
+		return new ShapeFactory() {
+			@Override
+			public Shape create(int x, int y, int deltaX, int deltaY, int width, int height, String text) {
+				try {
+					return (Shape) handle.invokeExact(x, y, deltaX, deltaY, width, height, text);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new UndeclaredThrowableException(e);
+				}
+			}
+		};
+	}
+
+	// Returns whether classes spun in this package can refer to shapeClass.
+	private static boolean visibleFromHere(Class<?> shapeClass) {
+		try {
+			return Class.forName(shapeClass.getName(), false, ShapeFactories.class.getClassLoader()) == shapeClass;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package bounce;
+
+/**
+ * Interface to be implemented by objects that make instances of a Shape
+ * subclass from the standard seven constructor arguments. ShapeFactories
+ * builds ShapeFactories for classes named at run-time that call their
+ * constructors directly, without reflection.
+ *
+ * @author Will Molloy
+ *
+ */
+public interface ShapeFactory {
+	/**
+	 * Returns a new Shape with the specified position, speed, size and text.
+	 */
+	Shape create(int x, int y, int deltaX, int deltaY, int width, int height, String text);
+}
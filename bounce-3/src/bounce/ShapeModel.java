@@ -1,8 +1,14 @@
 package bounce;
 
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Class to represent a shape composition. Classes whose instances are 
@@ -13,6 +19,11 @@ import java.util.List;
  * move() request) the ShapeModel notifies all registered listeners by firing a
  * ShapeModelEvent.
  * 
+ * The methods that change the model, or that query it through its spatial
+ * index, are synchronized on the ShapeModel, and listeners are notified 
+ * while its lock is held. A SimulationScheduler can therefore clock the
+ * model on its own thread while the GUI adds and removes Shapes.
+ * 
  * @author Ian Warren
  *
  */
@@ -27,6 +38,35 @@ public class ShapeModel {
 	// List of ShapeModelListeners.
 	private List<ShapeModelListener> _listeners;
 	
+	// ShapeMoved event fired by clock(); it is the same for every tick.
+	private ShapeModelEvent _movedEvent;
+	
+	// Optional engine that clock() delegates to, null to use Shape.move().
+	private SimulationEngine _engine;
+	
+	// Number of clock() calls made so far.
+	private volatile long _ticks;
+	
+	// Most recently published FrameSnapshot, null unless snapshots are enabled.
+	private volatile FrameSnapshot _snapshot;
+	private boolean _snapshotsEnabled;
+	
+	// Whether Shapes have been added or removed since _snapshot was taken.
+	private boolean _snapshotStale;
+	
+	// Index for hit-testing queries, created by the first query.
+	private SpatialIndex _spatialIndex;
+	
+	// Collision phase between sibling Shapes, null unless enabled.
+	private CollisionDetector _collisionDetector;
+	
+	// Number of open transactions, and the events fired while one is open.
+	private int _transactionDepth;
+	private TransactionBuffer _transactionBuffer;
+	
+	// Journal that records changes and ticks, null unless one is attached.
+	private ModelJournal _journal;
+	
 	
 	/**
 	 * Creates a ShapeModel with specified height and width bounds.
@@ -44,6 +84,13 @@ public class ShapeModel {
 		return _root;
 	}
 	
+	/**
+	 * Returns the bounds within which this ShapeModel's Shapes move.
+	 */
+	public Dimension bounds() {
+		return new Dimension(_bounds);
+	}
+	
 	/**
 	 * Attempts to add a new Shape to a specified NestingShape held within the
 	 * ShapeModel. If the shape cannot be added, no action is taken and this 
@@ -55,11 +102,15 @@ public class ShapeModel {
 	 * @param shape the new shape to add to this ShapeModel.
 	 * @param parent the intended parent of the new shape.
 	 */
-	public boolean add(Shape shape, NestingShape parent) {
+	public synchronized boolean add(Shape shape, NestingShape parent) {
 		boolean success = true;
 		
 		try {
 			parent.add(shape);
+			structureChanged();
+			if(_journal != null) {
+				_journal.added(shape);
+			}
 			
 			// Fire event.
  			fire(ShapeModelEvent.makeShapeAddedEvent(shape, this));
@@ -77,51 +128,428 @@ public class ShapeModel {
 	 * ShapeModelEvent.
 	 * @param shape the Shape to remove.
 	 */
-	public void remove(Shape shape) {
+	public synchronized void remove(Shape shape) {
 		// Remove shape from its parent.
 		NestingShape parent = shape.parent();
 		
 		if(parent != null) {
 			int index = parent.indexOf(shape);
+			if(_journal != null) {
+				_journal.removing(parent, index);
+			}
 			parent.remove(shape);
+			structureChanged();
 		
 			// Fire event.
 			fire(ShapeModelEvent.makeShapeRemovedEvent(shape, parent, index, this));
 		}
 	}
 
+	/**
+	 * Attempts to add each of the specified Shapes to a NestingShape held 
+	 * within the ShapeModel, in order. Shapes that cannot be added, for the
+	 * reasons given for add(), are skipped. A single ShapesAdded event 
+	 * describing all of the Shapes added is fired to registered listeners;
+	 * no event is fired if none could be added.
+	 * @param shapes the new shapes to add to this ShapeModel.
+	 * @param parent the intended parent of the new shapes.
+	 * @return true if every shape was added.
+	 */
+	public synchronized boolean addAll(Collection<? extends Shape> shapes, NestingShape parent) {
+		Shape[] added = new Shape[shapes.size()];
+		int[] indices = new int[shapes.size()];
+		int count = 0;
+		
+		for(Shape shape : shapes) {
+			try {
+				parent.add(shape);
+				added[count] = shape;
+				indices[count++] = parent.shapeCount() - 1;
+				if(_journal != null) {
+					_journal.added(shape);
+				}
+			} catch(IllegalArgumentException e) {
+				// Skip the shape.
+			}
+		}
+		if(count > 0) {
+			structureChanged();
+			
+			// Fire event.
+			fire(count == 1 
+					? ShapeModelEvent.makeShapeAddedEvent(added[0], this)
+					: ShapeModelEvent.makeShapesAddedEvent(
+							Arrays.copyOf(added, count), parent, Arrays.copyOf(indices, count), this));
+		}
+		return count == shapes.size();
+	}
+	
+	/**
+	 * Removes each of the specified Shapes from this ShapeModel instance. 
+	 * Shapes that do not have a parent are ignored. The children of each 
+	 * NestingShape are removed in a single pass, and one ShapesRemoved event 
+	 * per former parent, in the order in which the parents are first met in
+	 * shapes, is fired to registered listeners.
+	 * @param shapes the Shapes to remove.
+	 */
+	public synchronized void removeAll(Collection<? extends Shape> shapes) {
+		// Group the shapes by parent.
+		Map<NestingShape, List<Shape>> children = new IdentityHashMap<NestingShape, List<Shape>>();
+		List<NestingShape> parents = new ArrayList<NestingShape>();
+		for(Shape shape : shapes) {
+			NestingShape parent = shape.parent();
+			if(parent != null) {
+				List<Shape> siblings = children.get(parent);
+				if(siblings == null) {
+					siblings = new ArrayList<Shape>();
+					children.put(parent, siblings);
+					parents.add(parent);
+				}
+				siblings.add(shape);
+			}
+		}
+		
+		for(NestingShape parent : parents) {
+			List<Shape> siblings = children.get(parent);
+			int[] indices = new int[siblings.size()];
+			for(int i = 0; i < indices.length; i++) {
+				indices[i] = parent.indexOf(siblings.get(i));
+			}
+			Arrays.sort(indices);
+			
+			// Drop duplicates and look the shapes up in index order.
+			int count = 0;
+			for(int i = 0; i < indices.length; i++) {
+				if(count == 0 || indices[i] != indices[count - 1]) {
+					indices[count++] = indices[i];
+				}
+			}
+			Shape[] removed = new Shape[count];
+			for(int i = 0; i < count; i++) {
+				removed[i] = parent.shapeAt(indices[i]);
+			}
+			if(_journal != null) {
+				// Last first, so that each index is still valid on replay.
+				for(int i = count - 1; i >= 0; i--) {
+					_journal.removing(parent, indices[i]);
+				}
+			}
+			parent.removeAt(indices, count);
+			structureChanged();
+			
+			// Fire event.
+			fire(count == 1
+					? ShapeModelEvent.makeShapeRemovedEvent(removed[0], parent, indices[0], this)
+					: ShapeModelEvent.makeShapesRemovedEvent(removed, parent, Arrays.copyOf(indices, count), this));
+		}
+	}
+	
+	/**
+	 * Opens a transaction. Until it is closed, the additions and removals 
+	 * reported by this ShapeModel are held back; closing it fires them in 
+	 * order, with each run of consecutive additions to (or removals from) 
+	 * the same NestingShape aggregated into one ShapesAdded (or 
+	 * ShapesRemoved) event. The ShapeMoved and ShapesCollided events fired
+	 * by clock() are not held back, so that the animation carries on while
+	 * a transaction is open on another thread; they may be received before
+	 * the additions and removals made earlier in the transaction.
+	 * A view can then update itself once for a whole batch of changes:
+	 * <pre>
+	 * try(ShapeModel.Transaction transaction = model.beginTransaction()) {
+	 *     ...
+	 * }
+	 * </pre>
+	 * Transactions may be nested; events are fired when the outermost one 
+	 * is closed. Removals of single Shapes are aggregated in time that grows
+	 * with the size of the run, so removeAll() is preferable for large 
+	 * batches.
+	 * @see TransactionBuffer
+	 */
+	public synchronized Transaction beginTransaction() {
+		if(_transactionBuffer == null) {
+			_transactionBuffer = new TransactionBuffer(this);
+		}
+		_transactionDepth++;
+		return new Transaction();
+	}
+	
+	/**
+	 * A transaction opened by beginTransaction(). Closing it more than once
+	 * has no further effect.
+	 */
+	public final class Transaction implements AutoCloseable {
+		private boolean _closed;
+		
+		private Transaction() {
+		}
+		
+		/**
+		 * Closes this transaction, firing the events held back by it if it 
+		 * is the outermost one.
+		 */
+		@Override
+		public void close() {
+			synchronized(ShapeModel.this) {
+				if(_closed) {
+					return;
+				}
+				_closed = true;
+				if(--_transactionDepth == 0) {
+					for(ShapeModelEvent event : _transactionBuffer.drain()) {
+						fire(event);
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Progresses the animation. Calling this method causes each Shape in this 
 	 * ShapeModel to move before notifying each registered ShapeModelListener 
 	 * of the movement. Note that a clock() call results in ONE ShapeModelEvent
-	 * being fired; the event identifies the root NestingShape.
+	 * being fired; the event identifies the root NestingShape. If shape 
+	 * collisions are enabled and Shapes bounced off each other, a 
+	 * ShapesCollided event follows it.
 	 */
-	public void clock() {
-		_root.move(_bounds.width, _bounds.height);
+	public synchronized void clock() {
+		if(_engine == null) {
+			_root.move(_bounds.width, _bounds.height);
+		} else {
+			_engine.tick(_root, _bounds.width, _bounds.height);
+		}
+		int contacts = 0;
+		if(_collisionDetector != null) {
+			contacts = _collisionDetector.detect(_root);
+			if(contacts > 0 && _engine != null) {
+				_engine.stateChanged();
+			}
+		}
+		_ticks++;
+		if(_journal != null) {
+			_journal.clocked(_ticks);
+		}
+		
+		if(_spatialIndex != null) {
+			_spatialIndex.update();
+		}
+		if(_snapshotsEnabled) {
+			publishSnapshot();
+		}
 		
 		// Fire event.
-		fire(ShapeModelEvent.makeShapeMovedEvent(_root, this));
+		if(_movedEvent == null) {
+			_movedEvent = ShapeModelEvent.makeShapeMovedEvent(_root, this);
+		}
+		fire(_movedEvent);
+		if(contacts > 0) {
+			fire(ShapeModelEvent.makeShapesCollidedEvent(_collisionDetector.contacts(), this));
+		}
+	}
+
+	/**
+	 * Returns the number of clock() calls made on this ShapeModel.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+	
+	/*
+	 * Sets the number of clock() calls made, for a ShapeModel rebuilt by
+	 * ModelJournal.replay().
+	 */
+	void setTicks(long ticks) {
+		_ticks = ticks;
+	}
+	
+	/**
+	 * Attaches a ModelJournal that records the Shapes added to and removed 
+	 * from this ShapeModel, and its ticks, so that the model can later be
+	 * rebuilt as it was at any tick. Any journal attached before is 
+	 * detached. The journal starts with a checkpoint of the model's current
+	 * state.
+	 * @param journal the journal, or null to stop recording.
+	 * @throws IllegalStateException if journal is attached to another 
+	 *         ShapeModel.
+	 */
+	public synchronized void setJournal(ModelJournal journal) throws IllegalStateException {
+		if(journal != null) {
+			journal.attach(this);
+		}
+		if(_journal != null && _journal != journal) {
+			_journal.detach();
+		}
+		_journal = journal;
+	}
+	
+	/**
+	 * Enables or disables the publication of a FrameSnapshot after each 
+	 * clock() call. While enabled, views can paint snapshot() from any 
+	 * thread instead of reading the live Shapes.
+	 */
+	public synchronized void setSnapshotsEnabled(boolean enabled) {
+		_snapshotsEnabled = enabled;
+		if(enabled) {
+			publishSnapshot();
+		} else {
+			_snapshot = null;
+		}
+	}
+	
+	/**
+	 * Returns the FrameSnapshot taken at the end of the most recent clock()
+	 * call, or null if snapshots are not enabled. Shapes added or removed 
+	 * since that call appear in the next snapshot. 
+	 */
+	public FrameSnapshot snapshot() {
+		return _snapshot;
+	}
+	
+	/**
+	 * Takes a FrameSnapshot of the model's current state and publishes it 
+	 * so that subsequent snapshot() calls return it. clock() calls this 
+	 * when snapshots are enabled; other callers can use it to publish 
+	 * structural changes without waiting for the next tick.
+	 */
+	public synchronized void publishSnapshot() {
+		// A single volatile write swaps the complete frame in. Until the 
+		// composition changes, each frame shares the structure of the last.
+		FrameSnapshot last = _snapshot;
+		_snapshot = last != null && !_snapshotStale ? last.next(_ticks) : FrameSnapshot.of(_root, _ticks);
+		_snapshotStale = false;
+	}
+	
+	/**
+	 * Enables or disables the collision phase that makes sibling Shapes
+	 * (children of the same NestingShape) bounce off each other during 
+	 * clock(). Shape collisions are disabled by default.
+	 * @see CollisionDetector
+	 */
+	public synchronized void setShapeCollisionsEnabled(boolean enabled) {
+		_collisionDetector = enabled ? new CollisionDetector() : null;
+		if(_journal != null) {
+			_journal.collisionsChanged(enabled);
+		}
+	}
+	
+	/**
+	 * Returns true if sibling Shapes bounce off each other during clock().
+	 */
+	public boolean shapeCollisionsEnabled() {
+		return _collisionDetector != null;
+	}
+	
+	/**
+	 * Returns the topmost Shape (the one painted last) whose bounds contain
+	 * the point (x, y), or null if there is no such Shape. Coordinates are
+	 * absolute, i.e. relative to the origin of the animation rather than to
+	 * a Shape's parent. The root NestingShape is never returned.
+	 * 
+	 * The first query builds a spatial index of the model, which clock() 
+	 * then keeps up to date, so queries stay fast for large models. Queries 
+	 * are synchronized on this ShapeModel, so they may be made on any thread,
+	 * such as the event dispatch thread while a SimulationScheduler clocks 
+	 * the model, and answer for the positions left by the last clock(). The
+	 * Shapes returned go on moving, so their state should then be read while
+	 * holding the ShapeModel's lock, or from a FrameSnapshot.
+	 */
+	public synchronized Shape shapeAt(int x, int y) {
+		return spatialIndex().shapeAt(x, y);
+	}
+	
+	/**
+	 * Returns the Shapes whose bounds intersect area, given in absolute 
+	 * coordinates, in the order in which they are painted. The root 
+	 * NestingShape is never included.
+	 * @see #shapeAt(int, int)
+	 */
+	public synchronized List<Shape> shapesIn(Rectangle area) {
+		return spatialIndex().shapesIn(area);
+	}
+	
+	/**
+	 * Sets the SimulationEngine that clock() uses to move the model's Shapes.
+	 * Passing null restores the default behaviour of calling move() on the 
+	 * root NestingShape.
+	 */
+	public synchronized void setSimulationEngine(SimulationEngine engine) {
+		_engine = engine;
+		structureChanged();
+	}
+	
+	/**
+	 * Returns the SimulationEngine used by clock(), null if none is set.
+	 */
+	public SimulationEngine simulationEngine() {
+		return _engine;
 	}
 
 	/**
 	 * Registers a ShapeModelListener on this ShapeModel object.
 	 */
-	public void addShapeModelListener(ShapeModelListener listener) {
+	public synchronized void addShapeModelListener(ShapeModelListener listener) {
 		_listeners.add(listener);
 	}
 	
+	/**
+	 * Registers a ShapeModelListener on this ShapeModel object that is 
+	 * notified through the specified Executor, and that receives at most
+	 * maxUpdatesPerSecond ShapeMoved events per second. ShapeMoved events
+	 * fired while the listener is behind are coalesced so that it receives
+	 * only the latest; events of every other type are all delivered, in 
+	 * order.
+	 * @see CoalescingShapeModelListener
+	 */
+	public synchronized void addShapeModelListener(ShapeModelListener listener, int maxUpdatesPerSecond, Executor executor) {
+		_listeners.add(new CoalescingShapeModelListener(listener, maxUpdatesPerSecond, executor));
+	}
+	
 	/**
 	 * Deregisters a ShapeModelListener from this ShapeModel object.
 	 */
-	public void removeShapeModelListener(ShapeModelListener listener) {
-		_listeners.remove(listener);
+	public synchronized void removeShapeModelListener(ShapeModelListener listener) {
+		for(int i = 0; i < _listeners.size(); i++) {
+			ShapeModelListener registered = _listeners.get(i);
+			if(registered == listener || (registered instanceof CoalescingShapeModelListener 
+					&& ((CoalescingShapeModelListener)registered).target() == listener)) {
+				_listeners.remove(i);
+				return;
+			}
+		}
+	}
+	
+	/*
+	 * Tells the SimulationEngine and SpatialIndex, if any, that the 
+	 * composition has changed, as the next snapshot must be told too.
+	 */
+	private void structureChanged() {
+		_snapshotStale = true;
+		if(_engine != null) {
+			_engine.structureChanged();
+		}
+		if(_spatialIndex != null) {
+			_spatialIndex.structureChanged();
+		}
+	}
+	
+	private SpatialIndex spatialIndex() {
+		if(_spatialIndex == null) {
+			_spatialIndex = new SpatialIndex(_root);
+		}
+		return _spatialIndex;
 	}
 	
 	/*
 	 * Iterates through registered ShapeModelListeners and fires a 
-	 * ShapeModelEvent to each in turn.
+	 * ShapeModelEvent to each in turn, or holds an addition or removal back
+	 * if a transaction is open.
 	 */
 	private void fire(ShapeModelEvent event) {
+		ShapeModelEvent.EventType type = event.eventType();
+		boolean clockEvent = type == ShapeModelEvent.EventType.ShapeMoved || type == ShapeModelEvent.EventType.ShapesCollided;
+		if(_transactionDepth > 0 && !clockEvent) {
+			_transactionBuffer.add(event);
+			return;
+		}
 		for(ShapeModelListener listener : _listeners) {
 			listener.update(event);
 		}
@@ -11,7 +11,7 @@ package bounce;
 public class ShapeModelEvent {
 
 	// Set of event types.
-	public enum EventType {ShapeAdded, ShapeRemoved, ShapeMoved};
+	public enum EventType {ShapeAdded, ShapeRemoved, ShapeMoved, ShapesCollided, ShapesAdded, ShapesRemoved};
 	
 	private EventType _type;      // Type of event.
 	private Shape _operand;       // Shape to which the event relates.
@@ -21,6 +21,15 @@ public class ShapeModelEvent {
 	private NestingShape _parent; // Parent NestingShape of fOperand; for 
 	                              // ShapeRemoved events this is the former 
 	                              // parent of fOperand.
+	private Shape[] _contacts;    // Pairs of Shapes that bounced off each 
+	                              // other, for ShapesCollided events only.
+	private Shape[] _operands;    // Shapes added or removed, and their 
+	private int[] _indices;       // indices within _parent, for structural
+	                              // events only.
+	private int _previousChildCount = -1;
+	                              // Children of _parent before the Shapes
+	                              // were added or removed, -1 for other
+	                              // events.
 	                    
 	/**
 	 * Creates a ShapeAdded ShapeModelEvent.
@@ -69,6 +78,81 @@ public class ShapeModelEvent {
 		return new ShapeModelEvent(EventType.ShapeMoved, shapeMoved, parent, index, source);
 	}
 	
+	/**
+	 * Creates a ShapesCollided ShapeModelEvent, which reports the Shapes that
+	 * bounced off each other during a clock() call. The event's operand is 
+	 * the root NestingShape.
+	 * @param contacts pairs of Shapes that collided: the Shapes at 2i and 
+	 * 2i+1 bounced off each other.
+	 * @param source the ShapeModel object that fires the event.
+	 */
+	public static ShapeModelEvent makeShapesCollidedEvent(
+			Shape[] contacts, ShapeModel source) {
+		ShapeModelEvent event = new ShapeModelEvent(EventType.ShapesCollided, source.root(), null, -1, source);
+		event._contacts = contacts;
+		return event;
+	}
+	
+	/**
+	 * Creates a ShapesAdded ShapeModelEvent, which reports several Shapes 
+	 * added to the same NestingShape at once.
+	 * @param shapesAdded the Shapes that have been added to a ShapeModel.
+	 * @param parent the NestingShape that the Shapes have been added to.
+	 * @param indices the index positions of the Shapes within parent, in 
+	 * ascending order.
+	 * @param source the ShapeModel object that fires the event.
+	 */
+	public static ShapeModelEvent makeShapesAddedEvent(
+			Shape[] shapesAdded, NestingShape parent, int[] indices, ShapeModel source) {
+		return makeShapesAddedEvent(shapesAdded, parent, indices, parent.shapeCount() - shapesAdded.length, source);
+	}
+	
+	/*
+	 * Creates a ShapesAdded ShapeModelEvent after later changes to parent, 
+	 * given the number of children it had before the Shapes were added.
+	 */
+	static ShapeModelEvent makeShapesAddedEvent(
+			Shape[] shapesAdded, NestingShape parent, int[] indices, int previousChildCount, ShapeModel source) {
+		ShapeModelEvent event = new ShapeModelEvent(
+				EventType.ShapesAdded, shapesAdded[0], parent, indices[0], source);
+		event._operands = shapesAdded;
+		event._indices = indices;
+		event._previousChildCount = previousChildCount;
+		return event;
+	}
+	
+	/**
+	 * Creates a ShapesRemoved ShapeModelEvent, which reports several Shapes 
+	 * removed from the same NestingShape at once.
+	 * @param shapesRemoved the Shapes that have been removed from a 
+	 * ShapeModel.
+	 * @param formerParent the former parent of the Shapes.
+	 * @param indices the index positions that the Shapes used to be stored 
+	 * at within formerParent before any of them was removed, in ascending 
+	 * order.
+	 * @param source the ShapeModel object that fires the event.
+	 */
+	public static ShapeModelEvent makeShapesRemovedEvent(
+			Shape[] shapesRemoved, NestingShape formerParent, int[] indices, ShapeModel source) {
+		return makeShapesRemovedEvent(shapesRemoved, formerParent, indices, 
+				formerParent.shapeCount() + shapesRemoved.length, source);
+	}
+	
+	/*
+	 * Creates a ShapesRemoved ShapeModelEvent after later changes to 
+	 * formerParent, given the number of children it had before the Shapes
+	 * were removed.
+	 */
+	static ShapeModelEvent makeShapesRemovedEvent(
+			Shape[] shapesRemoved, NestingShape formerParent, int[] indices, int previousChildCount, ShapeModel source) {
+		ShapeModelEvent event = new ShapeModelEvent(
+				EventType.ShapesRemoved, shapesRemoved[0], formerParent, indices[0], source);
+		event._operands = shapesRemoved;
+		event._indices = indices;
+		event._previousChildCount = previousChildCount;
+		return event;
+	}
+	
 	/*
 	 * Hidden constructor used by the static factory methods. 
 	 */
@@ -78,18 +162,28 @@ public class ShapeModelEvent {
 		_parent = parent;
 		_index = index;
 		_source = source;
+		if(type == EventType.ShapeAdded) {
+			_operands = new Shape[] {operand};
+			_indices = new int[] {index};
+			_previousChildCount = parent.shapeCount() - 1;
+		} else if(type == EventType.ShapeRemoved) {
+			_operands = new Shape[] {operand};
+			_indices = new int[] {index};
+			_previousChildCount = parent.shapeCount() + 1;
+		}
 	}
 	
 	/**
 	 * Returns the type of the event, one of ShapeAdded, ShapeRemoved, 
-	 * ShapeMoved.
+	 * ShapeMoved, ShapesCollided, ShapesAdded, ShapesRemoved.
 	 */
 	public EventType eventType() {		
 		return _type;
 	}
 	
 	/**
-	 * Returns the Shape object to which this ShapeModelEvent applies.
+	 * Returns the Shape object to which this ShapeModelEvent applies. For
+	 * ShapesAdded and ShapesRemoved events this is the first of operands().
 	 */
 	public Shape operand() {
 		return _operand;
@@ -117,10 +211,50 @@ public class ShapeModelEvent {
 	 * Returns the index position of the Shape object returned by operand()
 	 * within its NestingShape parent. If the type of this ShapeModelEvent is
 	 * ShapeRemoved, this method returns the position the Shape occupied within
-	 * its parent before it was removed.
+	 * its parent before it was removed. For ShapesAdded and ShapesRemoved 
+	 * events this is the first of indices().
 	 * @return
 	 */
 	public int index() {
 		return _index;
 	}
+	
+	/**
+	 * Returns the Shapes added or removed if this is a ShapeAdded, 
+	 * ShapeRemoved, ShapesAdded or ShapesRemoved event, in the order of 
+	 * indices(). Returns null for other types of event.
+	 */
+	public Shape[] operands() {
+		return _operands;
+	}
+	
+	/**
+	 * Returns the index positions of the Shapes returned by operands() 
+	 * within parent(), in ascending order. As with index(), for removals 
+	 * these are the positions the Shapes occupied before any of them was
+	 * removed. Returns null for other types of event.
+	 */
+	public int[] indices() {
+		return _indices;
+	}
+	
+	/**
+	 * Returns the number of children parent() had before the Shapes returned
+	 * by operands() were added or removed, so that listeners need not work 
+	 * it out from parent() after later changes to it. Returns -1 for other
+	 * types of event. The static factory methods take it from parent(), so
+	 * structural events must be made as soon as the change is made.
+	 */
+	public int previousChildCount() {
+		return _previousChildCount;
+	}
+	
+	/**
+	 * Returns the pairs of Shapes that bounced off each other if this is a 
+	 * ShapesCollided event: the Shapes at 2i and 2i+1 collided. Returns null
+	 * for other types of event.
+	 */
+	public Shape[] contacts() {
+		return _contacts;
+	}
 }
@@ -0,0 +1,36 @@
+package bounce;
+
+/**
+ * Interface to be implemented by classes that can progress the animation of a
+ * ShapeModel. A ShapeModel configured with a SimulationEngine delegates its
+ * clock() processing to the engine rather than calling move() on its root
+ * NestingShape. Implementations must produce the same Shape state as
+ * Shape.move() would.
+ *
+ * @author Will Molloy
+ *
+ */
+public interface SimulationEngine {
+
+	/**
+	 * Moves every Shape within the composition rooted at root by one step.
+	 * @param root the root NestingShape of the ShapeModel.
+	 * @param width width of the two-dimensional world the root moves in.
+	 * @param height height of the two-dimensional world the root moves in.
+	 */
+	void tick(NestingShape root, int width, int height);
+
+	/**
+	 * Notifies this SimulationEngine that Shapes have been added to or
+	 * removed from the composition, so that any cached structure must be
+	 * rebuilt before the next tick() call.
+	 */
+	void structureChanged();
+
+	/**
+	 * Notifies this SimulationEngine that the position or velocity of Shapes
+	 * has been changed since the last tick() call other than by the engine,
+	 * e.g. by a CollisionDetector, so that any cached state must be reread.
+	 */
+	void stateChanged();
+}
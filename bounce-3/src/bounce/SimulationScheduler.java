@@ -0,0 +1,221 @@
+package bounce;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs ShapeModel.clock() at a fixed tick rate on a dedicated thread, so that
+ * the speed of the simulation does not depend on how quickly the Swing event
+ * dispatch thread, or any other view, keeps up.
+ *
+ * Ticks are due at fixed intervals. When the thread wakes up late, e.g.
+ * because clock() took longer than an interval or the thread was not
+ * scheduled, it runs the overdue ticks back to back to catch up, but no more
+ * than maxStepsPerFrame of them at once. Ticks that are still overdue after
+ * that are dropped: the schedule moves forward without running them, and
+ * the simulation slows down rather than spiralling further behind. Ticks
+ * that start more than an interval after they were due are counted as late,
+ * and dropped ticks as dropped.
+ *
+ * Views that paint at a different rate than the ticks can interpolate
+ * between the FrameSnapshots of the last two ticks; simulationTime() tells
+ * them how far the simulation has progressed between ticks. Rendering
+ * one tick behind simulationTime() keeps motion smooth at any display rate.
+ *
+ * ShapeModel's mutating methods are synchronized, so Shapes can be added and
+ * removed on other threads while the scheduler runs.
+ *
+ * @author Will Molloy
+ *
+ */
+public class SimulationScheduler {
+
+	/**
+	 * Default number of overdue ticks that are run back to back.
+	 */
+	public static final int DEFAULT_MAX_STEPS_PER_FRAME = 5;
+
+	private final ShapeModel _model;
+	private final long _periodNanos;
+	private final int _maxStepsPerFrame;
+
+	private Thread _thread;
+	private volatile boolean _running;
+
+	// Statistics, written by the scheduler thread only.
+	private volatile long _ticks;
+	private volatile long _lateTicks;
+	private volatile long _droppedTicks;
+
+	// Model tick count after the last tick, and the time that tick was due.
+	// Guarded by this.
+	private long _lastTick;
+	private long _lastTickNanos;
+
+	/**
+	 * Creates a SimulationScheduler that clocks model ticksPerSecond times a
+	 * second, running at most DEFAULT_MAX_STEPS_PER_FRAME overdue ticks at
+	 * once.
+	 * @throws IllegalArgumentException if ticksPerSecond is not positive.
+	 */
+	public SimulationScheduler(ShapeModel model, int ticksPerSecond) throws IllegalArgumentException {
+		this(model, ticksPerSecond, DEFAULT_MAX_STEPS_PER_FRAME);
+	}
+
+	/**
+	 * Creates a SimulationScheduler.
+	 * @param model the ShapeModel to clock.
+	 * @param ticksPerSecond the number of clock() calls to make per second.
+	 * @param maxStepsPerFrame the most overdue ticks to run back to back
+	 *        before dropping the rest.
+	 * @throws IllegalArgumentException if ticksPerSecond or maxStepsPerFrame
+	 *         is not positive.
+	 */
+	public SimulationScheduler(ShapeModel model, int ticksPerSecond, int maxStepsPerFrame) throws IllegalArgumentException {
+		if (ticksPerSecond <= 0) {
+			throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+		}
+		if (maxStepsPerFrame <= 0) {
+			throw new IllegalArgumentException("Steps per frame must be positive: " + maxStepsPerFrame);
+		}
+		_model = model;
+		_periodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+		_maxStepsPerFrame = maxStepsPerFrame;
+		_lastTick = model.ticks();
+		_lastTickNanos = System.nanoTime();
+	}
+
+	/**
+	 * Starts clocking the model on a new daemon thread. Has no effect if the
+	 * scheduler is already running.
+	 */
+	public synchronized void start() {
+		if (_running) {
+			return;
+		}
+		_running = true;
+		_thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "Bounce simulation");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Stops clocking the model and waits for the current tick, if any, to
+	 * finish. Has no effect if the scheduler is not running.
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			_running = false;
+			thread = _thread;
+			_thread = null;
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			LockSupport.unpark(thread);
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the scheduler is clocking the model.
+	 */
+	public boolean isRunning() {
+		return _running;
+	}
+
+	/**
+	 * Returns the interval between ticks in nanoseconds.
+	 */
+	public long periodNanos() {
+		return _periodNanos;
+	}
+
+	/**
+	 * Returns the number of ticks run since the scheduler was created.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+
+	/**
+	 * Returns the number of ticks that started more than an interval after
+	 * they were due, i.e. that were run to catch up.
+	 */
+	public long lateTicks() {
+		return _lateTicks;
+	}
+
+	/**
+	 * Returns the number of ticks that were skipped because the scheduler
+	 * had fallen more than maxStepsPerFrame ticks behind.
+	 */
+	public long droppedTicks() {
+		return _droppedTicks;
+	}
+
+	/**
+	 * Returns the current time measured in model ticks: the model's tick
+	 * count after the last tick plus the fraction of an interval that has
+	 * elapsed since that tick was due, which is at most 1. A view that paints
+	 * the simulation as it was at simulationTime() - 1, interpolating
+	 * between the FrameSnapshots of the two ticks either side of it, shows
+	 * smooth motion.
+	 */
+	public synchronized double simulationTime() {
+		double fraction = (double) (System.nanoTime() - _lastTickNanos) / _periodNanos;
+		return _lastTick + Math.max(0, Math.min(1, fraction));
+	}
+
+	private void loop() {
+		long due = System.nanoTime() + _periodNanos;
+		while (_running) {
+			long now = System.nanoTime();
+			if (now < due) {
+				LockSupport.parkNanos(due - now);
+				continue;
+			}
+
+			// Run the overdue ticks, up to the cap.
+			int steps = 0;
+			while (steps < _maxStepsPerFrame && due <= now && _running) {
+				if (now - due >= _periodNanos) {
+					_lateTicks++;
+				}
+				_model.clock();
+				synchronized (this) {
+					_lastTick = _model.ticks();
+					_lastTickNanos = due;
+				}
+				_ticks++;
+				steps++;
+				due += _periodNanos;
+				now = System.nanoTime();
+			}
+
+			// Drop whatever is still overdue.
+			if (due <= now) {
+				long dropped = (now - due) / _periodNanos + 1;
+				_droppedTicks += dropped;
+				due += dropped * _periodNanos;
+				synchronized (this) {
+					_lastTickNanos = due - _periodNanos;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package bounce;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over a ShapeModel that answers hit-testing queries in absolute
+ * coordinates (i.e. with each Shape's position translated through its
+ * NestingShape ancestors) without walking the whole composition.
+ *
+ * Each Shape is filed under the grid cell that holds its top left corner.
+ * The cell size is chosen, when the index is built, so that nearly all Shapes
+ * are no bigger than a cell; a query then only has to look at the cells it
+ * covers and their neighbours above and to the left. The few Shapes that are
+ * bigger than a cell, typically NestingShapes, are kept in a separate list
+ * that every query checks.
+ *
+ * Cells are intrusive doubly linked lists over int arrays, so update() moves
+ * a Shape that crosses into another cell in constant time and without
+ * allocating. Shapes that stay within their cell cost only the computation
+ * of their absolute position.
+ *
+ * A SpatialIndex is not thread safe; it must be used by the thread that
+ * clocks its ShapeModel.
+ *
+ * @author Will Molloy
+ *
+ */
+class SpatialIndex {
+
+	private static final int MIN_CELL_SHIFT = 4;		// 16 pixels.
+	private static final int MAX_CELLS = 1 << 20;
+	private static final double FIT_FRACTION = 0.95;
+	private static final int NONE = -1;
+
+	private final NestingShape _root;
+	private boolean _stale = true;
+
+	// Shapes in pre-order, with their parent's element index and their
+	// absolute position. Element 0 is the root.
+	private int _count;
+	private Shape[] _shapes = new Shape[0];
+	private int[] _parent = new int[0];
+	private int[] _x = new int[0];
+	private int[] _y = new int[0];
+
+	// Cell of each element and its neighbours in the cell's list.
+	private int[] _cell = new int[0];
+	private int[] _next = new int[0];
+	private int[] _previous = new int[0];
+
+	// First element of each cell's list; the last entry lists oversized Shapes.
+	private int[] _head = new int[0];
+	private int _cellShift;
+	private int _columns;
+	private int _rows;
+
+	// Scratch space for shapesIn().
+	private int[] _found = new int[16];
+
+	/**
+	 * Creates a SpatialIndex for the composition rooted at root.
+	 */
+	SpatialIndex(NestingShape root) {
+		_root = root;
+	}
+
+	/**
+	 * Tells this SpatialIndex that Shapes have been added or removed. The
+	 * index is rebuilt when it is next updated or queried.
+	 */
+	void structureChanged() {
+		_stale = true;
+	}
+
+	/**
+	 * Brings this SpatialIndex up to date with the positions of the Shapes.
+	 * Called after every tick.
+	 */
+	void update() {
+		if (_stale) {
+			rebuild();
+			return;
+		}
+		Shape[] shapes = _shapes;
+		int[] parents = _parent;
+		int[] x = _x;
+		int[] y = _y;
+		for (int i = 0; i < _count; i++) {
+			Shape shape = shapes[i];
+			int parent = parents[i];
+			x[i] = shape._x + (parent < 0 ? 0 : x[parent]);
+			y[i] = shape._y + (parent < 0 ? 0 : y[parent]);
+			int cell = cellOf(i);
+			if (cell != _cell[i]) {
+				unlink(i);
+				link(i, cell);
+			}
+		}
+	}
+
+	/**
+	 * Returns the topmost Shape, i.e. the one painted last, whose bounds
+	 * contain the point (x, y), or null if there is none. The root
+	 * NestingShape is never returned.
+	 */
+	Shape shapeAt(int x, int y) {
+		if (_stale) {
+			rebuild();
+		}
+		int cellSize = 1 << _cellShift;
+		int minColumn = column(x - cellSize + 1), maxColumn = column(x);
+		int minRow = row(y - cellSize + 1), maxRow = row(y);
+
+		int topmost = NONE;
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int column = minColumn; column <= maxColumn; column++) {
+				topmost = topmostIn(_head[row * _columns + column], x, y, topmost);
+			}
+		}
+		topmost = topmostIn(_head[_head.length - 1], x, y, topmost);
+		return topmost == NONE ? null : _shapes[topmost];
+	}
+
+	/**
+	 * Returns the Shapes whose bounds intersect area, in the order in which
+	 * they are painted. The root NestingShape is never included.
+	 */
+	List<Shape> shapesIn(Rectangle area) {
+		if (_stale) {
+			rebuild();
+		}
+		int found = 0;
+		if (!area.isEmpty()) {
+			int cellSize = 1 << _cellShift;
+			int minColumn = column(area.x - cellSize + 1), maxColumn = column(area.x + area.width - 1);
+			int minRow = row(area.y - cellSize + 1), maxRow = row(area.y + area.height - 1);
+
+			for (int row = minRow; row <= maxRow; row++) {
+				for (int column = minColumn; column <= maxColumn; column++) {
+					found = collect(_head[row * _columns + column], area, found);
+				}
+			}
+			found = collect(_head[_head.length - 1], area, found);
+		}
+
+		// Sort element indices into pre-order, which is painting order.
+		Arrays.sort(_found, 0, found);
+		List<Shape> shapes = new ArrayList<Shape>(found);
+		for (int i = 0; i < found; i++) {
+			shapes.add(_shapes[_found[i]]);
+		}
+		return shapes;
+	}
+
+	private int topmostIn(int element, int x, int y, int topmost) {
+		for (int i = element; i != NONE; i = _next[i]) {
+			if (i > topmost && i != 0 && x >= _x[i] && y >= _y[i]
+					&& x < _x[i] + _shapes[i]._width && y < _y[i] + _shapes[i]._height) {
+				topmost = i;
+			}
+		}
+		return topmost;
+	}
+
+	private int collect(int element, Rectangle area, int found) {
+		for (int i = element; i != NONE; i = _next[i]) {
+			if (i != 0 && _x[i] < area.x + area.width && _y[i] < area.y + area.height
+					&& _x[i] + _shapes[i]._width > area.x && _y[i] + _shapes[i]._height > area.y) {
+				if (found == _found.length) {
+					_found = Arrays.copyOf(_found, found * 2);
+				}
+				_found[found++] = i;
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * Reloads the composition into the arrays, chooses a cell size to suit
+	 * the sizes of the Shapes and files every Shape in its cell.
+	 */
+	private void rebuild() {
+		_count = 0;
+		Shape[] stack = new Shape[64];
+		int[] parentStack = new int[64];
+		int top = 0;
+		stack[top] = _root;
+		parentStack[top++] = NONE;
+
+		while (top > 0) {
+			Shape shape = stack[--top];
+			int parent = parentStack[top];
+			if (_count == _shapes.length) {
+				grow();
+			}
+			int i = _count++;
+			_shapes[i] = shape;
+			_parent[i] = parent;
+			_x[i] = shape._x + (parent < 0 ? 0 : _x[parent]);
+			_y[i] = shape._y + (parent < 0 ? 0 : _y[parent]);
+
+			if (shape instanceof NestingShape) {
+				NestingShape nest = (NestingShape) shape;
+				int children = nest.shapeCount();
+				if (top + children > stack.length) {
+					int capacity = Math.max(stack.length * 2, top + children);
+					stack = Arrays.copyOf(stack, capacity);
+					parentStack = Arrays.copyOf(parentStack, capacity);
+				}
+				// Push in reverse so that children are visited in order.
+				for (int c = children - 1; c >= 0; c--) {
+					stack[top] = nest.shapeAt(c);
+					parentStack[top++] = i;
+				}
+			}
+		}
+		Arrays.fill(_shapes, _count, _shapes.length, null);
+
+		chooseCellSize();
+		_head = new int[_columns * _rows + 1];
+		Arrays.fill(_head, NONE);
+		for (int i = 0; i < _count; i++) {
+			link(i, cellOf(i));
+		}
+		_stale = false;
+	}
+
+	/*
+	 * Picks the smallest power of two cell size that at least FIT_FRACTION of
+	 * the Shapes fit into, keeping the number of cells within MAX_CELLS.
+	 */
+	private void chooseCellSize() {
+		int[] histogram = new int[32];
+		for (int i = 1; i < _count; i++) {
+			int size = Math.max(_shapes[i]._width, _shapes[i]._height);
+			histogram[size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1)]++;
+		}
+		int shift = 0;
+		int fitting = histogram[0];
+		while (shift < 30 && fitting < FIT_FRACTION * (_count - 1)) {
+			fitting += histogram[++shift];
+		}
+		shift = Math.max(shift, MIN_CELL_SHIFT);
+
+		int width = Math.max(1, _root._width);
+		int height = Math.max(1, _root._height);
+		do {
+			_cellShift = shift++;
+			_columns = ((width - 1) >> _cellShift) + 1;
+			_rows = ((height - 1) >> _cellShift) + 1;
+		} while ((long) _columns * _rows > MAX_CELLS);
+	}
+
+	// Returns the cell element i belongs in, given its absolute position.
+	private int cellOf(int i) {
+		int cellSize = 1 << _cellShift;
+		Shape shape = _shapes[i];
+		if (shape._width > cellSize || shape._height > cellSize) {
+			return _head.length - 1;
+		}
+		return row(_y[i]) * _columns + column(_x[i]);
+	}
+
+	private int column(int x) {
+		return Math.min(_columns - 1, Math.max(0, x >> _cellShift));
+	}
+
+	private int row(int y) {
+		return Math.min(_rows - 1, Math.max(0, y >> _cellShift));
+	}
+
+	private void link(int i, int cell) {
+		int first = _head[cell];
+		_cell[i] = cell;
+		_previous[i] = NONE;
+		_next[i] = first;
+		if (first != NONE) {
+			_previous[first] = i;
+		}
+		_head[cell] = i;
+	}
+
+	private void unlink(int i) {
+		int previous = _previous[i], next = _next[i];
+		if (previous != NONE) {
+			_next[previous] = next;
+		} else {
+			_head[_cell[i]] = next;
+		}
+		if (next != NONE) {
+			_previous[next] = previous;
+		}
+	}
+
+	private void grow() {
+		int capacity = Math.max(64, _shapes.length * 2);
+		_shapes = Arrays.copyOf(_shapes, capacity);
+		_parent = Arrays.copyOf(_parent, capacity);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_cell = Arrays.copyOf(_cell, capacity);
+		_next = Arrays.copyOf(_next, capacity);
+		_previous = Arrays.copyOf(_previous, capacity);
+	}
+}
@@ -0,0 +1,128 @@
+package bounce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Class to test that a BatchingPainter paints exactly what a GraphicsPainter
+ * does, with fewer colour changes.
+ * @author Will Molloy
+ *
+ */
+public class TestBatchingPainter {
+
+	private static final int SIZE = 500;
+
+	private int _requested;
+	private int _issued;
+
+	// Paints root into a new image, batched or not, and returns its pixels.
+	private int[] paint(Shape root, boolean batched) {
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, SIZE, SIZE);
+		if (batched) {
+			BatchingPainter painter = new BatchingPainter(g, SIZE, SIZE);
+			root.paint(painter);
+			painter.flush();
+			_requested = painter.colourChangesRequested();
+			_issued = painter.colourChangesIssued();
+		} else {
+			root.paint(new GraphicsPainter(g));
+		}
+		g.dispose();
+		return image.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+	}
+
+	/**
+	 * Checks that scenes of nested, overlapping, coloured and translucent
+	 * Shapes with text are painted identically.
+	 */
+	@Test
+	public void testSameImage() {
+		ShapeModel model = TestPackedSimulationEngine.makeModel(5);
+		Random random = new Random(5);
+		for (int i = 0; i < 300; i++) {
+			Color colour = new Color(random.nextInt(4) * 80, random.nextInt(4) * 80, 100, i % 3 == 0 ? 120 : 255);
+			String text = i % 7 == 0 ? "t" + i : null;
+			model.add(new DynamicRectangleShape(random.nextInt(480), random.nextInt(480), 3, 2, 5 + random.nextInt(20), 5 + random.nextInt(20), text, colour), model.root());
+		}
+		for (int i = 0; i < 50; i++) {
+			model.add(new OvalAndRectangleShape(random.nextInt(480), random.nextInt(480), -2, 3, 12, 12), model.root());
+			model.add(new GemShape(random.nextInt(450), random.nextInt(450), 1, 1, 50, 30, "gem"), model.root());
+		}
+
+		for (int tick = 0; tick < 20; tick++) {
+			assertArrayEquals(paint(model.root(), false), paint(model.root(), true));
+			assertTrue(_issued < _requested);
+			model.clock();
+		}
+	}
+
+	/**
+	 * Checks that Shapes that do not overlap are grouped by colour, and that
+	 * Shapes that do are painted in order.
+	 */
+	@Test
+	public void testGrouping() {
+		ShapeModel model = new ShapeModel(new java.awt.Dimension(SIZE, SIZE));
+		for (int i = 0; i < 10; i++) {
+			Color colour = i % 2 == 0 ? Color.RED : Color.BLUE;
+			model.add(new DynamicRectangleShape(i * 40, 10, 0, 0, 20, 20, colour), model.root());
+		}
+		assertArrayEquals(paint(model.root(), false), paint(model.root(), true));
+		// Black for the root, then one change per colour.
+		assertEquals(3, _issued);
+		assertEquals(21, _requested);
+
+		model.add(new DynamicRectangleShape(5, 5, 0, 0, 20, 20, Color.BLUE), model.root());
+		model.add(new DynamicRectangleShape(10, 10, 0, 0, 20, 20, Color.RED), model.root());
+		assertArrayEquals(paint(model.root(), false), paint(model.root(), true));
+		// The overlapping blue Shape follows the blue bucket, but the red one
+		// needs a change back.
+		assertEquals(4, _issued);
+	}
+
+	/**
+	 * Checks that polygons, which are recorded with their own copy of their
+	 * points, are painted identically.
+	 */
+	@Test
+	public void testPolygons() {
+		final Random random = new Random(9);
+		Shape polygons = new RectangleShape(0, 0, 0, 0, SIZE, SIZE) {
+			@Override
+			protected void doPaint(Painter painter) {
+				int[] xs = new int[5];
+				int[] ys = new int[5];
+				for (int i = 0; i < 200; i++) {
+					painter.setColour(i % 2 == 0 ? Color.RED : Color.GREEN);
+					for (int j = 0; j < 5; j++) {
+						xs[j] = random.nextInt(SIZE);
+						ys[j] = random.nextInt(SIZE);
+					}
+					painter.translate(-5, 5);
+					if (i % 3 == 0) {
+						painter.fillPolygon(xs, ys, 5);
+					} else {
+						painter.drawPolygon(xs, ys, 3 + i % 3);
+					}
+					painter.translate(5, -5);
+				}
+			}
+		};
+		random.setSeed(9);
+		int[] expected = paint(polygons, false);
+		random.setSeed(9);
+		assertArrayEquals(expected, paint(polygons, true));
+	}
+}
@@ -0,0 +1,148 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the delivery of ShapeModelEvents through a 
+ * CoalescingShapeModelListener.
+ * @author Will Molloy
+ *
+ */
+public class TestCoalescingShapeModelListener {
+
+	private ShapeModel _model;
+	private List<ShapeModelEvent> _received;
+	private List<Runnable> _pending;
+	private ShapeModelListener _listener;
+
+	// Executor that holds tasks until the test runs them.
+	private Executor _executor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			_pending.add(command);
+		}
+	};
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_received = new ArrayList<ShapeModelEvent>();
+		_pending = new ArrayList<Runnable>();
+		_listener = new ShapeModelListener() {
+			@Override
+			public void update(ShapeModelEvent event) {
+				_received.add(event);
+			}
+		};
+	}
+
+	/**
+	 * Checks that a listener that falls behind receives structural events
+	 * in order and only the latest ShapeMoved event.
+	 */
+	@Test
+	public void testSlowListenerGetsLatestStateOnly() {
+		_model.addShapeModelListener(_listener, 1000, _executor);
+		Shape first = new RectangleShape();
+		Shape second = new RectangleShape();
+
+		_model.clock();
+		_model.add(first, _model.root());
+		_model.clock();
+		_model.add(second, _model.root());
+		_model.remove(first);
+		_model.clock();
+		assertEquals(1, _pending.size());
+
+		runPending();
+		assertEquals(4, _received.size());
+		assertEvent(ShapeModelEvent.EventType.ShapeAdded, first, _received.get(0));
+		assertEvent(ShapeModelEvent.EventType.ShapeAdded, second, _received.get(1));
+		assertEvent(ShapeModelEvent.EventType.ShapeRemoved, first, _received.get(2));
+		assertEvent(ShapeModelEvent.EventType.ShapeMoved, _model.root(), _received.get(3));
+	}
+
+	/**
+	 * Checks that ShapeMoved events beyond the requested rate are held back.
+	 */
+	@Test
+	public void testRateLimit() {
+		_model.addShapeModelListener(_listener, 1, _executor);
+
+		for (int i = 0; i < 10; i++) {
+			_model.clock();
+			runPending();
+		}
+		assertEquals(1, _received.size());
+
+		// Structural events are not subject to the rate.
+		_model.add(new RectangleShape(), _model.root());
+		runPending();
+		assertEquals(2, _received.size());
+	}
+
+	/**
+	 * Checks that a ShapeMoved event held back by the rate is delivered at
+	 * the end of the interval, although no further events are fired.
+	 */
+	@Test
+	public void testHeldBackEventIsDeliveredLater() throws InterruptedException {
+		final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
+		_model.addShapeModelListener(_listener, 2, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		});
+
+		_model.clock();
+		tasks.take().run();
+		_model.clock();
+		tasks.take().run();
+		assertEquals(1, _received.size());
+
+		// The model has stopped, but the final state still arrives.
+		Runnable task = tasks.poll(5, TimeUnit.SECONDS);
+		assertNotNull(task);
+		task.run();
+		assertEquals(2, _received.size());
+		assertEquals(ShapeModelEvent.EventType.ShapeMoved, _received.get(1).eventType());
+	}
+
+	/**
+	 * Checks that a listener registered with a rate can be deregistered.
+	 */
+	@Test
+	public void testRemoveListener() {
+		_model.addShapeModelListener(_listener, 60, _executor);
+		_model.removeShapeModelListener(_listener);
+		_model.clock();
+		assertEquals(0, _pending.size());
+	}
+
+	private void runPending() {
+		List<Runnable> tasks = new ArrayList<Runnable>(_pending);
+		_pending.clear();
+		for (Runnable task : tasks) {
+			task.run();
+		}
+	}
+
+	private static void assertEvent(ShapeModelEvent.EventType type, Shape operand, ShapeModelEvent event) {
+		assertEquals(type, event.eventType());
+		assertSame(operand, event.operand());
+	}
+}
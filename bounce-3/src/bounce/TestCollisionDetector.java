@@ -0,0 +1,159 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the collision phase that makes sibling Shapes bounce off
+ * each other.
+ * @author Will Molloy
+ *
+ */
+public class TestCollisionDetector {
+
+	private ShapeModel _model;
+	private List<ShapeModelEvent> _contacts;
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_model.setShapeCollisionsEnabled(true);
+		_contacts = new ArrayList<ShapeModelEvent>();
+		_model.addShapeModelListener(new ShapeModelListener() {
+			@Override
+			public void update(ShapeModelEvent event) {
+				if (event.eventType() == ShapeModelEvent.EventType.ShapesCollided) {
+					_contacts.add(event);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks that two Shapes moving towards each other exchange velocities
+	 * once they overlap, and that the contact is reported.
+	 */
+	@Test
+	public void testHeadOnBounce() {
+		Shape west = new RectangleShape(100, 100, 5, 0, 20, 20);
+		Shape east = new RectangleShape(130, 100, -5, 0, 20, 20);
+		_model.add(west, _model.root());
+		_model.add(east, _model.root());
+
+		_model.clock();
+		assertTrue(_contacts.isEmpty());
+		assertEquals(5, west.deltaX());
+
+		_model.clock();
+		assertEquals(-5, west.deltaX());
+		assertEquals(5, east.deltaX());
+		assertEquals(1, _contacts.size());
+		Shape[] pair = _contacts.get(0).contacts();
+		assertEquals(2, pair.length);
+		assertTrue((pair[0] == west && pair[1] == east) || (pair[0] == east && pair[1] == west));
+		assertSame(_model.root(), _contacts.get(0).operand());
+
+		// Separating Shapes that still overlap do not bounce again.
+		_model.clock();
+		assertEquals(-5, west.deltaX());
+		assertEquals(1, _contacts.size());
+	}
+
+	/**
+	 * Checks that Shapes in different NestingShapes do not collide, and that
+	 * nothing collides when shape collisions are disabled.
+	 */
+	@Test
+	public void testOnlySiblingsCollide() {
+		NestingShape left = new NestingShape(0, 0, 0, 0, 300, 300);
+		NestingShape right = new NestingShape(0, 0, 0, 0, 300, 300);
+		_model.add(left, _model.root());
+		_model.add(right, _model.root());
+		_model.add(new RectangleShape(100, 100, 5, 0, 20, 20), left);
+		_model.add(new RectangleShape(110, 100, -5, 0, 20, 20), right);
+
+		// The two NestingShapes overlap but are not moving.
+		_model.clock();
+		assertTrue(_contacts.isEmpty());
+
+		_model.setShapeCollisionsEnabled(false);
+		Shape a = new RectangleShape(50, 50, 5, 5, 20, 20);
+		_model.add(a, left);
+		_model.add(new RectangleShape(55, 55, -5, -5, 20, 20), left);
+		_model.clock();
+		assertTrue(_contacts.isEmpty());
+		assertEquals(5, a.deltaX());
+	}
+
+	/**
+	 * Checks that a Shape's shapeHasMoved() hook sees its contacts with
+	 * other Shapes.
+	 */
+	@Test
+	public void testHookSeesContacts() {
+		DynamicRectangleShape shape = new DynamicRectangleShape(100, 100, 0, 5, 20, 20, Color.RED);
+		_model.add(shape, _model.root());
+		_model.add(new RectangleShape(100, 130, 0, -5, 20, 20), _model.root());
+		_model.clock();
+		_model.clock();
+		// Hitting a Shape to the south is a horizontal collision.
+		assertTrue(shape.shapeCollidedWithAShape());
+		assertTrue(shape.shapeCollidedWithAHorizontalBoundary());
+		assertFalse(shape.isFilled());
+
+		_model.clock();
+		assertFalse(shape.shapeCollidedWithAShape());
+
+		DynamicRectangleShape other = new DynamicRectangleShape(300, 300, 5, 0, 20, 20, Color.RED);
+		_model.add(other, _model.root());
+		_model.add(new RectangleShape(330, 300, -5, 0, 20, 20), _model.root());
+		_model.clock();
+		_model.clock();
+		assertTrue(other.shapeCollidedWithAVerticalBoundary());
+		assertTrue(other.isFilled());
+	}
+
+	/**
+	 * Checks that a SimulationEngine sees the velocities changed by bounces.
+	 */
+	@Test
+	public void testEnginesMatchSequential() {
+		ShapeModel sequential = crowdedModel();
+		ShapeModel packed = crowdedModel();
+		ShapeModel forkJoin = crowdedModel();
+		packed.setSimulationEngine(new PackedSimulationEngine());
+		forkJoin.setSimulationEngine(new ForkJoinSimulationEngine(ForkJoinPool.commonPool(), 1));
+
+		for (int i = 0; i < 300; i++) {
+			sequential.clock();
+			packed.clock();
+			forkJoin.clock();
+		}
+		String expected = TestPackedSimulationEngine.describe(sequential.root());
+		assertEquals(expected, TestPackedSimulationEngine.describe(packed.root()));
+		assertEquals(expected, TestPackedSimulationEngine.describe(forkJoin.root()));
+	}
+
+	private static ShapeModel crowdedModel() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		model.setShapeCollisionsEnabled(true);
+		Random random = new Random(17);
+		for (int i = 0; i < 400; i++) {
+			model.add(new RectangleShape(random.nextInt(480), random.nextInt(480),
+					random.nextInt(11) - 5, random.nextInt(11) - 5, 10, 10), model.root());
+		}
+		return model;
+	}
+}
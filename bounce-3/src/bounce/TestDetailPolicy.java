@@ -0,0 +1,88 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.Dimension;
+
+import org.junit.Test;
+
+/**
+ * Class to test that a DetailPolicy chooses levels of detail by size, and
+ * that FrameSnapshots are painted at the levels it chooses.
+ * @author Will Molloy
+ *
+ */
+public class TestDetailPolicy {
+
+	@Test
+	public void testLevels() {
+		DetailPolicy policy = new DetailPolicy(2, 4, 10, 12);
+		assertEquals(DetailPolicy.Level.HIDDEN, policy.levelOf(1, 1));
+		assertEquals(DetailPolicy.Level.POINT, policy.levelOf(3, 2));
+		assertEquals(DetailPolicy.Level.SIMPLIFIED, policy.levelOf(1, 9));
+		assertEquals(DetailPolicy.Level.FULL, policy.levelOf(10, 1));
+		assertEquals(DetailPolicy.Level.FULL, policy.levelOf(50, 50));
+		assertEquals(1, policy.count(DetailPolicy.Level.HIDDEN));
+		assertEquals(2, policy.count(DetailPolicy.Level.FULL));
+		assertEquals(false, policy.showsText(11));
+		assertEquals(true, policy.showsText(12));
+		assertEquals(1, policy.textsSkipped());
+
+		policy.reset();
+		assertEquals(0, policy.count(DetailPolicy.Level.FULL));
+		assertEquals(0, policy.textsSkipped());
+	}
+
+	@Test
+	public void testInvalidSizes() {
+		try {
+			new DetailPolicy(4, 2, 10, 12);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Checks the Painter calls made for Shapes at each level, that the
+	 * children of a simplified NestingShape are left out, and that a policy
+	 * that paints everything in full makes the usual calls.
+	 */
+	@Test
+	public void testPaint() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		model.add(new RectangleShape(10, 10, 0, 0, 40, 30, "big"), model.root());
+		model.add(new GemShape(100, 100, 0, 0, 6, 5, "gem"), model.root());
+		model.add(new OvalShape(200, 200, 0, 0, 1, 1), model.root());
+		NestingShape nest = new NestingShape(300, 300, 0, 0, 20, 8, "nest");
+		model.add(nest, model.root());
+		model.add(new RectangleShape(2, 2, 0, 0, 4, 3), nest);
+		NestingShape small = new NestingShape(400, 400, 0, 0, 6, 6);
+		model.add(small, model.root());
+		model.add(new RectangleShape(1, 1, 0, 0, 2, 2, "hidden"), small);
+		FrameSnapshot frame = FrameSnapshot.of(model.root(), 0);
+
+		DetailPolicy policy = new DetailPolicy();
+		MockPainter painter = new MockPainter();
+		frame.paint(painter, null, 1, policy);
+		assertEquals("(colour java.awt.Color[r=0,g=0,b=0])(rectangle 0,0,500,500)"
+				+ "(colour java.awt.Color[r=0,g=0,b=0])(rectangle 10,10,40,30)(text big)"
+				+ "(colour java.awt.Color[r=0,g=0,b=0])(filledRect 100,100,6,5)"
+				+ "(colour java.awt.Color[r=0,g=0,b=0])(filledRect 200,200,1,1)"
+				+ "(colour java.awt.Color[r=0,g=0,b=0])(rectangle 300,300,20,8)"
+				+ "(colour java.awt.Color[r=0,g=0,b=0])(filledRect 2,2,4,3)"
+				+ "(colour java.awt.Color[r=0,g=0,b=0])(filledRect 400,400,6,6)", painter.toString());
+		assertEquals(3, policy.count(DetailPolicy.Level.FULL));
+		assertEquals(3, policy.count(DetailPolicy.Level.SIMPLIFIED));
+		assertEquals(1, policy.count(DetailPolicy.Level.POINT));
+		assertEquals(0, policy.count(DetailPolicy.Level.HIDDEN));
+		assertEquals(2, policy.textsSkipped());
+
+		MockPainter expected = new MockPainter();
+		frame.paint(expected);
+		painter = new MockPainter();
+		frame.paint(painter, null, 1, new DetailPolicy(0, 0, 0, 0));
+		assertEquals(expected.toString(), painter.toString());
+	}
+}
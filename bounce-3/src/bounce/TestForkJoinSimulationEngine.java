@@ -0,0 +1,75 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a ShapeModel configured with a ForkJoinSimulationEngine
+ * moves its Shapes exactly as Shape.move() does.
+ * @author Will Molloy
+ *
+ */
+public class TestForkJoinSimulationEngine {
+
+	private static final int TICKS = 500;
+
+	private ForkJoinPool _pool;
+
+	@Before
+	public void setUp() {
+		_pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		_pool.shutdown();
+	}
+
+	/**
+	 * Checks the result when work is split down to single Shapes.
+	 */
+	@Test
+	public void testSmallestThresholdMatchesShapeMove() {
+		checkMatchesShapeMove(new ForkJoinSimulationEngine(_pool, 1));
+	}
+
+	/**
+	 * Checks the result when only some subtrees are split.
+	 */
+	@Test
+	public void testModerateThresholdMatchesShapeMove() {
+		checkMatchesShapeMove(new ForkJoinSimulationEngine(_pool, 10));
+	}
+
+	/**
+	 * Checks that a threshold below 1 is rejected.
+	 */
+	@Test
+	public void testInvalidThreshold() {
+		try {
+			new ForkJoinSimulationEngine(0);
+			fail();
+		} catch(IllegalArgumentException e) {
+			// Expected action.
+		}
+	}
+
+	private void checkMatchesShapeMove(SimulationEngine engine) {
+		ShapeModel expected = TestPackedSimulationEngine.makeModel(7);
+		ShapeModel actual = TestPackedSimulationEngine.makeModel(7);
+		actual.setSimulationEngine(engine);
+
+		for (int i = 0; i < TICKS; i++) {
+			expected.clock();
+			actual.clock();
+			assertEquals(TestPackedSimulationEngine.describe(expected.root()),
+					TestPackedSimulationEngine.describe(actual.root()));
+		}
+	}
+}
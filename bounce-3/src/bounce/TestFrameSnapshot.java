@@ -0,0 +1,291 @@
+package bounce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a FrameSnapshot records and paints a ShapeModel as it 
+ * was when the snapshot was taken.
+ * @author Will Molloy
+ *
+ */
+public class TestFrameSnapshot {
+
+	private ShapeModel _model;
+	private NestingShape _nest;
+	private Shape _rectangle;
+
+	/**
+	 * Creates a ShapeModel with text-bearing and nested Shapes of each kind.
+	 */
+	@Before
+	public void setUpModel() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_nest = new NestingShape(10, 10, 2, 2, 200, 200, "nest");
+		_rectangle = new RectangleShape(5, 5, 3, 4, 20, 20, "rectangle");
+
+		_model.add(_nest, _model.root());
+		_model.add(_rectangle, _nest);
+		_model.add(new OvalShape(0, 0, 1, 1, 30, 30), _nest);
+		_model.add(new GemShape(20, 20, 4, 4, 60, 20, "gem"), _model.root());
+		_model.add(new GemShape(20, 20, -4, 4, 20, 20), _model.root());
+		_model.add(new DynamicRectangleShape(0, 0, 10, 3, 40, 30, Color.CYAN), _model.root());
+		_model.add(new OvalAndRectangleShape(400, 0, 9, 9, 30, 30), _model.root());
+		NestingShape empty = new NestingShape(0, 0, 1, 1, 50, 50);
+		_model.add(empty, _nest);
+		_model.add(new RectangleShape(0, 0, 1, 1, 5, 5), empty);
+	}
+
+	/**
+	 * Checks that painting a snapshot makes the same Painter calls as
+	 * painting the live model, across many ticks.
+	 */
+	@Test
+	public void testPaintMatchesLiveModel() {
+		_model.setSnapshotsEnabled(true);
+		RecordingPainter expected = new RecordingPainter();
+		RecordingPainter actual = new RecordingPainter();
+		for (int i = 0; i < 200; i++) {
+			_model.clock();
+			expected.reset();
+			actual.reset();
+			_model.root().paint(expected);
+			_model.snapshot().paint(actual);
+			assertNull(actual.diff(expected));
+		}
+	}
+
+	/**
+	 * Checks that a snapshot is not affected by later ticks.
+	 */
+	@Test
+	public void testSnapshotIsUnchangedByClock() {
+		_model.setSnapshotsEnabled(true);
+		_model.clock();
+		FrameSnapshot frame = _model.snapshot();
+		int index = frame.indexOf(_rectangle);
+		int x = _rectangle.x();
+		int y = _rectangle.y();
+
+		_model.clock();
+		assertEquals(x, frame.x(index));
+		assertEquals(y, frame.y(index));
+		assertEquals(1, frame.tick());
+		assertEquals(2, _model.snapshot().tick());
+	}
+
+	/**
+	 * Checks the tree navigation methods.
+	 */
+	@Test
+	public void testStructure() {
+		FrameSnapshot frame = FrameSnapshot.of(_model.root(), 0);
+		int nest = frame.indexOf(_nest);
+
+		assertEquals(10, frame.shapeCount());
+		assertSame(_model.root(), frame.shape(0));
+		assertEquals(1, frame.firstChild(0));
+		assertEquals(0, frame.parent(nest));
+		assertSame(_rectangle, frame.shape(frame.firstChild(nest)));
+		assertEquals(FrameSnapshot.NESTING, frame.kind(nest));
+		assertEquals(-1, frame.nextSibling(0));
+
+		int children = 0;
+		for (int child = frame.firstChild(nest); child >= 0; child = frame.nextSibling(child)) {
+			assertSame(_nest.shapeAt(children++), frame.shape(child));
+		}
+		assertEquals(_nest.shapeCount(), children);
+	}
+
+	/**
+	 * Checks that painting between two snapshots interpolates positions, 
+	 * and falls back to the later snapshot when the Shapes differ.
+	 */
+	@Test
+	public void testInterpolatedPaint() {
+		FrameSnapshot previous = FrameSnapshot.of(_model.root(), 0);
+		_model.clock();
+		FrameSnapshot current = FrameSnapshot.of(_model.root(), 1);
+		RecordingPainter expected = new RecordingPainter();
+		RecordingPainter actual = new RecordingPainter();
+
+		previous.paint(expected);
+		current.paint(actual, previous, 0);
+		assertNull(actual.diff(expected));
+		expected.reset();
+		actual.reset();
+		current.paint(expected);
+		current.paint(actual, previous, 1);
+		assertNull(actual.diff(expected));
+
+		// Halfway between (100, 100) and (104, 106).
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		model.add(new RectangleShape(100, 100, 4, 6, 20, 20), model.root());
+		previous = FrameSnapshot.of(model.root(), 0);
+		model.clock();
+		current = FrameSnapshot.of(model.root(), 1);
+		ShapeModel halfway = new ShapeModel(new Dimension(500, 500));
+		halfway.add(new RectangleShape(102, 103, 4, 6, 20, 20), halfway.root());
+		expected.reset();
+		actual.reset();
+		halfway.root().paint(expected);
+		current.paint(actual, previous, 0.5);
+		assertNull(actual.diff(expected));
+
+		// A Shape added since the previous snapshot.
+		model.add(new RectangleShape(), model.root());
+		FrameSnapshot changed = FrameSnapshot.of(model.root(), 1);
+		expected.reset();
+		actual.reset();
+		changed.paint(expected);
+		changed.paint(actual, current, 0.5);
+		assertNull(actual.diff(expected));
+	}
+
+	/**
+	 * Checks that skipping Shapes outside the clip leaves the pixels within
+	 * it as they are when everything is painted, for snapshots and for the
+	 * live model.
+	 */
+	@Test
+	public void testClippedPaintingMatches() {
+		Random random = new Random(5);
+		for (int i = 0; i < 50; i++) {
+			_model.clock();
+			FrameSnapshot frame = FrameSnapshot.of(_model.root(), i);
+			BufferedImage full = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+			Graphics g = full.getGraphics();
+			frame.paint(new GraphicsPainter(g));
+			g.dispose();
+
+			Rectangle clip = new Rectangle(random.nextInt(450), random.nextInt(450), 1 + random.nextInt(50), 1 + random.nextInt(50));
+			BufferedImage clipped = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+			g = clipped.getGraphics();
+			g.setClip(clip);
+			frame.paint(new GraphicsPainter(g));
+			g.dispose();
+			assertArrayEquals(pixels(full, clip), pixels(clipped, clip));
+
+			clipped = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+			g = clipped.getGraphics();
+			g.setClip(clip);
+			_model.root().paint(new GraphicsPainter(g));
+			g.dispose();
+			assertArrayEquals(pixels(full, clip), pixels(clipped, clip));
+		}
+	}
+
+	/**
+	 * Checks that Shapes outside the clip are not painted at all.
+	 */
+	@Test
+	public void testPaintSkipsShapesOutsideClip() {
+		FrameSnapshot frame = FrameSnapshot.of(_model.root(), 0);
+		MockPainter painter = new MockPainter();
+		painter.setClip(new Rectangle(390, 0, 50, 50));
+		frame.paint(painter);
+		String log = painter.toString();
+		assertEquals(false, log.contains("(oval 0,0,30,30)"));
+		assertEquals(true, log.contains("400,0,30,30)"));
+		// Its text might reach into the clip.
+		assertEquals(true, log.contains("(rectangle 5,5,20,20)"));
+
+		MockPainter live = new MockPainter();
+		live.setClip(new Rectangle(390, 0, 50, 50));
+		_model.root().paint(live);
+		assertEquals(log, live.toString());
+	}
+
+	/**
+	 * Checks that Shapes whose classes override doPaint() without describing
+	 * it through the appearance methods are painted by doPaint(), and that
+	 * every built-in Shape is described.
+	 */
+	@Test
+	public void testCustomShapesPaintThemselves() {
+		NestingShape frame = new FramedNestingShape(250, 250, 3, 3, 100, 100);
+		_model.add(new StarShape(300, 300, -2, 5, 40, 40, "star"), _model.root());
+		_model.add(frame, _model.root());
+		// A NestingShape that paints itself paints its children as they are.
+		_model.add(new StarShape(10, 10, 0, 0, 20, 20, null), frame);
+		_model.add(new RectangleShape(50, 50, 0, 0, 20, 20), frame);
+
+		FrameSnapshot previous = FrameSnapshot.of(_model.root(), 0);
+		for (int i = 0; i < previous.shapeCount(); i++) {
+			Shape shape = previous.shape(i);
+			boolean custom = shape instanceof StarShape || shape instanceof FramedNestingShape;
+			assertEquals(custom, previous.kind(i) == FrameSnapshot.CUSTOM);
+			if (shape instanceof GemShape) {
+				int gem = previous.width(i) > 40 ? FrameSnapshot.HEXAGON : FrameSnapshot.DIAMOND;
+				assertEquals(gem, previous.kind(i));
+			}
+		}
+
+		RecordingPainter expected = new RecordingPainter();
+		RecordingPainter actual = new RecordingPainter();
+		_model.root().paint(expected);
+		previous.paint(actual);
+		assertNull(actual.diff(expected));
+
+		// Once the Shapes have moved on, they are painted where they were.
+		BufferedImage before = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+		Graphics g = before.getGraphics();
+		_model.root().paint(new GraphicsPainter(g));
+		g.dispose();
+		_model.clock();
+		BufferedImage after = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+		g = after.getGraphics();
+		previous.paint(new GraphicsPainter(g));
+		g.dispose();
+		Rectangle all = new Rectangle(0, 0, 500, 500);
+		assertArrayEquals(pixels(before, all), pixels(after, all));
+	}
+
+	/*
+	 * RectangleShape that paints itself differently but does not say so.
+	 */
+	private static class StarShape extends RectangleShape {
+		StarShape(int x, int y, int deltaX, int deltaY, int width, int height, String text) {
+			super(x, y, deltaX, deltaY, width, height, text);
+		}
+
+		@Override
+		protected void doPaint(Painter painter) {
+			painter.setColour(Color.ORANGE);
+			painter.drawLine(_x, _y, _x + _width, _y + _height);
+			painter.drawLine(_x + _width, _y, _x, _y + _height);
+		}
+	}
+
+	/*
+	 * NestingShape with a filled frame behind its children.
+	 */
+	private static class FramedNestingShape extends NestingShape {
+		FramedNestingShape(int x, int y, int deltaX, int deltaY, int width, int height) {
+			super(x, y, deltaX, deltaY, width, height);
+		}
+
+		@Override
+		protected void doPaint(Painter painter) {
+			painter.setColour(Color.LIGHT_GRAY);
+			painter.fillRect(_x, _y, _width, _height);
+			super.doPaint(painter);
+		}
+	}
+
+	private static int[] pixels(BufferedImage image, Rectangle area) {
+		return image.getRGB(area.x, area.y, area.width, area.height, null, 0, area.width);
+	}
+}
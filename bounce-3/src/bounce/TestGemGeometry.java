@@ -0,0 +1,75 @@
+package bounce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Class to test that gems drawn from cached GemGeometry as polygons cover
+ * the same pixels as the lines they replace.
+ * @author Will Molloy
+ *
+ */
+public class TestGemGeometry {
+
+	private static final int SIZE = 200;
+
+	@Test
+	public void testCached() {
+		assertSame(GemGeometry.hexagon(60, 40), GemGeometry.hexagon(60, 40));
+		assertSame(GemGeometry.diamond(30, 20), GemGeometry.diamond(30, 20));
+	}
+
+	@Test
+	public void testSamePixelsAsLines() {
+		Random random = new Random(3);
+		for (int i = 0; i < 500; i++) {
+			int w = 1 + random.nextInt(150);
+			int h = 1 + random.nextInt(150);
+			int x = random.nextInt(60) - 20;
+			int y = random.nextInt(60) - 20;
+
+			BufferedImage expected = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+			Graphics g = expected.getGraphics();
+			g.drawLine(x, y+h/2, x+20, y);
+			g.drawLine(x+20, y, x+w-20, y);
+			g.drawLine(x+w-20, y, x+w, y+h/2);
+			g.drawLine(x+w, y+h/2, x+w-20, y+h);
+			g.drawLine(x+w-20, y+h, x+20, y+h);
+			g.drawLine(x+20, y+h, x, y+h/2);
+			g.dispose();
+			assertArrayEquals(pixels(expected), pixels(paintGem(true, w, h, x, y)));
+
+			expected = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+			g = expected.getGraphics();
+			g.drawLine(x, y+h/2, x+w/2, y);
+			g.drawLine(x+w/2, y, x+w, y+h/2);
+			g.drawLine(x+w, y+h/2, x+w/2, y+h);
+			g.drawLine(x+w/2, y+h, x, y+h/2);
+			g.dispose();
+			assertArrayEquals(pixels(expected), pixels(paintGem(false, w, h, x, y)));
+		}
+	}
+
+	private static BufferedImage paintGem(boolean hexagon, int w, int h, int x, int y) {
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		GraphicsPainter painter = new GraphicsPainter(g);
+		if (hexagon) {
+			painter.drawHexagon(w, h, x, y);
+		} else {
+			painter.drawDiamond(w, h, x, y);
+		}
+		g.dispose();
+		return image;
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+	}
+}
@@ -0,0 +1,129 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a ShapeModel recorded by a ModelJournal is rebuilt by
+ * replay() as it was at each tick.
+ * @author Will Molloy
+ *
+ */
+public class TestModelJournal {
+
+	private File _file;
+
+	@Before
+	public void setUp() throws IOException {
+		_file = File.createTempFile("bounce", ".journal");
+	}
+
+	@After
+	public void tearDown() {
+		_file.delete();
+		ModelJournal.indexFile(_file).delete();
+	}
+
+	/**
+	 * Checks that additions, removals, collision changes and ticks are all
+	 * replayed, from the nearest checkpoint, to the tick asked for.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		ShapeModel model = TestPackedSimulationEngine.makeModel(5);
+		Map<Long, String> states = new TreeMap<Long, String>();
+		ModelJournal journal = new ModelJournal(_file, 10);
+		model.setJournal(journal);
+
+		clock(model, 15, states);
+		NestingShape nest = (NestingShape) model.root().shapeAt(1);
+		NestingShape inner = (NestingShape) nest.shapeAt(nest.shapeCount() - 1);
+		model.add(new OvalShape(1, 1, 2, -3, 10, 10, "new"), inner);
+		NestingShape added = new NestingShape(5, 5, 1, 1, 60, 60);
+		model.add(new GemShape(0, 0, 3, 2, 20, 20), added);
+		model.add(added, model.root());
+		clock(model, 7, states);
+
+		model.remove(nest.shapeAt(3));
+		model.removeAll(Arrays.asList(nest.shapeAt(0), nest.shapeAt(5), model.root().shapeAt(2)));
+		model.setShapeCollisionsEnabled(true);
+		clock(model, 20, states);
+
+		model.addAll(Arrays.asList(new RectangleShape(0, 0, 4, 4, 10, 10), new OvalShape(0, 0, -2, 5, 10, 10)), added);
+		clock(model, 5, states);
+		journal.close();
+		assertNull(journal.error());
+
+		for (Map.Entry<Long, String> state : states.entrySet()) {
+			ShapeModel replayed = ModelJournal.replay(_file, state.getKey());
+			assertEquals(state.getKey().longValue(), replayed.ticks());
+			assertEquals("Tick " + state.getKey(), state.getValue(), TestPackedSimulationEngine.describe(replayed.root()));
+		}
+
+		// Past the end of the journal, the model is as it was at the end.
+		ShapeModel replayed = ModelJournal.replay(_file, 1000);
+		assertEquals(47, replayed.ticks());
+		assertTrue(replayed.shapeCollisionsEnabled());
+	}
+
+	/**
+	 * Checks that a journal cut short is replayed up to its last whole record,
+	 * and that ticks before the first checkpoint cannot be replayed.
+	 */
+	@Test
+	public void testTruncatedJournal() throws IOException {
+		ShapeModel model = TestPackedSimulationEngine.makeModel(6);
+		for (int i = 0; i < 3; i++) {
+			model.clock();
+		}
+		ModelJournal journal = new ModelJournal(_file, 1000);
+		model.setJournal(journal);
+		clock(model, 8, null);
+		model.add(new RectangleShape(0, 0, 1, 1, 10, 10), model.root());
+		clock(model, 4, null);
+		journal.close();
+
+		RandomAccessFile file = new RandomAccessFile(_file, "rw");
+		try {
+			file.setLength(file.length() - 2);
+		} finally {
+			file.close();
+		}
+		ShapeModel replayed = ModelJournal.replay(_file, 100);
+		assertEquals(11, replayed.ticks());
+		assertEquals(model.root().shapeCount(), replayed.root().shapeCount());
+
+		try {
+			ModelJournal.replay(_file, 2);
+			assertTrue(false);
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	// Clocks model, recording its state at each tick as it is just before
+	// the next tick.
+	private static void clock(ShapeModel model, int ticks, Map<Long, String> states) {
+		for (int i = 0; i < ticks; i++) {
+			if (states != null) {
+				states.put(model.ticks(), TestPackedSimulationEngine.describe(model.root()));
+			}
+			model.clock();
+		}
+		if (states != null) {
+			states.put(model.ticks(), TestPackedSimulationEngine.describe(model.root()));
+		}
+	}
+}
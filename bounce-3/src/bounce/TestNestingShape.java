@@ -7,7 +7,11 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -53,7 +57,7 @@ public class TestNestingShape {
 	 */
 	@Test
 	public void testBasicMovementAndPainting() {
-		Painter painter = new MockPainter();
+		Painter painter = new RecordingPainter();
 		
 		_topLevelNest.move(500, 500);
 		_topLevelNest.doPaint(painter);
@@ -188,6 +192,45 @@ public class TestNestingShape {
 		assertEquals(-1, _topLevelNest.indexOf(_bottomLevelNest));
 	}
 	
+	/**
+	 * Check that indexOf and contains stay consistent with shapeAt while
+	 * children are added and removed in any order, including children that
+	 * move from one NestingShape to another.
+	 */
+	@Test
+	public void testIndexOfAfterChurn() {
+		NestingShape other = new NestingShape(0, 0, 1, 1, 100, 100);
+		List<Shape> expected = new ArrayList<Shape>();
+		Random random = new Random(3);
+		for (int i = 0; i < 2000; i++) {
+			if (expected.isEmpty() || random.nextInt(3) > 0) {
+				Shape shape = random.nextBoolean() || other.shapeCount() == 0 
+						? new RectangleShape(0, 0, 1, 1, 5, 5) : other.shapeAt(random.nextInt(other.shapeCount()));
+				if (shape.parent() != null) {
+					other.remove(shape);
+				}
+				_bottomLevelNest.add(shape);
+				expected.add(shape);
+			} else {
+				Shape shape = expected.remove(random.nextInt(expected.size()));
+				_bottomLevelNest.remove(shape);
+				other.add(shape);
+				assertFalse(_bottomLevelNest.contains(shape));
+				assertEquals(-1, _bottomLevelNest.indexOf(shape));
+			}
+			if (!expected.isEmpty()) {
+				Shape probe = expected.get(random.nextInt(expected.size()));
+				assertEquals(expected.indexOf(probe), _bottomLevelNest.indexOf(probe));
+			}
+		}
+		assertEquals(expected.size(), _bottomLevelNest.shapeCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), _bottomLevelNest.shapeAt(i));
+			assertEquals(i, _bottomLevelNest.indexOf(expected.get(i)));
+			assertTrue(_bottomLevelNest.contains(expected.get(i)));
+		}
+	}
+	
 	/**
 	 * Check that Shape's path method correctly returns the path from the root
 	 * NestingShape object through to the Shape object that path is called on.
@@ -213,4 +256,35 @@ public class TestNestingShape {
 		assertEquals(1, path.size());
 		assertSame(_topLevelNest, path.get(0));
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Checks that children outside the Painter's clip are not painted, 
+	 * unless there is text within them.
+	 */
+	@Test
+	public void testPaintSkipsShapesOutsideClip() {
+		Shape far = new RectangleShape(70, 70, 0, 0, 20, 20);
+		_topLevelNest.add(far);
+		String black = "(colour " + Color.BLACK + ")";
+		
+		MockPainter painter = new MockPainter();
+		painter.setClip(new Rectangle(60, 60, 40, 40));
+		_topLevelNest.paint(painter);
+		assertEquals(black + "(rectangle 0,0,100,100)" + black + "(rectangle 70,70,20,20)", painter.toString());
+		
+		// Text could reach into the clip, so the subtree holding it is painted.
+		Shape labelled = new RectangleShape(0, 0, 0, 0, 2, 2, "label");
+		_bottomLevelNest.add(labelled);
+		painter = new MockPainter();
+		painter.setClip(new Rectangle(60, 60, 40, 40));
+		_topLevelNest.paint(painter);
+		assertTrue(painter.toString().contains("(text label)"));
+		assertFalse(painter.toString().contains("(rectangle 1,1,5,5)"));
+		
+		_bottomLevelNest.remove(labelled);
+		painter = new MockPainter();
+		painter.setClip(new Rectangle(60, 60, 40, 40));
+		_topLevelNest.paint(painter);
+		assertEquals(black + "(rectangle 0,0,100,100)" + black + "(rectangle 70,70,20,20)", painter.toString());
+	}
+}
@@ -0,0 +1,123 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a ShapeModel configured with a PackedSimulationEngine
+ * moves its Shapes exactly as Shape.move() does.
+ * @author Will Molloy
+ *
+ */
+public class TestPackedSimulationEngine {
+
+	private static final int TICKS = 500;
+
+	private ShapeModel _expected;
+	private ShapeModel _actual;
+
+	/**
+	 * Creates two identical ShapeModels, only one of which uses a
+	 * PackedSimulationEngine.
+	 */
+	@Before
+	public void setUpModels() {
+		_expected = makeModel(42);
+		_actual = makeModel(42);
+		_actual.setSimulationEngine(new PackedSimulationEngine());
+	}
+
+	/**
+	 * Checks that positions, speeds and painting (which depends on the
+	 * shapeHasMoved() hooks) match after each tick.
+	 */
+	@Test
+	public void testTicksMatchShapeMove() {
+		for (int i = 0; i < TICKS; i++) {
+			_expected.clock();
+			_actual.clock();
+			assertEquals(describe(_expected.root()), describe(_actual.root()));
+		}
+	}
+
+	/**
+	 * Checks that Shapes added and removed between ticks are picked up.
+	 */
+	@Test
+	public void testStructuralChangeBetweenTicks() {
+		for (int i = 0; i < TICKS; i++) {
+			if (i % 50 == 10) {
+				NestingShape expectedParent = (NestingShape) _expected.root().shapeAt(0);
+				NestingShape actualParent = (NestingShape) _actual.root().shapeAt(0);
+				_expected.add(new DynamicRectangleShape(0, 0, 3, 1, 10, 10, Color.RED), expectedParent);
+				_actual.add(new DynamicRectangleShape(0, 0, 3, 1, 10, 10, Color.RED), actualParent);
+			} else if (i % 50 == 30) {
+				_expected.remove(((NestingShape) _expected.root().shapeAt(1)).shapeAt(0));
+				_actual.remove(((NestingShape) _actual.root().shapeAt(1)).shapeAt(0));
+			}
+			_expected.clock();
+			_actual.clock();
+			assertEquals(describe(_expected.root()), describe(_actual.root()));
+		}
+	}
+
+	/*
+	 * Builds a model with a mix of NestingShapes and hook-bearing Shapes.
+	 */
+	static ShapeModel makeModel(long seed) {
+		Random random = new Random(seed);
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		for (int i = 0; i < 4; i++) {
+			NestingShape nest = new NestingShape(random.nextInt(100), random.nextInt(100),
+					1 + random.nextInt(5), 1 + random.nextInt(5), 200, 200);
+			for (int j = 0; j < 20; j++) {
+				model.add(makeShape(random), nest);
+			}
+			NestingShape inner = new NestingShape(0, 0, 2, 3, 80, 80);
+			model.add(new OvalAndRectangleShape(0, 0, 4, 1, 10, 10), inner);
+			model.add(inner, nest);
+			model.add(nest, model.root());
+		}
+		return model;
+	}
+
+	private static Shape makeShape(Random random) {
+		int x = random.nextInt(100);
+		int y = random.nextInt(100);
+		int deltaX = random.nextInt(21) - 10;
+		int deltaY = random.nextInt(21) - 10;
+		switch (random.nextInt(3)) {
+		case 0:
+			return new RectangleShape(x, y, deltaX, deltaY, 20, 30);
+		case 1:
+			return new DynamicRectangleShape(x, y, deltaX, deltaY, 25, 15, Color.BLUE);
+		default:
+			return new OvalAndRectangleShape(x, y, deltaX, deltaY, 15, 25);
+		}
+	}
+
+	static String describe(NestingShape root) {
+		MockPainter painter = new MockPainter();
+		StringBuilder state = new StringBuilder();
+		describe(root, state);
+		root.paint(painter);
+		return state.append(painter).toString();
+	}
+
+	private static void describe(Shape shape, StringBuilder state) {
+		state.append(shape.x()).append(',').append(shape.y()).append(',')
+			.append(shape.deltaX()).append(',').append(shape.deltaY()).append(';');
+		if (shape instanceof NestingShape) {
+			NestingShape nest = (NestingShape) shape;
+			for (int i = 0; i < nest.shapeCount(); i++) {
+				describe(nest.shapeAt(i), state);
+			}
+		}
+	}
+}
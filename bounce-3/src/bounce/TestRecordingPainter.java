@@ -0,0 +1,140 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+
+import org.junit.Test;
+
+/**
+ * Class to test that a RecordingPainter records the same requests as a
+ * MockPainter and compares recordings correctly.
+ * @author Will Molloy
+ *
+ */
+public class TestRecordingPainter {
+
+	/**
+	 * Checks that the textual form of a recording matches a MockPainter's log
+	 * for every kind of request.
+	 */
+	@Test
+	public void testTextMatchesMockPainter() {
+		MockPainter mock = new MockPainter();
+		RecordingPainter recording = new RecordingPainter();
+		paintEverything(mock);
+		paintEverything(recording);
+
+		assertEquals(mock.toString(), recording.toString());
+		assertEquals(14, recording.commandCount());
+	}
+
+	/**
+	 * Checks that painting a whole model produces the same text as a
+	 * MockPainter.
+	 */
+	@Test
+	public void testModelTextMatchesMockPainter() {
+		ShapeModel model = TestPackedSimulationEngine.makeModel(7);
+		for (int i = 0; i < 50; i++) {
+			model.clock();
+		}
+		MockPainter mock = new MockPainter();
+		RecordingPainter recording = new RecordingPainter();
+		model.root().paint(mock);
+		model.root().paint(recording);
+
+		assertEquals(mock.toString(), recording.toString());
+	}
+
+	/**
+	 * Checks that equal recordings are equal and that diff() reports the
+	 * first request that differs.
+	 */
+	@Test
+	public void testEqualsAndDiff() {
+		RecordingPainter expected = new RecordingPainter();
+		RecordingPainter actual = new RecordingPainter();
+		paintEverything(expected);
+		paintEverything(actual);
+
+		assertEquals(expected, actual);
+		assertEquals(expected.hashCode(), actual.hashCode());
+		assertNull(actual.diff(expected));
+
+		expected.drawRect(1, 2, 3, 4);
+		actual.drawRect(1, 2, 3, 5);
+		assertFalse(expected.equals(actual));
+		assertEquals("Command 14: expected (rectangle 1,2,3,4) but was (rectangle 1,2,3,5)", actual.diff(expected));
+
+		actual.reset();
+		assertEquals(0, actual.commandCount());
+		assertEquals("Command 0: expected (colour java.awt.Color[r=255,g=0,b=0]) but was (none)", actual.diff(expected));
+	}
+
+	/**
+	 * Checks that translations, which are not part of the text, still take
+	 * part in comparisons, and that text is compared by value.
+	 */
+	@Test
+	public void testTranslateAndTextCompared() {
+		RecordingPainter expected = new RecordingPainter();
+		RecordingPainter actual = new RecordingPainter();
+		expected.translate(1, 1);
+		actual.translate(1, 2);
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals("Command 0: expected (translate 1,1) but was (translate 1,2)", actual.diff(expected));
+
+		expected.reset();
+		actual.reset();
+		expected.drawCenteredText(new String("Bounce"), 5, 5);
+		actual.drawCenteredText("Bounce", 5, 5);
+		assertTrue(expected.equals(actual));
+	}
+
+	/**
+	 * Checks that a reset RecordingPainter can be reused to record the same
+	 * frame again.
+	 */
+	@Test
+	public void testReuseAfterReset() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		for (int i = 0; i < 1000; i++) {
+			model.add(new RectangleShape(i % 400, i % 300, 1, 1, 10, 10), model.root());
+		}
+		RecordingPainter painter = new RecordingPainter();
+		model.root().paint(painter);
+		int count = painter.commandCount();
+		for (int i = 0; i < 10; i++) {
+			painter.reset();
+			model.root().paint(painter);
+			assertEquals(count, painter.commandCount());
+		}
+		// Colour and outline for each Shape, plus the root's two translations.
+		assertEquals(2004, count);
+	}
+
+	private static void paintEverything(Painter painter) {
+		painter.setColour(Color.RED);
+		painter.drawRect(1, 2, 3, 4);
+		painter.drawOval(5, 6, 7, 8);
+		painter.drawLine(9, 10, 11, 12);
+		painter.fillRect(13, 14, 15, 16);
+		painter.fillOval(17, 18, 19, 20);
+		painter.translate(21, 22);
+		painter.drawCenteredText("Bounce", 23, 24);
+		painter.drawImage(null, 25, 26, 27, 28);
+		painter.translate(-21, -22);
+		painter.drawHexagon(60, 40, 29, 30);
+		painter.drawDiamond(20, 10, 31, 32);
+		int[] xs = {33, 34, 35};
+		int[] ys = {36, 37, 38};
+		painter.drawPolygon(xs, ys, 3);
+		xs[0] = 39;		// Painters must not keep the arrays.
+		painter.fillPolygon(xs, ys, 2);
+	}
+}
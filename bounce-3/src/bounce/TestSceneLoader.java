@@ -0,0 +1,145 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that scenes saved by a SceneWriter are loaded back by a
+ * SceneLoader with every Shape in the same state.
+ * @author Will Molloy
+ *
+ */
+public class TestSceneLoader {
+
+	private File _file;
+	private File _imageFile;
+
+	@Before
+	public void setUp() throws IOException {
+		_file = File.createTempFile("bounce", ".scene");
+		_imageFile = File.createTempFile("bounce", ".png");
+	}
+
+	@After
+	public void tearDown() {
+		_file.delete();
+		_imageFile.delete();
+	}
+
+	/**
+	 * Checks that a loaded scene paints and moves exactly as the saved one,
+	 * including the state of DynamicRectangleShapes and
+	 * OvalAndRectangleShapes.
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		ShapeModel model = TestPackedSimulationEngine.makeModel(11);
+		model.add(new GemShape(10, 20, 3, -2, 40, 30, "gem"), model.root());
+		model.add(new OvalShape(100, 50, -4, 5, 30, 30, "gem"), model.root());
+		model.add(new DynamicRectangleShape(0, 0, 6, 2, 25, 25, "\u00e9t\u00e9", new Color(10, 20, 30, 40)), model.root());
+		for (int i = 0; i < 37; i++) {
+			model.clock();
+		}
+		SceneWriter.save(model, _file);
+
+		ShapeModel loaded = SceneLoader.load(_file);
+		assertEquals(model.bounds(), loaded.bounds());
+		assertEquals(TestPackedSimulationEngine.describe(model.root()), TestPackedSimulationEngine.describe(loaded.root()));
+
+		for (int i = 0; i < 40; i++) {
+			model.clock();
+			loaded.clock();
+		}
+		assertEquals(TestPackedSimulationEngine.describe(model.root()), TestPackedSimulationEngine.describe(loaded.root()));
+	}
+
+	/**
+	 * Checks that images are saved by source and resolved once per source and
+	 * size, and that images that cannot be resolved are replaced.
+	 */
+	@Test
+	public void testImages() throws IOException {
+		BufferedImage picture = new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB);
+		ImageIO.write(picture, "png", _imageFile);
+		String missing = new File(_imageFile.getPath() + ".missing").getPath();
+
+		ShapeModel model = new ShapeModel(new Dimension(300, 300));
+		model.add(new ImageRectangleShape(1, 2, picture, _imageFile.getPath()), model.root());
+		model.add(new ImageRectangleShape(3, 4, picture, _imageFile.getPath()), model.root());
+		model.add(new ImageRectangleShape(5, 6, picture, missing), model.root());
+		model.add(new ImageRectangleShape(7, 8, picture), model.root());
+		model.clock();
+		SceneWriter.save(model, _file);
+
+		final List<String> resolved = new ArrayList<String>();
+		ShapeModel loaded = SceneLoader.load(_file, new SceneLoader.ImageResolver() {
+			@Override
+			public Image resolve(String source, int width, int height) throws IOException {
+				resolved.add(source);
+				return SceneLoader.FILE_RESOLVER.resolve(source, width, height);
+			}
+		});
+		assertEquals(2, resolved.size());
+		assertEquals(TestPackedSimulationEngine.describe(model.root()), TestPackedSimulationEngine.describe(loaded.root()));
+
+		ImageRectangleShape first = (ImageRectangleShape) loaded.root().shapeAt(0);
+		ImageRectangleShape second = (ImageRectangleShape) loaded.root().shapeAt(1);
+		assertEquals(_imageFile.getPath(), first.source());
+		assertSame(first.image(), second.image());
+		assertEquals(30, loaded.root().shapeAt(2).image().getWidth(null));
+		assertNull(((ImageRectangleShape) loaded.root().shapeAt(3)).source());
+	}
+
+	/**
+	 * Checks that files that are not whole scene files are rejected.
+	 */
+	@Test
+	public void testCorruptFiles() throws IOException {
+		SceneWriter.save(TestPackedSimulationEngine.makeModel(3), _file);
+		RandomAccessFile file = new RandomAccessFile(_file, "rw");
+		try {
+			file.setLength(file.length() - 10);
+		} finally {
+			file.close();
+		}
+		try {
+			SceneLoader.load(_file);
+			fail();
+		} catch (IOException e) {
+			// Expected.
+		}
+
+		try {
+			SceneLoader.load(_imageFile);
+			fail();
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedShape() {
+		ShapeModel model = new ShapeModel(new Dimension(300, 300));
+		model.add(new RectangleShape() {
+		}, model.root());
+		SceneWriter.snapshot(model);
+	}
+}
@@ -14,7 +14,7 @@ import junit.framework.TestCase;
  */
 public class TestShape extends TestCase{
 	// Fixture object that is used by the tests.
-	private MockPainter _painter;
+	private RecordingPainter _painter;
 
 	/**
 	 * This method is called automatically by the JUnit test-runner immediately
@@ -22,7 +22,7 @@ public class TestShape extends TestCase{
 	 * that there no side effects from running individual tests.
 	 */
 	public void setUp() {
-		_painter = new MockPainter();
+		_painter = new RecordingPainter();
 	}
 
 	/**
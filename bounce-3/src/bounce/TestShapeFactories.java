@@ -0,0 +1,61 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Class to test the ShapeFactories built for Shape subclasses.
+ * @author Will Molloy
+ *
+ */
+public class TestShapeFactories {
+
+	/**
+	 * Checks that a factory makes Shapes of its class from the constructor
+	 * arguments, and that it is built only once.
+	 */
+	@Test
+	public void testCreate() {
+		ShapeFactory factory = ShapeFactories.forClass(OvalShape.class);
+		Shape shape = factory.create(1, 2, 3, 4, 5, 6, "oval");
+		assertSame(OvalShape.class, shape.getClass());
+		assertEquals(1, shape.x());
+		assertEquals(2, shape.y());
+		assertEquals(3, shape.deltaX());
+		assertEquals(4, shape.deltaY());
+		assertEquals(5, shape.width());
+		assertEquals(6, shape.height());
+		assertEquals("oval", shape.text());
+		assertSame(factory, ShapeFactories.forClass(OvalShape.class));
+
+		List<Class<? extends Shape>> classes = Arrays.<Class<? extends Shape>>asList(RectangleShape.class,
+				GemShape.class, NestingShape.class, OvalAndRectangleShape.class);
+		for (Class<? extends Shape> cls : classes) {
+			assertSame(cls, ShapeFactories.forClass(cls).create(0, 0, 1, 1, 10, 10, null).getClass());
+		}
+	}
+
+	/**
+	 * Checks that classes without a suitable constructor are rejected.
+	 */
+	@Test
+	public void testMissingConstructors() {
+		List<Class<? extends Shape>> classes = Arrays.<Class<? extends Shape>>asList(Shape.class,
+				ImageRectangleShape.class, DynamicRectangleShape.class);
+		for (Class<? extends Shape> cls : classes) {
+			try {
+				ShapeFactories.forClass(cls);
+				fail(cls.getName());
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().startsWith(cls.getName()));
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+
+import org.junit.Test;
+
+/**
+ * Class to test the fixed-timestep loop of a SimulationScheduler.
+ * @author Will Molloy
+ *
+ */
+public class TestSimulationScheduler {
+
+	/**
+	 * Checks that the model is clocked at about the requested rate and that
+	 * stop() waits for the thread to finish.
+	 */
+	@Test
+	public void testTickRate() throws InterruptedException {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		model.add(new RectangleShape(), model.root());
+		SimulationScheduler scheduler = new SimulationScheduler(model, 100);
+		scheduler.start();
+		assertTrue(scheduler.isRunning());
+		Thread.sleep(500);
+		scheduler.stop();
+		assertFalse(scheduler.isRunning());
+
+		long ticks = model.ticks();
+		assertEquals(ticks, scheduler.ticks());
+		// 50 ticks are due; allow for a slow or busy machine.
+		assertTrue("ticks: " + ticks, ticks >= 10 && ticks <= 51);
+		Thread.sleep(50);
+		assertEquals(ticks, model.ticks());
+
+		double time = scheduler.simulationTime();
+		assertTrue(time >= ticks && time <= ticks + 1);
+	}
+
+	/**
+	 * Checks that a slow model runs catch-up ticks up to the cap and drops
+	 * the rest.
+	 */
+	@Test
+	public void testCatchUpAndDroppedTicks() throws InterruptedException {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		model.setSimulationEngine(new SimulationEngine() {
+			@Override
+			public void tick(NestingShape root, int width, int height) {
+				try {
+					Thread.sleep(25);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			@Override
+			public void structureChanged() {
+			}
+
+			@Override
+			public void stateChanged() {
+			}
+		});
+		SimulationScheduler scheduler = new SimulationScheduler(model, 200, 2);
+		scheduler.start();
+		Thread.sleep(400);
+		scheduler.stop();
+
+		// Each tick takes five intervals, so most are late or dropped.
+		assertTrue(scheduler.lateTicks() > 0);
+		assertTrue(scheduler.droppedTicks() > scheduler.ticks());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRate() {
+		new SimulationScheduler(new ShapeModel(new Dimension(500, 500)), 0);
+	}
+}
@@ -0,0 +1,110 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Class to test the hit-testing queries that ShapeModel answers with a
+ * SpatialIndex, by comparing them with a walk of the whole composition.
+ * @author Will Molloy
+ *
+ */
+public class TestSpatialIndex {
+
+	/**
+	 * Checks a simple nested composition in absolute coordinates.
+	 */
+	@Test
+	public void testNestedShapeAt() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		NestingShape nest = new NestingShape(100, 100, 0, 0, 200, 200);
+		Shape inner = new RectangleShape(50, 50, 0, 0, 20, 20);
+		model.add(nest, model.root());
+		model.add(inner, nest);
+
+		assertSame(inner, model.shapeAt(160, 160));
+		assertSame(nest, model.shapeAt(140, 140));
+		assertNull(model.shapeAt(60, 60));
+		assertEquals(2, model.shapesIn(new Rectangle(150, 150, 1, 1)).size());
+		assertTrue(model.shapesIn(new Rectangle(0, 0, 100, 100)).isEmpty());
+	}
+
+	/**
+	 * Checks that queries match a brute force search as Shapes move, and
+	 * after Shapes are added and removed.
+	 */
+	@Test
+	public void testMatchesBruteForce() {
+		ShapeModel model = TestPackedSimulationEngine.makeModel(3);
+		Random random = new Random(5);
+		for (int tick = 0; tick < 300; tick++) {
+			if (tick == 100) {
+				model.remove(model.root().shapeAt(1));
+			} else if (tick == 200) {
+				model.add(new OvalShape(10, 10, 3, 4, 300, 20), model.root());
+			}
+			model.clock();
+			for (int i = 0; i < 20; i++) {
+				int x = random.nextInt(520) - 10;
+				int y = random.nextInt(520) - 10;
+				List<Shape> expected = bruteForce(model, new Rectangle(x, y, 1, 1));
+				Shape topmost = expected.isEmpty() ? null : expected.get(expected.size() - 1);
+				assertSame(topmost, model.shapeAt(x, y));
+
+				Rectangle area = new Rectangle(x, y, random.nextInt(150), random.nextInt(150));
+				assertEquals(bruteForce(model, area), model.shapesIn(area));
+			}
+		}
+	}
+
+	/**
+	 * Checks a large flat model, where most Shapes fall in ordinary cells.
+	 */
+	@Test
+	public void testLargeModel() {
+		ShapeModel model = new ShapeModel(new Dimension(1000, 1000));
+		Random random = new Random(11);
+		for (int i = 0; i < 20000; i++) {
+			model.add(new RectangleShape(random.nextInt(980), random.nextInt(980),
+					random.nextInt(11) - 5, random.nextInt(11) - 5, 4 + random.nextInt(16), 4 + random.nextInt(16)),
+					model.root());
+		}
+		model.shapeAt(0, 0);
+		for (int tick = 0; tick < 20; tick++) {
+			model.clock();
+		}
+		Rectangle area = new Rectangle(400, 300, 60, 90);
+		assertEquals(bruteForce(model, area), model.shapesIn(area));
+	}
+
+	// Returns the Shapes intersecting area, in pre-order, excluding the root.
+	private static List<Shape> bruteForce(ShapeModel model, Rectangle area) {
+		List<Shape> found = new ArrayList<Shape>();
+		collect(model.root(), model.root().x(), model.root().y(), area, found);
+		return found;
+	}
+
+	private static void collect(NestingShape nest, int originX, int originY, Rectangle area, List<Shape> found) {
+		for (int i = 0; i < nest.shapeCount(); i++) {
+			Shape shape = nest.shapeAt(i);
+			int x = originX + shape.x();
+			int y = originY + shape.y();
+			if (area.intersects(new Rectangle(x, y, shape.width(), shape.height()))) {
+				found.add(shape);
+			}
+			if (shape instanceof NestingShape) {
+				collect((NestingShape) shape, x, y, area, found);
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package bounce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a TextLayoutCache measures text as FontMetrics does,
+ * once per string, within its capacity.
+ * @author Will Molloy
+ *
+ */
+public class TestTextLayoutCache {
+
+	private BufferedImage _image;
+	private Graphics2D _g;
+
+	@Before
+	public void setUp() {
+		_image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+		_g = _image.createGraphics();
+	}
+
+	@After
+	public void tearDown() {
+		_g.dispose();
+	}
+
+	@Test
+	public void testMeasurements() {
+		TextLayoutCache cache = new TextLayoutCache(10);
+		TextLayoutCache.FontLayout layout = cache.layout(_g);
+		FontMetrics metrics = _g.getFontMetrics();
+		for (String text : new String[] {"", "a", "Bounce", "\u00e9t\u00e9", "wide text"}) {
+			assertEquals((int) metrics.getStringBounds(text, _g).getWidth(), layout.width(text));
+			assertEquals((int) metrics.getStringBounds(text, _g).getWidth(), layout.width(text));
+		}
+		assertEquals(metrics.getAscent(), layout.ascent());
+		assertEquals(metrics.getDescent(), layout.descent());
+		assertEquals(5, layout.misses());
+		assertEquals(5, layout.hits());
+
+		assertSame(layout, cache.layout(_g));
+		_g.setFont(_g.getFont().deriveFont(Font.BOLD, 20f));
+		TextLayoutCache.FontLayout bold = cache.layout(_g);
+		assertNotSame(layout, bold);
+		assertEquals(_g.getFontMetrics().getAscent(), bold.ascent());
+	}
+
+	@Test
+	public void testEviction() {
+		TextLayoutCache.FontLayout layout = new TextLayoutCache(2).layout(_g);
+		layout.width("a");
+		layout.width("b");
+		layout.width("a");
+		layout.width("c");
+		assertEquals(2, layout.size());
+		layout.width("a");
+		assertEquals(3, layout.misses());
+		layout.width("b");
+		assertEquals(4, layout.misses());
+	}
+
+	/**
+	 * Checks that GraphicsPainter places text where measuring it afresh
+	 * would.
+	 */
+	@Test
+	public void testSameText() {
+		BufferedImage expected = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = expected.createGraphics();
+		for (String text : new String[] {"Bounce", "gem", "x"}) {
+			FontMetrics font = g.getFontMetrics();
+			int width = (int) font.getStringBounds(text, g).getWidth();
+			g.setColor(Color.BLACK);
+			g.drawString(text, 100 - width/2, 50 + Math.abs(font.getAscent() - font.getDescent())/2);
+			new GraphicsPainter(_g).drawCenteredText(text, 100, 50);
+		}
+		g.dispose();
+		assertArrayEquals(expected.getRGB(0, 0, 200, 100, null, 0, 200), _image.getRGB(0, 0, 200, 100, null, 0, 200));
+	}
+}
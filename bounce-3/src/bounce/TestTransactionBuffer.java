@@ -0,0 +1,202 @@
+package bounce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the bulk operations of ShapeModel and the aggregation of the
+ * events fired within a transaction.
+ * @author Will Molloy
+ *
+ */
+public class TestTransactionBuffer {
+
+	private ShapeModel _model;
+	private List<ShapeModelEvent> _received;
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_received = new ArrayList<ShapeModelEvent>();
+		_model.addShapeModelListener(new ShapeModelListener() {
+			@Override
+			public void update(ShapeModelEvent event) {
+				_received.add(event);
+			}
+		});
+	}
+
+	/**
+	 * Checks that addAll() skips Shapes that cannot be added and reports the
+	 * others with one event.
+	 */
+	@Test
+	public void testAddAll() {
+		Shape first = new RectangleShape();
+		Shape tooBig = new RectangleShape(0, 0, 1, 1, 600, 20);
+		Shape second = new RectangleShape();
+		_model.add(new RectangleShape(), _model.root());
+		_received.clear();
+
+		assertFalse(_model.addAll(Arrays.asList(first, tooBig, second), _model.root()));
+		assertEquals(1, _received.size());
+		ShapeModelEvent event = _received.get(0);
+		assertEquals(ShapeModelEvent.EventType.ShapesAdded, event.eventType());
+		assertSame(_model.root(), event.parent());
+		assertEquals(Arrays.asList(first, second), Arrays.asList(event.operands()));
+		assertEquals("[1, 2]", Arrays.toString(event.indices()));
+		assertEquals(1, event.previousChildCount());
+		assertNull(tooBig.parent());
+	}
+
+	/**
+	 * Checks that removeAll() fires one event per former parent, with the
+	 * Shapes in index order and ignoring duplicates and orphans.
+	 */
+	@Test
+	public void testRemoveAll() {
+		NestingShape nest = new NestingShape(0, 0, 0, 0, 100, 100);
+		List<Shape> shapes = new ArrayList<Shape>();
+		for (int i = 0; i < 6; i++) {
+			shapes.add(new RectangleShape());
+		}
+		_model.addAll(shapes, _model.root());
+		Shape inner = new RectangleShape();
+		_model.add(nest, _model.root());
+		_model.add(inner, nest);
+		_received.clear();
+
+		_model.removeAll(Arrays.asList(shapes.get(4), inner, shapes.get(1), shapes.get(4), new RectangleShape()));
+		assertEquals(2, _received.size());
+		ShapeModelEvent event = _received.get(0);
+		assertEquals(ShapeModelEvent.EventType.ShapesRemoved, event.eventType());
+		assertEquals(Arrays.asList(shapes.get(1), shapes.get(4)), Arrays.asList(event.operands()));
+		assertEquals("[1, 4]", Arrays.toString(event.indices()));
+		assertEquals(7, event.previousChildCount());
+		assertEquals(ShapeModelEvent.EventType.ShapeRemoved, _received.get(1).eventType());
+		assertSame(nest, _received.get(1).parent());
+
+		assertEquals(5, _model.root().shapeCount());
+		assertEquals(3, _model.root().indexOf(shapes.get(5)));
+		assertNull(shapes.get(4).parent());
+	}
+
+	/**
+	 * Checks that a transaction holds additions back until the outermost one
+	 * closes, while the events fired by clock() are not held back.
+	 */
+	@Test
+	public void testNestedTransactions() {
+		Shape first = new RectangleShape();
+		Shape second = new RectangleShape();
+		Shape third = new RectangleShape();
+		ShapeModel.Transaction outer = _model.beginTransaction();
+		try {
+			ShapeModel.Transaction inner = _model.beginTransaction();
+			try {
+				_model.add(first, _model.root());
+				_model.add(second, _model.root());
+			} finally {
+				inner.close();
+			}
+			assertEquals(0, _received.size());
+			_model.clock();
+			assertEquals(1, _received.size());
+			assertEquals(ShapeModelEvent.EventType.ShapeMoved, _received.get(0).eventType());
+			_model.add(third, _model.root());
+		} finally {
+			outer.close();
+		}
+		assertEquals(2, _received.size());
+		assertEquals(ShapeModelEvent.EventType.ShapesAdded, _received.get(1).eventType());
+		assertEquals("[0, 1, 2]", Arrays.toString(_received.get(1).indices()));
+		assertSame(third, _received.get(1).operands()[2]);
+
+		// Closed transactions no longer hold events back.
+		_model.remove(first);
+		assertEquals(3, _received.size());
+	}
+
+	/**
+	 * Checks that each event fired when a transaction closes gives the
+	 * number of children its parent had before that event's changes, even
+	 * though later events changed the parent again.
+	 */
+	@Test
+	public void testPreviousChildCounts() {
+		NestingShape nest = new NestingShape(0, 0, 0, 0, 100, 100);
+		_model.add(nest, _model.root());
+		_received.clear();
+
+		ShapeModel.Transaction transaction = _model.beginTransaction();
+		try {
+			_model.add(new RectangleShape(), _model.root());
+			_model.add(new RectangleShape(), _model.root());
+			_model.add(new RectangleShape(), nest);
+			_model.add(new RectangleShape(), _model.root());
+			_model.remove(_model.root().shapeAt(1));
+			_model.remove(_model.root().shapeAt(1));
+		} finally {
+			transaction.close();
+		}
+		assertEquals(4, _received.size());
+		assertEquals(1, _received.get(0).previousChildCount());
+		assertEquals(0, _received.get(1).previousChildCount());
+		assertEquals(3, _received.get(2).previousChildCount());
+		assertEquals(4, _received.get(3).previousChildCount());
+		assertEquals(-1, ShapeModelEvent.makeShapeMovedEvent(nest, _model).previousChildCount());
+	}
+
+	/**
+	 * Checks that removals in any order within a transaction are reported
+	 * with the indices the Shapes held when the transaction began.
+	 */
+	@Test
+	public void testRemovalIndices() {
+		List<Shape> shapes = new ArrayList<Shape>();
+		for (int i = 0; i < 200; i++) {
+			shapes.add(new RectangleShape());
+		}
+		_model.addAll(shapes, _model.root());
+		_received.clear();
+
+		Random random = new Random(3);
+		List<Shape> remaining = new ArrayList<Shape>(shapes);
+		ShapeModel.Transaction transaction = _model.beginTransaction();
+		try {
+			for (int i = 0; i < 60; i++) {
+				Shape shape = remaining.remove(random.nextInt(remaining.size()));
+				if (i % 10 == 0) {
+					Shape other = remaining.remove(random.nextInt(remaining.size()));
+					_model.removeAll(Arrays.asList(shape, other));
+				} else {
+					_model.remove(shape);
+				}
+			}
+		} finally {
+			transaction.close();
+		}
+		assertEquals(1, _received.size());
+		ShapeModelEvent event = _received.get(0);
+		assertEquals(66, event.indices().length);
+		int previous = -1;
+		for (int i = 0; i < event.indices().length; i++) {
+			int index = event.indices()[i];
+			assertSame(shapes.get(index), event.operands()[i]);
+			assertTrue(index > previous);
+			previous = index;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package bounce;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the measurements needed to centre text, so that painting a Shape's
+ * text, which never changes, does not measure it again every tick.
+ *
+ * Measurements depend on the Font and on the FontRenderContext of the
+ * Graphics drawn on, so they are grouped in a FontLayout per pair of them.
+ * A FontLayout holds the ascent and descent of its Font and the widths of up
+ * to a fixed number of strings, evicting the least recently used. Only the
+ * most recently used MAX_FONTS FontLayouts are kept.
+ *
+ * @author Will Molloy
+ *
+ */
+public final class TextLayoutCache {
+
+	/**
+	 * Default number of widths held per FontLayout.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	public static final int MAX_FONTS = 16;
+
+	private static final TextLayoutCache SHARED = new TextLayoutCache(DEFAULT_CAPACITY);
+
+	/**
+	 * Measurements of text in one Font and FontRenderContext.
+	 */
+	public static final class FontLayout {
+		private final Font _font;
+		private final FontRenderContext _context;
+		private final int _ascent;
+		private final int _descent;
+		private final int _maxAscent;
+		private final int _maxDescent;
+		private final LinkedHashMap<String, Integer> _widths;
+
+		private long _hits;
+		private long _misses;
+
+		private FontLayout(Font font, FontRenderContext context, FontMetrics metrics, final int capacity) {
+			_font = font;
+			_context = context;
+			_ascent = metrics.getAscent();
+			_descent = metrics.getDescent();
+			_maxAscent = metrics.getMaxAscent();
+			_maxDescent = metrics.getMaxDescent();
+			_widths = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+					return size() > capacity;
+				}
+			};
+		}
+
+		/**
+		 * Returns the width of text, as Font.getStringBounds() measures it,
+		 * rounded down.
+		 */
+		public synchronized int width(String text) {
+			Integer width = _widths.get(text);
+			if (width == null) {
+				_misses++;
+				width = (int) _font.getStringBounds(text, _context).getWidth();
+				_widths.put(text, width);
+			} else {
+				_hits++;
+			}
+			return width;
+		}
+
+		public int ascent() {
+			return _ascent;
+		}
+
+		public int descent() {
+			return _descent;
+		}
+
+		public int maxAscent() {
+			return _maxAscent;
+		}
+
+		public int maxDescent() {
+			return _maxDescent;
+		}
+
+		/**
+		 * Returns how far below the centre of text its baseline is.
+		 */
+		public int baselineOffset() {
+			return Math.abs(_ascent - _descent) / 2;
+		}
+
+		/**
+		 * Returns the number of widths cached.
+		 */
+		public synchronized int size() {
+			return _widths.size();
+		}
+
+		public synchronized long hits() {
+			return _hits;
+		}
+
+		public synchronized long misses() {
+			return _misses;
+		}
+	}
+
+	private final int _capacity;
+
+	// FontLayouts, most recently used first.
+	private final List<FontLayout> _layouts = new ArrayList<FontLayout>();
+
+	// The FontLayout returned last, checked before taking the lock.
+	private volatile FontLayout _last;
+
+	/**
+	 * Returns the TextLayoutCache shared by GraphicsPainters.
+	 */
+	public static TextLayoutCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates a TextLayoutCache that holds up to capacity widths per
+	 * FontLayout.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public TextLayoutCache(int capacity) throws IllegalArgumentException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		_capacity = capacity;
+	}
+
+	/**
+	 * Returns the FontLayout for the current Font and FontRenderContext of g.
+	 */
+	public FontLayout layout(Graphics g) {
+		Font font = g.getFont();
+		// As FontMetrics does for a Graphics that is not a Graphics2D.
+		FontRenderContext context = g instanceof Graphics2D ? ((Graphics2D) g).getFontRenderContext() : new FontRenderContext(null, false, false);
+		FontLayout last = _last;
+		if (last != null && last._font.equals(font) && last._context.equals(context)) {
+			return last;
+		}
+		synchronized (this) {
+			last = find(g, font, context);
+			_last = last;
+			return last;
+		}
+	}
+
+	// Returns the FontLayout for font and context, creating it if needed.
+	private FontLayout find(Graphics g, Font font, FontRenderContext context) {
+		for (int i = 0; i < _layouts.size(); i++) {
+			FontLayout layout = _layouts.get(i);
+			if (layout._font.equals(font) && layout._context.equals(context)) {
+				if (i > 0) {
+					_layouts.remove(i);
+					_layouts.add(0, layout);
+				}
+				return layout;
+			}
+		}
+		FontLayout layout = new FontLayout(font, context, g.getFontMetrics(font), _capacity);
+		_layouts.add(0, layout);
+		if (_layouts.size() > MAX_FONTS) {
+			_layouts.remove(MAX_FONTS);
+		}
+		return layout;
+	}
+}
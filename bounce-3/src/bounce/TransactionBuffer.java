@@ -0,0 +1,143 @@
+package bounce;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the ShapeModelEvents fired during a ShapeModel transaction and
+ * aggregates them. Each run of consecutive additions to the same
+ * NestingShape becomes one ShapesAdded event, and each run of consecutive
+ * removals from the same NestingShape one ShapesRemoved event; other events
+ * are kept as they are and in order, and end the run before them. A run of
+ * a single event is passed on unchanged.
+ *
+ * A removal is reported relative to the children left by the removals
+ * before it, whereas a ShapesRemoved event gives the positions the Shapes
+ * held before any of them was removed. The removed positions of a run are
+ * kept sorted so that each removal's index can be translated back with a
+ * binary search.
+ *
+ * @author Will Molloy
+ *
+ */
+class TransactionBuffer {
+
+	private final ShapeModel _source;
+	private final List<Object> _pending = new ArrayList<Object>();	// Events and Runs.
+	private Run _open;		// Run that the next event may extend, null if none.
+
+	TransactionBuffer(ShapeModel source) {
+		_source = source;
+	}
+
+	/**
+	 * Adds an event fired during the transaction.
+	 */
+	void add(ShapeModelEvent event) {
+		ShapeModelEvent.EventType type = event.eventType();
+		boolean addition = type == ShapeModelEvent.EventType.ShapeAdded || type == ShapeModelEvent.EventType.ShapesAdded;
+		boolean removal = type == ShapeModelEvent.EventType.ShapeRemoved || type == ShapeModelEvent.EventType.ShapesRemoved;
+		if (!addition && !removal) {
+			_pending.add(event);
+			_open = null;
+			return;
+		}
+		if (_open == null || _open._removal != removal || _open._parent != event.parent()) {
+			_open = new Run(event, removal);
+			_pending.add(_open);
+		}
+		Shape[] shapes = event.operands();
+		int[] indices = event.indices();
+		for (int i = 0; i < shapes.length; i++) {
+			if (removal) {
+				// The event's indices all predate its own removals.
+				_open.remove(shapes[i], indices[i] - i);
+			} else {
+				_open.append(shapes[i], indices[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the aggregated events in the order they should be fired, and
+	 * empties this TransactionBuffer.
+	 */
+	List<ShapeModelEvent> drain() {
+		List<ShapeModelEvent> events = new ArrayList<ShapeModelEvent>(_pending.size());
+		for (Object pending : _pending) {
+			events.add(pending instanceof Run ? ((Run) pending).toEvent(_source) : (ShapeModelEvent) pending);
+		}
+		_pending.clear();
+		_open = null;
+		return events;
+	}
+
+	/*
+	 * Consecutive additions to, or removals from, one NestingShape.
+	 */
+	private static class Run {
+		private final ShapeModelEvent _first;
+		private final boolean _removal;
+		private final NestingShape _parent;
+		private Shape[] _shapes = new Shape[4];
+		private int[] _indices = new int[4];
+		private int _count;
+
+		Run(ShapeModelEvent first, boolean removal) {
+			_first = first;
+			_removal = removal;
+			_parent = first.parent();
+		}
+
+		void append(Shape shape, int index) {
+			insert(_count, shape, index);
+		}
+
+		/*
+		 * Records the removal of shape from index, a position among the
+		 * children left by the earlier removals of this run.
+		 */
+		void remove(Shape shape, int index) {
+			// Entry i has index - i children before it that survive, which
+			// never decreases along the run, so count the entries with at
+			// most index survivors before them: they precede the shape.
+			int low = 0, high = _count;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (_indices[middle] - middle <= index) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			insert(low, shape, index + low);
+		}
+
+		private void insert(int position, Shape shape, int index) {
+			if (_count == _shapes.length) {
+				_shapes = Arrays.copyOf(_shapes, _count * 2);
+				_indices = Arrays.copyOf(_indices, _count * 2);
+			}
+			System.arraycopy(_shapes, position, _shapes, position + 1, _count - position);
+			System.arraycopy(_indices, position, _indices, position + 1, _count - position);
+			_shapes[position] = shape;
+			_indices[position] = index;
+			_count++;
+		}
+
+		ShapeModelEvent toEvent(ShapeModel source) {
+			if (_count == _first.operands().length) {
+				return _first;		// Nothing to aggregate.
+			}
+			Shape[] shapes = Arrays.copyOf(_shapes, _count);
+			int[] indices = Arrays.copyOf(_indices, _count);
+			// Later runs may have changed _parent since, so its children are
+			// counted from before the first event of this run.
+			int previousChildCount = _first.previousChildCount();
+			return _removal
+					? ShapeModelEvent.makeShapesRemovedEvent(shapes, _parent, indices, previousChildCount, source)
+					: ShapeModelEvent.makeShapesAddedEvent(shapes, _parent, indices, previousChildCount, source);
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.swing.BorderFactory;
 import javax.swing.DefaultComboBoxModel;
@@ -22,7 +23,6 @@ import javax.swing.JTable;
 import javax.swing.JTree;
 import javax.swing.LookAndFeel;
 import javax.swing.SwingUtilities;
-import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.event.TreeSelectionEvent;
@@ -39,12 +39,13 @@ import bounce.OvalShape;
 import bounce.RectangleShape;
 import bounce.Shape;
 import bounce.ShapeModel;
+import bounce.SimulationScheduler;
 import bounce.forms.FormResolver;
 import bounce.forms.util.Form;
 import bounce.forms.util.FormComponent;
 import bounce.forms.util.FormHandler;
 import bounce.views.AnimationView;
-import bounce.views.Task2;
+import bounce.views.TreeModelAdapter;
 import bounce.views.TableModelAdapter;
 
 
@@ -53,9 +54,10 @@ import bounce.views.TableModelAdapter;
  * comprising three views of a ShapeModel: an animation view, a table view and
  * a tree view. In addition the GUI includes buttons and associated event
  * handlers to add new shapes to the animation and to remove existing shapes. 
- * A Bounce object uses a Timer to progress the animation; this results in the 
- * ShapeModel being sent a clock() message to which it responds by moving its
- * constituent Shape objects and then by notifying the three views 
+ * A Bounce object uses a SimulationScheduler to progress the animation at a
+ * fixed tick rate; this results in the ShapeModel being sent a clock() 
+ * message to which it responds by moving its constituent Shape objects and 
+ * then by notifying the three views 
  * (ShapeModelListeners). The application uses a BounceConfig object to read 
  * properties from the bounce.properties file, one of which is the name of a
  * ShapeFactory implementation class that is used to create Shapes on request. 
@@ -65,7 +67,17 @@ import bounce.views.TableModelAdapter;
  */
 @SuppressWarnings({ "serial", "unused" })
 public class Bounce extends JPanel {
-	private static final int DELAY = 20;
+	// Maximum rates at which the animation and table views are updated.
+	private static final int ANIMATION_UPDATES_PER_SECOND = 60;
+	private static final int TABLE_UPDATES_PER_SECOND = 5;
+	
+	// Executor that runs view updates on the event dispatch thread.
+	private static final Executor EDT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			SwingUtilities.invokeLater(command);
+		}
+	};
 
 	// Underlying model for the application.
 	private ShapeModel _model;
@@ -81,7 +93,7 @@ public class Bounce extends JPanel {
 	 * Adapter objects (ShapeModelListeners) that transform ShapeModelEvents 
 	 * into Swing TreeModel and TableModel events. 
 	 */ 
-	private Task2 _treeModelAdapter;
+	private TreeModelAdapter _treeModelAdapter;
 	private TableModelAdapter _tableModelAdapter;
 
 	// Swing components to handle user input.
@@ -103,17 +115,25 @@ public class Bounce extends JPanel {
 	public Bounce() {
 		// Instantiate model and populate it with an initial set of shapes.
 		BounceConfig config = BounceConfig.instance();
+		for(String error : config.getShapeClassErrors()) {
+			System.err.println("Ignoring shape class: " + error);
+		}
 		_model = new ShapeModel(config.getAnimationBounds());
 		populateModel();
+		
+		// Let the views paint the last completed frame rather than live shapes.
+		_model.setSnapshotsEnabled(true);
 
 		_comboBoxModel = new ShapeClassComboBoxModel();
 
 		// Instantiate GUI objects and construct GUI.
 		buildGUI();
 
-		// Register views with models.
-		_model.addShapeModelListener(_animationView);
-		_model.addShapeModelListener(_tableModelAdapter);
+		// Register views with models. The animation and table views are 
+		// updated at their own rates; the tree view only needs structural 
+		// changes, which it receives as they happen.
+		_model.addShapeModelListener(_animationView, ANIMATION_UPDATES_PER_SECOND, EDT_EXECUTOR);
+		_model.addShapeModelListener(_tableModelAdapter, TABLE_UPDATES_PER_SECOND, EDT_EXECUTOR);
 		_model.addShapeModelListener(_treeModelAdapter);
 
 		// Setup event handlers to process user input.
@@ -122,13 +142,11 @@ public class Bounce extends JPanel {
 		// Show GUI and ensure the root shape within the JTree view is selected.
 		_treeView.setSelectionPath(new TreePath(_model.root()));
 
-		// Start animation.
-		Timer timer = new Timer(DELAY, new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				_model.clock();
-			}
-		} );
-		timer.start();
+		// Start animation. The model is clocked on its own thread, while the
+		// animation view repaints at its own rate, interpolating between ticks.
+		SimulationScheduler scheduler = new SimulationScheduler(_model, config.getTickRate(), config.getMaxStepsPerFrame());
+		_animationView.setSimulationScheduler(scheduler, ANIMATION_UPDATES_PER_SECOND);
+		scheduler.start();
 	}
 
 	private static void createAndShowGUI() {
@@ -212,7 +230,7 @@ public class Bounce extends JPanel {
 				Shape selection = _shapeSelected;
 				NestingShape parent = selection.parent();
 
-				_treeView.setSelectionPath(new TreePath(parent.path().toArray()));
+				_treeView.setSelectionPath(_treeModelAdapter.pathTo(parent));
 				_model.remove(selection);
 
 			}
@@ -238,7 +256,8 @@ public class Bounce extends JPanel {
 		_treeView.addTreeSelectionListener(new TreeSelectionListener() {
 			public void valueChanged(TreeSelectionEvent e) {
 				TreePath selectionPath = _treeView.getSelectionPath();
-				_shapeSelected = (Shape)selectionPath.getLastPathComponent();
+				Object node = selectionPath.getLastPathComponent();
+				_shapeSelected = TreeModelAdapter.shapeOf(node);
 
 				/*
 				 * Enable button fNewShape only if what is selected in the 
@@ -249,10 +268,11 @@ public class Bounce extends JPanel {
 
 				/*
 				 * Enable button fDeleteShape only if what is selected in the
-				 * JTree is not the root node. Rationale: any shape can be 
-				 * removed with the exception of the root.
+				 * JTree is not the root node or a page of a large NestingShape.
+				 * Rationale: any shape can be removed with the exception of
+				 * the root.
 				 */
-				_deleteShape.setEnabled(_shapeSelected != _model.root());
+				_deleteShape.setEnabled(node instanceof Shape && _shapeSelected != _model.root());
 
 				/*
 				 * Tell the table model to represent the shape that is now
@@ -271,14 +291,16 @@ public class Bounce extends JPanel {
 	@SuppressWarnings("unchecked")
 	private void buildGUI() {
 		// Create Swing model objects.
-		_treeModelAdapter = new Task2(_model);
+		_treeModelAdapter = new TreeModelAdapter(_model);
 		_tableModelAdapter = new TableModelAdapter(_model.root());
 
 		// Create main Swing components.
 		_treeView = new JTree(_treeModelAdapter);
+		_treeModelAdapter.install(_treeView);
 		_treeView.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 		_tabularView = new JTable(_tableModelAdapter);
 		_animationView = new AnimationView(BounceConfig.instance().getAnimationBounds());
+		_animationView.setAccelerated(BounceConfig.instance().isAcceleratedRendering());
 
 		/*
 		 * Create a panel to house the JTree component. The panel includes a 
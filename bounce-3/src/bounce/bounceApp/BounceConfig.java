@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Properties;
 
 import bounce.Shape;
+import bounce.forms.FormResolver;
 
 
 /**
@@ -36,16 +37,26 @@ public class BounceConfig {
 	public static final int DEFAULT_ANIMATION_HEIGHT = 500;
 	public static final int MAX_ANIMATION_WIDTH = 1000;
 	public static final int MAX_ANIMATION_HEIGHT = 1000;
+	public static final int DEFAULT_TICK_RATE = 50;
+	public static final int MAX_TICK_RATE = 1000;
+	public static final int DEFAULT_MAX_STEPS_PER_FRAME = 5;
 	
 	// Property names (keys).
 	private static final String ANIMATION_WIDTH = "animation_width";
 	private static final String ANIMATION_HEIGHT = "animation_height";
 	private static final String SHAPES = "shape_classes";
+	private static final String TICK_RATE = "tick_rate";
+	private static final String MAX_STEPS_PER_FRAME = "max_steps_per_frame";
+	private static final String ACCELERATED_RENDERING = "accelerated_rendering";
 	
 	// Property values.
 	private Dimension _bounds;
+	private int _tickRate;
+	private int _maxStepsPerFrame;
+	private boolean _acceleratedRendering;
 	private String[] _shapeClassNames;
 	private List<Class<? extends Shape>> _shapeClasses;
+	private List<String> _shapeClassErrors;
 	
 	// Singleton instance.
 	private static BounceConfig instance;
@@ -98,6 +109,18 @@ public class BounceConfig {
 			}
 			_bounds = new Dimension(width, height);
 			
+			// Read simulation rate properties, restoring invalid values to
+			// their defaults.
+			_tickRate = getBound(TICK_RATE, DEFAULT_TICK_RATE, props);
+			if(_tickRate <= 0 || _tickRate > MAX_TICK_RATE) {
+				_tickRate = DEFAULT_TICK_RATE;
+			}
+			_maxStepsPerFrame = getBound(MAX_STEPS_PER_FRAME, DEFAULT_MAX_STEPS_PER_FRAME, props);
+			if(_maxStepsPerFrame <= 0) {
+				_maxStepsPerFrame = DEFAULT_MAX_STEPS_PER_FRAME;
+			}
+			_acceleratedRendering = Boolean.parseBoolean(props.getProperty(ACCELERATED_RENDERING));
+			
 			// Set shapes property.
 			String shapeTypes = props.getProperty(SHAPES);
 			if(shapeTypes == null) {
@@ -120,6 +143,32 @@ public class BounceConfig {
 		return _bounds;
 	}
 	
+	/**
+	 * Returns the number of simulation ticks per second, in the range 
+	 * 1 .. MAX_TICK_RATE. If the properties file does not specify a valid 
+	 * rate, DEFAULT_TICK_RATE is returned.
+	 */
+	public int getTickRate() {
+		return _tickRate;
+	}
+	
+	/**
+	 * Returns the most overdue ticks that the simulation runs back to back 
+	 * when it falls behind, DEFAULT_MAX_STEPS_PER_FRAME unless the 
+	 * properties file specifies a positive value.
+	 */
+	public int getMaxStepsPerFrame() {
+		return _maxStepsPerFrame;
+	}
+	
+	/**
+	 * Returns true if the properties file turns accelerated rendering of the
+	 * animation on, by setting accelerated_rendering to true.
+	 */
+	public boolean isAcceleratedRendering() {
+		return _acceleratedRendering;
+	}
+	
 	/**
 	 * Returns an array of strings containing names of shape classes. If no 
 	 * shape classes are named in the properties file, this method returns an 
@@ -132,6 +181,12 @@ public class BounceConfig {
 		return result;
 	}
 	
+	/**
+	 * Returns the named shape classes that a Shape can be made from, sorted
+	 * by name. Each class is loaded, and checked for a constructor that its
+	 * FormHandler can call, once, on the first call; classes that fail are
+	 * left out and described by getShapeClassErrors().
+	 */
 	public List<Class<? extends Shape>> getShapeClasses() {
 		// If the List of Shape classes has already been created, simply return
 		// it.
@@ -140,23 +195,28 @@ public class BounceConfig {
 		}
 		
 		// Initialise the List of classes.
-		_shapeClasses = new ArrayList<Class<? extends Shape>>();
+		List<Class<? extends Shape>> shapeClasses = new ArrayList<Class<? extends Shape>>();
+		List<String> errors = new ArrayList<String>();
 		
 		for(int i = 0; i < _shapeClassNames.length; i++) {
 			String className = _shapeClassNames[i];
 			
 			try {
-				@SuppressWarnings("unchecked")
-				Class<? extends Shape> newClass = (Class<? extends Shape>) Class.forName(className);
-				_shapeClasses.add(newClass);
-			} catch(ClassNotFoundException | ClassCastException e) {
-				// Ignore the class loading error. The class either doesn't 
-				// exist or isn't a Shape subclass.
+				Class<? extends Shape> newClass = Class.forName(className).asSubclass(Shape.class);
+				FormResolver.checkFormHandler(newClass);
+				shapeClasses.add(newClass);
+			} catch(ClassNotFoundException e) {
+				errors.add(className + " not found");
+			} catch(ClassCastException e) {
+				errors.add(className + " is not a Shape subclass");
+			} catch(IllegalArgumentException e) {
+				// No constructor that a FormHandler can call.
+				errors.add(e.getMessage());
 			}
 		}
 		
 		// Sort the classes based on name.
-		Collections.sort(_shapeClasses, new Comparator<Class<? extends Shape>>() {
+		Collections.sort(shapeClasses, new Comparator<Class<? extends Shape>>() {
 			@Override
 			public int compare(Class<? extends Shape> class1,
 					Class<? extends Shape> class2) {
@@ -165,14 +225,26 @@ public class BounceConfig {
 		});
 		
 		
-		// Return an unmodifiable collection so that clients cannot change the 
-		// contents of the returned list (which is part of the state of the 
+		// Hold unmodifiable collections so that clients cannot change the 
+		// contents of the returned lists (which are part of the state of the 
 		// BounceConfig object).
-		return Collections.unmodifiableList(_shapeClasses);
+		_shapeClassErrors = Collections.unmodifiableList(errors);
+		_shapeClasses = Collections.unmodifiableList(shapeClasses);
+		return _shapeClasses;
+	}
+	
+	/**
+	 * Returns a description of each named shape class that getShapeClasses()
+	 * leaves out, because it cannot be loaded or lacks a constructor. If all
+	 * can be used, this method returns an empty list.
+	 */
+	public List<String> getShapeClassErrors() {
+		getShapeClasses();
+		return _shapeClassErrors;
 	}
 	
 	/*
-	 * Implementation method to read/validate bound properties.
+	 * Implementation method to read/validate bound and rate properties.
 	 */
 	private int getBound(String propertyName, int defaultValue, Properties props) {
 		int property = defaultValue;
@@ -207,5 +279,10 @@ public class BounceConfig {
 		for(Class<? extends Shape> cls : classes) {
 			System.out.println("  " + cls.getName());
 		}
+		
+		System.out.println("Shape classes that cannot be used ...");
+		for(String error : config.getShapeClassErrors()) {
+			System.out.println("  " + error);
+		}
 	}
 }
@@ -0,0 +1,192 @@
+package bounce.bounceApp;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import bounce.ForkJoinSimulationEngine;
+import bounce.ModelJournal;
+import bounce.PackedSimulationEngine;
+import bounce.ShapeModel;
+import bounce.SimulationEngine;
+
+/**
+ * Command line program that runs a generated scene without a GUI and reports
+ * how fast the ShapeModel can be clocked. Usage:
+ *
+ * <pre>
+ * java bounce.bounceApp.HeadlessBounce [--layout flat|wide|deep] [--shapes n]
+ *     [--ticks n] [--warmup n] [--engine sequential|packed|forkjoin] [--seed n]
+ *     [--collisions on|off] [--journal file]
+ * </pre>
+ *
+ * The report gives ticks per second and, where the JVM supports it, the
+ * number of bytes allocated per tick and per second by all threads. With
+ * --journal, the timed ticks are recorded in a ModelJournal, so that the
+ * cost of journaling can be measured and the run replayed with
+ * ReplayJournal.
+ *
+ * @author Will Molloy
+ *
+ */
+public class HeadlessBounce {
+
+	private SceneGenerator.Layout _layout = SceneGenerator.Layout.WIDE;
+	private int _shapes = 10000;
+	private int _ticks = 1000;
+	private int _warmup = 100;
+	private String _engine = "sequential";
+	private long _seed = 1;
+	private boolean _collisions = false;
+	private File _journal;
+
+	/**
+	 * Returns the SimulationEngine with the specified name: "sequential" (no
+	 * engine, Shape.move() is used), "packed" or "forkjoin".
+	 * @throws IllegalArgumentException if the name is not recognised.
+	 */
+	public static SimulationEngine engineNamed(String name) throws IllegalArgumentException {
+		switch (name) {
+		case "sequential":
+			return null;
+		case "packed":
+			return new PackedSimulationEngine();
+		case "forkjoin":
+			return new ForkJoinSimulationEngine();
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		HeadlessBounce runner = new HeadlessBounce();
+		try {
+			runner.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: HeadlessBounce [--layout flat|wide|deep] [--shapes n] [--ticks n] "
+					+ "[--warmup n] [--engine sequential|packed|forkjoin] [--seed n] [--collisions on|off] "
+					+ "[--journal file]");
+			System.exit(1);
+		}
+		try {
+			runner.run();
+		} catch (IOException e) {
+			System.err.println("Error writing journal: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private void parse(String[] args) throws IllegalArgumentException {
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--layout":
+				_layout = SceneGenerator.Layout.valueOf(value.toUpperCase());
+				break;
+			case "--shapes":
+				_shapes = Integer.parseInt(value);
+				break;
+			case "--ticks":
+				_ticks = Integer.parseInt(value);
+				break;
+			case "--warmup":
+				_warmup = Integer.parseInt(value);
+				break;
+			case "--engine":
+				engineNamed(value);	// Validate the name.
+				_engine = value;
+				break;
+			case "--seed":
+				_seed = Long.parseLong(value);
+				break;
+			case "--collisions":
+				if (!value.equals("on") && !value.equals("off")) {
+					throw new IllegalArgumentException("Expected on or off: " + value);
+				}
+				_collisions = value.equals("on");
+				break;
+			case "--journal":
+				_journal = new File(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	private void run() throws IOException {
+		long startTime = System.nanoTime();
+		ShapeModel model = SceneGenerator.generate(_layout, _shapes, _seed);
+		model.setSimulationEngine(engineNamed(_engine));
+		model.setShapeCollisionsEnabled(_collisions);
+		long elapsedTime = System.nanoTime() - startTime;
+		System.out.printf("Generated %s scene of %d shapes in %.1f ms%n", _layout, _shapes, elapsedTime / 1e6);
+
+		for (int i = 0; i < _warmup; i++) {
+			model.clock();
+		}
+
+		ModelJournal journal = null;
+		if (_journal != null) {
+			journal = new ModelJournal(_journal);
+		}
+
+		long allocatedBefore = allocatedBytes();
+		startTime = System.nanoTime();
+		if (journal != null) {
+			model.setJournal(journal);
+		}
+		for (int i = 0; i < _ticks; i++) {
+			model.clock();
+		}
+		if (journal != null) {
+			journal.close();
+		}
+		elapsedTime = System.nanoTime() - startTime;
+		long allocated = allocatedBytes() - allocatedBefore;
+
+		double seconds = elapsedTime / 1e9;
+		System.out.printf("Engine %s: %d ticks in %.3f s, %.1f ticks/sec, %.1f us/tick%n",
+				_engine, _ticks, seconds, _ticks / seconds, elapsedTime / 1e3 / _ticks);
+		if (allocatedBefore >= 0) {
+			System.out.printf("Allocated %.1f bytes/tick, %.2f MB/sec%n",
+					(double) allocated / _ticks, allocated / seconds / (1024 * 1024));
+		} else {
+			System.out.println("Allocation rate not supported by this JVM");
+		}
+		if (journal != null) {
+			if (journal.error() != null) {
+				throw journal.error();
+			}
+			System.out.printf("Journal %s: %d bytes%n", _journal, _journal.length());
+		}
+	}
+
+	/*
+	 * Returns the number of bytes allocated so far by all live threads, or -1
+	 * if the JVM cannot measure it.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+		if (!hotspotThreads.isThreadAllocatedMemorySupported()) {
+			return -1;
+		}
+		long total = 0;
+		for (long bytes : hotspotThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,171 @@
+package bounce.bounceApp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import bounce.DetailPolicy;
+import bounce.ShapeModel;
+import bounce.views.OffscreenRenderer;
+
+/**
+ * Command line program that renders a generated scene to a PNG sequence or
+ * a YUV4MPEG2 video without a display, and reports the frame rate. Usage:
+ *
+ * <pre>
+ * java bounce.bounceApp.RenderFrames --output path [--format png|y4m]
+ *     [--layout flat|wide|deep] [--shapes n] [--seed n] [--frames n]
+ *     [--ticks n] [--fps n] [--pool n] [--threads n] [--batched on|off]
+ *     [--detail off|default|hidden,point,simplified,text]
+ * </pre>
+ *
+ * For png, --output names a directory; for y4m, a file. --ticks is the
+ * number of ticks per frame, and --fps the frame rate written to the video.
+ * With --batched on, frames are painted with a BatchingPainter and the
+ * colour changes it saved are reported. With --detail, each Shape is painted
+ * at the level of detail a DetailPolicy chooses from its size, with the
+ * default sizes or those given, and the number painted at each level is
+ * reported.
+ *
+ * @author Will Molloy
+ *
+ */
+public class RenderFrames {
+
+	private File _output;
+	private String _format = "png";
+	private SceneGenerator.Layout _layout = SceneGenerator.Layout.WIDE;
+	private int _shapes = 10000;
+	private long _seed = 1;
+	private int _frames = 100;
+	private int _ticks = 1;
+	private int _fps = 25;
+	private int _pool = 4;
+	private int _threads = Runtime.getRuntime().availableProcessors();
+	private boolean _batched = false;
+	private DetailPolicy _detailPolicy;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		RenderFrames renderer = new RenderFrames();
+		try {
+			renderer.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: RenderFrames --output path [--format png|y4m] [--layout flat|wide|deep] "
+					+ "[--shapes n] [--seed n] [--frames n] [--ticks n] [--fps n] [--pool n] [--threads n] "
+					+ "[--batched on|off] [--detail off|default|hidden,point,simplified,text]");
+			System.exit(1);
+		}
+		try {
+			renderer.run();
+		} catch (IOException e) {
+			System.err.println("Error writing frames: " + e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+
+	private void parse(String[] args) throws IllegalArgumentException {
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--output":
+				_output = new File(value);
+				break;
+			case "--format":
+				if (!value.equals("png") && !value.equals("y4m")) {
+					throw new IllegalArgumentException("Expected png or y4m: " + value);
+				}
+				_format = value;
+				break;
+			case "--layout":
+				_layout = SceneGenerator.Layout.valueOf(value.toUpperCase());
+				break;
+			case "--shapes":
+				_shapes = Integer.parseInt(value);
+				break;
+			case "--seed":
+				_seed = Long.parseLong(value);
+				break;
+			case "--frames":
+				_frames = Integer.parseInt(value);
+				break;
+			case "--ticks":
+				_ticks = Integer.parseInt(value);
+				break;
+			case "--fps":
+				_fps = Integer.parseInt(value);
+				break;
+			case "--pool":
+				_pool = Integer.parseInt(value);
+				break;
+			case "--threads":
+				_threads = Integer.parseInt(value);
+				break;
+			case "--batched":
+				if (!value.equals("on") && !value.equals("off")) {
+					throw new IllegalArgumentException("Expected on or off: " + value);
+				}
+				_batched = value.equals("on");
+				break;
+			case "--detail":
+				_detailPolicy = parseDetailPolicy(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (_output == null) {
+			throw new IllegalArgumentException("Missing --output");
+		}
+	}
+
+	private static DetailPolicy parseDetailPolicy(String value) throws IllegalArgumentException {
+		if (value.equals("off")) {
+			return null;
+		} else if (value.equals("default")) {
+			return new DetailPolicy();
+		}
+		String[] sizes = value.split(",");
+		if (sizes.length != 4) {
+			throw new IllegalArgumentException("Expected off, default or four sizes: " + value);
+		}
+		return new DetailPolicy(Integer.parseInt(sizes[0]), Integer.parseInt(sizes[1]),
+				Integer.parseInt(sizes[2]), Integer.parseInt(sizes[3]));
+	}
+
+	private void run() throws IOException, InterruptedException {
+		ShapeModel model = SceneGenerator.generate(_layout, _shapes, _seed);
+		OffscreenRenderer.FrameEncoder encoder;
+		if (_format.equals("png")) {
+			if (!_output.isDirectory() && !_output.mkdirs()) {
+				throw new IOException("Cannot create directory " + _output);
+			}
+			encoder = OffscreenRenderer.pngSequence(_output);
+		} else {
+			encoder = OffscreenRenderer.y4m(new FileOutputStream(_output),
+					model.bounds().width, model.bounds().height, _fps);
+		}
+		OffscreenRenderer renderer = new OffscreenRenderer(model, encoder, _pool, _threads);
+		renderer.setBatched(_batched);
+		renderer.setDetailPolicy(_detailPolicy);
+
+		OffscreenRenderer.Statistics statistics = renderer.render(_frames, _ticks);
+		System.out.printf("Rendered %d frames of %d shapes to %s in %.3f s, %.1f frames/sec%n",
+				statistics.frames(), _shapes, _output, statistics.seconds(), statistics.framesPerSecond());
+		System.out.printf("Waited %.3f s for the encoder%n", statistics.waitSeconds());
+		if (_batched) {
+			long requested = statistics.colourChangesRequested();
+			long issued = statistics.colourChangesIssued();
+			System.out.printf("Colour changes: %d requested, %d made, %d saved%n", requested, issued, requested - issued);
+		}
+		if (_detailPolicy != null) {
+			System.out.println("Shapes painted: " + _detailPolicy);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package bounce.bounceApp;
+
+import java.io.File;
+import java.io.IOException;
+
+import bounce.ModelJournal;
+import bounce.SceneWriter;
+import bounce.ShapeModel;
+
+/**
+ * Command line program that rebuilds the ShapeModel recorded in a
+ * ModelJournal as it was at a given tick, and optionally saves it as a scene
+ * file that a SceneLoader can load. Usage:
+ *
+ * <pre>
+ * java bounce.bounceApp.ReplayJournal journal tick [scene]
+ * </pre>
+ *
+ * @author Will Molloy
+ *
+ */
+public class ReplayJournal {
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: ReplayJournal journal tick [scene]");
+			System.exit(1);
+		}
+		try {
+			long tick = Long.parseLong(args[1]);
+			long startTime = System.nanoTime();
+			ShapeModel model = ModelJournal.replay(new File(args[0]), tick);
+			long elapsedTime = System.nanoTime() - startTime;
+			System.out.printf("Replayed to tick %d: %d top-level shapes in %.1f ms%n",
+					model.ticks(), model.root().shapeCount(), elapsedTime / 1e6);
+			if (args.length == 3) {
+				SceneWriter.save(model, new File(args[2]));
+				System.out.println("Saved scene " + args[2]);
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Not a tick: " + args[1]);
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Error replaying journal: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
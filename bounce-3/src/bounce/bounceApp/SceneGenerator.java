@@ -0,0 +1,153 @@
+package bounce.bounceApp;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.Random;
+
+import bounce.DynamicRectangleShape;
+import bounce.GemShape;
+import bounce.NestingShape;
+import bounce.OvalAndRectangleShape;
+import bounce.OvalShape;
+import bounce.RectangleShape;
+import bounce.Shape;
+import bounce.ShapeModel;
+
+/**
+ * Utility class that populates ShapeModels with generated scenes of a given
+ * size and layout, for benchmarking and headless runs. Scenes are generated
+ * from a seed so that the same arguments always produce the same scene.
+ *
+ * @author Will Molloy
+ *
+ */
+public class SceneGenerator {
+
+	/**
+	 * Shape of the NestingShape hierarchy of a generated scene.
+	 */
+	public enum Layout {
+		/** Every shape is a child of the root. */
+		FLAT,
+		/** The root holds about sqrt(n) NestingShapes, each with about sqrt(n) children. */
+		WIDE,
+		/** Chains of DEEP_LEVELS nested NestingShapes, each level also holding leaf shapes. */
+		DEEP
+	}
+
+	/**
+	 * Bounds of generated ShapeModels.
+	 */
+	public static final Dimension BOUNDS = new Dimension(BounceConfig.MAX_ANIMATION_WIDTH, BounceConfig.MAX_ANIMATION_HEIGHT);
+
+	/**
+	 * Number of nested levels in each chain of a DEEP scene.
+	 */
+	public static final int DEEP_LEVELS = 32;
+
+	private static final int LEAVES_PER_LEVEL = 3;
+	private static final int WIDE_NEST_SIZE = 200;
+	private static final int MAX_LEAF_SIZE = 20;
+	private static final int MAX_SPEED = 5;
+
+	private final Random _random;
+
+	/**
+	 * Creates a SceneGenerator whose random choices are made from seed.
+	 */
+	public SceneGenerator(long seed) {
+		_random = new Random(seed);
+	}
+
+	/**
+	 * Returns a new ShapeModel holding shapeCount Shapes (not counting the
+	 * root) arranged according to layout.
+	 */
+	public static ShapeModel generate(Layout layout, int shapeCount, long seed) {
+		ShapeModel model = new ShapeModel(new Dimension(BOUNDS));
+		new SceneGenerator(seed).populate(model, layout, shapeCount);
+		return model;
+	}
+
+	private void populate(ShapeModel model, Layout layout, int shapeCount) {
+		NestingShape root = model.root();
+
+		switch (layout) {
+		case FLAT:
+			for (int i = 0; i < shapeCount; i++) {
+				model.add(leaf(root), root);
+			}
+			break;
+		case WIDE:
+			int nestCount = Math.max(1, (int) Math.sqrt(shapeCount));
+			NestingShape[] nests = new NestingShape[Math.min(nestCount, shapeCount)];
+			for (int i = 0; i < nests.length; i++) {
+				nests[i] = nest(root, WIDE_NEST_SIZE);
+				model.add(nests[i], root);
+			}
+			for (int i = nests.length; i < shapeCount; i++) {
+				NestingShape parent = nests[i % nests.length];
+				model.add(leaf(parent), parent);
+			}
+			break;
+		case DEEP:
+			int remaining = shapeCount;
+			while (remaining > 0) {
+				NestingShape parent = root;
+				int size = root.width() * 2 / 5;
+				for (int level = 0; level < DEEP_LEVELS && remaining > 0; level++) {
+					NestingShape nest = nest(parent, size);
+					model.add(nest, parent);
+					remaining--;
+					for (int i = 0; i < LEAVES_PER_LEVEL && remaining > 0; i++) {
+						model.add(leaf(nest), nest);
+						remaining--;
+					}
+					parent = nest;
+					size -= MAX_LEAF_SIZE / 2;
+				}
+			}
+			break;
+		}
+	}
+
+	private NestingShape nest(NestingShape parent, int size) {
+		return new NestingShape(position(parent.width(), size), position(parent.height(), size),
+				speed(), speed(), size, size);
+	}
+
+	/**
+	 * Returns a new, randomly placed leaf Shape that fits within parent.
+	 */
+	public Shape leaf(NestingShape parent) {
+		int width = 4 + _random.nextInt(MAX_LEAF_SIZE - 3);
+		int height = 4 + _random.nextInt(MAX_LEAF_SIZE - 3);
+		int x = position(parent.width(), width);
+		int y = position(parent.height(), height);
+		int deltaX = speed();
+		int deltaY = speed();
+		String text = _random.nextInt(16) == 0 ? "Bounce" : null;
+
+		switch (_random.nextInt(5)) {
+		case 0:
+			return new OvalShape(x, y, deltaX, deltaY, width, height, text);
+		case 1:
+			return new GemShape(x, y, deltaX, deltaY, width, height, text);
+		case 2:
+			return new DynamicRectangleShape(x, y, deltaX, deltaY, width, height, text, Color.BLUE);
+		case 3:
+			return new OvalAndRectangleShape(x, y, deltaX, deltaY, width, height, text);
+		default:
+			return new RectangleShape(x, y, deltaX, deltaY, width, height, text);
+		}
+	}
+
+	// Returns a position at which a shape of the given size fits within bound.
+	private int position(int bound, int size) {
+		return _random.nextInt(Math.max(1, bound - size));
+	}
+
+	private int speed() {
+		return _random.nextInt(2 * MAX_SPEED + 1) - MAX_SPEED;
+	}
+}
@@ -17,8 +17,31 @@ import org.junit.runners.Suite;
 	bounce.TestShape.class,
 	bounce.TestDynamicRectangleShape.class,
 	bounce.TestNestingShape.class, 
+	bounce.TestPackedSimulationEngine.class,
+	bounce.TestForkJoinSimulationEngine.class,
+	bounce.TestFrameSnapshot.class,
+	bounce.TestDetailPolicy.class,
+	bounce.TestCoalescingShapeModelListener.class,
+	bounce.TestRecordingPainter.class,
+	bounce.TestBatchingPainter.class,
+	bounce.TestTextLayoutCache.class,
+	bounce.TestGemGeometry.class,
+	bounce.TestSpatialIndex.class,
+	bounce.TestCollisionDetector.class,
+	bounce.TestTransactionBuffer.class,
+	bounce.TestSimulationScheduler.class,
+	bounce.TestSceneLoader.class,
+	bounce.TestModelJournal.class,
+	bounce.TestShapeFactories.class,
 	bounce.views.TestTask1.class, 
 	bounce.views.TestTask2.class,
+	bounce.views.TestTableModelAdapter.class,
+	bounce.views.TestTreeModelAdapter.class,
+	bounce.views.TestOffscreenRenderer.class,
+	bounce.views.TestAcceleratedRenderer.class,
+	bounce.views.TestDirtyRegionTracker.class,
+	bounce.forms.TestImageCache.class,
+	bounce.forms.TestImageIngestionService.class,
 	bounce.forms.TestImageShapeFormHandler.class
 	})
 public class TestAll {}
@@ -15,6 +15,7 @@ import bounce.DynamicRectangleShape;
 import bounce.ImageRectangleShape;
 import bounce.NestingShape;
 import bounce.Shape;
+import bounce.ShapeFactories;
 import bounce.ShapeModel;
 import bounce.forms.util.FormComponent;
 import bounce.forms.util.FormHandler;
@@ -42,6 +43,22 @@ public class FormResolver {
 	}
 	
 	
+	/**
+	 * Checks that a FormHandler can be made for the specified Shape subclass,
+	 * so that classes that cannot be instantiated are found when they are 
+	 * configured rather than when a user first tries to add one.
+	 * 
+	 * @param shapeClass the subclass of Shape to be instantiated.
+	 * @throws IllegalArgumentException if shapeClass cannot be instantiated
+	 *         by a FormHandler.
+	 */
+	public static void checkFormHandler(Class<? extends Shape> shapeClass) throws IllegalArgumentException {
+		if(shapeClass != DynamicRectangleShape.class && shapeClass != ImageRectangleShape.class) {
+			ShapeFactories.forClass(shapeClass);
+		}
+	}
+	
+	
 	/**
 	 * Returns a FormHandler implementation for creating an instance of a 
 	 * specified Shape subclass. In response to a process(Form) call, a 
@@ -0,0 +1,254 @@
+package bounce.forms;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache of decoded and scaled images, shared by the ImageRectangleShapes
+ * made from the same file at the same width. An image is identified by the
+ * canonical path of its file, the file's modification time and the width it
+ * was scaled to, so editing the file makes the cache load it afresh.
+ *
+ * Recently used images are held strongly, in least recently used order, up
+ * to a limit on the total bytes of their pixels. Images evicted from there
+ * are held through SoftReferences, so they can still be shared while memory
+ * allows but are reclaimed by the garbage collector rather than causing an
+ * OutOfMemoryError. Images in use by Shapes are of course never reclaimed.
+ *
+ * Loads are made at most once at a time per image: threads that ask for an
+ * image that is being loaded wait for that load instead of making their own.
+ * A load that fails is not cached.
+ *
+ * @author Will Molloy
+ *
+ */
+public class ImageCache {
+
+	/**
+	 * Default limit on the bytes of pixels held strongly, 64 MB.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+	private final long _maxBytes;
+	private long _bytes;
+
+	private final LinkedHashMap<Key, BufferedImage> _recent = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+	private final Map<Key, Entry> _evicted = new HashMap<Key, Entry>();
+	private final ReferenceQueue<BufferedImage> _reclaimed = new ReferenceQueue<BufferedImage>();
+	private final Map<Key, FutureTask<BufferedImage>> _loading = new HashMap<Key, FutureTask<BufferedImage>>();
+
+	private long _hits;
+	private long _misses;
+
+	/**
+	 * Creates an ImageCache that holds up to DEFAULT_MAX_BYTES strongly.
+	 */
+	public ImageCache() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Creates an ImageCache.
+	 * @param maxBytes the most bytes of pixels to hold strongly.
+	 * @throws IllegalArgumentException if maxBytes is negative.
+	 */
+	public ImageCache(long maxBytes) throws IllegalArgumentException {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+		}
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the image of file scaled to width, calling loader to load it if
+	 * it is not cached.
+	 * @throws IOException if loader throws one.
+	 */
+	public BufferedImage get(File file, int width, Callable<BufferedImage> loader) throws IOException {
+		Key key = new Key(file, width);
+		FutureTask<BufferedImage> load;
+		boolean loading = false;
+		synchronized (this) {
+			BufferedImage image = lookUp(key);
+			if (image != null) {
+				_hits++;
+				return image;
+			}
+			load = _loading.get(key);
+			if (load == null) {
+				load = new FutureTask<BufferedImage>(loader);
+				_loading.put(key, load);
+				loading = true;
+				_misses++;
+			} else {
+				_hits++;
+			}
+		}
+
+		if (loading) {
+			load.run();
+			synchronized (this) {
+				_loading.remove(key);
+				if (!load.isCancelled()) {
+					try {
+						put(key, load.get());
+					} catch (ExecutionException | InterruptedException e) {
+						// Failed loads are not cached; the caller gets the error below.
+					}
+				}
+			}
+		}
+
+		try {
+			return load.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading " + file);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Returns the number of requests answered without a load of their own.
+	 */
+	public synchronized long hits() {
+		return _hits;
+	}
+
+	/**
+	 * Returns the number of requests that loaded an image.
+	 */
+	public synchronized long misses() {
+		return _misses;
+	}
+
+	/**
+	 * Returns the bytes of pixels held strongly.
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Empties this ImageCache.
+	 */
+	public synchronized void clear() {
+		_recent.clear();
+		_evicted.clear();
+		_bytes = 0;
+	}
+
+	// Finds a cached image, moving a softly held one back to the recent ones.
+	private BufferedImage lookUp(Key key) {
+		expungeReclaimed();
+		BufferedImage image = _recent.get(key);
+		if (image == null) {
+			Entry entry = _evicted.remove(key);
+			image = entry == null ? null : entry.get();
+			if (image != null) {
+				put(key, image);
+			}
+		}
+		return image;
+	}
+
+	private void put(Key key, BufferedImage image) {
+		BufferedImage previous = _recent.put(key, image);
+		if (previous != null) {
+			_bytes -= bytesOf(previous);
+		}
+		_bytes += bytesOf(image);
+
+		// Evict least recently used images, always keeping the newest.
+		Iterator<Map.Entry<Key, BufferedImage>> eldest = _recent.entrySet().iterator();
+		while (_bytes > _maxBytes && _recent.size() > 1) {
+			Map.Entry<Key, BufferedImage> evicted = eldest.next();
+			_bytes -= bytesOf(evicted.getValue());
+			_evicted.put(evicted.getKey(), new Entry(evicted.getKey(), evicted.getValue(), _reclaimed));
+			eldest.remove();
+		}
+	}
+
+	// Forgets the keys of images that the garbage collector has reclaimed.
+	private void expungeReclaimed() {
+		for (Object reference = _reclaimed.poll(); reference != null; reference = _reclaimed.poll()) {
+			Entry entry = (Entry) reference;
+			if (_evicted.get(entry._key) == entry) {
+				_evicted.remove(entry._key);
+			}
+		}
+	}
+
+	private static long bytesOf(BufferedImage image) {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	/*
+	 * Identity of a cached image.
+	 */
+	private static final class Key {
+		private final String _path;
+		private final long _modified;
+		private final int _width;
+
+		Key(File file, int width) {
+			String path;
+			try {
+				path = file.getCanonicalPath();
+			} catch (IOException e) {
+				path = file.getAbsolutePath();
+			}
+			_path = path;
+			_modified = file.lastModified();
+			_width = width;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return _path.equals(key._path) && _modified == key._modified && _width == key._width;
+		}
+
+		@Override
+		public int hashCode() {
+			return (_path.hashCode() * 31 + Long.hashCode(_modified)) * 31 + _width;
+		}
+	}
+
+	/*
+	 * Softly held image that remembers its key.
+	 */
+	private static final class Entry extends SoftReference<BufferedImage> {
+		private final Key _key;
+
+		Entry(Key key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+			super(image, queue);
+			_key = key;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package bounce.forms;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+
+import bounce.ImageRectangleShape;
+import bounce.NestingShape;
+import bounce.Shape;
+import bounce.ShapeModel;
+
+/**
+ * Service that loads images, scales them down and adds them to a ShapeModel
+ * as ImageRectangleShapes, in the background.
+ *
+ * Images are decoded on a fixed-size pool of daemon threads, one per
+ * processor by default, however many are submitted. (The build targets
+ * Java 8, so the pool uses platform threads rather than virtual threads.)
+ * Large images are subsampled while they are decoded, so that no more than
+ * twice the requested width is ever decoded, and then scaled down by
+ * successive halvings with bilinear interpolation into an image that keeps
+ * the source's alpha channel.
+ *
+ * Finished Shapes are handed to the model through a hand-off Executor, such
+ * as one that posts to the Swing event dispatch thread. Shapes that finish
+ * while a hand-off is outstanding are added together by that hand-off with
+ * a single ShapeModel.addAll() call, so a large batch produces few model
+ * events. The same hand-off reports progress to the Job's ProgressListener.
+ *
+ * Scaled images are kept in an ImageCache, so Shapes made from the same file
+ * at the same width share one image, which is loaded only once.
+ *
+ * @author Will Molloy
+ *
+ */
+public class ImageIngestionService {
+
+	/**
+	 * Description of an image to load and of the ImageRectangleShape to make
+	 * from it.
+	 */
+	public static class Request {
+		private final File _file;
+		private final int _width;
+		private final int _deltaX;
+		private final int _deltaY;
+
+		/**
+		 * Creates a Request.
+		 * @param file the image file.
+		 * @param width the width to scale the image down to, if it is wider.
+		 * @param deltaX the horizontal speed of the new Shape.
+		 * @param deltaY the vertical speed of the new Shape.
+		 */
+		public Request(File file, int width, int deltaX, int deltaY) {
+			_file = file;
+			_width = width;
+			_deltaX = deltaX;
+			_deltaY = deltaY;
+		}
+	}
+
+	/**
+	 * Interface to be implemented by classes that want to follow the
+	 * progress of a Job. Called on the hand-off Executor.
+	 */
+	public interface ProgressListener {
+		void progressed(Job job);
+	}
+
+	private static ImageIngestionService instance;
+
+	private final ExecutorService _pool;
+	private final Executor _handOff;
+	private final ImageCache _cache;
+
+	/**
+	 * Returns the shared ImageIngestionService, which uses a thread per
+	 * processor, hands Shapes off on the Swing event dispatch thread and 
+	 * caches up to ImageCache.DEFAULT_MAX_BYTES of images.
+	 */
+	public static synchronized ImageIngestionService instance() {
+		if (instance == null) {
+			instance = new ImageIngestionService(Runtime.getRuntime().availableProcessors(), new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					SwingUtilities.invokeLater(command);
+				}
+			}, new ImageCache());
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates an ImageIngestionService.
+	 * @param threads the number of images decoded at once.
+	 * @param handOff the Executor that adds finished Shapes to the model and
+	 *        reports progress.
+	 * @param cache the ImageCache that scaled images are kept in.
+	 * @throws IllegalArgumentException if threads is not positive.
+	 */
+	public ImageIngestionService(int threads, Executor handOff, ImageCache cache) throws IllegalArgumentException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+		}
+		_pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger _count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Bounce image loader " + _count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		_handOff = handOff;
+		_cache = cache;
+	}
+
+	/**
+	 * Starts loading images for the specified Requests. Each image that loads
+	 * becomes an ImageRectangleShape added to parent; images that cannot be
+	 * loaded, or whose Shapes do not fit in parent, are counted as failed.
+	 * @param listener notified as the Job progresses, may be null.
+	 * @return the Job, which can be used to follow or cancel it.
+	 */
+	public Job submit(List<Request> requests, ShapeModel model, NestingShape parent, ProgressListener listener) {
+		Job job = new Job(requests.size(), model, parent, listener);
+		for (final Request request : requests) {
+			job._tasks.add(_pool.submit(job.new Task(request)));
+		}
+		if (requests.isEmpty()) {
+			job.scheduleHandOff();
+		}
+		return job;
+	}
+
+	/**
+	 * Stops the threads of this ImageIngestionService once queued images
+	 * have loaded. No more Requests can then be submitted.
+	 */
+	public void shutdown() {
+		_pool.shutdown();
+	}
+
+	/**
+	 * The images submitted together by a submit() call.
+	 */
+	public final class Job {
+		private final int _total;
+		private final ShapeModel _model;
+		private final NestingShape _parent;
+		private final ProgressListener _listener;
+
+		private final List<Future<?>> _tasks = new ArrayList<Future<?>>();
+		private final Queue<Shape> _ready = new ConcurrentLinkedQueue<Shape>();
+		private final AtomicBoolean _scheduled = new AtomicBoolean();
+		private final CountDownLatch _done = new CountDownLatch(1);
+		private final AtomicInteger _failed = new AtomicInteger();
+		private volatile int _added;
+		private volatile boolean _cancelled;
+		private volatile boolean _finished;
+
+		private Job(int total, ShapeModel model, NestingShape parent, ProgressListener listener) {
+			_total = total;
+			_model = model;
+			_parent = parent;
+			_listener = listener;
+		}
+
+		/**
+		 * Returns the number of images submitted.
+		 */
+		public int total() {
+			return _total;
+		}
+
+		/**
+		 * Returns the number of Shapes added to the model so far.
+		 */
+		public int added() {
+			return _added;
+		}
+
+		/**
+		 * Returns the number of images that could not be loaded or added.
+		 */
+		public int failed() {
+			return _failed.get();
+		}
+
+		/**
+		 * Returns true once every image has been added or has failed, or the
+		 * Job has been cancelled.
+		 */
+		public boolean isDone() {
+			return _finished;
+		}
+
+		public boolean isCancelled() {
+			return _cancelled;
+		}
+
+		/**
+		 * Cancels this Job. Images not yet loaded are not loaded, and Shapes
+		 * not yet handed off are not added to the model.
+		 */
+		public void cancel() {
+			_cancelled = true;
+			for (Future<?> task : _tasks) {
+				task.cancel(true);
+			}
+			scheduleHandOff();
+		}
+
+		/**
+		 * Waits for this Job to be done.
+		 * @return true if it is done, false if the timeout elapsed first.
+		 */
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			return _done.await(timeout, unit);
+		}
+
+		private void scheduleHandOff() {
+			if (_scheduled.compareAndSet(false, true)) {
+				_handOff.execute(new Runnable() {
+					@Override
+					public void run() {
+						handOff();
+					}
+				});
+			}
+		}
+
+		// Adds the Shapes that are ready to the model and reports progress.
+		// Synchronized in case the hand-off Executor runs hand-offs at once.
+		private synchronized void handOff() {
+			_scheduled.set(false);
+			List<Shape> batch = new ArrayList<Shape>();
+			for (Shape shape = _ready.poll(); shape != null; shape = _ready.poll()) {
+				batch.add(shape);
+			}
+			if (!_cancelled && !batch.isEmpty()) {
+				_model.addAll(batch, _parent);
+				int added = 0;
+				for (Shape shape : batch) {
+					if (shape.parent() == _parent) {
+						added++;
+					}
+				}
+				_added += added;
+				_failed.addAndGet(batch.size() - added);
+			}
+			if (_cancelled || _added + _failed.get() == _total) {
+				_finished = true;
+			}
+			// Report progress first, so that it is complete when await() returns.
+			if (_listener != null) {
+				_listener.progressed(this);
+			}
+			if (_finished) {
+				_done.countDown();
+			}
+		}
+
+		/*
+		 * Loads and scales one image.
+		 */
+		private class Task implements Runnable {
+			private final Request _request;
+
+			Task(Request request) {
+				_request = request;
+			}
+
+			@Override
+			public void run() {
+				if (_cancelled) {
+					return;
+				}
+				try {
+					BufferedImage image = _cache.get(_request._file, _request._width, new Callable<BufferedImage>() {
+						@Override
+						public BufferedImage call() throws IOException {
+							return downscale(read(_request._file, _request._width), _request._width);
+						}
+					});
+					_ready.add(new ImageRectangleShape(_request._deltaX, _request._deltaY, image, _request._file.getPath()));
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Error loading image " + _request._file + ": " + e.getMessage());
+					_failed.incrementAndGet();
+				}
+				scheduleHandOff();
+			}
+		}
+	}
+
+	/**
+	 * Decodes an image file. Images more than twice as wide as width are
+	 * subsampled while they are decoded, so the result is at least width
+	 * but less than about four times width wide.
+	 * @throws IOException if the file cannot be read or is not an image.
+	 */
+	static BufferedImage read(File file, int width) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null) {
+			throw new IOException("Cannot open " + file);
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format: " + file);
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = width > 0 ? reader.getWidth(0) / (2 * width) : 1;
+				if (subsampling > 1) {
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				}
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Scales image down to width, keeping its aspect ratio and its alpha
+	 * channel, if any. Each step at most halves the size, so that bilinear
+	 * interpolation takes every source pixel into account. Images no wider
+	 * than width are returned as they are.
+	 */
+	static BufferedImage downscale(BufferedImage image, int width) {
+		if (width <= 0 || image.getWidth() <= width) {
+			return image;
+		}
+		int height = Math.max(1, (int) ((double) image.getHeight() * width / image.getWidth()));
+		int type = image.getTransparency() == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+		BufferedImage current = image;
+		int currentWidth = image.getWidth(), currentHeight = image.getHeight();
+		do {
+			currentWidth = Math.max(width, currentWidth / 2);
+			currentHeight = Math.max(height, currentHeight / 2);
+			BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+			Graphics2D g = next.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+			g.dispose();
+			current = next;
+		} while (currentWidth > width || currentHeight > height);
+		return current;
+	}
+}
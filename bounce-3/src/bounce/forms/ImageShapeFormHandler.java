@@ -1,24 +1,18 @@
 package bounce.forms;
 
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.util.concurrent.ExecutionException;
+import java.util.Collections;
 
-import javax.imageio.ImageIO;
-import javax.swing.SwingWorker;
-
-import bounce.ImageRectangleShape;
 import bounce.NestingShape;
 import bounce.ShapeModel;
 import bounce.forms.util.Form;
 import bounce.forms.util.FormHandler;
 
 /**
- * FormHandler for instantiating the class ImageRectangleShape using
- * a SwingWorker to handle loading an image and scaling if nessesary on a
- * background thread.
+ * FormHandler for instantiating the class ImageRectangleShape. Loading and
+ * scaling the image is left to the shared ImageIngestionService, which does
+ * it on a background thread and adds the new shape to the animation on the
+ * ED thread.
  * 
  * @author Will Molloy
  */
@@ -26,8 +20,7 @@ public class ImageShapeFormHandler<T> implements FormHandler {
 
 	private ShapeModel _model;
 	private NestingShape _nest;
-	private Form _imageForm;
-	private SwingWorker<BufferedImage, Void> _worker;
+	private ImageIngestionService.Job _job;
 
 	public ImageShapeFormHandler (ShapeModel model, NestingShape nest){
 		_model = model;
@@ -35,112 +28,26 @@ public class ImageShapeFormHandler<T> implements FormHandler {
 	}
 
 	/**
-	 * Processes a form which desbribes an ImageRectangleShape by adding
-	 * the form to a StringWorker - ImageShapeWorker, which instantiates a
-	 * worker thread to process images in the background.
+	 * Processes a form which desbribes an ImageRectangleShape by submitting
+	 * a request to the ImageIngestionService, which loads and scales the
+	 * image in the background.
 	 */
 	@Override
 	public void processForm(Form form) {
-		_imageForm = form;
-		_worker = new ImageShapeWorker();
-		_worker.execute(); 
+		File imageFile = (File)form.getFieldValue(File.class, ImageFormElement.IMAGE);
+		int width = form.getFieldValue(Integer.class, ShapeFormElement.WIDTH);
+		int deltaX = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_X);
+		int deltaY = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_Y);
+
+		ImageIngestionService.Request request = new ImageIngestionService.Request(imageFile, width, deltaX, deltaY);
+		_job = ImageIngestionService.instance().submit(Collections.singletonList(request), _model, _nest, null);
 	}
 
 	/**
-	 * Worker class --
-	 * Loads and Scales (if needed) an Image on a background thread.
-	 * Then instantiates an ImageRectangleShape and adds it to the animation on
-	 * the ED thread.
-	 * 
-	 * @author Will Molloy
-	 */ 
-	private class ImageShapeWorker extends SwingWorker<BufferedImage, Void> {
-
-		private File _imageFile;
-		private int _width;
-		private int _deltaX;
-		private int _deltaY;
-
-		private int _originalImageWidth;
-		private int _originalImageHeight;
-
-		@Override
-		protected BufferedImage doInBackground() throws Exception {
-
-			BufferedImage originalImage, scaledImage;
-			
-			getFieldValuesFromForm();
-
-			originalImage = loadOriginalImageFromImageFile(_imageFile);
-			getImageFieldValues(originalImage);
-
-			// Scale the image if necessary.
-			scaledImage = originalImage;
-			if (_originalImageWidth > _width){
-				scaledImage = scaleImage(originalImage);
-			}
-			
-			return scaledImage;
-		}
-
-		private void getFieldValuesFromForm() {
-			_imageFile = (File)_imageForm.getFieldValue(File.class, ImageFormElement.IMAGE);
-			_width = _imageForm.getFieldValue(Integer.class, ShapeFormElement.WIDTH);
-			_deltaX = _imageForm.getFieldValue(Integer.class, ShapeFormElement.DELTA_X);
-			_deltaY = _imageForm.getFieldValue(Integer.class, ShapeFormElement.DELTA_Y);
-		}
-
-		// Load the original image (ImageIO.read() is a blocking call).
-		private BufferedImage loadOriginalImageFromImageFile(File imageFile) {
-			BufferedImage fullImage = null;
-			try {
-				fullImage = ImageIO.read(imageFile);
-			} catch(IOException e) {
-				System.out.println("Error loading image.");
-			}
-			return fullImage;
-		}
-
-		private void getImageFieldValues(BufferedImage originalImage) {
-			_originalImageWidth = originalImage.getWidth();
-			_originalImageHeight = originalImage.getHeight();
-		}
-
-		private BufferedImage scaleImage(BufferedImage originalImage) {
-			long startTime = System.currentTimeMillis();
-
-			BufferedImage scaledImage = originalImage;
-			
-			double scaleFactor = (double)_width / (double)_originalImageWidth;
-			int height = (int)((double)_originalImageHeight * scaleFactor);
-
-			scaledImage = new BufferedImage(_width,height,BufferedImage.TYPE_INT_RGB); 
-			Graphics2D g = scaledImage.createGraphics();
-
-			// Method drawImage() scales an already loaded image. The 
-			// ImageObserver argument is null because we don't need to monitor 
-			// the scaling operation.
-			g.drawImage(originalImage, 0, 0, _width, height, null);
-
-			long elapsedTime = System.currentTimeMillis() - startTime;
-			System.out.println("Image loading ans scaling took " + elapsedTime + "ms.");
-
-			return scaledImage;
-		}
-
-		// Instantiate an ImageRectangleShape and add it to the animation -- on the ED thread
-		@Override
-		protected void done(){
-			try {
-				BufferedImage image = this.get();
-				// Create the new Shape and add it to the model.
-				ImageRectangleShape imageShape = new ImageRectangleShape(_deltaX, _deltaY, image);
-				_model.add(imageShape, _nest);
-			} catch (InterruptedException | ExecutionException e) {
-				e.printStackTrace();
-			}
-		}
-
+	 * Returns the Job that loads the image of the last form processed, null
+	 * if no form has been processed.
+	 */
+	public ImageIngestionService.Job job() {
+		return _job;
 	}
-
-}
\ No newline at end of file
+}
@@ -1,10 +1,9 @@
 package bounce.forms;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-
 import bounce.NestingShape;
 import bounce.Shape;
+import bounce.ShapeFactories;
+import bounce.ShapeFactory;
 import bounce.ShapeModel;
 import bounce.forms.util.Form;
 import bounce.forms.util.FormHandler;
@@ -17,7 +16,7 @@ import bounce.forms.util.FormHandler;
  *
  */
 public class ShapeFormHandler implements FormHandler {
-	private Class<? extends Shape> _classToInstantiate;
+	private ShapeFactory _factory;
 	private ShapeModel _model;
 	private NestingShape _parentOfNewShape;
 
@@ -31,11 +30,14 @@ public class ShapeFormHandler implements FormHandler {
 	 * 
 	 * @param parent the NestingShape object that will serve as the parent for
 	 *        a new Shape object.
+	 * 
+	 * @throws IllegalArgumentException if cls does not have a public 
+	 *         7-argument constructor; see ShapeFactories.
 	 */
 	public ShapeFormHandler(Class<? extends Shape> cls,
 			ShapeModel model,
-			NestingShape parent) {
-		_classToInstantiate = cls;
+			NestingShape parent) throws IllegalArgumentException {
+		_factory = ShapeFactories.forClass(cls);
 		_model = model;
 		_parentOfNewShape = parent;
 	}
@@ -51,50 +53,23 @@ public class ShapeFormHandler implements FormHandler {
 	 */
 	@Override
 	public void processForm(Form form) {
+		int x = 0;
+		int y = 0;
+		int deltaX = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_X);
+		int deltaY = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_Y);
+		int width = form.getFieldValue(Integer.class, ShapeFormElement.WIDTH);
+		int height = form.getFieldValue(Integer.class, ShapeFormElement.HEIGHT);
+		String text = form.getFieldValue(String.class, ShapeFormElement.TEXT);
+		
 		try {
-			// Attempt to find a 7-argument constructor for the Shape subclass.
-			Constructor<? extends Shape> cons = _classToInstantiate.getConstructor(
-					java.lang.Integer.TYPE, java.lang.Integer.TYPE, 
-					java.lang.Integer.TYPE, java.lang.Integer.TYPE,
-					java.lang.Integer.TYPE, java.lang.Integer.TYPE,
-					java.lang.String.class);
-	
-			int x = 0;
-			int y = 0;
-			int deltaX = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_X);
-			int deltaY = form.getFieldValue(Integer.class, ShapeFormElement.DELTA_Y);
-			int width = form.getFieldValue(Integer.class, ShapeFormElement.WIDTH);
-			int height = form.getFieldValue(Integer.class, ShapeFormElement.HEIGHT);
-			String text = form.getFieldValue(String.class, ShapeFormElement.TEXT);
-			
 			// Instantiate shape class, calling the 7-argument constructor.
-			Shape newShape = (Shape)cons.newInstance(x, y, deltaX, deltaY, width, height, text);
+			Shape newShape = _factory.create(x, y, deltaX, deltaY, width, height, text);
 			
 			_model.add(newShape, _parentOfNewShape);
-			
-		} catch(NoSuchMethodException e) {
-			// Thrown if a constructor with the specified arguments is not 
-			// defined by the class.
-			System.err.println(e);
-		} catch(SecurityException e) {
-			// Thrown if a security manager is set and the running program is
-			// not permitted to load classes at run-time.
-			System.err.println(e);
-		} catch(InstantiationException e) {
-			// Thrown if the loaded class cannot be instantiated, e.g. the
-			// class might be abstract.
-			System.err.println(e);
-		} catch(IllegalAccessException e) {
-			// Thrown if the class' constructor is hidden, e.g. private.
-			System.err.println(e);
-		} catch(IllegalArgumentException e) {
-			// Thrown if the actual arguments are incompatible with the formal
-			// arguments.
-			System.err.println(e);
-		} catch(InvocationTargetException e) {
+		} catch(RuntimeException e) {
 			// Thrown if the constructor itself throws an exception.
 			System.err.println(e);
-		} 
+		}
 	}
 
 }
@@ -0,0 +1,153 @@
+package bounce.forms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test the sharing and eviction of images by an ImageCache.
+ * @author Will Molloy
+ *
+ */
+public class TestImageCache {
+
+	private File _file;
+	private AtomicInteger _loads;
+
+	@Before
+	public void setUp() throws IOException {
+		_file = File.createTempFile("bounce", ".png");
+		_loads = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		_file.delete();
+	}
+
+	/**
+	 * Checks that an image is loaded once per width and modification time.
+	 */
+	@Test
+	public void testSharing() throws IOException {
+		ImageCache cache = new ImageCache();
+		BufferedImage first = cache.get(_file, 40, loader(40));
+		assertSame(first, cache.get(new File(_file.getPath()), 40, loader(40)));
+		assertEquals(1, _loads.get());
+		assertEquals(1, cache.hits());
+
+		assertNotSame(first, cache.get(_file, 20, loader(20)));
+		assertTrue(_file.setLastModified(_file.lastModified() - 10000));
+		assertNotSame(first, cache.get(_file, 40, loader(40)));
+		assertEquals(3, _loads.get());
+		assertEquals(3, cache.misses());
+	}
+
+	/**
+	 * Checks that the bytes held strongly stay within the limit, and that
+	 * evicted images that are still referenced are shared.
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		// Each 40x40 TYPE_INT_ARGB image is 6400 bytes.
+		ImageCache cache = new ImageCache(20000);
+		File[] files = new File[5];
+		BufferedImage[] images = new BufferedImage[5];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File(_file.getPath() + i);
+			images[i] = cache.get(files[i], 40, loader(40));
+			assertTrue(cache.bytes() <= 20000);
+		}
+		assertEquals(19200, cache.bytes());
+
+		// Still strongly reachable from images[], so not reclaimed.
+		assertSame(images[0], cache.get(files[0], 40, loader(40)));
+		assertEquals(5, _loads.get());
+	}
+
+	/**
+	 * Checks that concurrent requests for an image share one load, and that
+	 * failed loads are not cached.
+	 */
+	@Test
+	public void testConcurrentLoadsAndFailures() throws Exception {
+		final ImageCache cache = new ImageCache();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final BufferedImage[] result = new BufferedImage[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result[0] = cache.get(_file, 40, new Callable<BufferedImage>() {
+						@Override
+						public BufferedImage call() throws Exception {
+							started.countDown();
+							release.await();
+							return loader(40).call();
+						}
+					});
+				} catch (IOException e) {
+					fail();
+				}
+			}
+		});
+		thread.start();
+		started.await();
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				release.countDown();
+			}
+		}).start();
+		BufferedImage image = cache.get(_file, 40, loader(40));
+		thread.join();
+		assertSame(result[0], image);
+		assertEquals(1, _loads.get());
+
+		Callable<BufferedImage> failing = new Callable<BufferedImage>() {
+			@Override
+			public BufferedImage call() throws IOException {
+				_loads.incrementAndGet();
+				throw new FileNotFoundException();
+			}
+		};
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get(_file, 10, failing);
+				fail();
+			} catch (FileNotFoundException e) {
+				// Expected.
+			}
+		}
+		assertEquals(3, _loads.get());
+	}
+
+	private Callable<BufferedImage> loader(final int width) {
+		return new Callable<BufferedImage>() {
+			@Override
+			public BufferedImage call() {
+				_loads.incrementAndGet();
+				return new BufferedImage(width, width, BufferedImage.TYPE_INT_ARGB);
+			}
+		};
+	}
+}
@@ -0,0 +1,186 @@
+package bounce.forms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bounce.ShapeModel;
+
+/**
+ * Class to test the loading, scaling and batched hand-off of images by an
+ * ImageIngestionService.
+ * @author Will Molloy
+ *
+ */
+public class TestImageIngestionService {
+
+	private File _directory;
+	private ShapeModel _model;
+	private List<Runnable> _pending;
+
+	// Executor that holds hand-offs until the test runs them.
+	private Executor _heldExecutor = new Executor() {
+		@Override
+		public synchronized void execute(Runnable command) {
+			_pending.add(command);
+		}
+	};
+
+	// Executor that hands off on the loading thread.
+	private Executor _directExecutor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Before
+	public void setUp() throws IOException {
+		_directory = File.createTempFile("bounce", "images");
+		_directory.delete();
+		_directory.mkdir();
+		_model = new ShapeModel(new Dimension(500, 500));
+		_pending = new ArrayList<Runnable>();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : _directory.listFiles()) {
+			file.delete();
+		}
+		_directory.delete();
+	}
+
+	/**
+	 * Checks that scaling keeps the aspect ratio and the alpha channel.
+	 */
+	@Test
+	public void testDownscaleKeepsAlpha() {
+		BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.RED);
+		g.fillRect(0, 0, 200, 200);		// Right half stays transparent.
+		g.dispose();
+
+		BufferedImage scaled = ImageIngestionService.downscale(image, 50);
+		assertEquals(50, scaled.getWidth());
+		assertEquals(25, scaled.getHeight());
+		assertEquals(0xFFFF0000, scaled.getRGB(5, 12));
+		assertEquals(0, scaled.getRGB(45, 12) >>> 24);
+	}
+
+	/**
+	 * Checks that large images are subsampled while they are decoded.
+	 */
+	@Test
+	public void testReadSubsamples() throws IOException {
+		File file = writeImage("large", 1000);
+		assertEquals(1000, ImageIngestionService.read(file, 600).getWidth());
+		assertEquals(200, ImageIngestionService.read(file, 100).getWidth());
+	}
+
+	/**
+	 * Checks that a batch of images is added to the model, that failures are
+	 * counted, that progress is reported and that images are cached.
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		List<ImageIngestionService.Request> requests = new ArrayList<ImageIngestionService.Request>();
+		for (int i = 0; i < 30; i++) {
+			requests.add(new ImageIngestionService.Request(writeImage("image" + i, 60 + i), 40, 1, 1));
+		}
+		requests.add(new ImageIngestionService.Request(new File(_directory, "missing.png"), 40, 1, 1));
+		requests.add(new ImageIngestionService.Request(new File(_directory, "image0.png"), 40, -1, 1));
+		final List<Integer> progress = new ArrayList<Integer>();
+
+		ImageCache cache = new ImageCache();
+		ImageIngestionService service = new ImageIngestionService(4, _directExecutor, cache);
+		ImageIngestionService.Job job = service.submit(requests, _model, _model.root(), new ImageIngestionService.ProgressListener() {
+			@Override
+			public synchronized void progressed(ImageIngestionService.Job job) {
+				progress.add(job.added() + job.failed());
+			}
+		});
+		assertTrue(job.await(10, TimeUnit.SECONDS));
+		service.shutdown();
+
+		assertEquals(31, job.added());
+		assertEquals(1, job.failed());
+		assertEquals(31, _model.root().shapeCount());
+		assertEquals(40, _model.root().shapeAt(0).width());
+		assertTrue(progress.contains(32));
+
+		// The two Shapes made from image0 share its image.
+		assertEquals(1, cache.hits());
+	}
+
+	/**
+	 * Checks that nothing is added to the model until the hand-off Executor
+	 * runs, and that Shapes of a cancelled Job are not added at all.
+	 */
+	@Test
+	public void testCancel() throws Exception {
+		List<ImageIngestionService.Request> requests = new ArrayList<ImageIngestionService.Request>();
+		for (int i = 0; i < 5; i++) {
+			requests.add(new ImageIngestionService.Request(writeImage("image" + i, 20), 40, 1, 1));
+		}
+		ImageIngestionService service = new ImageIngestionService(2, _heldExecutor, new ImageCache());
+
+		ImageIngestionService.Job job = service.submit(requests, _model, _model.root(), null);
+		Thread.sleep(100);
+		assertEquals(0, _model.root().shapeCount());
+		for (int i = 0; i < 500 && !job.isDone(); i++) {
+			Thread.sleep(10);
+			runPending();
+		}
+		assertEquals(5, job.added());
+		assertTrue(job.isDone());
+
+		ImageIngestionService.Job cancelled = service.submit(requests.subList(0, 1), _model, _model.root(), null);
+		cancelled.cancel();
+		Thread.sleep(100);
+		runPending();
+		assertTrue(cancelled.isDone());
+		assertEquals(0, cancelled.added());
+		assertEquals(5, _model.root().shapeCount());
+		service.shutdown();
+	}
+
+	private File writeImage(String name, int width) throws IOException {
+		BufferedImage image = new BufferedImage(width, width / 2, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLUE);
+		g.fillOval(0, 0, width, width / 2);
+		g.dispose();
+		File file = new File(_directory, name + ".png");
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+
+	private void runPending() {
+		List<Runnable> tasks;
+		synchronized (_heldExecutor) {
+			tasks = new ArrayList<Runnable>(_pending);
+			_pending.clear();
+		}
+		for (Runnable task : tasks) {
+			task.run();
+		}
+	}
+}
@@ -0,0 +1,344 @@
+package bounce.views;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import bounce.DetailPolicy;
+import bounce.FrameSnapshot;
+import bounce.GraphicsPainter;
+
+/**
+ * Paints FrameSnapshots into a Component, keeping what does not change from
+ * one frame to the next in surfaces that can be drawn in a single call.
+ *
+ * The background and the borders of static NestingShapes, those that do not
+ * move and whose ancestors do not move, are painted once into a layer. Each
+ * frame the layer is drawn first and the rest of the frame painted over it.
+ * Static borders are therefore painted beneath every moving Shape, rather
+ * than beneath only the Shapes that come after them.
+ *
+ * The layer is a VolatileImage when the Component's GraphicsConfiguration can
+ * accelerate one, and is repainted whenever its contents are lost. Otherwise,
+ * as on a headless machine, it is a BufferedImage. Images are converted on
+ * first use to a compatible type that can be copied without conversion, and
+ * are assumed not to change after they are first painted.
+ *
+ * @author Will Molloy
+ *
+ */
+public class AcceleratedRenderer {
+
+	private final Component _component;
+
+	// Surface holding the static layer: exactly one is non-null once created.
+	private VolatileImage _volatileLayer;
+	private BufferedImage _bufferedLayer;
+	private GraphicsConfiguration _config;
+	private int _width;
+	private int _height;
+	private Color _background;
+	private boolean _layerValid;
+
+	// Static borders in the layer, in absolute coordinates.
+	private List<Rectangle> _borders = new ArrayList<Rectangle>();
+	private Set<Rectangle> _borderSet = new HashSet<Rectangle>();
+
+	// Absolute positions of the elements of the frame being painted.
+	private int[] _absoluteX = new int[0];
+	private int[] _absoluteY = new int[0];
+	private boolean[] _static = new boolean[0];
+
+	// Compatible copies of images, for the current GraphicsConfiguration.
+	private final Map<Image, BufferedImage> _sprites = new WeakHashMap<Image, BufferedImage>();
+
+	private int _layerRenders;
+	private int _layerRestores;
+	private int _spritesConverted;
+
+	/**
+	 * Creates an AcceleratedRenderer that paints at the size, in the
+	 * background colour and for the GraphicsConfiguration of component.
+	 */
+	public AcceleratedRenderer(Component component) {
+		_component = component;
+	}
+
+	/**
+	 * Paints the state between previous and frame that is a fraction alpha of
+	 * the way from previous to frame, as FrameSnapshot.paint() does, over the
+	 * component's background.
+	 */
+	public void paint(Graphics g, FrameSnapshot frame, FrameSnapshot previous, double alpha) {
+		paint(g, frame, previous, alpha, null);
+	}
+
+	/**
+	 * Paints as paint(g, frame, previous, alpha) does, at the levels of
+	 * detail policy chooses. A null policy paints every Shape in full.
+	 */
+	public void paint(Graphics g, FrameSnapshot frame, FrameSnapshot previous, double alpha, DetailPolicy policy) {
+		findBorders(frame);
+		paintLayer(g);
+		frame.paint(new LayeredPainter(g), previous, alpha, policy);
+	}
+
+	/**
+	 * Returns true if the static layer is held in an accelerated VolatileImage,
+	 * false if it is a BufferedImage or has not yet been created.
+	 */
+	public boolean isAccelerated() {
+		return _volatileLayer != null;
+	}
+
+	/**
+	 * Returns the number of static borders in the layer.
+	 */
+	public int staticBorderCount() {
+		return _borders.size();
+	}
+
+	/**
+	 * Returns the number of times the static layer has been painted.
+	 */
+	public int layerRenders() {
+		return _layerRenders;
+	}
+
+	/**
+	 * Returns the number of times the VolatileImage holding the static layer
+	 * lost its contents and was repainted.
+	 */
+	public int layerRestores() {
+		return _layerRestores;
+	}
+
+	/**
+	 * Returns the number of images converted to a compatible type.
+	 */
+	public int spritesConverted() {
+		return _spritesConverted;
+	}
+
+	/**
+	 * Releases the surfaces held by this AcceleratedRenderer. They are created
+	 * again by the next call to paint().
+	 */
+	public void flush() {
+		if (_volatileLayer != null) {
+			_volatileLayer.flush();
+			_volatileLayer = null;
+		}
+		_bufferedLayer = null;
+		_sprites.clear();
+		_layerValid = false;
+	}
+
+	/*
+	 * Works out the static borders of frame, and invalidates the layer if
+	 * they are not those it holds. Elements are in pre-order, so a parent's
+	 * absolute position is known before its children's.
+	 */
+	private void findBorders(FrameSnapshot frame) {
+		int count = frame.shapeCount();
+		if (_static.length < count) {
+			_absoluteX = new int[count];
+			_absoluteY = new int[count];
+			_static = new boolean[count];
+		}
+		List<Rectangle> borders = new ArrayList<Rectangle>();
+		for (int i = 0; i < count; i++) {
+			if (frame.kind(i) != FrameSnapshot.NESTING) {
+				// Includes NestingShapes that paint themselves.
+				_static[i] = false;
+				continue;
+			}
+			int parent = frame.parent(i);
+			_absoluteX[i] = frame.x(i) + (parent < 0 ? 0 : _absoluteX[parent]);
+			_absoluteY[i] = frame.y(i) + (parent < 0 ? 0 : _absoluteY[parent]);
+			_static[i] = frame.deltaX(i) == 0 && frame.deltaY(i) == 0 && (parent < 0 || _static[parent]);
+			if (_static[i] && frame.colour(i) == null) {
+				borders.add(new Rectangle(_absoluteX[i], _absoluteY[i], frame.width(i), frame.height(i)));
+			}
+		}
+		if (!borders.equals(_borders)) {
+			_borders = borders;
+			_borderSet = new HashSet<Rectangle>(borders);
+			_layerValid = false;
+		}
+	}
+
+	/*
+	 * Draws the static layer, creating or repainting it first if needed.
+	 */
+	private void paintLayer(Graphics g) {
+		GraphicsConfiguration config = _component.getGraphicsConfiguration();
+		int width = _component.getWidth();
+		int height = _component.getHeight();
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (config != _config || width != _width || height != _height) {
+			flush();
+			_config = config;
+			_width = width;
+			_height = height;
+		}
+		if (!_component.getBackground().equals(_background)) {
+			_background = _component.getBackground();
+			_layerValid = false;
+		}
+		if (_volatileLayer == null && _bufferedLayer == null) {
+			_volatileLayer = createVolatileLayer();
+			if (_volatileLayer == null) {
+				_bufferedLayer = config != null ? config.createCompatibleImage(width, height)
+						: new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			}
+		}
+
+		if (_volatileLayer != null) {
+			do {
+				int status = _volatileLayer.validate(config);
+				if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+					_volatileLayer.flush();
+					_volatileLayer = createVolatileLayer();
+					_layerValid = false;
+					if (_volatileLayer == null) {
+						// Acceleration is no longer available.
+						_bufferedLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+						break;
+					}
+				} else if (status == VolatileImage.IMAGE_RESTORED) {
+					_layerRestores++;
+					_layerValid = false;
+				}
+				if (!_layerValid) {
+					renderLayer(_volatileLayer.createGraphics());
+				}
+				g.drawImage(_volatileLayer, 0, 0, null);
+				if (_volatileLayer.contentsLost()) {
+					_layerValid = false;
+				} else {
+					return;
+				}
+			} while (true);
+		}
+
+		if (!_layerValid) {
+			renderLayer(_bufferedLayer.createGraphics());
+		}
+		g.drawImage(_bufferedLayer, 0, 0, null);
+	}
+
+	// Returns an accelerated VolatileImage for the layer, or null if none.
+	private VolatileImage createVolatileLayer() {
+		if (_config == null) {
+			return null;
+		}
+		VolatileImage image = _config.createCompatibleVolatileImage(_width, _height);
+		if (image.getCapabilities().isAccelerated()) {
+			return image;
+		}
+		image.flush();
+		return null;
+	}
+
+	private void renderLayer(Graphics2D g) {
+		g.setColor(_background);
+		g.fillRect(0, 0, _width, _height);
+		g.setColor(Color.BLACK);
+		for (Rectangle border : _borders) {
+			g.drawRect(border.x, border.y, border.width, border.height);
+		}
+		g.dispose();
+		_layerValid = true;
+		_layerRenders++;
+	}
+
+	/*
+	 * Returns a copy of image of a type that can be drawn without conversion,
+	 * or image itself if it already is one or cannot be copied.
+	 */
+	private Image sprite(Image image) {
+		if (!(image instanceof BufferedImage)) {
+			return image;
+		}
+		BufferedImage source = (BufferedImage) image;
+		int transparency = source.getTransparency();
+		if (isCompatible(source, transparency)) {
+			return image;
+		}
+		BufferedImage sprite = _sprites.get(image);
+		if (sprite == null) {
+			int width = source.getWidth();
+			int height = source.getHeight();
+			if (_config != null) {
+				sprite = _config.createCompatibleImage(width, height, transparency);
+			} else {
+				sprite = new BufferedImage(width, height, transparency == Transparency.OPAQUE
+						? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+			}
+			Graphics2D g = sprite.createGraphics();
+			g.drawImage(source, 0, 0, null);
+			g.dispose();
+			_sprites.put(image, sprite);
+			_spritesConverted++;
+		}
+		return sprite;
+	}
+
+	private boolean isCompatible(BufferedImage image, int transparency) {
+		if (_config != null) {
+			return image.getColorModel().equals(_config.getColorModel(transparency));
+		}
+		int type = image.getType();
+		return type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB_PRE;
+	}
+
+	/*
+	 * GraphicsPainter that leaves out the borders in the static layer and
+	 * draws compatible copies of images.
+	 */
+	private class LayeredPainter extends GraphicsPainter {
+		private final Rectangle _probe = new Rectangle();
+		private int _translateX;
+		private int _translateY;
+
+		LayeredPainter(Graphics g) {
+			super(g);
+		}
+
+		@Override
+		public void drawRect(int x, int y, int width, int height) {
+			_probe.setBounds(_translateX + x, _translateY + y, width, height);
+			if (!_borderSet.contains(_probe) || !Color.BLACK.equals(getColour())) {
+				super.drawRect(x, y, width, height);
+			}
+		}
+
+		@Override
+		public void translate(int x, int y) {
+			_translateX += x;
+			_translateY += y;
+			super.translate(x, y);
+		}
+
+		@Override
+		public void drawImage(Image img, int x, int y, int width, int height) {
+			super.drawImage(sprite(img), x, y, width, height);
+		}
+	}
+}
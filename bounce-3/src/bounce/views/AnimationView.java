@@ -2,14 +2,24 @@ package bounce.views;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import bounce.DetailPolicy;
+import bounce.FrameSnapshot;
 import bounce.GraphicsPainter;
 import bounce.NestingShape;
 import bounce.Painter;
+import bounce.ShapeModel;
 import bounce.ShapeModelEvent;
 import bounce.ShapeModelListener;
+import bounce.SimulationScheduler;
 
 /**
  * Class that presents an animation view of a ShapeModel. This class implements
@@ -19,6 +29,23 @@ import bounce.ShapeModelListener;
  * animation, removing a deleted shape from the animation, or updating the 
  * positions of shapes that have moved.
  * 
+ * After a tick only the region covered by the shapes that moved, in both
+ * their old and new positions, is repainted. On the event dispatch thread
+ * that region is painted at once as a few disjoint rectangles, one
+ * paintImmediately() call each, because Swing's RepaintManager would merge
+ * separate repaint() calls into their bounding box. Elsewhere the bounding
+ * box is passed to repaint(). The whole view is repainted
+ * when shapes have been added or removed, or when the region that changed
+ * covers more than a threshold fraction of the view.
+ * 
+ * When the model is clocked by a SimulationScheduler, the view can instead
+ * repaint at its own frame rate and interpolate between the last two frames
+ * it received, so that motion stays smooth whatever the tick rate. 
+ * 
+ * With accelerated rendering on, the background and the borders of 
+ * NestingShapes that do not move are kept in a layer drawn by an 
+ * AcceleratedRenderer, rather than painted again every frame.
+ * 
  * @author Ian Warren
  *
  */
@@ -28,6 +55,40 @@ public class AnimationView extends JPanel implements ShapeModelListener {
 	// Reference to root NestingShape.
 	private NestingShape _root;
 	
+	/**
+	 * Default fraction of the view's area above which the whole view is
+	 * repainted rather than just the region that changed.
+	 */
+	public static final double DEFAULT_FULL_REPAINT_THRESHOLD = 0.5;
+	
+	// ShapeModel that last notified this view, if any.
+	private ShapeModel _model;
+	
+	// Frame to paint, null if the model does not publish snapshots.
+	private FrameSnapshot _frame;
+	
+	private DirtyRegionTracker _dirtyRegions = new DirtyRegionTracker(DEFAULT_FULL_REPAINT_THRESHOLD);
+	
+	/*
+	 * Interpolation state: the scheduler whose simulation time is painted,
+	 * the frame before _frame, and the Timer that repaints at the display
+	 * rate. _frameRegion is the region that changed between those frames, 
+	 * and _interpolatedRegion the region each repaint covers; null means the
+	 * whole view. _settled is set once _frame has been painted as it is.
+	 */
+	private SimulationScheduler _scheduler;
+	private FrameSnapshot _previousFrame;
+	private Timer _repaintTimer;
+	private List<Rectangle> _frameRegion;
+	private List<Rectangle> _interpolatedRegion;
+	private boolean _settled;
+	
+	// Renderer used with accelerated rendering on, otherwise null.
+	private AcceleratedRenderer _renderer;
+	
+	// Level of detail policy, null to paint every shape in full.
+	private DetailPolicy _detailPolicy;
+	
 	/**
 	 * Creates an AnimationView object with specified bounds.
 	 */
@@ -36,10 +97,95 @@ public class AnimationView extends JPanel implements ShapeModelListener {
 		setSize(bounds.width, bounds.height);
 	}
 	
+	/**
+	 * Sets the fraction of this view's area above which the whole view is
+	 * repainted after a tick rather than just the region that changed. A
+	 * threshold of 0 always repaints the whole view.
+	 * @throws IllegalArgumentException if threshold is not between 0 and 1.
+	 */
+	public void setFullRepaintThreshold(double threshold) throws IllegalArgumentException {
+		_dirtyRegions = new DirtyRegionTracker(threshold);
+	}
+	
+	/**
+	 * Makes this view repaint framesPerSecond times a second and paint the
+	 * model as it was one tick before the scheduler's simulationTime(),
+	 * interpolating between the last two frames received. The model must 
+	 * publish snapshots. Passing a null scheduler reverts to repainting 
+	 * once for every frame received.
+	 * @throws IllegalArgumentException if framesPerSecond is not positive.
+	 */
+	public void setSimulationScheduler(SimulationScheduler scheduler, int framesPerSecond) throws IllegalArgumentException {
+		if(_repaintTimer != null) {
+			_repaintTimer.stop();
+			_repaintTimer = null;
+		}
+		_scheduler = scheduler;
+		_interpolatedRegion = null;
+		_frameRegion = null;
+		if(scheduler != null) {
+			if(framesPerSecond <= 0) {
+				throw new IllegalArgumentException("Frame rate must be positive: " + framesPerSecond);
+			}
+			_repaintTimer = new Timer(1000 / framesPerSecond, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					if(!_settled) {
+						repaintRegion(_interpolatedRegion);
+					}
+				}
+			});
+			_repaintTimer.start();
+		}
+	}
+	
+	/**
+	 * Sets whether this view paints through an AcceleratedRenderer, which 
+	 * keeps the background and static borders in a layer. Static borders 
+	 * are then painted beneath all moving shapes.
+	 */
+	public void setAccelerated(boolean accelerated) {
+		if(_renderer != null) {
+			_renderer.flush();
+		}
+		_renderer = accelerated ? new AcceleratedRenderer(this) : null;
+		repaint();
+	}
+	
+	/**
+	 * Returns the AcceleratedRenderer this view paints through, null if 
+	 * accelerated rendering is off.
+	 */
+	public AcceleratedRenderer acceleratedRenderer() {
+		return _renderer;
+	}
+	
+	/**
+	 * Sets the DetailPolicy that decides how much detail each shape is 
+	 * painted with, or null to paint every shape in full. Its counts 
+	 * accumulate over the frames painted.
+	 */
+	public void setDetailPolicy(DetailPolicy policy) {
+		_detailPolicy = policy;
+		repaint();
+	}
+	
 	/**
 	 * Implements custom painting to display the animation.
 	 */
 	public void paintComponent(Graphics g) {
+		if(_renderer != null && (_frame != null || _root != null)) {
+			// The renderer's layer includes the background.
+			if(_frame != null && _scheduler != null) {
+				double alpha = interpolation();
+				_renderer.paint(g, _frame, _previousFrame, alpha, _detailPolicy);
+				_settled = alpha >= 1;
+			} else {
+				FrameSnapshot frame = _frame != null ? _frame : FrameSnapshot.of(_root, _model.ticks());
+				_renderer.paint(g, frame, null, 1, _detailPolicy);
+			}
+			return;
+		}
+		
 		// Call inherited implementation to handle background painting.
 		super.paintComponent(g);
 		
@@ -47,21 +193,109 @@ public class AnimationView extends JPanel implements ShapeModelListener {
 		Painter painter = new GraphicsPainter(g);
 		
 		/*
-		 * Paint the shapes, starting with the root and recursively work
-		 * through the composition structure.
+		 * Paint the last completed frame if the model publishes snapshots, 
+		 * otherwise paint the shapes, starting with the root and recursively 
+		 * work through the composition structure. Levels of detail are 
+		 * decided while painting a frame, so take one if necessary.
 		 */
-		if(_root != null) {
+		if(_frame != null && _scheduler != null) {
+			double alpha = interpolation();
+			_frame.paint(painter, _previousFrame, alpha, _detailPolicy);
+			_settled = alpha >= 1;
+		} else if(_frame != null) {
+			_frame.paint(painter, null, 1, _detailPolicy);
+		} else if(_root != null && _detailPolicy != null) {
+			FrameSnapshot.of(_root, _model.ticks()).paint(painter, null, 1, _detailPolicy);
+		} else if(_root != null) {
 			_root.paint(painter);
 		}
 	}
 	
+	// Returns how far between _previousFrame and _frame to paint.
+	private double interpolation() {
+		if(_previousFrame != null && _frame.tick() > _previousFrame.tick()) {
+			double renderTime = _scheduler.simulationTime() - 1;
+			return (renderTime - _previousFrame.tick()) / (_frame.tick() - _previousFrame.tick());
+		}
+		return 1;
+	}
+	
 	/**
 	 * Updates this AnimationView so that it is consistent with the ShapeModel
 	 * that made the update() call.
 	 */
 	public void update(ShapeModelEvent event) {
-		_root = event.source().root();
-		repaint();
+		if(event.eventType() == ShapeModelEvent.EventType.ShapesCollided) {
+			// The ShapeMoved event fired before it has already been painted.
+			return;
+		}
+		
+		_model = event.source();
+		_root = _model.root();
+		if(event.eventType() != ShapeModelEvent.EventType.ShapeMoved) {
+			_dirtyRegions.invalidate();
+		}
+		
+		/*
+		 * Paint the frame that the dirty region is worked out from, so that
+		 * a later tick cannot change what is painted in the meantime. Without
+		 * snapshots, track the bounds of the live shapes.
+		 */
+		FrameSnapshot snapshot = _model.snapshot();
+		if(snapshot != _frame) {
+			_previousFrame = _frame;
+			_frame = snapshot;
+		}
+		boolean full;
+		if(_frame != null) {
+			full = _dirtyRegions.update(_frame, getFontMetrics(getFont()), getWidth(), getHeight());
+		} else {
+			full = _dirtyRegions.update(_root, getFontMetrics(getFont()), getWidth(), getHeight());
+		}
+		List<Rectangle> dirty = full ? null : _dirtyRegions.dirtyRegions();
+		if(_repaintTimer == null) {
+			repaintRegion(dirty);
+		} else {
+			/*
+			 * Interpolated positions lie between those of the last two 
+			 * frames, so repaint what changed between them as well as what 
+			 * changed between the two frames before, which was last painted.
+			 */
+			_interpolatedRegion = DirtyRegionTracker.union(_frameRegion, dirty);
+			_frameRegion = dirty;
+			_settled = false;
+		}
+	}
+	
+	/*
+	 * Repaints the rectangles of region, or the whole view if region is null.
+	 * Separate rectangles are only painted separately by paintImmediately(),
+	 * which must be called on the event dispatch thread; otherwise their
+	 * bounding box is repainted, or the whole view if the box is too large.
+	 */
+	private void repaintRegion(List<Rectangle> region) {
+		if(region == null) {
+			repaint();
+			return;
+		}
+		if(region.isEmpty()) {
+			return;
+		}
+		if(region.size() > 1 && isShowing() && SwingUtilities.isEventDispatchThread()) {
+			for(Rectangle rectangle : region) {
+				paintImmediately(rectangle);
+			}
+			return;
+		}
+		Rectangle bounds = new Rectangle(region.get(0));
+		for(Rectangle rectangle : region) {
+			bounds.add(rectangle);
+		}
+		if(_dirtyRegions.isLarge(bounds, getWidth(), getHeight())) {
+			repaint();
+		} else {
+			repaint(bounds);
+		}
 	}
 	
 }
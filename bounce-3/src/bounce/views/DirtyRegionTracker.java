@@ -0,0 +1,370 @@
+package bounce.views;
+
+import java.awt.FontMetrics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import bounce.FrameSnapshot;
+import bounce.NestingShape;
+import bounce.Shape;
+
+/**
+ * Helper class for AnimationView that works out which part of the view has
+ * to be repainted after a tick. For each Shape it takes the Shape's bounding
+ * box in the previous and the current frame, in absolute coordinates (i.e.
+ * translated through the Shape's NestingShape ancestors), and accumulates
+ * the boxes of all Shapes that changed.
+ *
+ * The dirty region is kept as a few disjoint rectangles. Boxes that overlap
+ * are merged, and when there would be more than MAX_RECTANGLES rectangles,
+ * the two that grow least by being merged are merged. AnimationView paints
+ * each rectangle separately, so that Shapes moving in opposite corners of
+ * the view do not make everything between them dirty; repaint() would not
+ * do, as Swing's RepaintManager merges all the regions of a component into
+ * their bounding box.
+ *
+ * When the shapes in the two frames differ, or the rectangles would cover
+ * more than a given fraction of the view between them, the tracker asks for
+ * a full repaint instead. isLarge() applies the same test to a single
+ * region, e.g. the bounding box of the rectangles.
+ *
+ * Frames are either FrameSnapshots or, for a model that does not publish
+ * snapshots, the live Shapes themselves, whose bounds are read without
+ * copying the rest of their state.
+ *
+ * @author Will Molloy
+ *
+ */
+class DirtyRegionTracker {
+
+	/**
+	 * Most rectangles the dirty region is made of.
+	 */
+	static final int MAX_RECTANGLES = 8;
+
+	// Extra pixels around each box, since outlines are drawn one pixel wider
+	// and taller than a Shape's bounds.
+	private static final int MARGIN = 1;
+
+	private final double _threshold;
+
+	// Whether the previous arrays describe the frame passed to the last call.
+	private boolean _valid;
+
+	/*
+	 * The Shapes of the current and previous frames in pre-order, the index
+	 * of each one's parent, and their absolute bounds, 4 ints (x, y, w, h)
+	 * per Shape. The arrays of the two frames are swapped after each update.
+	 */
+	private int _count;
+	private int _previousCount;
+	private Shape[] _shapes = new Shape[0];
+	private Shape[] _previousShapes = new Shape[0];
+	private int[] _parents = new int[0];
+	private int[] _previousParents = new int[0];
+	private int[] _bounds = new int[0];
+	private int[] _previousBounds = new int[0];
+
+	// Absolute position of each Shape, 2 ints (x, y) per Shape.
+	private int[] _origins = new int[0];
+
+	// Shapes still to be stored when walking live Shapes, and their parents.
+	private Shape[] _stack = new Shape[0];
+	private int[] _parentStack = new int[0];
+
+	private final List<Rectangle> _dirty = new ArrayList<Rectangle>();
+
+	/**
+	 * Creates a DirtyRegionTracker.
+	 * @param threshold the fraction of the view's area above which a full
+	 *        repaint is requested instead of a partial one.
+	 * @throws IllegalArgumentException if threshold is not between 0 and 1.
+	 */
+	DirtyRegionTracker(double threshold) throws IllegalArgumentException {
+		if (!(threshold >= 0 && threshold <= 1)) {
+			throw new IllegalArgumentException("Threshold must be between 0 and 1: " + threshold);
+		}
+		_threshold = threshold;
+	}
+
+	/**
+	 * Forgets the previous frame, so that the next call to update() asks for
+	 * a full repaint. Called when Shapes have been added or removed.
+	 */
+	void invalidate() {
+		_valid = false;
+	}
+
+	/**
+	 * Compares frame with the frame passed to the previous call.
+	 * @param frame the frame about to be painted.
+	 * @param metrics metrics of the font that text is painted in, or null to
+	 *        ignore text that extends beyond its Shape.
+	 * @param viewWidth the width of the view.
+	 * @param viewHeight the height of the view.
+	 * @return true if the whole view should be repainted, false if only
+	 *         dirtyRegions() need repainting.
+	 */
+	boolean update(FrameSnapshot frame, FontMetrics metrics, int viewWidth, int viewHeight) {
+		_count = frame.shapeCount();
+		ensureCapacity(_count);
+		// Parents precede their children in a FrameSnapshot, so a parent's
+		// absolute position is always known before its children are reached.
+		for (int i = 0; i < _count; i++) {
+			int parent = frame.parent(i);
+			int x = frame.x(i) + (parent < 0 ? 0 : _origins[parent * 2]);
+			int y = frame.y(i) + (parent < 0 ? 0 : _origins[parent * 2 + 1]);
+			store(i, frame.shape(i), parent, x, y, frame.width(i), frame.height(i), frame.text(i), metrics);
+		}
+		return compare(viewWidth, viewHeight);
+	}
+
+	/**
+	 * Compares the Shapes in the composition rooted at root, as they are
+	 * now, with the frame passed to the previous call.
+	 * @see #update(FrameSnapshot, FontMetrics, int, int)
+	 */
+	boolean update(NestingShape root, FontMetrics metrics, int viewWidth, int viewHeight) {
+		collect(root, metrics);
+		return compare(viewWidth, viewHeight);
+	}
+
+	/**
+	 * Returns true if repainting region would repaint more than the
+	 * threshold fraction of the view, so that the whole view should be
+	 * repainted instead.
+	 */
+	boolean isLarge(Rectangle region, int viewWidth, int viewHeight) {
+		return (double) region.width * region.height > _threshold * viewWidth * viewHeight;
+	}
+
+	/**
+	 * Returns the rectangles of regions a and b, merged as the dirty region
+	 * is so that none overlap and there are at most MAX_RECTANGLES. A null
+	 * region stands for the whole view, so the result is null if either is.
+	 */
+	static List<Rectangle> union(List<Rectangle> a, List<Rectangle> b) {
+		if (a == null || b == null) {
+			return null;
+		}
+		List<Rectangle> union = new ArrayList<Rectangle>(a.size() + b.size());
+		for (Rectangle region : a) {
+			add(union, new Rectangle(region));
+		}
+		for (Rectangle region : b) {
+			add(union, new Rectangle(region));
+		}
+		return union;
+	}
+
+	/**
+	 * Returns the rectangles that need repainting after the last call to
+	 * update() returned false. They do not overlap, and there are none if
+	 * nothing moved.
+	 */
+	List<Rectangle> dirtyRegions() {
+		List<Rectangle> regions = new ArrayList<Rectangle>(_dirty.size());
+		for (Rectangle region : _dirty) {
+			regions.add(new Rectangle(region));
+		}
+		return regions;
+	}
+
+	/*
+	 * Stores root and the Shapes nested within it in pre-order. An explicit
+	 * stack is used so that deep compositions cannot overflow the call stack.
+	 */
+	private void collect(NestingShape root, FontMetrics metrics) {
+		_count = 0;
+		int top = 0;
+		ensureStackCapacity(1);
+		_stack[top] = root;
+		_parentStack[top++] = -1;
+
+		while (top > 0) {
+			Shape shape = _stack[--top];
+			int parent = _parentStack[top];
+			_stack[top] = null;
+			int index = _count++;
+			ensureCapacity(_count);
+			// A parent is stored before its children, so its origin is known.
+			int x = shape.x() + (parent < 0 ? 0 : _origins[parent * 2]);
+			int y = shape.y() + (parent < 0 ? 0 : _origins[parent * 2 + 1]);
+			store(index, shape, parent, x, y, shape.width(), shape.height(), shape.text(), metrics);
+
+			if (shape instanceof NestingShape) {
+				NestingShape nest = (NestingShape) shape;
+				int children = nest.shapeCount();
+				ensureStackCapacity(top + children);
+				// Push in reverse so that children are visited in order.
+				for (int i = children - 1; i >= 0; i--) {
+					_stack[top] = nest.shapeAt(i);
+					_parentStack[top++] = index;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Stores a Shape at absolute position x, y, and its bounding box
+	 * including any text painted over it.
+	 */
+	private void store(int i, Shape shape, int parent, int x, int y, int width, int height, String text, FontMetrics metrics) {
+		_shapes[i] = shape;
+		_parents[i] = parent;
+		_origins[i * 2] = x;
+		_origins[i * 2 + 1] = y;
+
+		if (text != null && metrics != null) {
+			// Text is centred on the Shape, so it overhangs evenly.
+			int overhangX = Math.max(0, metrics.stringWidth(text) / 2 + 1 - width / 2);
+			int overhangY = Math.max(0, metrics.getAscent() + metrics.getDescent() - height / 2);
+			x -= overhangX;
+			y -= overhangY;
+			width += 2 * overhangX;
+			height += 2 * overhangY;
+		}
+		_bounds[i * 4] = x;
+		_bounds[i * 4 + 1] = y;
+		_bounds[i * 4 + 2] = width;
+		_bounds[i * 4 + 3] = height;
+	}
+
+	private void ensureCapacity(int count) {
+		if (_shapes.length < count) {
+			int capacity = Math.max(count, _shapes.length * 2);
+			_shapes = Arrays.copyOf(_shapes, capacity);
+			_parents = Arrays.copyOf(_parents, capacity);
+			_bounds = Arrays.copyOf(_bounds, capacity * 4);
+			_origins = Arrays.copyOf(_origins, capacity * 2);
+		}
+	}
+
+	private void ensureStackCapacity(int size) {
+		if (_stack.length < size) {
+			int capacity = Math.max(size, _stack.length * 2);
+			_stack = Arrays.copyOf(_stack, capacity);
+			_parentStack = Arrays.copyOf(_parentStack, capacity);
+		}
+	}
+
+	/*
+	 * Works out the dirty region between the previous frame and the one just
+	 * stored, then makes the latter the previous frame.
+	 */
+	private boolean compare(int viewWidth, int viewHeight) {
+		boolean full = !_valid || !sameShapes();
+		_dirty.clear();
+		if (!full) {
+			for (int i = 0; i < _count; i++) {
+				int j = i * 4;
+				if (_bounds[j] != _previousBounds[j] || _bounds[j + 1] != _previousBounds[j + 1]
+						|| _bounds[j + 2] != _previousBounds[j + 2] || _bounds[j + 3] != _previousBounds[j + 3]) {
+					add(_previousBounds, j);
+					add(_bounds, j);
+				}
+			}
+			// Clipping to the view keeps the rectangles disjoint.
+			Rectangle view = new Rectangle(0, 0, viewWidth, viewHeight);
+			double area = 0;
+			for (int k = _dirty.size() - 1; k >= 0; k--) {
+				Rectangle region = _dirty.get(k);
+				Rectangle.intersect(region, view, region);
+				if (region.isEmpty()) {
+					// Everything that changed here is outside the view.
+					_dirty.remove(k);
+				} else {
+					area += (double) region.width * region.height;
+				}
+			}
+			// The rectangles are painted one by one, so they cost their area.
+			full = area > _threshold * viewWidth * viewHeight;
+		}
+
+		_valid = true;
+		_previousCount = _count;
+		Shape[] shapes = _previousShapes;
+		_previousShapes = _shapes;
+		_shapes = shapes;
+		int[] swap = _previousParents;
+		_previousParents = _parents;
+		_parents = swap;
+		swap = _previousBounds;
+		_previousBounds = _bounds;
+		_bounds = swap;
+		return full;
+	}
+
+	private boolean sameShapes() {
+		if (_previousCount != _count) {
+			return false;
+		}
+		for (int i = 0; i < _count; i++) {
+			if (_previousShapes[i] != _shapes[i] || _previousParents[i] != _parents[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Adds the box at offset j of bounds, plus the margin, to the dirty region.
+	private void add(int[] bounds, int j) {
+		int x = bounds[j] - MARGIN;
+		int y = bounds[j + 1] - MARGIN;
+		int width = bounds[j + 2] + 2 * MARGIN;
+		int height = bounds[j + 3] + 2 * MARGIN;
+		for (Rectangle region : _dirty) {
+			if (region.contains(x, y, width, height)) {
+				return;
+			}
+		}
+		add(_dirty, new Rectangle(x, y, width, height));
+	}
+
+	/*
+	 * Adds box to regions, merging it with every rectangle it overlaps, and
+	 * then the closest two rectangles while there are too many.
+	 */
+	private static void add(List<Rectangle> regions, Rectangle box) {
+		for (int k = 0; k < regions.size(); k++) {
+			if (regions.get(k).intersects(box)) {
+				// The union may overlap rectangles already passed over.
+				box.add(removeAt(regions, k));
+				k = -1;
+			}
+		}
+		regions.add(box);
+
+		if (regions.size() > MAX_RECTANGLES) {
+			int first = 0, second = 1;
+			double least = Double.MAX_VALUE;
+			for (int a = 0; a < regions.size(); a++) {
+				for (int b = a + 1; b < regions.size(); b++) {
+					double growth = growth(regions.get(a), regions.get(b));
+					if (growth < least) {
+						least = growth;
+						first = a;
+						second = b;
+					}
+				}
+			}
+			Rectangle merged = removeAt(regions, second);
+			merged.add(removeAt(regions, first));
+			add(regions, merged);
+		}
+	}
+
+	// Removes the rectangle at index k, without shifting the others.
+	private static Rectangle removeAt(List<Rectangle> regions, int k) {
+		Rectangle last = regions.remove(regions.size() - 1);
+		return k == regions.size() ? last : regions.set(k, last);
+	}
+
+	// Returns the area covered by the union of a and b but by neither.
+	private static double growth(Rectangle a, Rectangle b) {
+		Rectangle union = a.union(b);
+		return (double) union.width * union.height - (double) a.width * a.height - (double) b.width * b.height;
+	}
+}
@@ -0,0 +1,371 @@
+package bounce.views;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import bounce.BatchingPainter;
+import bounce.DetailPolicy;
+import bounce.FrameSnapshot;
+import bounce.GraphicsPainter;
+import bounce.Painter;
+import bounce.ShapeModel;
+
+/**
+ * Renders a ShapeModel's animation into images without any Swing components,
+ * so that it can run with java.awt.headless=true.
+ *
+ * Each frame the model is clocked and painted into an image taken from a
+ * pool, and the image is handed to a FrameEncoder on background threads.
+ * Once encoded, the image goes back to the pool. The simulation therefore
+ * only waits for the encoders when every image in the pool is still being
+ * encoded, and the time spent waiting is reported.
+ *
+ * @author Will Molloy
+ *
+ */
+public class OffscreenRenderer {
+
+	/**
+	 * Interface to be implemented by classes that write rendered frames.
+	 */
+	public interface FrameEncoder {
+		/**
+		 * Returns true if frames may be encoded by several threads at once,
+		 * and so out of order.
+		 */
+		boolean isConcurrent();
+
+		/**
+		 * Writes image as the specified frame, counting from 0. The image
+		 * must not be used after this method returns.
+		 */
+		void encode(BufferedImage image, int frame) throws IOException;
+
+		/**
+		 * Called after the last frame has been encoded.
+		 */
+		void close() throws IOException;
+	}
+
+	/**
+	 * Results of a call to render().
+	 */
+	public static final class Statistics {
+		private final int _frames;
+		private final long _elapsedNanos;
+		private final long _waitNanos;
+		private final long _colourChangesRequested;
+		private final long _colourChangesIssued;
+
+		private Statistics(int frames, long elapsedNanos, long waitNanos, long requested, long issued) {
+			_frames = frames;
+			_elapsedNanos = elapsedNanos;
+			_waitNanos = waitNanos;
+			_colourChangesRequested = requested;
+			_colourChangesIssued = issued;
+		}
+
+		/**
+		 * Returns the number of frames rendered and encoded.
+		 */
+		public int frames() {
+			return _frames;
+		}
+
+		/**
+		 * Returns the time taken, including waiting for the last frames to
+		 * be encoded.
+		 */
+		public double seconds() {
+			return _elapsedNanos / 1e9;
+		}
+
+		public double framesPerSecond() {
+			return _elapsedNanos == 0 ? 0 : _frames / seconds();
+		}
+
+		/**
+		 * Returns the time the simulation spent waiting for an image to be
+		 * returned to the pool.
+		 */
+		public double waitSeconds() {
+			return _waitNanos / 1e9;
+		}
+
+		/**
+		 * Returns the number of colour changes requested by Shapes, when
+		 * painting with a BatchingPainter, otherwise 0.
+		 */
+		public long colourChangesRequested() {
+			return _colourChangesRequested;
+		}
+
+		/**
+		 * Returns the number of colour changes made on the images' Graphics,
+		 * when painting with a BatchingPainter, otherwise 0.
+		 */
+		public long colourChangesIssued() {
+			return _colourChangesIssued;
+		}
+	}
+
+	private final ShapeModel _model;
+	private final FrameEncoder _encoder;
+	private final int _poolSize;
+	private final int _encoderThreads;
+	private final int _width;
+	private final int _height;
+	private boolean _batched;
+	private DetailPolicy _detailPolicy;
+
+	/**
+	 * Creates an OffscreenRenderer that renders model at the size of its
+	 * bounds.
+	 * @param poolSize the number of images to reuse.
+	 * @param encoderThreads the number of threads to encode frames on, used
+	 *        only if encoder isConcurrent().
+	 * @throws IllegalArgumentException if poolSize or encoderThreads is less
+	 *         than 1.
+	 */
+	public OffscreenRenderer(ShapeModel model, FrameEncoder encoder, int poolSize, int encoderThreads) throws IllegalArgumentException {
+		if (poolSize < 1 || encoderThreads < 1) {
+			throw new IllegalArgumentException("Pool size " + poolSize + ", encoder threads " + encoderThreads);
+		}
+		_model = model;
+		_encoder = encoder;
+		_poolSize = poolSize;
+		_encoderThreads = encoder.isConcurrent() ? encoderThreads : 1;
+		Dimension bounds = model.bounds();
+		_width = bounds.width;
+		_height = bounds.height;
+	}
+
+	/**
+	 * Sets whether frames are painted with a BatchingPainter rather than a
+	 * GraphicsPainter. The images are the same either way.
+	 */
+	public void setBatched(boolean batched) {
+		_batched = batched;
+	}
+
+	/**
+	 * Sets the DetailPolicy that decides how much detail each Shape is
+	 * painted with, or null to paint every Shape in full. Its counts
+	 * accumulate over the frames rendered.
+	 */
+	public void setDetailPolicy(DetailPolicy policy) {
+		_detailPolicy = policy;
+	}
+
+	/**
+	 * Renders frames frames, clocking the model ticksPerFrame times before
+	 * each, and closes the encoder, even if rendering fails or is
+	 * interrupted.
+	 * @throws IOException if a frame could not be encoded, including when
+	 *         the encoder threw a RuntimeException. No more frames are
+	 *         rendered after the first error.
+	 */
+	public Statistics render(int frames, int ticksPerFrame) throws IOException, InterruptedException {
+		final BlockingQueue<BufferedImage> pool = new ArrayBlockingQueue<BufferedImage>(_poolSize);
+		for (int i = 0; i < _poolSize; i++) {
+			pool.add(new BufferedImage(_width, _height, BufferedImage.TYPE_INT_RGB));
+		}
+		final AtomicReference<IOException> error = new AtomicReference<IOException>();
+		ExecutorService encoders = Executors.newFixedThreadPool(_encoderThreads, new ThreadFactory() {
+			private final AtomicInteger _count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Bounce frame encoder " + _count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		long requested = 0;
+		long issued = 0;
+		long waitNanos = 0;
+		int rendered = 0;
+		long startTime = System.nanoTime();
+		try {
+			for (; rendered < frames && error.get() == null; rendered++) {
+				for (int tick = 0; tick < ticksPerFrame; tick++) {
+					_model.clock();
+				}
+				long waitStart = System.nanoTime();
+				final BufferedImage image = pool.take();
+				waitNanos += System.nanoTime() - waitStart;
+
+				Graphics2D g = image.createGraphics();
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, _width, _height);
+				g.setColor(Color.BLACK);
+				if (_batched) {
+					BatchingPainter painter = new BatchingPainter(g, _width, _height);
+					paintModel(painter);
+					painter.flush();
+					requested += painter.colourChangesRequested();
+					issued += painter.colourChangesIssued();
+				} else {
+					paintModel(new GraphicsPainter(g));
+				}
+				g.dispose();
+
+				final int frame = rendered;
+				encoders.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (error.get() == null) {
+								_encoder.encode(image, frame);
+							}
+						} catch (IOException e) {
+							error.compareAndSet(null, e);
+						} catch (RuntimeException e) {
+							// Report it rather than silently lose the frame.
+							error.compareAndSet(null, new IOException("Frame " + frame + " could not be encoded", e));
+						} finally {
+							pool.add(image);
+						}
+					}
+				});
+			}
+		} finally {
+			encoders.shutdown();
+			try {
+				encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} finally {
+				_encoder.close();
+			}
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		if (error.get() != null) {
+			throw error.get();
+		}
+		return new Statistics(rendered, elapsedNanos, waitNanos, requested, issued);
+	}
+
+	// Paints the model, through a FrameSnapshot if levels of detail apply.
+	private void paintModel(Painter painter) {
+		if (_detailPolicy == null) {
+			_model.root().paint(painter);
+		} else {
+			FrameSnapshot frame = _model.snapshot();
+			if (frame == null) {
+				frame = FrameSnapshot.of(_model.root(), _model.ticks());
+			}
+			frame.paint(painter, null, 1, _detailPolicy);
+		}
+	}
+
+	/**
+	 * Returns a FrameEncoder that writes each frame to its own PNG file in
+	 * directory, named frame000000.png and so on. Frames are encoded
+	 * concurrently.
+	 */
+	public static FrameEncoder pngSequence(final File directory) {
+		return new FrameEncoder() {
+			@Override
+			public boolean isConcurrent() {
+				return true;
+			}
+
+			@Override
+			public void encode(BufferedImage image, int frame) throws IOException {
+				File file = new File(directory, String.format("frame%06d.png", frame));
+				if (!ImageIO.write(image, "png", file)) {
+					throw new IOException("No PNG writer for " + file);
+				}
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Returns a FrameEncoder that writes frames in order to out as an
+	 * uncompressed YUV4MPEG2 video, with 4:4:4 sampling and BT.601 colours,
+	 * which video tools such as ffmpeg read directly. Each frame must be
+	 * width by height pixels of TYPE_INT_RGB. out is closed by close().
+	 */
+	public static FrameEncoder y4m(OutputStream out, int width, int height, int framesPerSecond) {
+		return new Y4mEncoder(out, width, height, framesPerSecond);
+	}
+
+	private static final class Y4mEncoder implements FrameEncoder {
+		private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+		private final OutputStream _out;
+		private final int _width;
+		private final int _height;
+		private final byte[] _planes;
+		private IOException _headerError;
+
+		private Y4mEncoder(OutputStream out, int width, int height, int framesPerSecond) {
+			_out = new BufferedOutputStream(out, 1 << 16);
+			_width = width;
+			_height = height;
+			_planes = new byte[3 * width * height];
+			String header = "YUV4MPEG2 W" + width + " H" + height + " F" + framesPerSecond + ":1 Ip A1:1 C444\n";
+			try {
+				_out.write(header.getBytes(StandardCharsets.US_ASCII));
+			} catch (IOException e) {
+				_headerError = e;
+			}
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return false;
+		}
+
+		@Override
+		public void encode(BufferedImage image, int frame) throws IOException {
+			if (_headerError != null) {
+				throw _headerError;
+			}
+			if (image.getWidth() != _width || image.getHeight() != _height || image.getType() != BufferedImage.TYPE_INT_RGB) {
+				throw new IOException("Frame " + frame + " is not a " + _width + "x" + _height + " RGB image");
+			}
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			byte[] planes = _planes;
+			int size = _width * _height;
+			for (int i = 0; i < size; i++) {
+				int rgb = pixels[i];
+				int r = (rgb >> 16) & 0xFF;
+				int g = (rgb >> 8) & 0xFF;
+				int b = rgb & 0xFF;
+				planes[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+				planes[size + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+				planes[2 * size + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+			}
+			_out.write(FRAME_HEADER);
+			_out.write(planes);
+		}
+
+		@Override
+		public void close() throws IOException {
+			_out.close();
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package bounce.views;
 
+import java.util.Arrays;
+
 import javax.swing.table.AbstractTableModel;
 
+import bounce.FrameSnapshot;
 import bounce.NestingShape;
 import bounce.Shape;
 import bounce.ShapeModelEvent;
@@ -14,6 +17,17 @@ import bounce.ShapeModelListener;
  * TableModel interface from scratch this class extends AbstractTableModel and
  * simply overrides selected methods as necessary.
  * 
+ * On each ShapeMoved event the rows are compared with the values last shown,
+ * and only the rows that changed are reported with fireTableRowsUpdated().
+ * When the ShapeModel publishes FrameSnapshots, the rows only ever hold the
+ * values of a published frame: after a structural change or setAdaptee()
+ * the table goes on showing the last frame, and its rows are rebuilt from
+ * the next one. Rows are inserted and removed at the same time as listeners
+ * are told of it, so the row count always agrees with the events fired.
+ * How often this happens is capped by registering the adapter with 
+ * ShapeModel.addShapeModelListener(listener, maxUpdatesPerSecond, executor),
+ * which drops ShapeMoved events in excess of that rate.
+ * 
  * @author Ian Warren
  * 
  */
@@ -25,6 +39,39 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 	 */
 	private Shape _adaptee;
 	
+	/*
+	 * Last completed frame published by the ShapeModel, and the element 
+	 * indices within it of the rows of this table. Null when the model does
+	 * not publish snapshots, in which case the table reads the live Shapes.
+	 */
+	private FrameSnapshot _frame;
+	private int[] _rows;
+	private int _adapteeIndex;
+	
+	/*
+	 * Values of each row as last reported to TableModelListeners: the Shape,
+	 * followed by VALUES_PER_ROW ints (x, y, deltaX, deltaY, width and 
+	 * height) and the text. Each frame is compared with these so that only
+	 * the rows that changed are repainted. _cachedRows is -1 when the cache 
+	 * is invalid, i.e. the structure has changed since it was filled.
+	 */
+	private Shape[] _rowShapes = new Shape[0];
+	private int[] _rowValues = new int[0];
+	private String[] _rowTexts = new String[0];
+	private int _cachedRows = -1;
+	
+	// First and last rows of each run of changed rows found by the last diff.
+	private int[] _runs = new int[2 * MAX_UPDATE_EVENTS];
+	
+	private static final int VALUES_PER_ROW = 6;
+	
+	/*
+	 * Maximum number of fireTableRowsUpdated() calls per frame. When more
+	 * runs of rows change, one event spanning all of them is fired instead;
+	 * a JTable only repaints the part of the range that is visible.
+	 */
+	private static final int MAX_UPDATE_EVENTS = 32;
+	
 	 // Column names for table.
 	private static final String[] _columnNames = {"Type", "X-pos", "Y-pos", "X-delta", "Y-delta", "Width", "Height", "Text"};
 
@@ -64,6 +111,12 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 	 */
 	@Override
 	public int getRowCount() {
+		if(_cachedRows >= 0) {
+			return _cachedRows;
+		}
+		if(_frame != null) {
+			return _rows.length;
+		}
 		int rowCount = 1;
 		
 		if(_adaptee instanceof NestingShape) {
@@ -79,6 +132,12 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 	 */
 	@Override
 	public Object getValueAt(int row, int col) {
+		if(_cachedRows >= 0) {
+			return getCachedValueAt(row, col);
+		}
+		if(_frame != null) {
+			return getFrameValueAt(_rows[row], col);
+		}
 		Shape targetShape = _adaptee;
 		Object result = null;
 		
@@ -116,12 +175,99 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 		return result;
 	}
 	
+	/*
+	 * Returns the value of a cell from the last completed frame.
+	 */
+	private Object getFrameValueAt(int index, int col) {
+		Object result = null;
+		
+		switch(col) {
+		case 0: // Type
+			result = _frame.shape(index).toString();
+			break;
+		case 1: // X-Pos
+			result = _frame.x(index);
+			break;
+		case 2: // Y-Pos.
+			result = _frame.y(index);
+			break;
+		case 3: // X-delta.
+			result = _frame.deltaX(index);
+			break;
+		case 4: // Y-delta.
+			result = _frame.deltaY(index);
+			break;
+		case 5: // Width.
+			result = _frame.width(index);
+			break;
+		case 6: // Height.
+			result = _frame.height(index);
+			break;
+		case 7: // Text.
+			result = _frame.text(index);
+			break;
+		}
+		return result;
+	}
+	
+	/*
+	 * Returns the value of a cell as last reported to TableModelListeners.
+	 */
+	private Object getCachedValueAt(int row, int col) {
+		switch(col) {
+		case 0: // Type
+			return _rowShapes[row].toString();
+		case 7: // Text.
+			return _rowTexts[row];
+		default: // X-pos to Height.
+			return _rowValues[row * VALUES_PER_ROW + col - 1];
+		}
+	}
+	
+	/*
+	 * Switches this TableModelAdapter to read from the specified frame. If
+	 * the frame does not contain the adaptee, e.g. as it was added after the
+	 * frame was taken, the table has no rows.
+	 */
+	private void useFrame(FrameSnapshot frame) {
+		_frame = frame;
+		if(_adapteeIndex >= frame.shapeCount() || frame.shape(_adapteeIndex) != _adaptee) {
+			_adapteeIndex = frame.indexOf(_adaptee);
+			if(_adapteeIndex < 0) {
+				_adapteeIndex = 0;
+				_rows = new int[0];
+				return;
+			}
+		}
+		
+		if(_adaptee instanceof NestingShape) {
+			int count = 0;
+			for(int child = frame.firstChild(_adapteeIndex); child >= 0; child = frame.nextSibling(child)) {
+				count++;
+			}
+			_rows = new int[count];
+			count = 0;
+			for(int child = frame.firstChild(_adapteeIndex); child >= 0; child = frame.nextSibling(child)) {
+				_rows[count++] = child;
+			}
+		} else {
+			_rows = new int[] {_adapteeIndex};
+		}
+	}
+	
 	/**
 	 * Sets the adaptee Shape/NestingShape object that should be represented by 
 	 * this TableModelAdapter instance.
 	 */
 	public void setAdaptee(Shape shape) {
 		_adaptee = shape;
+		_cachedRows = -1;
+		if(_frame != null) {
+			// Fills the rows from the last frame rather than the live Shapes.
+			useFrame(_frame);
+			fireRowsChanged();
+			return;
+		}
 		
 		/*
 		 * Cause any TableModelListeners (e.g. a JTable component) to be  
@@ -142,14 +288,52 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 		ShapeModelEvent.EventType eventType = event.eventType();
 		Shape shape = event.operand();
 		
+		if(eventType == ShapeModelEvent.EventType.ShapesCollided) {
+			// The ShapeMoved event fired before it already shows the bounces.
+			return;
+		}
+		
+		FrameSnapshot frame = event.source().snapshot();
+		if(frame != null) {
+			// A structural change is shown once a frame that holds it has
+			// been published; until then the rows are those of the last.
+			useFrame(frame);
+			fireRowsChanged();
+			return;
+		}
+		if(_frame != null) {
+			// The model has stopped publishing snapshots.
+			_frame = null;
+			_cachedRows = -1;
+			fireTableDataChanged();
+			return;
+		}
+		
+		if(eventType != ShapeModelEvent.EventType.ShapeMoved) {
+			// Structure has changed; read the live Shapes until the next tick.
+			_cachedRows = -1;
+		}
+		
 		if(eventType == ShapeModelEvent.EventType.ShapeAdded) {
 			NestingShape parent = shape.parent();
 			if(parent == _adaptee) {
 				// The new shapes's parent is represented by this TableModel,
 				// so the view will need to be updated to show the new shape.
-				fireTableRowsInserted(parent.shapeCount() - 1, parent.shapeCount() - 1);
+				fireTableRowsInserted(event.index(), event.index());
+			}
+		} else if(eventType == ShapeModelEvent.EventType.ShapesAdded) {
+			if(event.parent() == _adaptee) {
+				// Shapes are appended, so their rows are normally one range.
+				int[] indices = event.indices();
+				int first = indices[0], last = indices[indices.length - 1];
+				if(last - first + 1 == indices.length) {
+					fireTableRowsInserted(first, last);
+				} else {
+					fireTableDataChanged();
+				}
 			}
-		} else if(eventType == ShapeModelEvent.EventType.ShapeRemoved) {
+		} else if(eventType == ShapeModelEvent.EventType.ShapeRemoved 
+				|| eventType == ShapeModelEvent.EventType.ShapesRemoved) {
 			NestingShape parent = event.parent();
 			if(parent == _adaptee) {
 				// The removed shape's former parent is represented by this 
@@ -159,8 +343,129 @@ public class TableModelAdapter extends AbstractTableModel implements ShapeModelL
 			} 
 		} else {
 			// Processing a ShapeMoved event.
+			fireRowsChanged();
+		}
+	}
+	
+	/*
+	 * Compares the current value of each row, from the frame or the live 
+	 * Shapes, with the cache, updates the cache and notifies listeners of 
+	 * the rows that changed. Rows that did not change are not repainted, and
+	 * unlike fireTableDataChanged() the selection is kept. Rows appended 
+	 * since the cache was filled are reported as inserted; any other change
+	 * to the rows' Shapes as a change to all the data.
+	 */
+	private void fireRowsChanged() {
+		int previousRows = _cachedRows;
+		_cachedRows = -1;
+		int rows = getRowCount();
+		int kept = Math.min(rows, Math.max(previousRows, 0));
+		boolean shapesKept = true;
+		if(_rowShapes.length < rows) {
+			int capacity = Math.max(rows, _rowShapes.length * 2);
+			_rowShapes = Arrays.copyOf(_rowShapes, capacity);
+			_rowValues = Arrays.copyOf(_rowValues, capacity * VALUES_PER_ROW);
+			_rowTexts = Arrays.copyOf(_rowTexts, capacity);
+		}
+		
+		NestingShape nest = _adaptee instanceof NestingShape ? (NestingShape)_adaptee : null;
+		int runs = 0;
+		int first = -1, last = -1;
+		for(int row = 0; row < rows; row++) {
+			Shape shape;
+			int x, y, deltaX, deltaY, width, height;
+			String text;
+			if(_frame != null) {
+				int index = _rows[row];
+				shape = _frame.shape(index);
+				x = _frame.x(index);
+				y = _frame.y(index);
+				deltaX = _frame.deltaX(index);
+				deltaY = _frame.deltaY(index);
+				width = _frame.width(index);
+				height = _frame.height(index);
+				text = _frame.text(index);
+			} else {
+				shape = nest != null ? nest.shapeAt(row) : _adaptee;
+				x = shape.x();
+				y = shape.y();
+				deltaX = shape.deltaX();
+				deltaY = shape.deltaY();
+				width = shape.width();
+				height = shape.height();
+				text = shape.text();
+			}
+			
+			int base = row * VALUES_PER_ROW;
+			if(row >= kept) {
+				// A new row; it is reported as inserted, not updated.
+				storeRow(row, shape, x, y, deltaX, deltaY, width, height, text);
+				continue;
+			}
+			shapesKept &= shape == _rowShapes[row];
+			if(shape == _rowShapes[row] && text == _rowTexts[row]
+					&& x == _rowValues[base] && y == _rowValues[base + 1]
+					&& deltaX == _rowValues[base + 2] && deltaY == _rowValues[base + 3]
+					&& width == _rowValues[base + 4] && height == _rowValues[base + 5]) {
+				continue;
+			}
+			storeRow(row, shape, x, y, deltaX, deltaY, width, height, text);
+			
+			if(first < 0) {
+				first = row;
+			}
+			if(last == row - 1 && runs > 0 && runs <= MAX_UPDATE_EVENTS) {
+				// Extends the current run.
+				_runs[2 * runs - 1] = row;
+			} else if(runs < MAX_UPDATE_EVENTS) {
+				_runs[2 * runs] = row;
+				_runs[2 * runs + 1] = row;
+				runs++;
+			} else {
+				runs = MAX_UPDATE_EVENTS + 1;
+			}
+			last = row;
+		}
+		// Clears references to Shapes no longer in the table.
+		for(int row = rows; row < _rowShapes.length && _rowShapes[row] != null; row++) {
+			_rowShapes[row] = null;
+			_rowTexts[row] = null;
+		}
+		_cachedRows = rows;
+		
+		if(previousRows < 0 && _frame == null) {
+			// Listeners were told of the structural change as it was made.
+			if(rows > 0) {
+				fireTableRowsUpdated(0, rows - 1);
+			}
+			return;
+		}
+		if(previousRows < 0 || rows < previousRows || !shapesKept) {
 			fireTableDataChanged();
+			return;
 		}
+		if(runs > MAX_UPDATE_EVENTS) {
+			fireTableRowsUpdated(first, last);
+		} else {
+			for(int run = 0; run < runs; run++) {
+				fireTableRowsUpdated(_runs[2 * run], _runs[2 * run + 1]);
+			}
+		}
+		if(rows > previousRows) {
+			fireTableRowsInserted(previousRows, rows - 1);
+		}
+	}
+	
+	private void storeRow(int row, Shape shape, int x, int y, int deltaX, int deltaY, int width, int height, String text) {
+		int base = row * VALUES_PER_ROW;
+		_rowShapes[row] = shape;
+		_rowTexts[row] = text;
+		_rowValues[base] = x;
+		_rowValues[base + 1] = y;
+		_rowValues[base + 2] = deltaX;
+		_rowValues[base + 3] = deltaY;
+		_rowValues[base + 4] = width;
+		_rowValues[base + 5] = height;
 	}
 	
 }
@@ -49,17 +49,19 @@ public class Task2 extends Task1 implements ShapeModelListener{
 		return new TreeModelEvent(
 				event.source(),						// source ShapeModel event
 				new TreePath(event.parent().path().toArray()), 	// Path to root/former parent
-				new int[] {event.index()},			// index of Shape added/removed 
-				new Object[] {event.operand()}  	// Shape added/removed
+				event.indices(),					// indices of Shapes added/removed 
+				event.operands()  					// Shapes added/removed
 				);	
 	}
 	
 	private void fireTreeModelEventAtTreeModelListeners(ShapeModelEvent shapeModelEvent, TreeModelEvent treeModelEvent){
 		switch(shapeModelEvent.eventType()){
 		case ShapeAdded:
+		case ShapesAdded:		// One event for all of the children added
 			fireTreeNodesInserted(treeModelEvent);
 			break;
 		case ShapeRemoved:
+		case ShapesRemoved:
 			fireTreeNodesRemoved(treeModelEvent);
 			break;
 		default:
@@ -102,4 +104,4 @@ public class Task2 extends Task1 implements ShapeModelListener{
 	public void removeTreeModelListener(TreeModelListener listener) {
 		_listeners.remove(listener);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package bounce.views;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bounce.FrameSnapshot;
+import bounce.GraphicsPainter;
+import bounce.ImageRectangleShape;
+import bounce.NestingShape;
+import bounce.OvalShape;
+import bounce.RectangleShape;
+import bounce.ShapeModel;
+
+/**
+ * Class to test that an AcceleratedRenderer paints the same pixels as a
+ * GraphicsPainter, repainting its static layer only when it changes. On a
+ * headless machine the layer is a BufferedImage.
+ * @author Will Molloy
+ *
+ */
+public class TestAcceleratedRenderer {
+
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+
+	private ShapeModel _model;
+	private JPanel _component;
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(WIDTH, HEIGHT));
+		NestingShape still = new NestingShape(10, 10, 0, 0, 80, 60);
+		_model.add(still, _model.root());
+		_model.add(new OvalShape(5, 5, 3, 2, 15, 15), still);
+		_model.add(new NestingShape(20, 20, 0, 0, 30, 20), still);
+
+		BufferedImage picture = new BufferedImage(12, 8, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics g = picture.getGraphics();
+		g.setColor(Color.MAGENTA);
+		g.fillRect(2, 2, 8, 4);
+		g.dispose();
+		_model.add(new ImageRectangleShape(2, 3, picture), _model.root());
+
+		NestingShape moving = new NestingShape(95, 70, 2, -1, 50, 40);
+		_model.add(moving, _model.root());
+		_model.add(new RectangleShape(1, 1, 4, 3, 10, 8, "x"), moving);
+
+		_component = new JPanel();
+		_component.setSize(WIDTH, HEIGHT);
+		_component.setBackground(Color.WHITE);
+	}
+
+	@Test
+	public void testSamePixels() {
+		AcceleratedRenderer renderer = new AcceleratedRenderer(_component);
+		for (int tick = 0; tick < 30; tick++) {
+			_model.clock();
+			FrameSnapshot frame = FrameSnapshot.of(_model.root(), tick);
+			assertArrayEquals(pixels(paintPlain(frame)), pixels(paintLayered(renderer, frame)));
+		}
+		assertFalse(renderer.isAccelerated());
+		// The root, the still NestingShape and the one within it.
+		assertEquals(3, renderer.staticBorderCount());
+		assertEquals(1, renderer.layerRenders());
+		assertEquals(1, renderer.spritesConverted());
+	}
+
+	@Test
+	public void testLayerRepainted() {
+		AcceleratedRenderer renderer = new AcceleratedRenderer(_component);
+		paintLayered(renderer, FrameSnapshot.of(_model.root(), 0));
+		paintLayered(renderer, FrameSnapshot.of(_model.root(), 0));
+		assertEquals(1, renderer.layerRenders());
+
+		_model.add(new NestingShape(100, 5, 0, 0, 40, 30), _model.root());
+		FrameSnapshot frame = FrameSnapshot.of(_model.root(), 1);
+		assertArrayEquals(pixels(paintPlain(frame)), pixels(paintLayered(renderer, frame)));
+		assertEquals(2, renderer.layerRenders());
+		assertEquals(4, renderer.staticBorderCount());
+
+		_component.setBackground(Color.YELLOW);
+		BufferedImage image = paintLayered(renderer, frame);
+		assertEquals(3, renderer.layerRenders());
+		assertEquals(Color.YELLOW.getRGB(), image.getRGB(WIDTH - 5, 2));
+	}
+
+	private BufferedImage paintPlain(FrameSnapshot frame) {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		g.setColor(_component.getBackground());
+		g.fillRect(0, 0, WIDTH, HEIGHT);
+		frame.paint(new GraphicsPainter(g));
+		g.dispose();
+		return image;
+	}
+
+	private BufferedImage paintLayered(AcceleratedRenderer renderer, FrameSnapshot frame) {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		renderer.paint(g, frame, null, 1);
+		g.dispose();
+		return image;
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+	}
+}
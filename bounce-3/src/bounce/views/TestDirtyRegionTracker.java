@@ -0,0 +1,225 @@
+package bounce.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bounce.NestingShape;
+import bounce.RectangleShape;
+import bounce.Shape;
+import bounce.ShapeModel;
+
+/**
+ * Class to test that DirtyRegionTracker finds the region of an AnimationView
+ * that changed between two frames.
+ * @author Will Molloy
+ *
+ */
+public class TestDirtyRegionTracker {
+
+	private ShapeModel _model;
+	private NestingShape _nest;
+	private Shape _child;
+	private Shape _static;
+	private DirtyRegionTracker _tracker;
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_nest = new NestingShape(100, 100, 0, 0, 100, 100);
+		_child = new RectangleShape(10, 10, 2, 3, 20, 20);
+		_static = new RectangleShape(300, 300, 0, 0, 20, 20);
+		_model.add(_nest, _model.root());
+		_model.add(_child, _nest);
+		_model.add(_static, _model.root());
+		_model.setSnapshotsEnabled(true);
+		_tracker = new DirtyRegionTracker(AnimationView.DEFAULT_FULL_REPAINT_THRESHOLD);
+	}
+
+	/**
+	 * Checks that the first frame is repainted in full.
+	 */
+	@Test
+	public void testFirstFrameIsFull() {
+		assertTrue(_tracker.update(_model.snapshot(), null, 500, 500));
+	}
+
+	/**
+	 * Checks that the dirty region of a nested Shape is the union of its old
+	 * and new boxes in absolute coordinates.
+	 */
+	@Test
+	public void testNestedShapeMoved() {
+		_tracker.update(_model.snapshot(), null, 500, 500);
+		_model.clock();
+
+		assertFalse(_tracker.update(_model.snapshot(), null, 500, 500));
+		// From (110,110,20,20) to (112,113,20,20), plus a margin of one pixel.
+		assertEquals(Arrays.asList(new Rectangle(109, 109, 24, 25)), _tracker.dirtyRegions());
+	}
+
+	/**
+	 * Checks that nothing is dirty when no Shape moved.
+	 */
+	@Test
+	public void testNothingMoved() {
+		_tracker.update(_model.snapshot(), null, 500, 500);
+		_tracker.update(_model.snapshot(), null, 500, 500);
+		assertTrue(_tracker.dirtyRegions().isEmpty());
+	}
+
+	/**
+	 * Checks that moving a NestingShape makes its children's old and new
+	 * boxes dirty too.
+	 */
+	@Test
+	public void testNestMoved() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		NestingShape nest = new NestingShape(100, 100, 5, 0, 100, 100);
+		model.add(nest, model.root());
+		model.add(new RectangleShape(10, 10, 0, 0, 20, 20), nest);
+		model.setSnapshotsEnabled(true);
+
+		_tracker.update(model.snapshot(), null, 500, 500);
+		model.clock();
+		assertFalse(_tracker.update(model.snapshot(), null, 500, 500));
+		// The nest moves from x=100 to x=105, taking its child with it.
+		assertEquals(Arrays.asList(new Rectangle(99, 99, 107, 102)), _tracker.dirtyRegions());
+	}
+
+	/**
+	 * Checks that Shapes moving far apart make separate rectangles dirty,
+	 * and that there are never more than MAX_RECTANGLES of them.
+	 */
+	@Test
+	public void testDisjointRectangles() {
+		ShapeModel model = new ShapeModel(new Dimension(1000, 1000));
+		model.add(new RectangleShape(10, 10, 1, 0, 10, 10), model.root());
+		model.add(new RectangleShape(900, 900, 0, 1, 10, 10), model.root());
+		model.setSnapshotsEnabled(true);
+		_tracker.update(model.snapshot(), null, 1000, 1000);
+		model.clock();
+		assertFalse(_tracker.update(model.snapshot(), null, 1000, 1000));
+		assertEquals(Arrays.asList(new Rectangle(9, 9, 13, 12), new Rectangle(899, 899, 12, 13)),
+				_tracker.dirtyRegions());
+
+		for (int i = 0; i < 40; i++) {
+			model.add(new RectangleShape(i * 23 % 950, i * 47 % 950, 1, 1, 5, 5), model.root());
+		}
+		model.clock();
+		_tracker.update(model.snapshot(), null, 1000, 1000);
+		model.clock();
+		assertFalse(_tracker.update(model.snapshot(), null, 1000, 1000));
+		List<Rectangle> regions = _tracker.dirtyRegions();
+		assertTrue(regions.size() <= DirtyRegionTracker.MAX_RECTANGLES);
+		for (int a = 0; a < regions.size(); a++) {
+			for (int b = a + 1; b < regions.size(); b++) {
+				assertFalse(regions.get(a).intersects(regions.get(b)));
+			}
+		}
+	}
+
+	/**
+	 * Checks that tracking the live Shapes finds the same regions as
+	 * tracking snapshots of them.
+	 */
+	@Test
+	public void testLiveShapes() {
+		DirtyRegionTracker live = new DirtyRegionTracker(AnimationView.DEFAULT_FULL_REPAINT_THRESHOLD);
+		assertTrue(live.update(_model.root(), null, 500, 500));
+		_tracker.update(_model.snapshot(), null, 500, 500);
+		for (int i = 0; i < 5; i++) {
+			_model.clock();
+			assertEquals(_tracker.update(_model.snapshot(), null, 500, 500), live.update(_model.root(), null, 500, 500));
+			assertEquals(_tracker.dirtyRegions(), live.dirtyRegions());
+		}
+	}
+
+	/**
+	 * Checks that live Shapes nested far deeper than the call stack could
+	 * recurse are tracked.
+	 */
+	@Test
+	public void testDeepLiveShapes() {
+		ShapeModel model = new ShapeModel(new Dimension(500, 500));
+		NestingShape parent = model.root();
+		for (int i = 0; i < 20000; i++) {
+			NestingShape nest = new NestingShape(0, 0, 0, 0, 400, 400);
+			model.add(nest, parent);
+			parent = nest;
+		}
+		Shape leaf = new RectangleShape(10, 10, 1, 0, 10, 10);
+		model.add(leaf, parent);
+
+		DirtyRegionTracker tracker = new DirtyRegionTracker(AnimationView.DEFAULT_FULL_REPAINT_THRESHOLD);
+		assertTrue(tracker.update(model.root(), null, 500, 500));
+		leaf.move(500, 500);
+		assertFalse(tracker.update(model.root(), null, 500, 500));
+		assertEquals(Arrays.asList(new Rectangle(9, 9, 13, 12)), tracker.dirtyRegions());
+	}
+
+	/**
+	 * Checks that a full repaint is requested when the dirty region exceeds
+	 * the threshold, or when Shapes have been added or removed.
+	 */
+	@Test
+	public void testFullRepaintFallback() {
+		DirtyRegionTracker tracker = new DirtyRegionTracker(0.001);
+		tracker.update(_model.snapshot(), null, 500, 500);
+		_model.clock();
+		assertTrue(tracker.update(_model.snapshot(), null, 500, 500));
+
+		_tracker.update(_model.snapshot(), null, 500, 500);
+		_model.remove(_static);
+		_model.clock();
+		assertTrue(_tracker.update(_model.snapshot(), null, 500, 500));
+
+		_model.clock();
+		assertFalse(_tracker.update(_model.snapshot(), null, 500, 500));
+		_tracker.invalidate();
+		_model.clock();
+		assertTrue(_tracker.update(_model.snapshot(), null, 500, 500));
+	}
+
+	/**
+	 * Checks that the union of two regions merges overlapping rectangles,
+	 * and is the whole view if either region is.
+	 */
+	@Test
+	public void testUnion() {
+		List<Rectangle> a = Arrays.asList(new Rectangle(0, 0, 10, 10), new Rectangle(100, 100, 10, 10));
+		List<Rectangle> b = Arrays.asList(new Rectangle(5, 5, 10, 10));
+		assertEquals(Arrays.asList(new Rectangle(100, 100, 10, 10), new Rectangle(0, 0, 15, 15)),
+				DirtyRegionTracker.union(a, b));
+		assertEquals(new Rectangle(0, 0, 10, 10), a.get(0));
+		assertNull(DirtyRegionTracker.union(a, null));
+	}
+
+	/**
+	 * Checks that a single region, such as the bounding box of the dirty
+	 * rectangles, is measured against the threshold by its own area.
+	 */
+	@Test
+	public void testLargeRegion() {
+		DirtyRegionTracker tracker = new DirtyRegionTracker(0.5);
+		assertFalse(tracker.isLarge(new Rectangle(0, 0, 50, 100), 100, 100));
+		assertTrue(tracker.isLarge(new Rectangle(0, 0, 51, 100), 100, 100));
+	}
+
+	/**
+	 * Checks that an invalid threshold is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidThreshold() {
+		new DirtyRegionTracker(1.5);
+	}
+}
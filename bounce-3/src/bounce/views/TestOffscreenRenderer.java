@@ -0,0 +1,191 @@
+package bounce.views;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bounce.DynamicRectangleShape;
+import bounce.GemShape;
+import bounce.NestingShape;
+import bounce.OvalShape;
+import bounce.RectangleShape;
+import bounce.ShapeModel;
+
+/**
+ * Class to test that an OffscreenRenderer renders and encodes every frame.
+ * @author Will Molloy
+ *
+ */
+public class TestOffscreenRenderer {
+
+	private File _directory;
+
+	@Before
+	public void setUp() throws IOException {
+		_directory = File.createTempFile("bounce", "frames");
+		_directory.delete();
+		_directory.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : _directory.listFiles()) {
+			file.delete();
+		}
+		_directory.delete();
+	}
+
+	private static ShapeModel makeModel() {
+		ShapeModel model = new ShapeModel(new Dimension(120, 90));
+		NestingShape nest = new NestingShape(10, 10, 2, 1, 60, 50);
+		model.add(nest, model.root());
+		model.add(new OvalShape(0, 0, 3, 2, 15, 15), nest);
+		model.add(new RectangleShape(30, 5, 2, 5, 20, 10, "a"), model.root());
+		model.add(new DynamicRectangleShape(50, 40, -4, 3, 25, 20, Color.RED), model.root());
+		model.add(new GemShape(70, 60, 1, -1, 45, 25), model.root());
+		return model;
+	}
+
+	/**
+	 * Checks that a PNG is written per frame, and that batched painting gives
+	 * the same images.
+	 */
+	@Test
+	public void testPngSequence() throws Exception {
+		OffscreenRenderer renderer = new OffscreenRenderer(makeModel(), OffscreenRenderer.pngSequence(_directory), 2, 3);
+		OffscreenRenderer.Statistics statistics = renderer.render(6, 2);
+		assertEquals(6, statistics.frames());
+		assertEquals(6, _directory.list().length);
+		BufferedImage[] plain = new BufferedImage[6];
+		for (int i = 0; i < 6; i++) {
+			plain[i] = ImageIO.read(new File(_directory, String.format("frame%06d.png", i)));
+		}
+
+		renderer = new OffscreenRenderer(makeModel(), OffscreenRenderer.pngSequence(_directory), 2, 3);
+		renderer.setBatched(true);
+		statistics = renderer.render(6, 2);
+		assertTrue(statistics.colourChangesIssued() < statistics.colourChangesRequested());
+		for (int i = 0; i < 6; i++) {
+			BufferedImage batched = ImageIO.read(new File(_directory, String.format("frame%06d.png", i)));
+			assertArrayEquals(plain[i].getRGB(0, 0, 120, 90, null, 0, 120), batched.getRGB(0, 0, 120, 90, null, 0, 120));
+		}
+	}
+
+	/**
+	 * Checks the layout of a YUV4MPEG2 video.
+	 */
+	@Test
+	public void testY4m() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OffscreenRenderer renderer = new OffscreenRenderer(makeModel(), OffscreenRenderer.y4m(out, 120, 90, 30), 3, 4);
+		renderer.render(5, 1);
+
+		byte[] video = out.toByteArray();
+		String header = "YUV4MPEG2 W120 H90 F30:1 Ip A1:1 C444\n";
+		int frameBytes = "FRAME\n".length() + 3 * 120 * 90;
+		assertEquals(header.length() + 5 * frameBytes, video.length);
+		assertEquals(header, new String(video, 0, header.length(), StandardCharsets.US_ASCII));
+		for (int frame = 0; frame < 5; frame++) {
+			int start = header.length() + frame * frameBytes;
+			assertEquals("FRAME\n", new String(video, start, 6, StandardCharsets.US_ASCII));
+			// The bottom right corner is white background: Y 235, U and V 128.
+			int corner = start + 6 + 120 * 90 - 2;
+			assertEquals(235, video[corner] & 0xFF);
+			assertEquals(128, video[corner + 120 * 90] & 0xFF);
+			assertEquals(128, video[corner + 2 * 120 * 90] & 0xFF);
+		}
+	}
+
+	/**
+	 * Checks that rendering stops at the first frame that cannot be encoded.
+	 */
+	@Test
+	public void testEncoderError() throws Exception {
+		OffscreenRenderer renderer = new OffscreenRenderer(makeModel(), OffscreenRenderer.pngSequence(new File(_directory, "missing")), 1, 1);
+		try {
+			renderer.render(100, 1);
+			fail();
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	/*
+	 * FrameEncoder that throws a RuntimeException from the specified frame
+	 * on, and records whether it was closed.
+	 */
+	private static class FailingEncoder implements OffscreenRenderer.FrameEncoder {
+		private final int _failAt;
+		private volatile boolean _closed;
+
+		FailingEncoder(int failAt) {
+			_failAt = failAt;
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return false;
+		}
+
+		@Override
+		public void encode(BufferedImage image, int frame) {
+			if (frame >= _failAt) {
+				throw new IllegalStateException("Frame " + frame);
+			}
+		}
+
+		@Override
+		public void close() {
+			_closed = true;
+		}
+	}
+
+	/**
+	 * Checks that a RuntimeException thrown by the encoder is reported as an
+	 * IOException, and that the encoder is still closed.
+	 */
+	@Test
+	public void testEncoderRuntimeError() throws Exception {
+		FailingEncoder encoder = new FailingEncoder(3);
+		OffscreenRenderer renderer = new OffscreenRenderer(makeModel(), encoder, 1, 1);
+		try {
+			renderer.render(100, 1);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertTrue(encoder._closed);
+	}
+
+	/**
+	 * Checks that the encoder is closed when rendering is interrupted.
+	 */
+	@Test
+	public void testInterrupted() throws Exception {
+		FailingEncoder encoder = new FailingEncoder(Integer.MAX_VALUE);
+		OffscreenRenderer renderer = new OffscreenRenderer(makeModel(), encoder, 1, 1);
+		Thread.currentThread().interrupt();
+		try {
+			renderer.render(100, 1);
+			fail();
+		} catch (InterruptedException e) {
+			// Expected.
+		}
+		assertTrue(encoder._closed);
+	}
+}
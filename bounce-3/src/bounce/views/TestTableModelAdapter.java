@@ -0,0 +1,153 @@
+package bounce.views;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bounce.RectangleShape;
+import bounce.ShapeModel;
+
+/**
+ * Class to test that a TableModelAdapter reports only the rows that changed
+ * between frames.
+ * @author Will Molloy
+ *
+ */
+public class TestTableModelAdapter {
+
+	private ShapeModel _model;
+	private TableModelAdapter _adapter;
+	private List<String> _events;
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(10000, 500));
+		_model.setSnapshotsEnabled(true);
+		_adapter = new TableModelAdapter(_model.root());
+		_model.addShapeModelListener(_adapter);
+		_events = new ArrayList<String>();
+		_adapter.addTableModelListener(new TableModelListener() {
+			@Override
+			public void tableChanged(TableModelEvent e) {
+				String type = e.getType() == TableModelEvent.INSERT ? "insert" : e.getType() == TableModelEvent.DELETE ? "delete" : "update";
+				_events.add(type + " " + e.getFirstRow() + "-" + e.getLastRow());
+			}
+		});
+	}
+
+	// Adds count shapes side by side; every step-th one moves, starting with
+	// the first, or none if step is 0.
+	private void addShapes(int count, int step) {
+		for (int i = 0; i < count; i++) {
+			int deltaY = step > 0 && i % step == 0 ? 1 : 0;
+			_model.add(new RectangleShape(i * 20, 100, 0, deltaY, 10, 10), _model.root());
+		}
+	}
+
+	/**
+	 * Checks that rows are inserted by the first frame that holds them, and
+	 * later frames update only the runs of rows that moved.
+	 */
+	@Test
+	public void testChangedRowsOnly() {
+		addShapes(6, 3);
+		assertEquals(0, _adapter.getRowCount());
+		_model.clock();
+		assertEquals("[update 0-" + Integer.MAX_VALUE + ", insert 0-5]", _events.toString());
+		assertEquals(6, _adapter.getRowCount());
+
+		_events.clear();
+		_model.clock();
+		assertEquals("[update 0-0, update 3-3]", _events.toString());
+		assertEquals(102, _adapter.getValueAt(0, 2));
+		assertEquals(100, _adapter.getValueAt(1, 2));
+	}
+
+	/**
+	 * Checks that no events are fired for a frame in which nothing moved.
+	 */
+	@Test
+	public void testNoChanges() {
+		addShapes(5, 0);
+		_model.clock();
+		_events.clear();
+		_model.clock();
+		assertEquals("[]", _events.toString());
+	}
+
+	/**
+	 * Checks that scattered changes across many rows are reported as one
+	 * range rather than an event per row.
+	 */
+	@Test
+	public void testManyRuns() {
+		addShapes(200, 2);
+		_model.clock();
+		_events.clear();
+		_model.clock();
+		assertEquals("[update 0-198]", _events.toString());
+	}
+
+	/**
+	 * Checks that the table goes on showing the last frame after a
+	 * structural change, and that its rows and the events reporting them
+	 * change only when the next frame is published.
+	 */
+	@Test
+	public void testStructuralChange() {
+		addShapes(3, 1);
+		_model.clock();
+		_events.clear();
+		_model.remove(_model.root().shapeAt(0));
+		assertEquals("[]", _events.toString());
+		assertEquals(3, _adapter.getRowCount());
+		assertEquals(0, _adapter.getValueAt(0, 1));
+
+		_model.clock();
+		assertEquals("[update 0-" + Integer.MAX_VALUE + "]", _events.toString());
+		assertEquals(2, _adapter.getRowCount());
+		assertEquals(20, _adapter.getValueAt(0, 1));
+		assertEquals(102, _adapter.getValueAt(1, 2));
+	}
+
+	/**
+	 * Checks that Shapes appended since the last frame are reported as
+	 * inserted rows, keeping the rows already shown.
+	 */
+	@Test
+	public void testAppendedRows() {
+		addShapes(2, 1);
+		_model.clock();
+		_events.clear();
+		_model.add(new RectangleShape(100, 100, 0, 0, 10, 10), _model.root());
+		assertEquals(2, _adapter.getRowCount());
+
+		_model.clock();
+		assertEquals("[update 0-1, insert 2-2]", _events.toString());
+		assertEquals(3, _adapter.getRowCount());
+		assertEquals(100, _adapter.getValueAt(2, 1));
+	}
+
+	/**
+	 * Checks that a new adaptee is shown from the last frame.
+	 */
+	@Test
+	public void testSetAdaptee() {
+		addShapes(2, 1);
+		_model.clock();
+		_events.clear();
+		_adapter.setAdaptee(_model.root().shapeAt(1));
+		assertEquals("[update 0-" + Integer.MAX_VALUE + "]", _events.toString());
+		assertEquals(1, _adapter.getRowCount());
+		assertEquals(20, _adapter.getValueAt(0, 1));
+		assertEquals(101, _adapter.getValueAt(0, 2));
+	}
+}
@@ -1,6 +1,7 @@
 package bounce.views;
 
 import java.awt.Dimension;
+import java.util.Arrays;
 
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
@@ -186,4 +187,91 @@ public class TestTask2 {
 		_model.add( _newShape, _emptyNest );
 		assertTrue( _listenerMethodCalled );
 	}
+
+	/**
+	 * Checks that Shapes removed within a transaction are reported by a 
+	 * single TreeModelEvent whose indices are the positions the Shapes held
+	 * before any of them was removed.
+	 */	
+	@Test
+	public void test_shapesRemovedInTransaction() {
+		final int[] calls = new int[1];
+		_adapter.addTreeModelListener( new TreeModelListener() {
+
+			public void treeNodesChanged( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeNodesInserted( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeNodesRemoved( TreeModelEvent e ) {
+				calls[ 0 ]++;
+				int[] indices = e.getChildIndices();
+				Object[] children = e.getChildren();
+				
+				assertEquals( 2, indices.length );
+				assertEquals( 0, indices[ 0 ] );
+				assertEquals( 1, indices[ 1 ] );
+				assertSame( _emptyNest, children[ 0 ] );
+				assertSame( _simpleShape, children[ 1 ] );
+				assertEquals( 1, e.getPath().length );
+			}
+
+			public void treeStructureChanged( TreeModelEvent e ) {
+				fail();
+			}
+		} );
+		
+		ShapeModel.Transaction transaction = _model.beginTransaction();
+		try {
+			_model.remove( _simpleShape );
+			_model.remove( _emptyNest );
+			assertEquals( 0, calls[ 0 ] );
+		} finally {
+			transaction.close();
+		}
+		assertEquals( 1, calls[ 0 ] );
+	}
+
+	/**
+	 * Checks that addAll() results in a single TreeModelEvent describing
+	 * every Shape added.
+	 */	
+	@Test
+	public void test_addAll() {
+		final Shape other = new RectangleShape( 30, 30, 1, 1, 20, 20 );
+		final int[] calls = new int[1];
+		_adapter.addTreeModelListener( new TreeModelListener() {
+
+			public void treeNodesChanged( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeNodesInserted( TreeModelEvent e ) {
+				calls[ 0 ]++;
+				int[] indices = e.getChildIndices();
+				Object[] children = e.getChildren();
+				
+				assertEquals( 2, indices.length );
+				assertEquals( 0, indices[ 0 ] );
+				assertEquals( 1, indices[ 1 ] );
+				assertSame( _newShape, children[ 0 ] );
+				assertSame( other, children[ 1 ] );
+				assertSame( _emptyNest, e.getPath()[ 1 ] );
+			}
+
+			public void treeNodesRemoved( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeStructureChanged( TreeModelEvent e ) {
+				fail();
+			}
+		} );
+		
+		assertTrue( _model.addAll( Arrays.asList( _newShape, other ), _emptyNest ) );
+		assertEquals( 1, calls[ 0 ] );
+	}
 }
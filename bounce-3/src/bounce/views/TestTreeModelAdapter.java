@@ -0,0 +1,217 @@
+package bounce.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JTree;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreePath;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bounce.NestingShape;
+import bounce.RectangleShape;
+import bounce.Shape;
+import bounce.ShapeModel;
+
+/**
+ * Class to test the paging, path caching and event filtering of class
+ * TreeModelAdapter.
+ * @author Will Molloy
+ *
+ */
+public class TestTreeModelAdapter {
+
+	private ShapeModel _model;
+	private NestingShape _root;
+	private TreeModelAdapter _adapter;
+	private List<String> _events;
+
+	@Before
+	public void setUp() {
+		_model = new ShapeModel(new Dimension(500, 500));
+		_root = _model.root();
+		_adapter = new TreeModelAdapter(_model, 10);
+		_model.addShapeModelListener(_adapter);
+		_events = new ArrayList<String>();
+		_adapter.addTreeModelListener(new TreeModelListener() {
+			public void treeNodesChanged(TreeModelEvent e) {
+				record("changed", e);
+			}
+
+			public void treeNodesInserted(TreeModelEvent e) {
+				record("inserted", e);
+			}
+
+			public void treeNodesRemoved(TreeModelEvent e) {
+				record("removed", e);
+			}
+
+			public void treeStructureChanged(TreeModelEvent e) {
+				record("structure", e);
+			}
+		});
+	}
+
+	private void record(String type, TreeModelEvent e) {
+		_events.add(type + " " + e.getTreePath().getPathCount() + " " + Arrays.toString(e.getChildIndices()));
+	}
+
+	private void addShapes(NestingShape parent, int count) {
+		for (int i = 0; i < count; i++) {
+			_model.add(new RectangleShape(0, 0, 1, 1, 10, 10), parent);
+		}
+	}
+
+	/**
+	 * Checks that a NestingShape with more children than the page size is
+	 * shown a page at a time.
+	 */
+	@Test
+	public void testPages() {
+		addShapes(_root, 25);
+		assertEquals(3, _adapter.getChildCount(_root));
+
+		Object page = _adapter.getChild(_root, 2);
+		assertEquals(new TreeModelAdapter.Page(_root, 2, 10), page);
+		assertFalse(_adapter.isLeaf(page));
+		assertEquals(2, _adapter.getIndexOfChild(_root, page));
+		assertEquals(5, _adapter.getChildCount(page));
+		assertEquals("[20 - 24]", page.toString());
+		assertSame(_root, TreeModelAdapter.shapeOf(page));
+
+		Shape shape = _root.shapeAt(23);
+		assertSame(shape, _adapter.getChild(page, 3));
+		assertEquals(3, _adapter.getIndexOfChild(page, shape));
+		assertEquals(-1, _adapter.getIndexOfChild(_adapter.getChild(_root, 0), shape));
+		assertEquals(new TreePath(new Object[] {_root, page, shape}), _adapter.pathTo(shape));
+	}
+
+	/**
+	 * Checks that paths to NestingShapes are cached until a NestingShape is
+	 * removed.
+	 */
+	@Test
+	public void testPathCache() {
+		NestingShape nest = new NestingShape(0, 0, 1, 1, 100, 100);
+		_model.add(nest, _root);
+		NestingShape inner = new NestingShape(0, 0, 1, 1, 50, 50);
+		_model.add(inner, nest);
+
+		TreePath path = _adapter.pathTo(inner);
+		assertEquals(new TreePath(new Object[] {_root, nest, inner}), path);
+		addShapes(inner, 3);
+		assertSame(path, _adapter.pathTo(inner));
+
+		_model.remove(inner.shapeAt(0));
+		assertSame(path, _adapter.pathTo(inner));
+		_model.remove(inner);
+		_model.add(inner, _root);
+		assertNotSame(path, _adapter.pathTo(inner));
+		assertEquals(new TreePath(new Object[] {_root, inner}), _adapter.pathTo(inner));
+	}
+
+	/**
+	 * Checks that Shapes appended to a paged NestingShape are inserted into
+	 * its last page and then as new pages, and that other changes replace
+	 * its structure.
+	 */
+	@Test
+	public void testPagedEvents() {
+		addShapes(_root, 25);
+		_events.clear();
+
+		addShapes(_root, 6);
+		assertEquals(6, _events.size());
+		assertEquals("inserted 2 [5]", _events.get(0));
+		assertEquals("inserted 2 [9]", _events.get(4));
+		assertEquals("inserted 1 [3]", _events.get(5));
+
+		_events.clear();
+		_model.remove(_root.shapeAt(0));
+		assertEquals("[structure 1 []]", _events.toString());
+	}
+
+	/**
+	 * Checks that events held back by a transaction are converted using the
+	 * child counts from when each change was made, not the final ones, when
+	 * they interleave changes to two NestingShapes or add and then remove.
+	 */
+	@Test
+	public void testTransactionEvents() {
+		NestingShape first = new NestingShape(0, 0, 1, 1, 100, 100);
+		NestingShape second = new NestingShape(0, 0, 1, 1, 100, 100);
+		_model.add(first, _root);
+		_model.add(second, _root);
+		addShapes(first, 9);
+		_events.clear();
+
+		ShapeModel.Transaction transaction = _model.beginTransaction();
+		try {
+			addShapes(first, 1);
+			addShapes(second, 2);
+			addShapes(first, 3);
+		} finally {
+			transaction.close();
+		}
+		assertEquals("[inserted 2 [9], inserted 2 [0, 1], structure 2 []]", _events.toString());
+
+		_events.clear();
+		transaction = _model.beginTransaction();
+		try {
+			addShapes(first, 2);
+			_model.remove(first.shapeAt(0));
+		} finally {
+			transaction.close();
+		}
+		// The second page already holds 3 children when the 2 are added.
+		assertEquals("[inserted 3 [3, 4], structure 2 []]", _events.toString());
+	}
+
+	/**
+	 * Checks that changes to collapsed NestingShapes are not sent to the
+	 * JTree until they are expanded.
+	 */
+	@Test
+	public void testCollapsedNodes() {
+		NestingShape nest = new NestingShape(0, 0, 1, 1, 100, 100);
+		_model.add(nest, _root);
+		JTree tree = new JTree(_adapter);
+		_adapter.install(tree);
+		_events.clear();
+
+		addShapes(nest, 2);
+		assertTrue(_events.isEmpty());
+		addShapes(_root, 1);
+		assertEquals("[inserted 1 [1]]", _events.toString());
+
+		_events.clear();
+		tree.expandPath(_adapter.pathTo(nest));
+		assertEquals("[structure 2 []]", _events.toString());
+		assertEquals(2, tree.getModel().getChildCount(nest));
+		assertEquals(5, tree.getRowCount());
+
+		_events.clear();
+		addShapes(nest, 1);
+		assertEquals("[inserted 2 [2]]", _events.toString());
+		assertEquals(6, tree.getRowCount());
+
+		tree.collapsePath(_adapter.pathTo(nest));
+		_events.clear();
+		_model.remove(nest.shapeAt(0));
+		assertTrue(_events.isEmpty());
+		tree.expandPath(_adapter.pathTo(nest));
+		assertEquals("[structure 2 []]", _events.toString());
+		assertEquals(5, tree.getRowCount());
+	}
+}
@@ -0,0 +1,425 @@
+package bounce.views;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JTree;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+import bounce.NestingShape;
+import bounce.Shape;
+import bounce.ShapeModel;
+import bounce.ShapeModelEvent;
+import bounce.ShapeModelListener;
+
+/**
+ * TreeModelAdapter is a ShapeModel -> TreeModel adapter, like Task2, for
+ * hierarchies too large for it.
+ *
+ * The TreePath to each NestingShape is built once, from its parent's, and
+ * cached until a NestingShape is removed or children move between pages.
+ *
+ * Once install()ed on a JTree, the adapter follows which nodes are expanded
+ * and does not convert events for children of collapsed nodes. Instead the
+ * collapsed node is marked stale, and its structure is reported as changed
+ * just before it is next expanded.
+ *
+ * A NestingShape with more than pageSize children is shown with one Page
+ * node per pageSize children rather than a row per child, so expanding it
+ * creates only a few rows.
+ *
+ * @author Will Molloy
+ *
+ */
+public class TreeModelAdapter implements TreeModel, ShapeModelListener, TreeExpansionListener, TreeWillExpandListener {
+
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	/**
+	 * Node standing for a range of up to pageSize children of a NestingShape.
+	 * Pages are equal if they are the same range of the same NestingShape,
+	 * so a JTree recognises them however often getChild() creates them.
+	 */
+	public static final class Page {
+		private final NestingShape _container;
+		private final int _index;
+		private final int _pageSize;
+
+		Page(NestingShape container, int index, int pageSize) {
+			_container = container;
+			_index = index;
+			_pageSize = pageSize;
+		}
+
+		/**
+		 * Returns the NestingShape whose children this Page holds.
+		 */
+		public NestingShape container() {
+			return _container;
+		}
+
+		/**
+		 * Returns the index within the container of this Page's first child.
+		 */
+		public int first() {
+			return _index * _pageSize;
+		}
+
+		/**
+		 * Returns the number of children currently within this Page.
+		 */
+		public int childCount() {
+			return Math.max(0, Math.min(_pageSize, _container.shapeCount() - first()));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Page)) {
+				return false;
+			}
+			Page page = (Page) other;
+			return page._container == _container && page._index == _index && page._pageSize == _pageSize;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(_container) * 31 + _index;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + first() + " - " + (first() + childCount() - 1) + "]";
+		}
+	}
+
+	private ShapeModel _model;	// Adaptee
+
+	private final int _pageSize;
+
+	private List<TreeModelListener> _listeners = new ArrayList<TreeModelListener>();
+
+	private Map<NestingShape, TreePath> _paths = new IdentityHashMap<NestingShape, TreePath>();
+
+	/*
+	 * Nodes expanded in the JTree this adapter is installed on, and collapsed
+	 * nodes whose descendants changed while collapsed. Null until install()
+	 * is called, in which case every node is treated as expanded.
+	 */
+	private Set<Object> _expanded;
+	private Set<Object> _stale;
+
+	public TreeModelAdapter(ShapeModel model) {
+		this(model, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Creates a TreeModelAdapter that shows NestingShapes with more than
+	 * pageSize children a page at a time.
+	 * @throws IllegalArgumentException if pageSize is less than 1.
+	 */
+	public TreeModelAdapter(ShapeModel model, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size: " + pageSize);
+		}
+		_model = model;
+		_pageSize = pageSize;
+	}
+
+	/**
+	 * Registers this adapter with tree, which must already show it, so that
+	 * events are only converted for expanded nodes.
+	 */
+	public synchronized void install(JTree tree) {
+		_expanded = new HashSet<Object>();
+		_stale = new HashSet<Object>();
+		Enumeration<TreePath> paths = tree.getExpandedDescendants(new TreePath(getRoot()));
+		while (paths != null && paths.hasMoreElements()) {
+			_expanded.add(paths.nextElement().getLastPathComponent());
+		}
+		tree.addTreeWillExpandListener(this);
+		tree.addTreeExpansionListener(this);
+	}
+
+	/**
+	 * Returns the Shape that node stands for: node itself, or the container
+	 * of a Page.
+	 */
+	public static Shape shapeOf(Object node) {
+		return node instanceof Page ? ((Page) node).container() : (Shape) node;
+	}
+
+	/**
+	 * Returns the path from the root to shape, through any Pages.
+	 */
+	public synchronized TreePath pathTo(Shape shape) {
+		if (!(shape instanceof NestingShape)) {
+			return buildPath(shape);
+		}
+		TreePath path = _paths.get(shape);
+		if (path == null) {
+			path = buildPath(shape);
+			_paths.put((NestingShape) shape, path);
+		}
+		return path;
+	}
+
+	private TreePath buildPath(Shape shape) {
+		NestingShape parent = shape.parent();
+		if (parent == null) {
+			return new TreePath(shape);
+		}
+		TreePath path = pathTo(parent);
+		if (paged(parent.shapeCount())) {
+			path = path.pathByAddingChild(new Page(parent, parent.indexOf(shape) / _pageSize, _pageSize));
+		}
+		return path.pathByAddingChild(shape);
+	}
+
+	private boolean paged(int childCount) {
+		return childCount > _pageSize;
+	}
+
+	private int pages(int childCount) {
+		return (childCount + _pageSize - 1) / _pageSize;
+	}
+
+	@Override
+	public NestingShape getRoot() {
+		return _model.root();
+	}
+
+	@Override
+	public Object getChild(Object parent, int index) {
+		if (index < 0 || index >= getChildCount(parent)) {
+			return null;
+		} else if (parent instanceof Page) {
+			Page page = (Page) parent;
+			return page.container().shapeAt(page.first() + index);
+		}
+		NestingShape nest = (NestingShape) parent;
+		if (paged(nest.shapeCount())) {
+			return new Page(nest, index, _pageSize);
+		}
+		return nest.shapeAt(index);
+	}
+
+	@Override
+	public int getChildCount(Object parent) {
+		if (parent instanceof Page) {
+			return ((Page) parent).childCount();
+		} else if (parent instanceof NestingShape) {
+			int count = ((NestingShape) parent).shapeCount();
+			return paged(count) ? pages(count) : count;
+		}
+		return 0;
+	}
+
+	@Override
+	public int getIndexOfChild(Object parent, Object child) {
+		if (parent instanceof Page && child instanceof Shape) {
+			Page page = (Page) parent;
+			int index = page.container().indexOf((Shape) child) - page.first();
+			return index >= 0 && index < page.childCount() ? index : -1;
+		} else if (parent instanceof NestingShape) {
+			NestingShape nest = (NestingShape) parent;
+			boolean paged = paged(nest.shapeCount());
+			if (paged && child instanceof Page && ((Page) child).container() == nest) {
+				Page page = (Page) child;
+				return page.first() < nest.shapeCount() ? page._index : -1;
+			} else if (!paged && child instanceof Shape) {
+				return nest.indexOf((Shape) child);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * NestingShapes and Pages are never leaves, even when empty.
+	 */
+	@Override
+	public boolean isLeaf(Object node) {
+		return !(node instanceof NestingShape || node instanceof Page);
+	}
+
+	@Override
+	public void valueForPathChanged(TreePath path, Object newValue) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public synchronized void addTreeModelListener(TreeModelListener listener) {
+		_listeners.add(listener);
+	}
+
+	@Override
+	public synchronized void removeTreeModelListener(TreeModelListener listener) {
+		_listeners.remove(listener);
+	}
+
+	/**
+	 * Converts ShapeModelEvents that add or remove Shapes into
+	 * TreeModelEvents, for expanded nodes only.
+	 */
+	@Override
+	public synchronized void update(ShapeModelEvent event) {
+		ShapeModelEvent.EventType type = event.eventType();
+		boolean added = type == ShapeModelEvent.EventType.ShapeAdded || type == ShapeModelEvent.EventType.ShapesAdded;
+		boolean removed = type == ShapeModelEvent.EventType.ShapeRemoved || type == ShapeModelEvent.EventType.ShapesRemoved;
+		NestingShape parent = event.parent();
+		if (!(added || removed) || parent == null) {
+			return;
+		}
+
+		Shape[] shapes = event.operands();
+		int[] indices = event.indices();
+		if (removed) {
+			for (Shape shape : shapes) {
+				if (shape instanceof NestingShape) {
+					_paths.clear();
+					if (_expanded != null) {
+						_expanded.remove(shape);
+						_stale.remove(shape);
+					}
+				}
+			}
+		}
+
+		// The event may be one of several buffered by a transaction, so the
+		// counts are taken from it rather than from parent as it is now.
+		int before = event.previousChildCount();
+		int count = added ? before + indices.length : before - indices.length;
+		TreePath path = pathTo(parent);
+
+		if (!paged(before) && !paged(count)) {
+			if (isShowing(path)) {
+				TreeModelEvent treeEvent = new TreeModelEvent(event.source(), path, indices, shapes);
+				if (added) {
+					fireTreeNodesInserted(treeEvent);
+				} else {
+					fireTreeNodesRemoved(treeEvent);
+				}
+			}
+			return;
+		}
+
+		int lowest = Integer.MAX_VALUE;
+		for (int index : indices) {
+			lowest = Math.min(lowest, index);
+		}
+		if (!(added && paged(before) && lowest >= before)) {
+			// Children moved between pages, or pages were added or removed
+			// in the middle.
+			_paths.clear();
+			if (isShowing(path)) {
+				fireTreeStructureChanged(new TreeModelEvent(event.source(), path));
+			}
+			return;
+		}
+
+		// Shapes appended to a paged NestingShape fill its last page, then
+		// new pages.
+		if (!isShowing(path)) {
+			return;
+		}
+		Page last = new Page(parent, pages(before) - 1, _pageSize);
+		int room = last.first() + _pageSize - before;
+		TreePath lastPath = path.pathByAddingChild(last);
+		if (room > 0 && isShowing(lastPath)) {
+			int[] pageIndices = new int[Math.min(room, indices.length)];
+			Shape[] pageShapes = new Shape[pageIndices.length];
+			for (int i = 0; i < pageIndices.length; i++) {
+				pageIndices[i] = before + i - last.first();
+				pageShapes[i] = shapes[i];
+			}
+			fireTreeNodesInserted(new TreeModelEvent(event.source(), lastPath, pageIndices, pageShapes));
+		}
+		int newPages = pages(count) - pages(before);
+		if (newPages > 0) {
+			int[] pageIndices = new int[newPages];
+			Page[] pages = new Page[newPages];
+			for (int i = 0; i < newPages; i++) {
+				pageIndices[i] = pages(before) + i;
+				pages[i] = new Page(parent, pageIndices[i], _pageSize);
+			}
+			fireTreeNodesInserted(new TreeModelEvent(event.source(), path, pageIndices, pages));
+		}
+	}
+
+	/*
+	 * Returns true if every node on path is expanded, so that a JTree shows
+	 * the children of its last node. Otherwise marks the collapsed node
+	 * nearest the root as stale and returns false.
+	 */
+	private boolean isShowing(TreePath path) {
+		if (_expanded == null) {
+			return true;
+		}
+		Object collapsed = null;
+		for (TreePath p = path; p != null; p = p.getParentPath()) {
+			Object node = p.getLastPathComponent();
+			if (!_expanded.contains(node)) {
+				collapsed = node;
+			}
+		}
+		if (collapsed == null) {
+			return true;
+		}
+		_stale.add(collapsed);
+		return false;
+	}
+
+	/**
+	 * Reports the structure of a stale node as changed before it expands,
+	 * so that the JTree does not show children it was not told about.
+	 */
+	@Override
+	public synchronized void treeWillExpand(TreeExpansionEvent event) {
+		TreePath path = event.getPath();
+		if (_stale != null && _stale.remove(path.getLastPathComponent())) {
+			fireTreeStructureChanged(new TreeModelEvent(_model, path));
+		}
+	}
+
+	@Override
+	public void treeWillCollapse(TreeExpansionEvent event) {
+	}
+
+	@Override
+	public synchronized void treeExpanded(TreeExpansionEvent event) {
+		_expanded.add(event.getPath().getLastPathComponent());
+	}
+
+	@Override
+	public synchronized void treeCollapsed(TreeExpansionEvent event) {
+		_expanded.remove(event.getPath().getLastPathComponent());
+	}
+
+	private void fireTreeNodesInserted(TreeModelEvent e) {
+		for (TreeModelListener l : _listeners) {
+			l.treeNodesInserted(e);
+		}
+	}
+
+	private void fireTreeNodesRemoved(TreeModelEvent e) {
+		for (TreeModelListener l : _listeners) {
+			l.treeNodesRemoved(e);
+		}
+	}
+
+	private void fireTreeStructureChanged(TreeModelEvent e) {
+		for (TreeModelListener l : _listeners) {
+			l.treeStructureChanged(e);
+		}
+	}
+}